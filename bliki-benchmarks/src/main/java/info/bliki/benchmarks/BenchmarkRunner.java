@@ -0,0 +1,25 @@
+package info.bliki.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the JMH command line options and always adds the
+ * GC profiler, which reports the allocation rate and the allocated bytes per
+ * operation.
+ * 
+ * Example:
+ * 
+ * <pre>
+ * java -jar target/benchmarks.jar RenderBenchmark -p article=infobox
+ * </pre>
+ */
+public class BenchmarkRunner {
+	public static void main(String[] args) throws Exception {
+		Options options = new OptionsBuilder().parent(new CommandLineOptions(args)).addProfiler(GCProfiler.class).build();
+		new Runner(options).run();
+	}
+}
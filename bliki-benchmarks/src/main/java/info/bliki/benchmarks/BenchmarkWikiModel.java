@@ -0,0 +1,45 @@
+package info.bliki.benchmarks;
+
+import info.bliki.wiki.model.Configuration;
+import info.bliki.wiki.model.WikiModel;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A wiki model which reads the templates from the benchmark corpus.
+ */
+public class BenchmarkWikiModel extends WikiModel {
+	/**
+	 * The loaded templates; an empty string marks a missing template.
+	 */
+	private final static Map<String, String> TEMPLATES = new ConcurrentHashMap<String, String>();
+
+	public BenchmarkWikiModel() {
+		super(Configuration.DEFAULT_CONFIGURATION, "http://www.bliki.info/wiki/${image}", "http://www.bliki.info/wiki/${title}");
+	}
+
+	@Override
+	public String getRawWikiContent(String namespace, String articleName, Map<String, String> templateParameters) {
+		String result = super.getRawWikiContent(namespace, articleName, templateParameters);
+		if (result != null) {
+			// found magic word template
+			return result;
+		}
+		if (isTemplateNamespace(namespace)) {
+			String name = encodeTitleToUrl(articleName, true);
+			String content = TEMPLATES.get(name);
+			if (content == null) {
+				content = Corpus.getTemplate(name);
+				if (content == null) {
+					content = "";
+				}
+				TEMPLATES.put(name, content);
+			}
+			if (content.length() > 0) {
+				return content;
+			}
+		}
+		return null;
+	}
+}
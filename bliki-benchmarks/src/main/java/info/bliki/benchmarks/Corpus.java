@@ -0,0 +1,70 @@
+package info.bliki.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+/**
+ * Loads the wiki texts of the benchmark corpus from the class path.
+ * 
+ * The corpus contains articles with typical Wikipedia structures:
+ * <ul>
+ * <li><code>small</code> - a short article with a few links and lists</li>
+ * <li><code>infobox</code> - an infobox and many small template calls</li>
+ * <li><code>table</code> - large wiki tables</li>
+ * <li><code>htmltable</code> - large and nested HTML tables</li>
+ * <li><code>references</code> - many citation templates inside of
+ * <code>&lt;ref&gt;</code> tags</li>
+ * </ul>
+ */
+public class Corpus {
+	public final static String[] ARTICLES = { "small", "infobox", "table", "htmltable", "references" };
+
+	/**
+	 * Get the raw wiki text of an article of the corpus.
+	 * 
+	 * @param name
+	 *          the name of the article (see {@link #ARTICLES})
+	 * @return <code>null</code> if the article doesn't exist
+	 */
+	public static String getArticle(String name) {
+		return getResource("/corpus/" + name + ".txt");
+	}
+
+	/**
+	 * Get the raw wiki text of a template of the corpus.
+	 * 
+	 * @param name
+	 *          the encoded name of the template (i.e. <code>Cite_web</code>)
+	 * @return <code>null</code> if the template doesn't exist
+	 */
+	public static String getTemplate(String name) {
+		return getResource("/templates/" + name + ".txt");
+	}
+
+	private static String getResource(String resourceName) {
+		InputStream in = Corpus.class.getResourceAsStream(resourceName);
+		if (in == null) {
+			return null;
+		}
+		try {
+			Reader reader = new InputStreamReader(in, "UTF-8");
+			StringBuilder buf = new StringBuilder(8192);
+			char[] buffer = new char[8192];
+			int count;
+			while ((count = reader.read(buffer, 0, buffer.length)) != -1) {
+				buf.append(buffer, 0, count);
+			}
+			return buf.toString();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+}
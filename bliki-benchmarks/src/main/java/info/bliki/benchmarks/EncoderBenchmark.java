@@ -0,0 +1,64 @@
+package info.bliki.benchmarks;
+
+import info.bliki.htmlcleaner.Utils;
+import info.bliki.wiki.filter.Encoder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Encodes HTML text and page titles with {@link Encoder} and escapes the text
+ * with {@link Utils#escapeXmlToBuffer(String, Appendable, boolean, boolean, boolean)}
+ * like the HTML converter.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EncoderBenchmark {
+	private final static String[] TITLES = { "Main Page", "Java (programming language)", "Category:Wiki software",
+			"Help:Template", "Café au lait", "C++", "AT&T", "Rock 'n' roll", "Template:Cite web", "Zürich" };
+
+	private String fText;
+
+	private StringBuilder fBuffer;
+
+	@Setup
+	public void setUp() {
+		fText = Corpus.getArticle("small");
+		fBuffer = new StringBuilder(fText.length() * 2);
+	}
+
+	@Benchmark
+	public String encodeHtml() {
+		return Encoder.encodeHtml(fText);
+	}
+
+	@Benchmark
+	public StringBuilder escapeXml() throws IOException {
+		fBuffer.setLength(0);
+		Utils.escapeXmlToBuffer(fText, fBuffer, true, true, true);
+		return fBuffer;
+	}
+
+	@Benchmark
+	public void encodeTitleToUrl(Blackhole blackhole) {
+		for (int i = 0; i < TITLES.length; i++) {
+			blackhole.consume(Encoder.encodeTitleToUrl(TITLES[i], true));
+		}
+	}
+}
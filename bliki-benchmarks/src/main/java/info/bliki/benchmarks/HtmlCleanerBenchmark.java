@@ -0,0 +1,50 @@
+package info.bliki.benchmarks;
+
+import info.bliki.htmlcleaner.HtmlCleaner;
+import info.bliki.htmlcleaner.TagNode;
+import info.bliki.wiki.model.WikiModel;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cleans the rendered HTML of the corpus articles with {@link HtmlCleaner}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HtmlCleanerBenchmark {
+	@Param( { "small", "infobox", "table", "references" })
+	public String article;
+
+	private String fHtml;
+
+	@Setup
+	public void setUp() {
+		WikiModel wikiModel = new BenchmarkWikiModel();
+		wikiModel.setUp();
+		fHtml = wikiModel.render(Corpus.getArticle(article));
+	}
+
+	@Benchmark
+	public TagNode clean() throws IOException {
+		HtmlCleaner cleaner = new HtmlCleaner(fHtml);
+		cleaner.clean();
+		return cleaner.getBodyNode();
+	}
+}
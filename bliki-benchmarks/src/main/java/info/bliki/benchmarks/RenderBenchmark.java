@@ -0,0 +1,83 @@
+package info.bliki.benchmarks;
+
+import info.bliki.wiki.model.CompiledTemplateCache;
+import info.bliki.wiki.model.Configuration;
+import info.bliki.wiki.model.WikiModel;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Renders the articles of the corpus into HTML with
+ * {@link WikiModel#render(String)} and with
+ * {@link WikiModel#renderStreaming(String, Appendable)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RenderBenchmark {
+	@Param( { "small", "infobox", "table", "htmltable", "references" })
+	public String article;
+
+	/**
+	 * Use a {@link CompiledTemplateCache} for the template calls.
+	 */
+	@Param( { "false", "true" })
+	public boolean compiledTemplates;
+
+	private String fRawWikiText;
+
+	private WikiModel fWikiModel;
+
+	@Setup
+	public void setUp() {
+		fRawWikiText = Corpus.getArticle(article);
+		fWikiModel = new BenchmarkWikiModel();
+		Configuration.DEFAULT_CONFIGURATION.setCompiledTemplateCache(compiledTemplates ? new CompiledTemplateCache() : null);
+	}
+
+	@TearDown
+	public void tearDown() {
+		Configuration.DEFAULT_CONFIGURATION.setCompiledTemplateCache(null);
+	}
+
+	@Benchmark
+	public String render() {
+		fWikiModel.setUp();
+		try {
+			fWikiModel.setPageName(article);
+			return fWikiModel.render(fRawWikiText);
+		} finally {
+			fWikiModel.tearDown();
+		}
+	}
+
+	@Benchmark
+	public StringBuilder renderStreaming() throws IOException {
+		fWikiModel.setUp();
+		try {
+			fWikiModel.setPageName(article);
+			StringBuilder buf = new StringBuilder(fRawWikiText.length() + fRawWikiText.length() / 10);
+			fWikiModel.renderStreaming(fRawWikiText, buf);
+			return buf;
+		} finally {
+			fWikiModel.tearDown();
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package info.bliki.benchmarks;
+
+import info.bliki.wiki.filter.WPList;
+import info.bliki.wiki.filter.WPTable;
+import info.bliki.wiki.filter.WikipediaScanner;
+import info.bliki.wiki.model.WikiModel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scans the wiki tables and lists with {@link WikipediaScanner#wpTable}
+ * and {@link WikipediaScanner#wpList()}, splits template parameters and
+ * replaces the parameters of a template. Run with the GC profiler to compare
+ * the allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ScannerBenchmark {
+	private String fTable;
+
+	private String fList;
+
+	private WikiModel fWikiModel;
+
+	private String fTemplate;
+
+	private Map<String, String> fParameters;
+
+	@Setup
+	public void setUp() {
+		String text = Corpus.getArticle("table");
+		int start = text.indexOf("{|");
+		fTable = text.substring(start, text.indexOf("\n|}", start) + 3);
+
+		StringBuilder buf = new StringBuilder();
+		for (int i = 0; i < 50; i++) {
+			buf.append("* item ").append(i).append(" with a [[link]]\n");
+			buf.append("** nested item ''").append(i).append("''\n");
+			buf.append("*# numbered item\n");
+		}
+		fList = buf.toString();
+		fWikiModel = new BenchmarkWikiModel();
+
+		fTemplate = Corpus.getTemplate("Cite_web");
+		fParameters = new HashMap<String, String>();
+		fParameters.put("url", "http://www.example.com/article.html");
+		fParameters.put("title", "An example article");
+		fParameters.put("publisher", "Example Publisher");
+		fParameters.put("accessdate", "2010-01-01");
+	}
+
+	@Benchmark
+	public WPTable wpTable() {
+		fWikiModel.setUp();
+		WikipediaScanner scanner = new WikipediaScanner(fTable);
+		scanner.setModel(fWikiModel);
+		scanner.setPosition(0);
+		return scanner.wpTable(null);
+	}
+
+	@Benchmark
+	public WPList wpList() {
+		fWikiModel.setUp();
+		WikipediaScanner scanner = new WikipediaScanner(fList);
+		scanner.setModel(fWikiModel);
+		// simulate a newline before the list
+		scanner.setPosition(-1);
+		return scanner.wpList();
+	}
+
+	@Benchmark
+	public List<String> splitByPipe() {
+		return WikipediaScanner.splitByPipe(fTemplate, new ArrayList<String>());
+	}
+
+	@Benchmark
+	public StringBuilder replaceTemplateParameters() {
+		WikipediaScanner scanner = new WikipediaScanner(fTemplate);
+		scanner.setModel(fWikiModel);
+		return scanner.replaceTemplateParameters(fTemplate, fParameters);
+	}
+}
@@ -0,0 +1,71 @@
+package info.bliki.benchmarks;
+
+import info.bliki.wiki.filter.TemplateParser;
+import info.bliki.wiki.model.WikiModel;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Expands the templates of the template heavy articles of the corpus with
+ * {@link TemplateParser#parseRecursive(String, info.bliki.wiki.model.IWikiModel, Appendable, boolean, boolean, java.util.Map)}
+ * , which is the first pass of the rendering.
+ *
+ * With <code>allPasses=true</code> every pass of the template parser runs
+ * (see {@link TemplateParser#RUN_ALL_PASSES}), which is the baseline for the
+ * default processing that skips the passes that can't change the text.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TemplateParserBenchmark {
+	@Param( { "infobox", "references" })
+	public String article;
+
+	@Param( { "false", "true" })
+	public boolean allPasses;
+
+	private String fRawWikiText;
+
+	private WikiModel fWikiModel;
+
+	@Setup
+	public void setUp() {
+		fRawWikiText = Corpus.getArticle(article);
+		fWikiModel = new BenchmarkWikiModel();
+		TemplateParser.RUN_ALL_PASSES = allPasses;
+	}
+
+	@TearDown
+	public void tearDown() {
+		TemplateParser.RUN_ALL_PASSES = false;
+	}
+
+	@Benchmark
+	public StringBuilder parseRecursive() throws IOException {
+		StringBuilder buf = new StringBuilder(fRawWikiText.length() * 2);
+		fWikiModel.setUp();
+		try {
+			TemplateParser.parseRecursive(fRawWikiText, fWikiModel, buf, false, false, null);
+		} finally {
+			fWikiModel.tearDown();
+		}
+		return buf;
+	}
+}
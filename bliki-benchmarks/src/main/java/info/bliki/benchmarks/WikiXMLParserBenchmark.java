@@ -0,0 +1,88 @@
+package info.bliki.benchmarks;
+
+import info.bliki.wiki.dump.IArticleFilter;
+import info.bliki.wiki.dump.Siteinfo;
+import info.bliki.wiki.dump.WikiArticle;
+import info.bliki.wiki.dump.WikiXMLParser;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+
+/**
+ * Parses an in-memory XML dump of 100 pages with {@link WikiXMLParser}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WikiXMLParserBenchmark {
+	private final static int NUMBER_OF_PAGES = 100;
+
+	/**
+	 * Counts the characters of the parsed articles.
+	 */
+	private static class CountingFilter implements IArticleFilter {
+		long fCharacters = 0L;
+
+		public void process(WikiArticle article, Siteinfo siteinfo) throws SAXException {
+			fCharacters += article.getText().length();
+		}
+	}
+
+	private String fXml;
+
+	@Setup
+	public void setUp() {
+		StringBuilder buf = new StringBuilder(NUMBER_OF_PAGES * 8192);
+		buf.append("<mediawiki xml:lang=\"en\">\n<siteinfo>\n<sitename>Wikipedia</sitename>\n<namespaces>\n"
+				+ "<namespace key=\"0\" />\n<namespace key=\"10\">Template</namespace>\n</namespaces>\n</siteinfo>\n");
+		for (int i = 0; i < NUMBER_OF_PAGES; i++) {
+			String article = Corpus.ARTICLES[i % Corpus.ARTICLES.length];
+			buf.append("<page>\n<title>").append(article).append(' ').append(i).append("</title>\n<id>").append(i + 1).append(
+					"</id>\n<revision>\n<id>").append(i + 1).append("</id>\n<timestamp>2010-01-01T00:00:00Z</timestamp>\n");
+			buf.append("<text xml:space=\"preserve\">");
+			appendEscaped(buf, Corpus.getArticle(article));
+			buf.append("</text>\n</revision>\n</page>\n");
+		}
+		buf.append("</mediawiki>\n");
+		fXml = buf.toString();
+	}
+
+	private static void appendEscaped(StringBuilder buf, String text) {
+		for (int i = 0; i < text.length(); i++) {
+			char ch = text.charAt(i);
+			if (ch == '&') {
+				buf.append("&amp;");
+			} else if (ch == '<') {
+				buf.append("&lt;");
+			} else if (ch == '>') {
+				buf.append("&gt;");
+			} else {
+				buf.append(ch);
+			}
+		}
+	}
+
+	@Benchmark
+	public long parse() throws IOException, SAXException {
+		CountingFilter filter = new CountingFilter();
+		WikiXMLParser parser = new WikiXMLParser(new StringReader(fXml), filter);
+		parser.parse();
+		return filter.fCharacters;
+	}
+}
@@ -41,6 +41,22 @@ public abstract class AbstractXMLParser extends DefaultHandler {
 		fReader = new StringReader(xmlText);
 	}
 
+	/**
+	 * Create a parser which reads the XML text directly from the given reader
+	 * (i.e. from the response stream of an API query).
+	 * 
+	 * @param reader
+	 *          the reader for the XML text
+	 * @throws SAXException
+	 */
+	public AbstractXMLParser(Reader reader) throws SAXException {
+		super();
+		fXMLReader = XMLReaderFactory.createXMLReader();
+		fXMLReader.setContentHandler(this);
+		fXMLReader.setErrorHandler(this);
+		fReader = reader;
+	}
+
 	protected String getString() {
 		if (fData == null) {
 			return null;
@@ -8,9 +8,17 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.httpclient.Header;
@@ -40,11 +48,47 @@ public class Connector {
 	public final static String PARAM_TITLES = "titles";
 	public final static String PARAM_PAGE = "page";
 
+	/**
+	 * The default maximum number of concurrent connections to a single wiki
+	 */
+	public final static int DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+
+	/**
+	 * The maximum number of titles in a single API query
+	 */
+	public final static int MAX_TITLES_PER_QUERY = 50;
+
+	/**
+	 * The maximum number of characters which are searched for the start of the
+	 * XML text in a response
+	 */
+	private final static int XML_START_LOOKAHEAD = 4096;
+
+	/**
+	 * Creates daemon threads for the asynchronous queries.
+	 */
+	private static class DaemonThreadFactory implements ThreadFactory {
+		private int fCounter = 0;
+
+		public synchronized Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Connector-" + (fCounter++));
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
 	// create a ConnectionManager
 	private MultiThreadedHttpConnectionManager manager;
 
 	private HttpClient client;
 
+	private final int fMaxConnectionsPerHost;
+
+	/**
+	 * Executes the asynchronous queries; created on demand
+	 */
+	private ExecutorService fExecutor = null;
+
 	/**
 	 * Format the response body as XML String. Especially for some obscure <a
 	 * href="http://en.wikipedia.org/wiki/Byte_order_mark ">byte order mark</a>
@@ -56,11 +100,7 @@ public class Connector {
 	 * @throws IOException
 	 */
 	public static String getAsXmlString(HttpMethod method) throws IOException {
-		Header contentEncoding = method.getResponseHeader("Content-Encoding");
-		InputStream instream = method.getResponseBodyAsStream();
-		if (contentEncoding != null && contentEncoding.getValue().equalsIgnoreCase("gzip")) {
-			instream = new GZIPInputStream(instream);
-		}
+		InputStream instream = getResponseStream(method);
 		String responseBody = convertStreamToString(instream);
 		if (responseBody.length() > 0 && responseBody.charAt(0) != '<') {
 			// try to find XML.
@@ -72,6 +112,53 @@ public class Connector {
 		return responseBody;
 	}
 
+	/**
+	 * Get a reader for the (possibly gzip compressed) response body. Like in
+	 * {@link #getAsXmlString(HttpMethod)} the characters before the
+	 * <code>&lt;?xml</code> declaration are skipped, if the body doesn't start
+	 * with a <code>&lt;</code> character. The response can be parsed directly
+	 * from this reader without buffering the complete body in a string.
+	 * 
+	 * @param method
+	 * @return
+	 * @throws IOException
+	 */
+	public static Reader getResponseReader(HttpMethod method) throws IOException {
+		InputStream instream = getResponseStream(method);
+		if (instream == null) {
+			return new StringReader("");
+		}
+		BufferedReader reader = new BufferedReader(new InputStreamReader(instream, "UTF-8"), 8192);
+		reader.mark(XML_START_LOOKAHEAD);
+		int ch = reader.read();
+		if (ch == -1 || ch == '<') {
+			reader.reset();
+			return reader;
+		}
+		// try to find XML.
+		char[] buffer = new char[XML_START_LOOKAHEAD - 1];
+		int length = 0;
+		int count;
+		while (length < buffer.length && (count = reader.read(buffer, length, buffer.length - length)) != -1) {
+			length += count;
+		}
+		reader.reset();
+		int indx = new String(buffer, 0, length).indexOf("<?xml");
+		if (indx >= 0) {
+			reader.skip(indx + 1);
+		}
+		return reader;
+	}
+
+	private static InputStream getResponseStream(HttpMethod method) throws IOException {
+		Header contentEncoding = method.getResponseHeader("Content-Encoding");
+		InputStream instream = method.getResponseBodyAsStream();
+		if (contentEncoding != null && contentEncoding.getValue().equalsIgnoreCase("gzip")) {
+			instream = new GZIPInputStream(instream);
+		}
+		return instream;
+	}
+
 	private static String convertStreamToString(InputStream is) throws IOException {
 		/*
 		 * To convert the InputStream to String we use the BufferedReader.readLine()
@@ -116,15 +203,45 @@ public class Connector {
 	}
 
 	public Connector() {
+		this(DEFAULT_MAX_CONNECTIONS_PER_HOST);
+	}
+
+	/**
+	 * 
+	 * @param maxConnectionsPerHost
+	 *          the maximum number of concurrent connections to a single wiki.
+	 *          This is also the maximum number of concurrently executed
+	 *          asynchronous queries.
+	 */
+	public Connector(int maxConnectionsPerHost) {
+		fMaxConnectionsPerHost = Math.max(1, maxConnectionsPerHost);
 		manager = new MultiThreadedHttpConnectionManager();
-		// manager.setMaxConnectionsPerHost(6);
-		// manager.setMaxTotalConnections(18);
+		manager.getParams().setDefaultMaxConnectionsPerHost(fMaxConnectionsPerHost);
+		manager.getParams().setMaxTotalConnections(Math.max(fMaxConnectionsPerHost, 20));
 		// manager.setConnectionStaleCheckingEnabled(true);
 		// open the conversation
 		client = new HttpClient(manager);
 		// setHTTPClientParameters(client);
 	}
 
+	synchronized ExecutorService getExecutor() {
+		if (fExecutor == null) {
+			fExecutor = Executors.newFixedThreadPool(fMaxConnectionsPerHost, new DaemonThreadFactory());
+		}
+		return fExecutor;
+	}
+
+	/**
+	 * Stop the threads of the asynchronous queries. Already submitted queries
+	 * are still executed.
+	 */
+	public synchronized void shutdown() {
+		if (fExecutor != null) {
+			fExecutor.shutdown();
+			fExecutor = null;
+		}
+	}
+
 	/**
 	 * Complete the users login information. The user must contain a username,
 	 * password and actionURL. See <a
@@ -327,15 +444,66 @@ public class Connector {
 	 * @return
 	 */
 	public List<Page> query(User user, Query query) {
-		String response = sendXML(user, query);
-		try {
-			XMLPagesParser xmlPagesParser = new XMLPagesParser(response);
-			xmlPagesParser.parse();
-			return xmlPagesParser.getPagesList();
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
-		return null;
+		PostMethod method = createAuthenticatedPostMethod(user);
+		method.addParameters(query.getParameters());
+		return executePagesQuery(method);
+	}
+
+	/**
+	 * Query the Mediawiki API for all pages of a (possibly large) list like
+	 * <code>allpages</code> or <code>categorymembers</code>. The returned
+	 * iterator follows the <code>query-continue</code> parameters of the
+	 * responses automatically and fetches the next part of the list in the
+	 * background, while the current part is consumed.
+	 * 
+	 * Example:
+	 * 
+	 * <pre>
+	 * Query query = Query.create().list(&quot;allpages&quot;).aplimit(500);
+	 * Iterator&lt;Page&gt; iter = connector.queryIterator(user, query);
+	 * while (iter.hasNext()) {
+	 * 	System.out.println(iter.next().getTitle());
+	 * }
+	 * </pre>
+	 * 
+	 * @param user
+	 *          user login data
+	 * @param query
+	 *          a user defined query
+	 * @return
+	 * @see QueryIterator#DEFAULT_MAX_PREFETCHED_BATCHES
+	 */
+	public QueryIterator queryIterator(User user, Query query) {
+		return new QueryIterator(this, user, query, QueryIterator.DEFAULT_MAX_PREFETCHED_BATCHES);
+	}
+
+	/**
+	 * Query the Mediawiki API for all pages of a (possibly large) list.
+	 * 
+	 * @param user
+	 *          user login data
+	 * @param query
+	 *          a user defined query
+	 * @param maxPrefetchedBatches
+	 *          the maximum number of responses which are fetched in advance and
+	 *          held in memory
+	 * @return
+	 * @see #queryIterator(User, Query)
+	 */
+	public QueryIterator queryIterator(User user, Query query, int maxPrefetchedBatches) {
+		return new QueryIterator(this, user, query, maxPrefetchedBatches);
+	}
+
+	/**
+	 * Execute the query and return the parser, which contains the pages and the
+	 * continuation parameters of the response.
+	 * 
+	 * @return <code>null</code> if the query fails
+	 */
+	XMLPagesParser queryPagesParser(User user, Query query) {
+		PostMethod method = createAuthenticatedPostMethod(user);
+		method.addParameters(query.getParameters());
+		return parsePagesQuery(method);
 	}
 
 	/**
@@ -351,21 +519,113 @@ public class Connector {
 	 * @return
 	 */
 	public List<Page> query(User user, List<String> listOfTitleStrings, String[] valuePairs) {
+		List<Page> pages = executePagesQuery(createQueryMethod(user, listOfTitleStrings, valuePairs));
+		if (pages != null) {
+			return pages;
+		}
+		// no pages parsed!?
+		return new ArrayList<Page>();
+	}
+
+	/**
+	 * Query the Mediawiki API asynchronously for some wiki pages. At most
+	 * <code>maxConnectionsPerHost</code> queries are executed concurrently;
+	 * further queries are queued.
+	 * 
+	 * @param user
+	 *          user login data
+	 * @param listOfTitleStrings
+	 *          a list of title Strings "ArticleA,ArticleB,..."
+	 * @param valuePairs
+	 *          pairs of query strings which should be appended to the Mediawiki
+	 *          API URL
+	 * @return the future list of downloaded Mediawiki pages
+	 * @see #Connector(int)
+	 */
+	public Future<List<Page>> queryAsync(final User user, final List<String> listOfTitleStrings, final String[] valuePairs) {
+		return getExecutor().submit(new Callable<List<Page>>() {
+			public List<Page> call() {
+				return query(user, listOfTitleStrings, valuePairs);
+			}
+		});
+	}
+
+	/**
+	 * Get the content of Mediawiki wiki pages asynchronously.
+	 * 
+	 * @param user
+	 *          user login data
+	 * @param listOfTitleStrings
+	 *          a list of title Strings "ArticleA,ArticleB,..."
+	 * @return the future list of downloaded Mediawiki pages
+	 */
+	public Future<List<Page>> queryContentAsync(User user, List<String> listOfTitleStrings) {
+		String[] valuePairs = { "prop", "revisions", "rvprop", "timestamp|user|comment|content" };
+		return queryAsync(user, new ArrayList<String>(listOfTitleStrings), valuePairs);
+	}
+
+	/**
+	 * Get the content of an arbitrary number of Mediawiki wiki pages. The titles
+	 * are split into queries of {@link #MAX_TITLES_PER_QUERY} titles, which are
+	 * executed concurrently.
+	 * 
+	 * @param user
+	 *          user login data
+	 * @param listOfTitleStrings
+	 *          a list of title Strings "ArticleA,ArticleB,..."
+	 * @return a list of downloaded Mediawiki pages in the order of the queries
+	 */
+	public List<Page> queryContentBatched(User user, List<String> listOfTitleStrings) {
+		List<Future<List<Page>>> futures = new ArrayList<Future<List<Page>>>();
+		for (int i = 0; i < listOfTitleStrings.size(); i += MAX_TITLES_PER_QUERY) {
+			futures.add(queryContentAsync(user, listOfTitleStrings.subList(i, Math.min(i + MAX_TITLES_PER_QUERY, listOfTitleStrings
+					.size()))));
+		}
+		List<Page> result = new ArrayList<Page>(listOfTitleStrings.size());
+		for (Future<List<Page>> future : futures) {
+			try {
+				result.addAll(future.get());
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			} catch (ExecutionException e) {
+				e.printStackTrace();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Execute the query and parse the pages directly from the response stream.
+	 * 
+	 * @return <code>null</code> if the query fails
+	 */
+	private List<Page> executePagesQuery(PostMethod method) {
+		XMLPagesParser parser = parsePagesQuery(method);
+		if (parser != null) {
+			return parser.getPagesList();
+		}
+		return null;
+	}
+
+	private XMLPagesParser parsePagesQuery(PostMethod method) {
 		try {
-			String responseBody = queryXML(user, listOfTitleStrings, valuePairs);
-			if (responseBody != null) {
-				// System.out.println(responseBody);
-				XMLPagesParser parser = new XMLPagesParser(responseBody);
+			method.addRequestHeader("Accept-encoding", "gzip");
+			int responseCode = client.executeMethod(method);
+			if (responseCode == HttpStatus.SC_OK) {
+				XMLPagesParser parser = new XMLPagesParser(getResponseReader(method));
 				parser.parse();
-				return parser.getPagesList();
+				return parser;
 			}
+		} catch (HttpException e) {
+			e.printStackTrace();
 		} catch (IOException e) {
 			e.printStackTrace();
 		} catch (SAXException e) {
 			e.printStackTrace();
+		} finally {
+			method.releaseConnection();
 		}
-		// no pages parsed!?
-		return new ArrayList<Page>();
+		return null;
 	}
 
 	/**
@@ -397,6 +657,10 @@ public class Connector {
 	 *         otherwise
 	 */
 	public String queryXML(User user, List<String> listOfTitleStrings, String[] valuePairs) {
+		return executeHttpMethod(createQueryMethod(user, listOfTitleStrings, valuePairs));
+	}
+
+	private PostMethod createQueryMethod(User user, List<String> listOfTitleStrings, String[] valuePairs) {
 		PostMethod method = createAuthenticatedPostMethod(user);
 
 		StringBuffer titlesString = new StringBuffer();
@@ -417,7 +681,7 @@ public class Connector {
 				method.addParameter(new NameValuePair(valuePairs[i], valuePairs[i + 1]));
 			}
 		}
-		return executeHttpMethod(method);
+		return method;
 	}
 
 	public ParseData parse(User user, RequestBuilder requestBuilder) {
@@ -0,0 +1,172 @@
+package info.bliki.api;
+
+import info.bliki.api.query.Query;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A lazy iterator over all pages of a Mediawiki API query, which follows the
+ * <code>query-continue</code> (or <code>continue</code>) parameters of the
+ * responses automatically.
+ *
+ * Every response (<i>batch</i>) depends on the continuation parameters of the
+ * previous one, so the batches are fetched one after another with the thread
+ * pool of the {@link Connector}. The next batch is already fetched while the
+ * current one is consumed; at most <code>maxPrefetchedBatches</code> batches
+ * are held in memory, before the iterator waits for the consumer.
+ *
+ * A failed query ends the iteration. Call {@link #close()} if the iteration
+ * isn't completed, to stop fetching further batches.
+ *
+ * @see Connector#queryIterator(User, Query)
+ */
+public class QueryIterator implements Iterator<Page> {
+	/**
+	 * The default maximum number of batches, which are fetched in advance
+	 */
+	public final static int DEFAULT_MAX_PREFETCHED_BATCHES = 2;
+
+	private final Connector fConnector;
+
+	private final User fUser;
+
+	private final Query fQuery;
+
+	private final int fMaxPrefetchedBatches;
+
+	/**
+	 * The fetched batches which aren't consumed yet; guarded by
+	 * <code>this</code>
+	 */
+	private final LinkedList<List<Page>> fBatches;
+
+	/**
+	 * The continuation parameters for the next query; <code>null</code> for the
+	 * first query. Only accessed by the (single) running fetch task.
+	 */
+	private Map<String, String> fContinueParameters;
+
+	private boolean fFetching;
+
+	private boolean fFinished;
+
+	private Iterator<Page> fCurrentBatch;
+
+	QueryIterator(Connector connector, User user, Query query, int maxPrefetchedBatches) {
+		fConnector = connector;
+		fUser = user;
+		fQuery = query;
+		fMaxPrefetchedBatches = Math.max(1, maxPrefetchedBatches);
+		fBatches = new LinkedList<List<Page>>();
+		fContinueParameters = null;
+		fFetching = false;
+		fFinished = false;
+		fCurrentBatch = Collections.<Page> emptyList().iterator();
+		fetchAhead();
+	}
+
+	/**
+	 * Start fetching the next batch, if no query is running and there's room for
+	 * another batch.
+	 */
+	private synchronized void fetchAhead() {
+		if (!fFetching && !fFinished && fBatches.size() < fMaxPrefetchedBatches) {
+			fFetching = true;
+			fConnector.getExecutor().execute(new Runnable() {
+				public void run() {
+					fetch();
+				}
+			});
+		}
+	}
+
+	private void fetch() {
+		XMLPagesParser parser = null;
+		try {
+			parser = fConnector.queryPagesParser(fUser, createQuery());
+		} catch (RuntimeException re) {
+			re.printStackTrace();
+		}
+		synchronized (this) {
+			fFetching = false;
+			if (parser == null) {
+				fFinished = true;
+			} else if (!fFinished) {
+				fBatches.add(parser.getPagesList());
+				Map<String, String> continueParameters = parser.getContinueParameters();
+				if (continueParameters.size() == 0) {
+					fFinished = true;
+				} else {
+					fContinueParameters = continueParameters;
+				}
+			}
+			notifyAll();
+		}
+		fetchAhead();
+	}
+
+	/**
+	 * Create a copy of the user defined query with the current continuation
+	 * parameters.
+	 */
+	private Query createQuery() {
+		if (fContinueParameters == null) {
+			return fQuery;
+		}
+		Query query = Query.create();
+		for (Map.Entry<String, String> entry : fQuery.entrySet()) {
+			query.put(entry.getKey(), entry.getValue());
+		}
+		query.putAll(fContinueParameters);
+		return query;
+	}
+
+	public boolean hasNext() {
+		while (!fCurrentBatch.hasNext()) {
+			synchronized (this) {
+				while (fBatches.size() == 0 && !fFinished) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						close();
+						return false;
+					}
+				}
+				if (fBatches.size() == 0) {
+					return false;
+				}
+				fCurrentBatch = fBatches.removeFirst().iterator();
+			}
+			fetchAhead();
+		}
+		return true;
+	}
+
+	public Page next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return fCurrentBatch.next();
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Stop the iteration and discard all prefetched batches. An already running
+	 * query is completed, but its result is ignored.
+	 */
+	public synchronized void close() {
+		fFinished = true;
+		fBatches.clear();
+		fCurrentBatch = Collections.<Page> emptyList().iterator();
+		notifyAll();
+	}
+}
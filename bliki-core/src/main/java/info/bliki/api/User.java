@@ -1,7 +1,10 @@
 package info.bliki.api;
 
+import info.bliki.api.query.Query;
+
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Future;
 
 /**
  * Manages user data from the <a
@@ -145,6 +148,45 @@ public class User {
 		return queryContent(arrayToList(listOfTitleStrings));
 	}
 
+	/**
+	 * Get the content of Mediawiki wiki pages asynchronously. The query is
+	 * executed by the thread pool of the connector.
+	 * 
+	 * @param listOfTitleStrings
+	 *          a list of title Strings "ArticleA,ArticleB,..."
+	 * @return the future list of pages
+	 * @see Connector#queryContentAsync(User, List)
+	 */
+	public Future<List<Page>> queryContentAsync(List<String> listOfTitleStrings) {
+		return connector.queryContentAsync(this, listOfTitleStrings);
+	}
+
+	/**
+	 * Get the content of an arbitrary number of Mediawiki wiki pages. The titles
+	 * are split into batches, which are queried concurrently.
+	 * 
+	 * @param listOfTitleStrings
+	 *          a list of title Strings "ArticleA,ArticleB,..."
+	 * @return the pages in the order of the batches
+	 * @see Connector#queryContentBatched(User, List)
+	 */
+	public List<Page> queryContentBatched(List<String> listOfTitleStrings) {
+		return connector.queryContentBatched(this, listOfTitleStrings);
+	}
+
+	/**
+	 * Iterate lazily over all pages of a (possibly large) list like
+	 * <code>allpages</code> or <code>categorymembers</code>.
+	 * 
+	 * @param query
+	 *          a user defined query
+	 * @return
+	 * @see Connector#queryIterator(User, Query)
+	 */
+	public QueryIterator queryIterator(Query query) {
+		return connector.queryIterator(this, query);
+	}
+
 	public List<Page> queryCategories(List<String> listOfTitleStrings) {
 		return connector.queryCategories(this, listOfTitleStrings);
 	}
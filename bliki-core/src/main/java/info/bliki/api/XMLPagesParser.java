@@ -1,7 +1,10 @@
 package info.bliki.api;
 
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
@@ -30,23 +33,48 @@ public class XMLPagesParser extends AbstractXMLParser {
 
     private static final String EDIT_TOKEN_ID = "edittoken";
 
+	private static final String CATEGORYMEMBER_TAG = "cm";
+
+	private static final String QUERY_CONTINUE_TAG = "query-continue";
+
+	private static final String CONTINUE_TAG = "continue";
+
 	private Page fPage;
 
 	private Revision fRevision;
 
 	private List<Page> pagesList;
 
+	private Map<String, String> fContinueParameters;
+
+	private boolean fInQueryContinue;
+
 	public XMLPagesParser(String xmlText) throws SAXException {
 		super(xmlText);
 		pagesList = new ArrayList<Page>();
+		fContinueParameters = new LinkedHashMap<String, String>();
+	}
+
+	public XMLPagesParser(Reader reader) throws SAXException {
+		super(reader);
+		pagesList = new ArrayList<Page>();
+		fContinueParameters = new LinkedHashMap<String, String>();
 	}
 
 	@Override
 	public void startElement(String namespaceURI, String localName, String qName, Attributes atts) {
 		fAttributes = atts;
 
-		if ( (AbstractXMLParser.PAGE_TAG1.equals(qName)) ||
-			   (AbstractXMLParser.PAGE_TAG2.equals(qName)) ) {
+		if (fInQueryContinue) {
+			// <query-continue><allpages apfrom="..." /></query-continue>
+			addContinueParameters(atts);
+		} else if (QUERY_CONTINUE_TAG.equals(qName)) {
+			fInQueryContinue = true;
+		} else if (CONTINUE_TAG.equals(qName)) {
+			// <continue apcontinue="..." continue="-||" />
+			addContinueParameters(atts);
+		} else if ( (AbstractXMLParser.PAGE_TAG1.equals(qName)) ||
+			   (AbstractXMLParser.PAGE_TAG2.equals(qName)) || CATEGORYMEMBER_TAG.equals(qName) ) {
 			fPage = new Page();
 			fPage.setPageid(fAttributes.getValue(AbstractXMLParser.PAGE_ID));
 			fPage.setNs(fAttributes.getValue(AbstractXMLParser.NS_ID));
@@ -89,7 +117,12 @@ public class XMLPagesParser extends AbstractXMLParser {
 					fRevision.setContent(getString());
 				}
 				// System.out.println(getString());
-			} else if (AbstractXMLParser.PAGE_TAG1.equals(qName) || AbstractXMLParser.PAGE_TAG2.equals(qName)) {// || CATEGORY_ID.equals(qName)) {
+			} else if (QUERY_CONTINUE_TAG.equals(qName)) {
+				fInQueryContinue = false;
+			} else if (fInQueryContinue) {
+				// ignore the pages of the continuation
+			} else if (AbstractXMLParser.PAGE_TAG1.equals(qName) || AbstractXMLParser.PAGE_TAG2.equals(qName)
+					|| CATEGORYMEMBER_TAG.equals(qName)) {// || CATEGORY_ID.equals(qName)) {
 				if (fPage != null) {
 					pagesList.add(fPage);
 				}
@@ -104,8 +137,25 @@ public class XMLPagesParser extends AbstractXMLParser {
 		}
 	}
 
+	private void addContinueParameters(Attributes atts) {
+		for (int i = 0; i < atts.getLength(); i++) {
+			fContinueParameters.put(atts.getQName(i), atts.getValue(i));
+		}
+	}
+
 	public List<Page> getPagesList() {
 		return pagesList;
 	}
 
+	/**
+	 * Get the parameters from the <code>query-continue</code> or
+	 * <code>continue</code> element of the response, which must be added to the
+	 * query to get the next part of the result.
+	 * 
+	 * @return an empty map if the result is complete
+	 */
+	public Map<String, String> getContinueParameters() {
+		return fContinueParameters;
+	}
+
 }
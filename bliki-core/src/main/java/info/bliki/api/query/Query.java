@@ -220,7 +220,7 @@ public class Query extends RequestBuilder {
 	 * @return
 	 */
 	public Query aplimit(int limit) {
-		put("apfrom", Integer.toString(limit));
+		put("aplimit", Integer.toString(limit));
 		return this;
 	}
 
@@ -49,7 +49,7 @@ import java.util.Map;
  */
 public class SpecialEntities {
 	
-	static Map entities = new HashMap();
+	static Map<String, Integer> entities = new HashMap<String, Integer>();
 
 	static {
 		entities.put("quot", Integer.valueOf(34));
@@ -305,5 +305,61 @@ public class SpecialEntities {
 		entities.put("hearts", Integer.valueOf(9829));
 		entities.put("diams", Integer.valueOf(9830));
 	}
+
+	/**
+	 * Hash table (open addressing) of the entity names and their codes, which
+	 * can be searched without creating a substring of the source.
+	 */
+	private static final String[] NAMES;
+
+	private static final int[] CODES;
+
+	private static final int MASK;
+
+	static {
+		int size = 16;
+		while (size < entities.size() * 4) {
+			size <<= 1;
+		}
+		NAMES = new String[size];
+		CODES = new int[size];
+		MASK = size - 1;
+		for (Map.Entry<String, Integer> entry : entities.entrySet()) {
+			String name = entry.getKey();
+			int index = hash(name.hashCode()) & MASK;
+			while (NAMES[index] != null) {
+				index = (index + 1) & MASK;
+			}
+			NAMES[index] = name;
+			CODES[index] = entry.getValue().intValue();
+		}
+	}
+
+	private static int hash(int h) {
+		h ^= (h >>> 20) ^ (h >>> 12);
+		return h ^ (h >>> 7) ^ (h >>> 4);
+	}
+
+	/**
+	 * Get the unicode of the entity name <code>s.substring(start, end)</code>.
+	 * 
+	 * @return the unicode or <code>-1</code> if the name isn't a special entity
+	 */
+	static int getCode(String s, int start, int end) {
+		int h = 0;
+		for (int i = start; i < end; i++) {
+			h = 31 * h + s.charAt(i);
+		}
+		int len = end - start;
+		int index = hash(h) & MASK;
+		String name;
+		while ((name = NAMES[index]) != null) {
+			if (name.length() == len && name.regionMatches(0, s, start, len)) {
+				return CODES[index];
+			}
+			index = (index + 1) & MASK;
+		}
+		return -1;
+	}
 	
 }
\ No newline at end of file
@@ -40,14 +40,17 @@ package info.bliki.htmlcleaner;
 import info.bliki.wiki.tags.HTMLTag;
 
 import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.TreeMap;
 
 /**
  * <p>
@@ -100,13 +103,25 @@ public class TagNode extends TagToken {
 		return ALLOWED_ATTRIBUTES_SET.add(key);
 	}
 
+	/**
+	 * The shared children list of the nodes without children
+	 */
+	private static final List<Object> NO_CHILDREN = Collections.emptyList();
+
+	private static final String[] NO_ATTRIBUTES = new String[0];
+
 	private TagNode parent = null;
 
-	private Map<String, String> attributes = new TreeMap<String, String>();
+	/**
+	 * The attribute names and values in alternating order, sorted by the names.
+	 * The array is never modified; adding an attribute creates a new array, so
+	 * that copies of this node can share the array.
+	 */
+	private String[] attributes = NO_ATTRIBUTES;
 
 	private HashMap<String, Object> objectAttributes = null;
 
-	private List<Object> children = new ArrayList<Object>();
+	private List<Object> children = NO_CHILDREN;
 
 	private List<Object> itemsToMove = null;
 
@@ -116,11 +131,92 @@ public class TagNode extends TagToken {
 	}
 
 	public TagNode(String name) {
-		super(name.toLowerCase());
+		super(TagTypes.toLowerCaseName(name));
 	}
 
+	/**
+	 * Get a read-only view of the attributes sorted by the attribute names.
+	 * 
+	 * @see #addAttribute(String, String, boolean)
+	 */
 	public Map<String, String> getAttributes() {
-		return attributes;
+		return new AttributeMap();
+	}
+
+	/**
+	 * Get the value of an attribute.
+	 * 
+	 * @param attName
+	 *          the lower case attribute name
+	 * @return <code>null</code> if the attribute doesn't exist
+	 */
+	public String getAttribute(String attName) {
+		int index = indexOfAttribute(attName);
+		return index < 0 ? null : attributes[index + 1];
+	}
+
+	/**
+	 * Get the number of attributes of this node.
+	 */
+	public int getAttributeCount() {
+		return attributes.length >> 1;
+	}
+
+	/**
+	 * Get the name of the attribute at the given index. The attributes are
+	 * sorted by their names.
+	 */
+	public String getAttributeName(int index) {
+		return attributes[index << 1];
+	}
+
+	/**
+	 * Get the value of the attribute at the given index. The attributes are
+	 * sorted by their names.
+	 */
+	public String getAttributeValue(int index) {
+		return attributes[(index << 1) + 1];
+	}
+
+	/**
+	 * Binary search of the attribute name.
+	 * 
+	 * @return the array index of the name or <code>-(insertion index + 1)</code>
+	 */
+	private int indexOfAttribute(String attName) {
+		String[] atts = attributes;
+		int low = 0;
+		int high = (atts.length >> 1) - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = atts[mid << 1].compareTo(attName);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid << 1;
+			}
+		}
+		return -((low << 1) + 1);
+	}
+
+	private void putAttribute(String attName, String attValue) {
+		String[] atts = attributes;
+		int index = indexOfAttribute(attName);
+		String[] newAttributes;
+		if (index >= 0) {
+			newAttributes = atts.clone();
+			newAttributes[index + 1] = attValue;
+		} else {
+			index = -(index + 1);
+			newAttributes = new String[atts.length + 2];
+			System.arraycopy(atts, 0, newAttributes, 0, index);
+			newAttributes[index] = attName;
+			newAttributes[index + 1] = attValue;
+			System.arraycopy(atts, index, newAttributes, index + 2, atts.length - index);
+		}
+		attributes = newAttributes;
 	}
 
 	/**
@@ -139,6 +235,11 @@ public class TagNode extends TagToken {
 		return objectAttributes;
 	}
 
+	/**
+	 * Get the children of this node. A node without children returns a shared
+	 * empty list, which can't be modified; use {@link #addChild(Object)} to add
+	 * children.
+	 */
 	public List<Object> getChildren() {
 		return children;
 	}
@@ -156,30 +257,29 @@ public class TagNode extends TagToken {
 		if (attName != null && (!"".equals(attName.trim()) && attValue != null)) {
 			boolean checkedAttributes = true;
 			String nameLowerCased = attName.toLowerCase();
-			String valueLowerCased = attValue.toLowerCase();
 			if (checkXSS && (!getAllowedAttributes().contains(nameLowerCased))) {
 				if (!isAllowedAttribute(nameLowerCased)) {
 					checkedAttributes = false;
 				}
 			}
-			if (checkedAttributes && valueLowerCased.contains("javascript:")) {
+			if (checkedAttributes && Utils.containsIgnoreCase(attValue, "javascript:")) {
 				checkedAttributes = false;
 			}
 			// attempt to prevent cross-site scripting inside CSS style (this is
 			// not complete!)
 			// see http://openmya.hacker.jp/hasegawa/security/expression.txt
 			if (checkedAttributes && attName.equalsIgnoreCase("style")) {
-				if (valueLowerCased.contains("expression")) {
+				if (Utils.containsIgnoreCase(attValue, "expression")) {
 					checkedAttributes = false;
-				} else if (valueLowerCased.contains("url")) {
+				} else if (Utils.containsIgnoreCase(attValue, "url")) {
 					checkedAttributes = false;
-				} else if (valueLowerCased.contains("tps")) {
+				} else if (Utils.containsIgnoreCase(attValue, "tps")) {
 					checkedAttributes = false;
 				}
 			}
 
 			if (checkedAttributes) {
-				attributes.put(nameLowerCased, attValue);
+				putAttribute(nameLowerCased, attValue);
 				return true;
 			}
 		}
@@ -213,6 +313,9 @@ public class TagNode extends TagToken {
 	}
 
 	public void addChild(Object child) {
+		if (children == NO_CHILDREN) {
+			children = new ArrayList<Object>(4);
+		}
 		children.add(child);
 		if (child instanceof TagNode) {
 			TagNode childTagNode = (TagNode) child;
@@ -271,8 +374,8 @@ public class TagNode extends TagToken {
 		tt.parent = this.parent;
 		tt.itemsToMove = this.itemsToMove;
 		tt.isFormed = this.isFormed;
-		tt.children = new ArrayList(this.children);
-		tt.attributes = new TreeMap<String, String>(this.attributes);
+		tt.children = this.children.isEmpty() ? NO_CHILDREN : new ArrayList<Object>(this.children);
+		tt.attributes = this.attributes;
 		if (objectAttributes == null) {
 			tt.objectAttributes = null;
 		} else {
@@ -350,4 +453,108 @@ public class TagNode extends TagToken {
 		}
 		return "";
 	}
+
+	/**
+	 * Read-only view of the attribute array of this node.
+	 */
+	private final class AttributeMap extends AbstractMap<String, String> {
+		@Override
+		public int size() {
+			return attributes.length >> 1;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return (key instanceof String) && indexOfAttribute((String) key) >= 0;
+		}
+
+		@Override
+		public String get(Object key) {
+			return (key instanceof String) ? getAttribute((String) key) : null;
+		}
+
+		@Override
+		public Set<Map.Entry<String, String>> entrySet() {
+			return new AbstractSet<Map.Entry<String, String>>() {
+				@Override
+				public int size() {
+					return attributes.length >> 1;
+				}
+
+				@Override
+				public Iterator<Map.Entry<String, String>> iterator() {
+					return new AttributeIterator(attributes);
+				}
+			};
+		}
+	}
+
+	private static final class AttributeIterator implements Iterator<Map.Entry<String, String>> {
+		private final String[] fAttributes;
+
+		private int fIndex = 0;
+
+		AttributeIterator(String[] attributes) {
+			fAttributes = attributes;
+		}
+
+		public boolean hasNext() {
+			return fIndex < fAttributes.length;
+		}
+
+		public Map.Entry<String, String> next() {
+			if (fIndex >= fAttributes.length) {
+				throw new NoSuchElementException();
+			}
+			Map.Entry<String, String> entry = new Attribute(fAttributes[fIndex], fAttributes[fIndex + 1]);
+			fIndex += 2;
+			return entry;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private static final class Attribute implements Map.Entry<String, String> {
+		private final String fName;
+
+		private final String fValue;
+
+		Attribute(String name, String value) {
+			fName = name;
+			fValue = value;
+		}
+
+		public String getKey() {
+			return fName;
+		}
+
+		public String getValue() {
+			return fValue;
+		}
+
+		public String setValue(String value) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry<?, ?> entry = (Map.Entry<?, ?>) obj;
+			return fName.equals(entry.getKey()) && fValue.equals(entry.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			return fName.hashCode() ^ fValue.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return fName + "=" + fValue;
+		}
+	}
 }
\ No newline at end of file
@@ -37,6 +37,8 @@
 
 package info.bliki.htmlcleaner;
 
+import java.util.BitSet;
+
 /**
  * <p>
  * HTML tag token - descendants are start (TagNode) and end token (EndTagToken).
@@ -51,6 +53,11 @@ public abstract class TagToken implements BaseToken, Cloneable {
 
 	protected String originalSource = "";
 
+	/**
+	 * The cached ID of the tag name; <code>-1</code> if not determined yet
+	 */
+	private int typeId = -1;
+
 	public TagToken() {
 	}
 
@@ -64,6 +71,25 @@ public abstract class TagToken implements BaseToken, Cloneable {
 
 	public void setName(String name) {
 		this.name = name;
+		this.typeId = -1;
+	}
+
+	/**
+	 * Get the interned ID of this tag's name.
+	 * 
+	 * @return <code>-1</code> if the tag name isn't registered in
+	 *         {@link TagTypes}
+	 * @see TagTypes#intern(String)
+	 */
+	public int getTypeId() {
+		if (typeId >= 0) {
+			return typeId;
+		}
+		int id = TagTypes.getId(name);
+		if (id >= 0) {
+			typeId = id;
+		}
+		return id;
 	}
 
 	public String getOriginalSource() {
@@ -108,6 +134,31 @@ public abstract class TagToken implements BaseToken, Cloneable {
 	 */
 	abstract public String getParents();
 
+	/**
+	 * Get the IDs of the allowed parent tags for this tag. The set must not be
+	 * modified.
+	 * 
+	 * @return <code>null</code> if no parent tags are allowed
+	 * @see #getParents()
+	 */
+	public BitSet getParentTypes() {
+		String parents = getParents();
+		if (parents == null) {
+			return null;
+		}
+		return TagTypes.getTypeSet(parents);
+	}
+
+	/**
+	 * Check if the given tag is an allowed parent tag for this tag.
+	 * 
+	 * @return <code>false</code> if no parent tags are allowed
+	 */
+	public boolean isAllowedParent(TagToken parent) {
+		BitSet parents = getParentTypes();
+		return parents != null && TagTypes.contains(parents, parent.getTypeId());
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		if (obj instanceof TagToken) {
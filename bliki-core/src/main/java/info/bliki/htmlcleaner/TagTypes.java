@@ -0,0 +1,132 @@
+package info.bliki.htmlcleaner;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the tag types. Every registered tag name is interned into a
+ * small integer ID, so that the parser and the converters can check the
+ * nesting of the tags and dispatch on the tag name with integer operations
+ * instead of string comparisons.
+ *
+ * A set of tag names (i.e. the allowed parents of a tag in the form
+ * <code>"|tr|td|"</code>) is represented as a <code>BitSet</code> of the IDs.
+ *
+ * @see TagToken#getTypeId()
+ * @see TagToken#getParentTypes()
+ */
+public final class TagTypes {
+	private static final Map<String, Integer> TYPE_IDS = new ConcurrentHashMap<String, Integer>(128);
+
+	private static final Map<String, BitSet> TYPE_SETS = new ConcurrentHashMap<String, BitSet>(32);
+
+	/**
+	 * The registered lower case tag names
+	 */
+	private static final Map<String, String> LOWER_CASE_NAMES = new ConcurrentHashMap<String, String>(128);
+
+	private TagTypes() {
+	}
+
+	/**
+	 * Register a tag name and get its ID.
+	 *
+	 * @param name
+	 *          the tag name
+	 * @return the ID of the tag name, which is greater or equal <code>0</code>
+	 */
+	public static int intern(String name) {
+		Integer id = TYPE_IDS.get(name);
+		if (id != null) {
+			return id.intValue();
+		}
+		synchronized (TYPE_IDS) {
+			id = TYPE_IDS.get(name);
+			if (id == null) {
+				id = Integer.valueOf(TYPE_IDS.size());
+				TYPE_IDS.put(name, id);
+				if (name.equals(name.toLowerCase())) {
+					LOWER_CASE_NAMES.put(name, name);
+				}
+			}
+			return id.intValue();
+		}
+	}
+
+	/**
+	 * Get the ID of a registered tag name. Unknown tag names aren't registered
+	 * by this method.
+	 *
+	 * @param name
+	 *          the tag name
+	 * @return <code>-1</code> if the tag name isn't registered
+	 */
+	public static int getId(String name) {
+		if (name == null) {
+			return -1;
+		}
+		Integer id = TYPE_IDS.get(name);
+		return id == null ? -1 : id.intValue();
+	}
+
+	/**
+	 * Get the lower case form of a tag name. For a registered lower case tag name
+	 * the registered string is returned, so that the nodes share the name
+	 * instead of keeping the (sub)strings of the parsed text.
+	 *
+	 * @param name
+	 *          the tag name
+	 * @return the lower case tag name
+	 */
+	public static String toLowerCaseName(String name) {
+		String lowerCaseName = LOWER_CASE_NAMES.get(name);
+		if (lowerCaseName != null) {
+			return lowerCaseName;
+		}
+		return name.toLowerCase();
+	}
+
+	/**
+	 * Get the set of the IDs for the given tag names. The tag names are
+	 * registered, if necessary. The returned set is shared and must not be
+	 * modified.
+	 *
+	 * @param names
+	 *          the tag names separated and enclosed by <code>|</code> characters
+	 *          (i.e. {@link info.bliki.wiki.model.Configuration#SPECIAL_BLOCK_TAGS})
+	 * @return the set of IDs
+	 */
+	public static BitSet getTypeSet(String names) {
+		BitSet set = TYPE_SETS.get(names);
+		if (set == null) {
+			set = new BitSet();
+			int start = 0;
+			int length = names.length();
+			while (start < length) {
+				int end = names.indexOf('|', start);
+				if (end < 0) {
+					end = length;
+				}
+				if (end > start) {
+					set.set(intern(names.substring(start, end)));
+				}
+				start = end + 1;
+			}
+			TYPE_SETS.put(names, set);
+		}
+		return set;
+	}
+
+	/**
+	 * Check if the ID is contained in the set.
+	 *
+	 * @param set
+	 *          a set of {@link #getTypeSet(String)}
+	 * @param id
+	 *          a tag ID or <code>-1</code> for an unknown tag name
+	 */
+	public static boolean contains(BitSet set, int id) {
+		return id >= 0 && set.get(id);
+	}
+}
@@ -234,126 +234,219 @@ public class Utils {
   }
 
   /**
-   * Escapes XML string into the given result buffer.
+   * The ASCII characters, which are handled by the XML escaper
+   */
+  private static final boolean[] XML_SPECIAL_CHARS = new boolean[128];
+
+  static {
+    XML_SPECIAL_CHARS['&'] = true;
+    XML_SPECIAL_CHARS['\''] = true;
+    XML_SPECIAL_CHARS['>'] = true;
+    XML_SPECIAL_CHARS['<'] = true;
+    XML_SPECIAL_CHARS['\"'] = true;
+  }
+
+  /**
+   * Checks if the string contains the given text, ignoring the case of the
+   * characters (like <code>String#regionMatches(true, ...)</code>). Doesn't
+   * create lower case copies of the strings.
+   * 
+   * @param s
+   *          the string to search in
+   * @param text
+   *          the text to search for
+   */
+  public static boolean containsIgnoreCase(String s, String text) {
+    int length = text.length();
+    int max = s.length() - length;
+    for (int i = 0; i <= max; i++) {
+      if (s.regionMatches(true, i, text, 0, length)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Escapes XML string into the given result buffer. The runs of characters,
+   * which don't need escaping, are appended in one call.
    */
   public static void escapeXmlToBuffer(String s, Appendable result,
       boolean advanced, boolean recognizeUnicodeChars,
       boolean translateSpecialEntities) throws IOException {
     if (s != null) {
       int len = s.length();
-      for (int i = 0; i < len; i++) {
+      int runStart = 0;
+      int i = 0;
+      while (i < len) {
         char ch = s.charAt(i);
-
+        if (ch >= 128 || !XML_SPECIAL_CHARS[ch]) {
+          i++;
+          continue;
+        }
+        if (i > runStart) {
+          result.append(s, runStart, i);
+        }
         if (ch == '&') {
-          if (recognizeUnicodeChars && (i < len - 1)
-              && (s.charAt(i + 1) == '#')) {
-            int charIndex = i + 2;
-            String unicode = "";
-            while (charIndex < len
-                && (isHexadecimalDigit(s.charAt(charIndex))
-                    || s.charAt(charIndex) == 'x' || s.charAt(charIndex) == 'X')) {
-              unicode += s.charAt(charIndex);
-              charIndex++;
-            }
-            if (charIndex == len || !"".equals(unicode)) {
-              try {
-                char unicodeChar = unicode.toLowerCase().startsWith("x") ? (char) Integer
-                    .parseInt(unicode.substring(1), 16)
-                    : (char) Integer.parseInt(unicode);
-                if ("&<>\'\"".indexOf(unicodeChar) < 0) {
-                  int replaceChunkSize = (charIndex < len && s
-                      .charAt(charIndex) == ';') ? unicode.length() + 1
-                      : unicode.length();
-                  result.append(String.valueOf(unicodeChar));
-                  i += replaceChunkSize + 1;
-                } else {
-                  i = charIndex;
-                  result.append("&#" + unicode + ";");
-                }
-              } catch (NumberFormatException e) {
-                i = charIndex;
-                result.append("&amp;#" + unicode + ";");
-              }
-            } else {
-              result.append("&amp;");
-            }
+          i = escapeAmpersand(s, i, result, advanced, recognizeUnicodeChars,
+              translateSpecialEntities);
+        } else {
+          if (ch == '\'') {
+            // result.append("&apos;");
+            result.append("&#39;");
+          } else if (ch == '>') {
+            // result.append("&gt;");
+            result.append("&#62;");
+          } else if (ch == '<') {
+            // result.append("&lt;");
+            result.append("&#60;");
           } else {
-            if (translateSpecialEntities) {
-              // get following sequence of most 10 characters
-              String seq = s.substring(i, i + Math.min(10, len - i));
-              int semiIndex = seq.indexOf(';');
-              if (semiIndex > 0) {
-                String entity = seq.substring(1, semiIndex);
-                Integer code = (Integer) SpecialEntities.entities.get(entity);
-                if (code != null) {
-                  int entityLen = entity.length();
-                  if (recognizeUnicodeChars) {
-                    char unicodeChar = (char) code.intValue();
-                    if ("&<>\'\"".indexOf(unicodeChar) < 0) {
-                      result.append(String.valueOf(unicodeChar));
-                      i += entityLen + 1;
-                      continue;
-                    }
-                  }
-
-                  result.append("&#");
-                  result.append(Integer.toString(code.intValue()));
-                  result.append(";");
-                  i += entityLen + 1;
-                  continue;
-                }
-              }
+            // result.append("&quot;");
+            result.append("&#34;");
+          }
+          i++;
+        }
+        runStart = i;
+      }
+      if (runStart == 0) {
+        result.append(s);
+      } else if (runStart < len) {
+        result.append(s, runStart, len);
+      }
+    }
+  }
+
+  /**
+   * Escape the <code>&amp;</code> character at the given index.
+   * 
+   * @return the index behind the escaped characters
+   */
+  private static int escapeAmpersand(String s, int i, Appendable result,
+      boolean advanced, boolean recognizeUnicodeChars,
+      boolean translateSpecialEntities) throws IOException {
+    int len = s.length();
+    if (recognizeUnicodeChars && (i < len - 1) && (s.charAt(i + 1) == '#')) {
+      int unicodeStart = i + 2;
+      int charIndex = unicodeStart;
+      while (charIndex < len
+          && (isHexadecimalDigit(s.charAt(charIndex))
+              || s.charAt(charIndex) == 'x' || s.charAt(charIndex) == 'X')) {
+        charIndex++;
+      }
+      if (charIndex == len || charIndex > unicodeStart) {
+        int code = parseCharacterReference(s, unicodeStart, charIndex);
+        if (code >= 0) {
+          char unicodeChar = (char) code;
+          if ("&<>\'\"".indexOf(unicodeChar) < 0) {
+            result.append(unicodeChar);
+            if (charIndex < len && s.charAt(charIndex) == ';') {
+              return charIndex + 1;
             }
+            return charIndex;
+          }
+          result.append("&#");
+        } else {
+          result.append("&amp;#");
+        }
+        result.append(s, unicodeStart, charIndex);
+        result.append(';');
+        // the character behind the reference is skipped
+        return charIndex + 1;
+      }
+      result.append("&amp;");
+      return i + 1;
+    }
 
-            if (advanced) {
-              String sub = s.substring(i);
-              if (sub.startsWith("&amp;")) {
-                // result.append("&amp;");
-                result.append("&#38;");
-                i += 4;
-              } else if (sub.startsWith("&apos;")) {
-                // result.append("&apos;");
-                result.append("&#39;");
-                i += 5;
-              } else if (sub.startsWith("&gt;")) {
-                // result.append("&gt;");
-                result.append("&#62;");
-                i += 3;
-              } else if (sub.startsWith("&lt;")) {
-                // result.append("&lt;");
-                result.append("&#60;");
-                i += 3;
-              } else if (sub.startsWith("&quot;")) {
-                // result.append("&quot;");
-                result.append("&#34;");
-                i += 5;
-              } else {
-                // result.append("&amp;");
-                result.append("&#38;");
+    if (translateSpecialEntities) {
+      // search ';' in the following sequence of most 10 characters
+      int seqEnd = i + Math.min(10, len - i);
+      for (int semiIndex = i + 1; semiIndex < seqEnd; semiIndex++) {
+        if (s.charAt(semiIndex) == ';') {
+          int code = SpecialEntities.getCode(s, i + 1, semiIndex);
+          if (code >= 0) {
+            if (recognizeUnicodeChars) {
+              char unicodeChar = (char) code;
+              if ("&<>\'\"".indexOf(unicodeChar) < 0) {
+                result.append(unicodeChar);
+                return semiIndex + 1;
               }
-
-              continue;
             }
-
-            result.append("&amp;");
+            result.append("&#");
+            appendDecimal(code, result);
+            result.append(';');
+            return semiIndex + 1;
           }
-        } else if (ch == '\'') {
-          // result.append("&apos;");
-          result.append("&#39;");
-        } else if (ch == '>') {
-          // result.append("&gt;");
-          result.append("&#62;");
-        } else if (ch == '<') {
-          // result.append("&lt;");
-          result.append("&#60;");
-        } else if (ch == '\"') {
-          // result.append("&quot;");
-          result.append("&#34;");
-        } else {
-          result.append(ch);
+          break;
         }
       }
     }
+
+    if (advanced) {
+      if (s.startsWith("&amp;", i)) {
+        // result.append("&amp;");
+        result.append("&#38;");
+        return i + 5;
+      } else if (s.startsWith("&apos;", i)) {
+        // result.append("&apos;");
+        result.append("&#39;");
+        return i + 6;
+      } else if (s.startsWith("&gt;", i)) {
+        // result.append("&gt;");
+        result.append("&#62;");
+        return i + 4;
+      } else if (s.startsWith("&lt;", i)) {
+        // result.append("&lt;");
+        result.append("&#60;");
+        return i + 4;
+      } else if (s.startsWith("&quot;", i)) {
+        // result.append("&quot;");
+        result.append("&#34;");
+        return i + 6;
+      }
+      // result.append("&amp;");
+      result.append("&#38;");
+      return i + 1;
+    }
+
+    result.append("&amp;");
+    return i + 1;
+  }
+
+  /**
+   * Parse the decimal or (with a leading <code>x</code>) hexadecimal number of
+   * a numeric character reference like <code>Integer.parseInt()</code>.
+   * 
+   * @return the number or <code>-1</code> if the number isn't valid
+   */
+  private static int parseCharacterReference(String s, int start, int end) {
+    int radix = 10;
+    if (start < end && (s.charAt(start) == 'x' || s.charAt(start) == 'X')) {
+      radix = 16;
+      start++;
+    }
+    if (start >= end) {
+      return -1;
+    }
+    long value = 0;
+    for (int i = start; i < end; i++) {
+      int digit = Character.digit(s.charAt(i), radix);
+      if (digit < 0) {
+        return -1;
+      }
+      value = value * radix + digit;
+      if (value > Integer.MAX_VALUE) {
+        return -1;
+      }
+    }
+    return (int) value;
+  }
+
+  private static void appendDecimal(int value, Appendable result)
+      throws IOException {
+    if (value >= 10) {
+      appendDecimal(value / 10, result);
+    }
+    result.append((char) ('0' + value % 10));
   }
 
   public static String escapeXmlChars(String s) {
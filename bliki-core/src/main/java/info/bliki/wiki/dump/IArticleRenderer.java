@@ -0,0 +1,26 @@
+package info.bliki.wiki.dump;
+
+/**
+ * Interface for a worker which converts a single article from a Mediawiki dump
+ * into its result representation (for example rendered HTML).
+ * 
+ * Every worker thread of a {@link ParallelArticleFilter} owns its own instance
+ * of this interface, so implementations don't have to be thread-safe and can
+ * hold on to a single (not thread-safe) <code>WikiModel</code>.
+ * 
+ * @see IArticleRendererFactory
+ */
+public interface IArticleRenderer {
+	/**
+	 * Render a single Wikipedia article
+	 * 
+	 * @param article
+	 *          a Wikipedia article
+	 * @param siteinfo
+	 *          the site and namespace information found in the header of a
+	 *          Mediawiki dump. Maybe <code>null</code>
+	 * @return the rendered result or <code>null</code> if the article should be
+	 *         skipped
+	 */
+	public String render(WikiArticle article, Siteinfo siteinfo);
+}
@@ -0,0 +1,16 @@
+package info.bliki.wiki.dump;
+
+/**
+ * Factory which creates a new {@link IArticleRenderer} for every worker thread
+ * of a {@link ParallelArticleFilter}.
+ * 
+ */
+public interface IArticleRendererFactory {
+	/**
+	 * Create a new renderer instance, which is exclusively used by a single
+	 * worker thread.
+	 * 
+	 * @return a new renderer instance
+	 */
+	public IArticleRenderer createRenderer();
+}
@@ -0,0 +1,25 @@
+package info.bliki.wiki.dump;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Interface for the final stage of a {@link ParallelArticleFilter}, which
+ * receives the rendered articles.
+ * 
+ * The calls of this interface are serialized by the pipeline, so an
+ * implementation doesn't have to be thread-safe.
+ */
+public interface IArticleSink {
+	/**
+	 * Write a single rendered Wikipedia article
+	 * 
+	 * @param article
+	 *          a Wikipedia article
+	 * @param result
+	 *          the result returned from
+	 *          {@link IArticleRenderer#render(WikiArticle, Siteinfo)}
+	 * @throws SAXException
+	 *           throw a SAXException for stopping the processing
+	 */
+	public void write(WikiArticle article, String result) throws SAXException;
+}
@@ -0,0 +1,449 @@
+package info.bliki.wiki.dump;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.xml.sax.SAXException;
+
+/**
+ * A random access page index for Wikipedia <code>*-multistream.xml.bz2</code>
+ * dumps.
+ *
+ * A multistream dump consists of concatenated bzip2 streams with about 100
+ * pages each. The <code>*-multistream-index.txt.bz2</code> file contains a line
+ * <code>offset:pageId:title</code> for every page, where <code>offset</code> is
+ * the byte offset of the bzip2 stream containing the page.
+ *
+ * The text index is converted once with {@link #build(String, String)} into a
+ * compact binary file, which is memory mapped by the constructor. A lookup by
+ * title or page id is a binary search in the mapped file; only the bzip2
+ * stream which contains the page is decompressed. Instances are thread-safe.
+ * The binary index file is limited to 2GB (about 85 million pages).
+ *
+ * Example:
+ *
+ * <pre>
+ * MultistreamIndex.build(&quot;enwiki-multistream-index.txt.bz2&quot;, &quot;enwiki-multistream.idx&quot;);
+ * MultistreamIndex index = new MultistreamIndex(&quot;enwiki-multistream.xml.bz2&quot;, &quot;enwiki-multistream.idx&quot;);
+ * WikiArticle article = index.getArticle(&quot;Template:Infobox&quot;);
+ * </pre>
+ */
+public class MultistreamIndex {
+	private final static int MAGIC = 0x424c4958;
+
+	private final static int VERSION = 2;
+
+	private final static int HEADER_SIZE = 16;
+
+	/**
+	 * Collects the <code>WikiArticle</code> with the given title or id from a
+	 * bzip2 stream.
+	 */
+	private static class ArticleFinder implements IArticleFilter {
+		private final String fTitle;
+
+		private final String fId;
+
+		WikiArticle fArticle = null;
+
+		ArticleFinder(String title, String id) {
+			fTitle = title;
+			fId = id;
+		}
+
+		public void process(WikiArticle article, Siteinfo siteinfo) throws SAXException {
+			if (fArticle == null) {
+				if ((fTitle != null && fTitle.equals(article.getTitle())) || (fId != null && fId.equals(article.getId()))) {
+					fArticle = article;
+				}
+			}
+		}
+	}
+
+	/**
+	 * A growable array of longs.
+	 */
+	private static class LongArray {
+		long[] values = new long[1024];
+
+		int size = 0;
+
+		void add(long value) {
+			if (size == values.length) {
+				long[] newValues = new long[size * 2];
+				System.arraycopy(values, 0, newValues, 0, size);
+				values = newValues;
+			}
+			values[size++] = value;
+		}
+
+		long[] toArray(boolean sorted) {
+			long[] result = new long[size];
+			System.arraycopy(values, 0, result, 0, size);
+			if (sorted) {
+				Arrays.sort(result);
+			}
+			return result;
+		}
+	}
+
+	private final String fDumpFilename;
+
+	private final MappedByteBuffer fBuffer;
+
+	private final int fStreamCount;
+
+	private final int fPageCount;
+
+	private final int fIdSectionStart;
+
+	private final int fTitleSectionStart;
+
+	private final int fTitleHashSectionStart;
+
+	private String fHeader = null;
+
+	private Siteinfo fSiteinfo = null;
+
+	/**
+	 * Open the binary index file of a multistream dump.
+	 *
+	 * @param dumpFilename
+	 *          the <code>*-multistream.xml.bz2</code> dump file
+	 * @param indexFilename
+	 *          the binary index file created with
+	 *          {@link #build(String, String)}
+	 * @throws IOException
+	 */
+	public MultistreamIndex(String dumpFilename, String indexFilename) throws IOException {
+		fDumpFilename = dumpFilename;
+		RandomAccessFile file = new RandomAccessFile(indexFilename, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			fBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			file.close();
+		}
+		if (fBuffer.getInt(0) != MAGIC || fBuffer.getInt(4) != VERSION) {
+			throw new IOException("Not a multistream index file: " + indexFilename);
+		}
+		fStreamCount = fBuffer.getInt(8);
+		fPageCount = fBuffer.getInt(12);
+		fIdSectionStart = HEADER_SIZE + fStreamCount * 8;
+		fTitleSectionStart = fIdSectionStart + fPageCount * 8;
+		fTitleHashSectionStart = fTitleSectionStart + fPageCount * 8;
+	}
+
+	/**
+	 * Convert the text index file of a multistream dump into the binary index
+	 * format.
+	 *
+	 * The binary file contains a sorted table of the stream offsets and two
+	 * sorted tables which map the page id and the hash code of the title to the
+	 * number of the stream. Every table entry is packed into a single
+	 * <code>long</code> value. A fourth sorted table contains the 64-bit hash
+	 * codes of the titles for {@link #exists(String)}.
+	 *
+	 * @param textIndexFilename
+	 *          the <code>*-multistream-index.txt.bz2</code> file (or its
+	 *          uncompressed version)
+	 * @param indexFilename
+	 *          the binary index file which should be created
+	 * @throws IOException
+	 *           if a page id is out of the range <code>0</code> to
+	 *           <code>Integer.MAX_VALUE</code>
+	 */
+	public static void build(String textIndexFilename, String indexFilename) throws IOException {
+		LongArray offsets = new LongArray();
+		LongArray ids = new LongArray();
+		LongArray titles = new LongArray();
+		LongArray titleHashes = new LongArray();
+		long lastOffset = -1L;
+		int streamIndex = -1;
+		BufferedReader reader = WikiXMLParser.getBufferedReader(textIndexFilename);
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int index1 = line.indexOf(':');
+				int index2 = index1 < 0 ? -1 : line.indexOf(':', index1 + 1);
+				if (index2 < 0) {
+					continue;
+				}
+				try {
+					long offset = Long.parseLong(line.substring(0, index1));
+					long id = Long.parseLong(line.substring(index1 + 1, index2));
+					if (id < 0L || id > Integer.MAX_VALUE) {
+						throw new IOException("Page id out of range: " + id);
+					}
+					if (offset != lastOffset) {
+						offsets.add(offset);
+						lastOffset = offset;
+						streamIndex++;
+					}
+					ids.add((id << 32) | streamIndex);
+					String title = line.substring(index2 + 1);
+					titles.add(((long) title.hashCode() << 32) | streamIndex);
+					titleHashes.add(hash64(title));
+				} catch (NumberFormatException nfe) {
+					nfe.printStackTrace();
+				}
+			}
+		} finally {
+			reader.close();
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFilename), 65536));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(offsets.size);
+			out.writeInt(ids.size);
+			// the offsets are already sorted in a multistream index file
+			writeLongs(out, offsets.toArray(false));
+			writeLongs(out, ids.toArray(true));
+			writeLongs(out, titles.toArray(true));
+			writeLongs(out, titleHashes.toArray(true));
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+		for (int i = 0; i < values.length; i++) {
+			out.writeLong(values[i]);
+		}
+	}
+
+	/**
+	 * The 64-bit FNV-1a hash code of the characters of a title.
+	 */
+	static long hash64(String title) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < title.length(); i++) {
+			hash ^= title.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * Find the first entry in the sorted section which is greater or equal than
+	 * the given key.
+	 */
+	private int lowerBound(int sectionStart, long key) {
+		int low = 0;
+		int high = fPageCount;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (fBuffer.getLong(sectionStart + mid * 8) < key) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Get the stream numbers of all entries in the section whose upper 32 bits
+	 * equal the given key.
+	 */
+	private List<Integer> getStreams(int sectionStart, int key) {
+		List<Integer> result = new ArrayList<Integer>(2);
+		long packedKey = (long) key << 32;
+		for (int i = lowerBound(sectionStart, packedKey); i < fPageCount; i++) {
+			long value = fBuffer.getLong(sectionStart + i * 8);
+			if ((value & 0xffffffff00000000L) != packedKey) {
+				break;
+			}
+			result.add(Integer.valueOf((int) value));
+		}
+		return result;
+	}
+
+	private long getStreamOffset(int streamIndex) {
+		return fBuffer.getLong(HEADER_SIZE + streamIndex * 8);
+	}
+
+	/**
+	 * Get the byte offset of the bzip2 stream which contains the page with the
+	 * given id.
+	 *
+	 * @param pageId
+	 *          the id of the page
+	 * @return <code>-1</code> if the id isn't found in the index or is out of
+	 *         the range of the index (<code>0</code> to
+	 *         <code>Integer.MAX_VALUE</code>)
+	 */
+	public long getStreamOffset(long pageId) {
+		if (pageId < 0L || pageId > Integer.MAX_VALUE) {
+			return -1L;
+		}
+		List<Integer> streams = getStreams(fIdSectionStart, (int) pageId);
+		if (streams.size() > 0) {
+			return getStreamOffset(streams.get(0).intValue());
+		}
+		return -1L;
+	}
+
+	/**
+	 * Get the byte offsets of the bzip2 streams which may contain the page with
+	 * the given title. The index only stores hash codes of the titles, so more
+	 * than one offset may be returned.
+	 *
+	 * @param title
+	 *          the title of the page
+	 * @return an empty array if the title isn't found in the index
+	 */
+	public long[] getStreamOffsets(String title) {
+		List<Integer> streams = getStreams(fTitleSectionStart, title.hashCode());
+		long[] result = new long[streams.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = getStreamOffset(streams.get(i).intValue());
+		}
+		return result;
+	}
+
+	/**
+	 * Check if a page with the given title is contained in the index. Unlike
+	 * {@link #getStreamOffsets(String)} this compares the 64-bit hash code of the
+	 * title, so no stream has to be decompressed to rule out a collision of the
+	 * 32-bit hash codes.
+	 *
+	 * @param title
+	 *          the title of the page
+	 * @return <code>true</code> if the title is found in the index
+	 */
+	public boolean exists(String title) {
+		long hash = hash64(title);
+		int index = lowerBound(fTitleHashSectionStart, hash);
+		return index < fPageCount && fBuffer.getLong(fTitleHashSectionStart + index * 8) == hash;
+	}
+
+	/**
+	 * Get the article with the given title from the dump.
+	 *
+	 * @param title
+	 *          the title of the page as it appears in the dump (i.e.
+	 *          <i>Template:Infobox</i>)
+	 * @return <code>null</code> if the article isn't found
+	 * @throws IOException
+	 *           also if the XML of the dump is malformed
+	 */
+	public WikiArticle getArticle(String title) throws IOException {
+		long[] offsets = getStreamOffsets(title);
+		for (int i = 0; i < offsets.length; i++) {
+			WikiArticle article = readArticle(offsets[i], new ArticleFinder(title, null));
+			if (article != null) {
+				return article;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get the article with the given page id from the dump.
+	 *
+	 * @param pageId
+	 *          the id of the page
+	 * @return <code>null</code> if the article isn't found
+	 * @throws IOException
+	 *           also if the XML of the dump is malformed
+	 */
+	public WikiArticle getArticle(long pageId) throws IOException {
+		long offset = getStreamOffset(pageId);
+		if (offset < 0L) {
+			return null;
+		}
+		return readArticle(offset, new ArticleFinder(null, Long.toString(pageId)));
+	}
+
+	/**
+	 * Get the site information from the header of the dump.
+	 *
+	 * @return the site information or <code>null</code> if the dump has no
+	 *         header
+	 * @throws IOException
+	 *           also if the XML of the dump is malformed
+	 */
+	public synchronized Siteinfo getSiteinfo() throws IOException {
+		if (fHeader == null) {
+			String header = readStream(0L);
+			int index = header.indexOf("<page>");
+			if (index >= 0) {
+				header = header.substring(0, index);
+			}
+			if (header.indexOf("<mediawiki") < 0) {
+				header = "<mediawiki>";
+			}
+			try {
+				WikiXMLParser parser = new WikiXMLParser(new StringReader(header + "</mediawiki>"), new ArticleFinder(null, null));
+				parser.parse();
+				fSiteinfo = parser.getSiteinfo();
+			} catch (SAXException e) {
+				throw toIOException(e);
+			}
+			fHeader = header;
+		}
+		return fSiteinfo;
+	}
+
+	/**
+	 * The number of pages in the index.
+	 */
+	public int size() {
+		return fPageCount;
+	}
+
+	private WikiArticle readArticle(long offset, ArticleFinder finder) throws IOException {
+		getSiteinfo();
+		String xml = fHeader + readStream(offset) + "</mediawiki>";
+		try {
+			WikiXMLParser parser = new WikiXMLParser(new StringReader(xml), finder);
+			parser.parse();
+		} catch (SAXException e) {
+			throw toIOException(e);
+		}
+		return finder.fArticle;
+	}
+
+	private static IOException toIOException(SAXException e) {
+		IOException ioe = new IOException("Error in the XML of the dump: " + e.getMessage());
+		ioe.initCause(e);
+		return ioe;
+	}
+
+	/**
+	 * Decompress the single bzip2 stream starting at the given offset.
+	 */
+	private String readStream(long offset) throws IOException {
+		FileInputStream fis = new FileInputStream(fDumpFilename);
+		try {
+			fis.getChannel().position(offset);
+			// BZip2CompressorInputStream stops at the end of the first stream
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new BZip2CompressorInputStream(fis), "UTF-8"));
+			StringBuilder buf = new StringBuilder(65536);
+			char[] buffer = new char[8192];
+			int count;
+			while ((count = reader.read(buffer, 0, buffer.length)) != -1) {
+				buf.append(buffer, 0, count);
+			}
+			return buf.toString();
+		} finally {
+			fis.close();
+		}
+	}
+}
@@ -0,0 +1,474 @@
+package info.bliki.wiki.dump;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xml.sax.SAXException;
+
+/**
+ * A pipelined, multi-threaded article filter for Mediawiki XML dumps.
+ *
+ * The thread which runs the {@link WikiXMLParser} only collects the parsed
+ * articles into batches and hands them over a bounded queue to a number of
+ * worker threads. Every worker owns its own {@link IArticleRenderer} (and
+ * therefore its own <code>WikiModel</code>). The rendered articles are passed
+ * to a single {@link IArticleSink}, optionally in the same order as they
+ * appear in the dump.
+ *
+ * If the workers can't keep up with the parser, the parser thread blocks on
+ * the full queue (backpressure). An exception or error thrown by a renderer or
+ * the sink stops the processing and is reported as a <code>SAXException</code>
+ * by {@link #process(WikiArticle, Siteinfo)} and {@link #finish()}. Example:
+ *
+ * <pre>
+ * ParallelArticleFilter filter = new ParallelArticleFilter(new WikiModelArticleRenderer.Factory(&quot;${image}&quot;, &quot;${title}&quot;), sink, 8);
+ * filter.parse(&quot;enwiki-pages-articles.xml.bz2&quot;);
+ * System.out.println(filter);
+ * </pre>
+ *
+ */
+public class ParallelArticleFilter implements IArticleFilter {
+	/**
+	 * The default number of articles which are handed over to a worker in one
+	 * step.
+	 */
+	public final static int DEFAULT_BATCH_SIZE = 32;
+
+	/**
+	 * A batch of articles with its sequence number in the dump.
+	 */
+	private static class Batch {
+		final long sequence;
+
+		final Siteinfo siteinfo;
+
+		final List<WikiArticle> articles;
+
+		String[] results;
+
+		Batch(long sequence, Siteinfo siteinfo, List<WikiArticle> articles) {
+			this.sequence = sequence;
+			this.siteinfo = siteinfo;
+			this.articles = articles;
+		}
+	}
+
+	/**
+	 * Marker batch which stops a worker thread.
+	 */
+	private final static Batch END_OF_DUMP = new Batch(-1L, null, null);
+
+	private class Worker extends Thread {
+		private final IArticleRenderer fRenderer;
+
+		Worker(int number) {
+			super("ParallelArticleFilter-worker-" + number);
+			setDaemon(true);
+			fRenderer = fRendererFactory.createRenderer();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					Batch batch = fQueue.take();
+					if (batch == END_OF_DUMP) {
+						return;
+					}
+					List<WikiArticle> articles = batch.articles;
+					String[] results = new String[articles.size()];
+					if (fFailure == null) {
+						long start = System.nanoTime();
+						try {
+							for (int i = 0; i < results.length; i++) {
+								results[i] = fRenderer.render(articles.get(i), batch.siteinfo);
+							}
+						} catch (Throwable t) {
+							fail(t);
+						}
+						fRenderNanos.addAndGet(System.nanoTime() - start);
+						fRenderedArticles.addAndGet(results.length);
+					}
+					batch.results = results;
+					// a failed batch is written too, so that the workers waiting for
+					// its sequence number are released
+					write(batch);
+				}
+			} catch (InterruptedException e) {
+				fail(new SAXException("Worker thread interrupted"));
+			}
+		}
+	}
+
+	private final IArticleRendererFactory fRendererFactory;
+
+	private final IArticleSink fSink;
+
+	private final int fNumberOfWorkers;
+
+	private final int fBatchSize;
+
+	private final boolean fOrdered;
+
+	private final int fMaxPendingBatches;
+
+	private final BlockingQueue<Batch> fQueue;
+
+	private Worker[] fWorkers = null;
+
+	private List<WikiArticle> fCurrentBatch;
+
+	private long fNextSequence = 0L;
+
+	private Siteinfo fSiteinfo = null;
+
+	private boolean fFinished = false;
+
+	/**
+	 * The lock for the serialized access to the sink and the reorder buffer.
+	 */
+	private final Object fSinkLock = new Object();
+
+	private final Map<Long, Batch> fReorderBuffer = new TreeMap<Long, Batch>();
+
+	private long fNextSequenceToWrite = 0L;
+
+	private volatile SAXException fFailure = null;
+
+	private long fStartTime = 0L;
+
+	private long fEndTime = 0L;
+
+	private final AtomicLong fParsedArticles = new AtomicLong();
+
+	private final AtomicLong fRenderedArticles = new AtomicLong();
+
+	private final AtomicLong fWrittenArticles = new AtomicLong();
+
+	private final AtomicLong fBlockedNanos = new AtomicLong();
+
+	private final AtomicLong fRenderNanos = new AtomicLong();
+
+	private final AtomicLong fSinkNanos = new AtomicLong();
+
+	/**
+	 * Create an ordered filter with one worker per available processor.
+	 *
+	 * @param rendererFactory
+	 *          creates the renderer for every worker thread
+	 * @param sink
+	 *          receives the rendered articles
+	 */
+	public ParallelArticleFilter(IArticleRendererFactory rendererFactory, IArticleSink sink) {
+		this(rendererFactory, sink, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create an ordered filter.
+	 *
+	 * @param rendererFactory
+	 *          creates the renderer for every worker thread
+	 * @param sink
+	 *          receives the rendered articles
+	 * @param numberOfWorkers
+	 *          the number of rendering threads
+	 */
+	public ParallelArticleFilter(IArticleRendererFactory rendererFactory, IArticleSink sink, int numberOfWorkers) {
+		this(rendererFactory, sink, numberOfWorkers, DEFAULT_BATCH_SIZE, 2 * numberOfWorkers, true);
+	}
+
+	/**
+	 *
+	 * @param rendererFactory
+	 *          creates the renderer for every worker thread
+	 * @param sink
+	 *          receives the rendered articles
+	 * @param numberOfWorkers
+	 *          the number of rendering threads
+	 * @param batchSize
+	 *          the number of articles which are handed over to a worker in one
+	 *          step
+	 * @param queueCapacity
+	 *          the maximum number of batches waiting for a worker. If the queue
+	 *          is full the parser thread blocks.
+	 * @param ordered
+	 *          if <code>true</code> the sink receives the articles in the order
+	 *          of the dump
+	 */
+	public ParallelArticleFilter(IArticleRendererFactory rendererFactory, IArticleSink sink, int numberOfWorkers, int batchSize,
+			int queueCapacity, boolean ordered) {
+		if (numberOfWorkers < 1 || batchSize < 1 || queueCapacity < 1) {
+			throw new IllegalArgumentException("Number of workers, batch size and queue capacity must be greater than 0");
+		}
+		fRendererFactory = rendererFactory;
+		fSink = sink;
+		fNumberOfWorkers = numberOfWorkers;
+		fBatchSize = batchSize;
+		fOrdered = ordered;
+		// a batch which is finished too early waits in the reorder buffer; limit
+		// the buffer to the number of batches which can be 'in flight'
+		fMaxPendingBatches = queueCapacity + numberOfWorkers;
+		fQueue = new ArrayBlockingQueue<Batch>(queueCapacity);
+		fCurrentBatch = new ArrayList<WikiArticle>(batchSize);
+	}
+
+	/**
+	 * Start the worker threads. This method is called automatically for the
+	 * first processed article.
+	 */
+	public synchronized void start() {
+		if (fWorkers == null) {
+			fStartTime = System.nanoTime();
+			fWorkers = new Worker[fNumberOfWorkers];
+			for (int i = 0; i < fNumberOfWorkers; i++) {
+				fWorkers[i] = new Worker(i);
+				fWorkers[i].start();
+			}
+		}
+	}
+
+	public void process(WikiArticle article, Siteinfo siteinfo) throws SAXException {
+		if (fFailure != null) {
+			throw fFailure;
+		}
+		if (fWorkers == null) {
+			start();
+		}
+		fParsedArticles.incrementAndGet();
+		fSiteinfo = siteinfo;
+		// the parser reuses the article object for all revisions of a page
+		fCurrentBatch.add(new WikiArticle(article));
+		if (fCurrentBatch.size() >= fBatchSize) {
+			enqueue(new Batch(fNextSequence++, siteinfo, fCurrentBatch));
+			fCurrentBatch = new ArrayList<WikiArticle>(fBatchSize);
+		}
+	}
+
+	/**
+	 * Flush the last incomplete batch, wait until all workers have finished and
+	 * stop the worker threads. Further calls only report the failure.
+	 *
+	 * @throws SAXException
+	 *           if the processing failed or the sink stopped the processing
+	 */
+	public synchronized void finish() throws SAXException {
+		if (fFinished) {
+			if (fFailure != null) {
+				throw fFailure;
+			}
+			return;
+		}
+		fFinished = true;
+		if (fWorkers == null) {
+			start();
+		}
+		try {
+			if (fCurrentBatch.size() > 0) {
+				enqueue(new Batch(fNextSequence++, fSiteinfo, fCurrentBatch));
+				fCurrentBatch = new ArrayList<WikiArticle>(fBatchSize);
+			}
+		} finally {
+			try {
+				for (int i = 0; i < fWorkers.length; i++) {
+					fQueue.put(END_OF_DUMP);
+				}
+				for (int i = 0; i < fWorkers.length; i++) {
+					fWorkers[i].join();
+				}
+			} catch (InterruptedException e) {
+				fail(new SAXException("Parser thread interrupted"));
+			}
+			fEndTime = System.nanoTime();
+		}
+		if (fFailure != null) {
+			throw fFailure;
+		}
+	}
+
+	/**
+	 * Parse the given (compressed or uncompressed) dump file with this filter
+	 * and wait until all articles are written to the sink.
+	 *
+	 * @param wikiDumpFilename
+	 *          the dump file name
+	 * @throws IOException
+	 * @throws SAXException
+	 */
+	public void parse(String wikiDumpFilename) throws IOException, SAXException {
+		WikiXMLParser parser = new WikiXMLParser(wikiDumpFilename, this);
+		try {
+			parser.parse();
+		} catch (SAXException e) {
+			if (fFailure == null) {
+				throw e;
+			}
+		} finally {
+			finish();
+		}
+	}
+
+	private void enqueue(Batch batch) throws SAXException {
+		try {
+			if (!fQueue.offer(batch)) {
+				long start = System.nanoTime();
+				fQueue.put(batch);
+				fBlockedNanos.addAndGet(System.nanoTime() - start);
+			}
+		} catch (InterruptedException e) {
+			fail(new SAXException("Parser thread interrupted"));
+			throw fFailure;
+		}
+	}
+
+	private void write(Batch batch) throws InterruptedException {
+		synchronized (fSinkLock) {
+			if (!fOrdered) {
+				writeBatch(batch);
+				return;
+			}
+			while (fFailure == null && batch.sequence - fNextSequenceToWrite >= fMaxPendingBatches) {
+				// wait for the batches in front of this one
+				fSinkLock.wait();
+			}
+			fReorderBuffer.put(batch.sequence, batch);
+			Batch next;
+			while ((next = fReorderBuffer.remove(fNextSequenceToWrite)) != null) {
+				writeBatch(next);
+				fNextSequenceToWrite++;
+			}
+			fSinkLock.notifyAll();
+		}
+	}
+
+	private void writeBatch(Batch batch) {
+		if (fFailure != null) {
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			for (int i = 0; i < batch.results.length; i++) {
+				if (batch.results[i] != null) {
+					fSink.write(batch.articles.get(i), batch.results[i]);
+				}
+			}
+		} catch (Throwable t) {
+			fail(t);
+		} finally {
+			fWrittenArticles.addAndGet(batch.results.length);
+			fSinkNanos.addAndGet(System.nanoTime() - start);
+		}
+	}
+
+	private void fail(SAXException e) {
+		synchronized (fSinkLock) {
+			if (fFailure == null) {
+				fFailure = e;
+			}
+			// release the workers waiting for the batches in front of their own
+			fSinkLock.notifyAll();
+		}
+	}
+
+	private void fail(Throwable t) {
+		if (t instanceof SAXException) {
+			fail((SAXException) t);
+		} else if (t instanceof Exception) {
+			fail(new SAXException((Exception) t));
+		} else {
+			// a SAXException can only wrap an Exception
+			fail(new SAXException(new ExecutionException(t)));
+		}
+	}
+
+	/**
+	 * The number of articles received from the XML parser.
+	 */
+	public long getParsedArticles() {
+		return fParsedArticles.get();
+	}
+
+	/**
+	 * The number of articles processed by the worker threads.
+	 */
+	public long getRenderedArticles() {
+		return fRenderedArticles.get();
+	}
+
+	/**
+	 * The number of articles passed through the sink stage.
+	 */
+	public long getWrittenArticles() {
+		return fWrittenArticles.get();
+	}
+
+	/**
+	 * The time in nanoseconds the parser thread was blocked because the queue
+	 * was full.
+	 */
+	public long getBlockedNanos() {
+		return fBlockedNanos.get();
+	}
+
+	/**
+	 * The summed up rendering time in nanoseconds of all worker threads.
+	 */
+	public long getRenderNanos() {
+		return fRenderNanos.get();
+	}
+
+	/**
+	 * The time in nanoseconds spent in the sink.
+	 */
+	public long getSinkNanos() {
+		return fSinkNanos.get();
+	}
+
+	/**
+	 * The current number of batches waiting in the queue for a worker.
+	 */
+	public int getQueueSize() {
+		return fQueue.size();
+	}
+
+	/**
+	 * The elapsed time in nanoseconds since the start of the workers.
+	 */
+	public long getElapsedNanos() {
+		if (fStartTime == 0L) {
+			return 0L;
+		}
+		return (fEndTime == 0L ? System.nanoTime() : fEndTime) - fStartTime;
+	}
+
+	private static String perSecond(long count, long nanos) {
+		if (nanos <= 0L) {
+			return "-";
+		}
+		return Long.toString(count * 1000000000L / nanos);
+	}
+
+	@Override
+	public String toString() {
+		long elapsed = getElapsedNanos();
+		long parsed = getParsedArticles();
+		long rendered = getRenderedArticles();
+		long written = getWrittenArticles();
+		StringBuilder buf = new StringBuilder(256);
+		buf.append("workers: ").append(fNumberOfWorkers);
+		buf.append(", elapsed: ").append(elapsed / 1000000L).append("ms");
+		buf.append("\nparser: ").append(parsed).append(" articles, ").append(perSecond(parsed, elapsed)).append(
+				" articles/s, blocked: ").append(getBlockedNanos() / 1000000L).append("ms");
+		buf.append("\nrender: ").append(rendered).append(" articles, ").append(perSecond(rendered, elapsed)).append(
+				" articles/s, per worker: ").append(perSecond(rendered, getRenderNanos())).append(" articles/s");
+		buf.append("\nsink: ").append(written).append(" articles, ").append(perSecond(written, elapsed)).append(
+				" articles/s, busy: ").append(getSinkNanos() / 1000000L).append("ms");
+		return buf.toString();
+	}
+}
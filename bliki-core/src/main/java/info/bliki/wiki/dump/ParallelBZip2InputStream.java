@@ -0,0 +1,481 @@
+package info.bliki.wiki.dump;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+/**
+ * A bzip2 decompressing <code>InputStream</code> which decompresses the
+ * compressed blocks of the input concurrently.
+ *
+ * The compressed input is scanned for the (not byte aligned) 48-bit block
+ * magic numbers of the bzip2 format. The scanner only copies whole bytes; the
+ * bits of every block are aligned and wrapped into a small standalone bzip2
+ * stream by a thread pool, which decompresses the stream with a
+ * <code>BZip2CompressorInputStream</code>. The decompressed blocks are returned
+ * in their original order.
+ *
+ * Concatenated bzip2 streams (i.e. the <code>*-multistream.xml.bz2</code>
+ * Wikipedia dumps) are read until the end of the last stream. A multistream dump
+ * can be read from the byte offset of any stream (for example an offset from
+ * the <code>*-multistream-index.txt.bz2</code> file).
+ *
+ */
+public class ParallelBZip2InputStream extends InputStream {
+	private final static long BLOCK_MAGIC = 0x314159265359L;
+
+	private final static long END_OF_STREAM_MAGIC = 0x177245385090L;
+
+	private final static long MAGIC_MASK = 0xffffffffffffL;
+
+	private final static int MAGIC_BITS = 48;
+
+	private final static int CRC_BITS = 32;
+
+	/**
+	 * A growable buffer of bits.
+	 */
+	private static class BitBuffer {
+		byte[] data;
+
+		long length;
+
+		BitBuffer(int initialCapacity) {
+			data = new byte[initialCapacity];
+			length = 0;
+		}
+
+		void appendBit(int bit) {
+			int index = (int) (length >>> 3);
+			if (index >= data.length) {
+				ensureCapacity(index + 1);
+			}
+			if (bit != 0) {
+				data[index] |= 1 << (7 - (int) (length & 7));
+			}
+			length++;
+		}
+
+		void appendBits(long value, int numberOfBits) {
+			for (int i = numberOfBits - 1; i >= 0; i--) {
+				appendBit((int) (value >>> i) & 1);
+			}
+		}
+
+		void append(BitBuffer buffer) {
+			if ((length & 7) == 0) {
+				// byte aligned copy
+				int index = (int) (length >>> 3);
+				int count = (int) ((buffer.length + 7) >>> 3);
+				ensureCapacity(index + count);
+				System.arraycopy(buffer.data, 0, data, index, count);
+				length += buffer.length;
+				return;
+			}
+			for (long i = 0; i < buffer.length; i++) {
+				appendBit(buffer.getBit(i));
+			}
+		}
+
+		void ensureCapacity(int capacity) {
+			if (capacity > data.length) {
+				byte[] newData = new byte[Math.max(capacity, data.length * 2)];
+				System.arraycopy(data, 0, newData, 0, data.length);
+				data = newData;
+			}
+		}
+
+		int getBit(long position) {
+			return (data[(int) (position >>> 3)] >>> (7 - (int) (position & 7))) & 1;
+		}
+
+		long getBits(long position, int numberOfBits) {
+			long value = 0L;
+			for (int i = 0; i < numberOfBits; i++) {
+				value = (value << 1) | getBit(position + i);
+			}
+			return value;
+		}
+
+		byte[] toByteArray() {
+			byte[] result = new byte[(int) ((length + 7) >>> 3)];
+			System.arraycopy(data, 0, result, 0, result.length);
+			return result;
+		}
+	}
+
+	/**
+	 * The bytes of a compressed block as they were read from the input. A block
+	 * isn't byte aligned, so it starts at the bit <code>startBit</code> of the
+	 * first byte and ends before the bit <code>endBit</code>.
+	 */
+	private static class RawBlock {
+		byte[] data;
+
+		int size;
+
+		int startBit;
+
+		long endBit;
+
+		RawBlock(int initialCapacity) {
+			data = new byte[initialCapacity];
+			size = 0;
+		}
+
+		void append(int b) {
+			if (size == data.length) {
+				ensureCapacity(size + 1);
+			}
+			data[size++] = (byte) b;
+		}
+
+		void append(byte[] buffer, int offset, int count) {
+			ensureCapacity(size + count);
+			System.arraycopy(buffer, offset, data, size, count);
+			size += count;
+		}
+
+		void ensureCapacity(int capacity) {
+			if (capacity > data.length) {
+				byte[] newData = new byte[Math.max(capacity, data.length * 2)];
+				System.arraycopy(data, 0, newData, 0, size);
+				data = newData;
+			}
+		}
+
+		/**
+		 * Copy the bits of the block into a byte aligned buffer.
+		 */
+		BitBuffer toBitBuffer() {
+			long length = endBit - startBit;
+			int count = (int) ((length + 7) >>> 3);
+			BitBuffer buffer = new BitBuffer(count + 16);
+			if (startBit == 0) {
+				System.arraycopy(data, 0, buffer.data, 0, count);
+			} else {
+				int shift = startBit;
+				for (int i = 0; i < count; i++) {
+					int next = i + 1 < size ? data[i + 1] & 0xff : 0;
+					buffer.data[i] = (byte) ((data[i] << shift) | (next >>> (8 - shift)));
+				}
+			}
+			int rest = (int) (length & 7);
+			if (rest != 0) {
+				// clear the bits behind the end of the block
+				buffer.data[count - 1] &= (byte) (0xff << (8 - rest));
+			}
+			buffer.length = length;
+			return buffer;
+		}
+	}
+
+	/**
+	 * Decompress a single bzip2 block. The block is wrapped into a standalone
+	 * bzip2 stream with a header and an end of stream marker. For a stream with
+	 * only one block the combined CRC equals the CRC of the block.
+	 */
+	private static class BlockDecompressor implements Callable<byte[]> {
+		final RawBlock fBlock;
+
+		BlockDecompressor(RawBlock block) {
+			fBlock = block;
+		}
+
+		public byte[] call() throws IOException {
+			return decompress(fBlock.toBitBuffer());
+		}
+	}
+
+	private static byte[] decompress(BitBuffer block) throws IOException {
+		BitBuffer stream = new BitBuffer((int) (block.length >>> 3) + 16);
+		stream.appendBits('B', 8);
+		stream.appendBits('Z', 8);
+		stream.appendBits('h', 8);
+		stream.appendBits('9', 8);
+		stream.append(block);
+		stream.appendBits(END_OF_STREAM_MAGIC, MAGIC_BITS);
+		stream.appendBits(block.getBits(MAGIC_BITS, CRC_BITS), CRC_BITS);
+
+		BZip2CompressorInputStream in = new BZip2CompressorInputStream(new ByteArrayInputStream(stream.toByteArray()));
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream((int) (block.length >>> 1));
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = in.read(buffer, 0, buffer.length)) != -1) {
+				out.write(buffer, 0, count);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+		private int fCounter = 0;
+
+		public synchronized Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "ParallelBZip2InputStream-" + (fCounter++));
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	private final InputStream fInput;
+
+	private final ExecutorService fExecutor;
+
+	private final int fMaxPendingBlocks;
+
+	private final LinkedList<Future<byte[]>> fPendingBlocks = new LinkedList<Future<byte[]>>();
+
+	private final LinkedList<RawBlock> fPendingBits = new LinkedList<RawBlock>();
+
+	private final byte[] fInputBuffer = new byte[65536];
+
+	private int fInputPosition = 0;
+
+	private int fInputLength = 0;
+
+	/**
+	 * The last 64 bits (8 bytes) of the compressed input.
+	 */
+	private long fShiftRegister = 0L;
+
+	/**
+	 * The currently scanned block or <code>null</code> if the scanner is outside
+	 * of a block.
+	 */
+	private RawBlock fCurrentBlock = null;
+
+	private boolean fEndOfInput = false;
+
+	private byte[] fBuffer = null;
+
+	private int fPosition = 0;
+
+	private boolean fClosed = false;
+
+	/**
+	 * Create a stream which uses one thread per available processor.
+	 *
+	 * @param in
+	 *          the bzip2 compressed input
+	 * @throws IOException
+	 *           if the input doesn't start with a bzip2 header
+	 */
+	public ParallelBZip2InputStream(InputStream in) throws IOException {
+		this(in, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 *
+	 * @param in
+	 *          the bzip2 compressed input
+	 * @param numberOfThreads
+	 *          the number of decompressing threads
+	 * @throws IOException
+	 *           if the input doesn't start with a bzip2 header
+	 */
+	public ParallelBZip2InputStream(InputStream in, int numberOfThreads) throws IOException {
+		if (numberOfThreads < 1) {
+			numberOfThreads = 1;
+		}
+		fInput = (in instanceof BufferedInputStream) ? in : new BufferedInputStream(in, 65536);
+		fMaxPendingBlocks = 2 * numberOfThreads;
+		if (fInput.read() != 'B' || fInput.read() != 'Z' || fInput.read() != 'h') {
+			throw new IOException("Stream is not BZip2 formatted");
+		}
+		fExecutor = Executors.newFixedThreadPool(numberOfThreads, new DaemonThreadFactory());
+	}
+
+	/**
+	 * Open the bzip2 file and start reading at the given byte offset. For a
+	 * multistream dump the offset must be the start of one of the concatenated
+	 * streams.
+	 *
+	 * @param filename
+	 *          the bzip2 compressed file
+	 * @param offset
+	 *          the byte offset of a bzip2 stream in the file
+	 * @param numberOfThreads
+	 *          the number of decompressing threads
+	 * @throws IOException
+	 */
+	public ParallelBZip2InputStream(String filename, long offset, int numberOfThreads) throws IOException {
+		this(openFile(filename, offset), numberOfThreads);
+	}
+
+	private static InputStream openFile(String filename, long offset) throws IOException {
+		FileInputStream fis = new FileInputStream(filename);
+		if (offset > 0L) {
+			fis.getChannel().position(offset);
+		}
+		return fis;
+	}
+
+	/**
+	 * Scan the compressed input for the next complete block.
+	 *
+	 * @return <code>null</code> if the end of the input is reached
+	 */
+	private RawBlock scanNextBlock() throws IOException {
+		while (!fEndOfInput) {
+			if (fInputPosition >= fInputLength) {
+				fInputLength = fInput.read(fInputBuffer, 0, fInputBuffer.length);
+				fInputPosition = 0;
+				if (fInputLength <= 0) {
+					fEndOfInput = true;
+					RawBlock block = fCurrentBlock;
+					fCurrentBlock = null;
+					if (block != null) {
+						// a truncated stream; the decompressor reports the error
+						block.endBit = (long) block.size << 3;
+					}
+					return block;
+				}
+			}
+			// the bytes from start to the current position are copied as a whole
+			// into the current block
+			int start = fInputPosition;
+			while (fInputPosition < fInputLength) {
+				long register = (fShiftRegister << 8) | (fInputBuffer[fInputPosition++] & 0xff);
+				fShiftRegister = register;
+				// a magic number may end at any bit of the new byte
+				for (int shift = 7; shift >= 0; shift--) {
+					long magic = (register >>> shift) & MAGIC_MASK;
+					if (magic == BLOCK_MAGIC || magic == END_OF_STREAM_MAGIC) {
+						RawBlock finishedBlock = fCurrentBlock;
+						if (finishedBlock != null) {
+							finishedBlock.append(fInputBuffer, start, fInputPosition - start);
+							// the magic number belongs to the next block
+							finishedBlock.endBit = ((long) finishedBlock.size << 3) - shift - MAGIC_BITS;
+						}
+						if (magic == BLOCK_MAGIC) {
+							// the magic number starts in one of the last 7 bytes of the register
+							int count = (shift + MAGIC_BITS + 7) >>> 3;
+							fCurrentBlock = new RawBlock(finishedBlock == null ? 65536 : finishedBlock.data.length);
+							for (int i = count - 1; i >= 0; i--) {
+								fCurrentBlock.append((int) (register >>> (i << 3)) & 0xff);
+							}
+							fCurrentBlock.startBit = (count << 3) - shift - MAGIC_BITS;
+						} else {
+							fCurrentBlock = null;
+						}
+						if (finishedBlock != null) {
+							return finishedBlock;
+						}
+						start = fInputPosition;
+						break;
+					}
+				}
+			}
+			if (fCurrentBlock != null) {
+				fCurrentBlock.append(fInputBuffer, start, fInputPosition - start);
+			}
+		}
+		return null;
+	}
+
+	private void fillPendingBlocks() throws IOException {
+		while (fPendingBlocks.size() < fMaxPendingBlocks) {
+			RawBlock block = scanNextBlock();
+			if (block == null) {
+				return;
+			}
+			fPendingBlocks.add(fExecutor.submit(new BlockDecompressor(block)));
+			fPendingBits.add(block);
+		}
+	}
+
+	private boolean nextBuffer() throws IOException {
+		fillPendingBlocks();
+		if (fPendingBlocks.isEmpty()) {
+			return false;
+		}
+		Future<byte[]> future = fPendingBlocks.removeFirst();
+		RawBlock block = fPendingBits.removeFirst();
+		try {
+			fBuffer = future.get();
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted while decompressing a bzip2 block");
+		} catch (ExecutionException e) {
+			// the block magic number may occur by chance inside of the compressed
+			// data; try again with the following block appended
+			fillPendingBlocks();
+			if (fPendingBits.isEmpty()) {
+				throw new IOException("Error in bzip2 block: " + e.getCause().getMessage());
+			}
+			fPendingBlocks.removeFirst().cancel(false);
+			BitBuffer mergedBlock = block.toBitBuffer();
+			mergedBlock.append(fPendingBits.removeFirst().toBitBuffer());
+			fBuffer = decompress(mergedBlock);
+		}
+		fPosition = 0;
+		return true;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (fClosed) {
+			throw new IOException("Stream closed");
+		}
+		while (fBuffer == null || fPosition >= fBuffer.length) {
+			if (!nextBuffer()) {
+				return -1;
+			}
+		}
+		return fBuffer[fPosition++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (fClosed) {
+			throw new IOException("Stream closed");
+		}
+		if (len == 0) {
+			return 0;
+		}
+		while (fBuffer == null || fPosition >= fBuffer.length) {
+			if (!nextBuffer()) {
+				return -1;
+			}
+		}
+		int count = Math.min(len, fBuffer.length - fPosition);
+		System.arraycopy(fBuffer, fPosition, b, off, count);
+		fPosition += count;
+		return count;
+	}
+
+	@Override
+	public int available() throws IOException {
+		if (fBuffer == null) {
+			return 0;
+		}
+		return fBuffer.length - fPosition;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!fClosed) {
+			fClosed = true;
+			fExecutor.shutdownNow();
+			fPendingBlocks.clear();
+			fPendingBits.clear();
+			fBuffer = null;
+			fInput.close();
+		}
+	}
+}
@@ -18,6 +18,21 @@ public class WikiArticle {
 
 	}
 
+	/**
+	 * Create a copy of the given article.
+	 * 
+	 * @param article
+	 *          the article to copy
+	 */
+	public WikiArticle(WikiArticle article) {
+		text = article.text;
+		title = article.title;
+		timeStamp = article.timeStamp;
+		id = article.id;
+		namespace = article.namespace;
+		integerNamespace = article.integerNamespace;
+	}
+
 	/**
 	 * @return the id
 	 */
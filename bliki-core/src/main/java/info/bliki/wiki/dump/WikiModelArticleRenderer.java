@@ -0,0 +1,58 @@
+package info.bliki.wiki.dump;
+
+import info.bliki.wiki.model.WikiModel;
+
+/**
+ * Default renderer which converts the wiki text of an article into HTML with a
+ * private {@link WikiModel} instance.
+ * 
+ */
+public class WikiModelArticleRenderer implements IArticleRenderer {
+	/**
+	 * Factory which creates a new <code>WikiModelArticleRenderer</code> for
+	 * every worker thread.
+	 * 
+	 */
+	public static class Factory implements IArticleRendererFactory {
+		private final String fImageBaseURL;
+
+		private final String fLinkBaseURL;
+
+		public Factory(String imageBaseURL, String linkBaseURL) {
+			fImageBaseURL = imageBaseURL;
+			fLinkBaseURL = linkBaseURL;
+		}
+
+		public IArticleRenderer createRenderer() {
+			return new WikiModelArticleRenderer(fImageBaseURL, fLinkBaseURL);
+		}
+	}
+
+	private final WikiModel fWikiModel;
+
+	public WikiModelArticleRenderer(String imageBaseURL, String linkBaseURL) {
+		this(new WikiModel(imageBaseURL, linkBaseURL));
+	}
+
+	public WikiModelArticleRenderer(WikiModel wikiModel) {
+		fWikiModel = wikiModel;
+	}
+
+	public String render(WikiArticle article, Siteinfo siteinfo) {
+		String text = article.getText();
+		if (text == null) {
+			return null;
+		}
+		try {
+			fWikiModel.setUp();
+			fWikiModel.setPageName(article.getTitle());
+			return fWikiModel.render(text);
+		} finally {
+			fWikiModel.tearDown();
+		}
+	}
+
+	public WikiModel getWikiModel() {
+		return fWikiModel;
+	}
+}
@@ -91,6 +91,9 @@ public class WikiXMLParser extends DefaultHandler {
 	}
 
 	/**
+	 * Get a reader for the dump file. Files ending with <i>.bz2</i> are
+	 * decompressed with multiple threads by a {@link ParallelBZip2InputStream},
+	 * if more than one processor is available.
 	 * 
 	 * @return a BufferedReader created from wikiDumpFilename
 	 * @throws UnsupportedEncodingException
@@ -106,7 +109,11 @@ public class WikiXMLParser extends DefaultHandler {
 
 		} else if (wikiDumpFilename.endsWith(".bz2")) {
 			FileInputStream fis = new FileInputStream(wikiDumpFilename);
-			br = new BufferedReader(new InputStreamReader(new BZip2CompressorInputStream(fis), "UTF-8"));
+			if (Runtime.getRuntime().availableProcessors() > 1) {
+				br = new BufferedReader(new InputStreamReader(new ParallelBZip2InputStream(fis), "UTF-8"));
+			} else {
+				br = new BufferedReader(new InputStreamReader(new BZip2CompressorInputStream(fis), "UTF-8"));
+			}
 		} else {
 			br = new BufferedReader(new InputStreamReader(new FileInputStream(wikiDumpFilename), "UTF-8"));
 		}
@@ -214,6 +221,15 @@ public class WikiXMLParser extends DefaultHandler {
 		fData.append(ch, start, length);
 	}
 
+	/**
+	 * Get the site and namespace information found in the header of the dump.
+	 * 
+	 * @return <code>null</code> if no header was parsed
+	 */
+	public Siteinfo getSiteinfo() {
+		return fSiteinfo;
+	}
+
 	public void parse() throws IOException, SAXException {
 		fXMLReader.parse(new InputSource(fReader));
 	}
@@ -6,6 +6,7 @@ import info.bliki.htmlcleaner.ContentToken;
 import info.bliki.htmlcleaner.TagNode;
 import info.bliki.wiki.model.Configuration;
 import info.bliki.wiki.model.IWikiModel;
+import info.bliki.wiki.tags.util.StreamingTagStack;
 import info.bliki.wiki.tags.util.TagStack;
 
 public abstract class AbstractParser  {
@@ -487,6 +488,12 @@ public abstract class AbstractParser  {
 		TagStack localStack = new TagStack();
 		// global wiki model stack
 		TagStack globalWikiModelStack = wikiModel.swapStack(localStack);
+		if (!createOnlyLocalStack && !noTOC && globalWikiModelStack instanceof StreamingTagStack) {
+			// the top-level parser appends directly to the streaming stack, which
+			// renders the completed nodes
+			wikiModel.swapStack(globalWikiModelStack);
+			localStack = globalWikiModelStack;
+		}
 		try {
 			// fix for infinite recursion
 			if (wikiModel.incrementParserRecursionCount() > Configuration.GLOBAL_RECURSION_LIMIT) {
@@ -527,7 +534,7 @@ public abstract class AbstractParser  {
 			localStack.append(error);
 		} finally {
 			wikiModel.decrementRecursionLevel();
-			if (!createOnlyLocalStack) {
+			if (!createOnlyLocalStack && localStack != globalWikiModelStack) {
 				// append the resursively parsed local stack to the global wiki
 				// model
 				// stack
@@ -0,0 +1,124 @@
+package info.bliki.wiki.filter;
+
+/**
+ * A read-only view of a range of a source string. The scanners split the
+ * template calls and parameters into slices, which share the characters of
+ * the source string. A <code>String</code> is only created with
+ * {@link #toString()}, if the value is really needed (i.e. as a map key or for
+ * the output).
+ *
+ */
+public final class CharSlice implements CharSequence {
+	private final String fSource;
+
+	private final int fStart;
+
+	private final int fEnd;
+
+	/**
+	 *
+	 * @param source
+	 *          the source string
+	 * @param start
+	 *          the start offset (inclusive) in the source string
+	 * @param end
+	 *          the end offset (exclusive) in the source string
+	 */
+	public CharSlice(String source, int start, int end) {
+		fSource = source;
+		fStart = start;
+		fEnd = end;
+	}
+
+	/**
+	 * Create a slice of the source range, where the whitespace is removed from
+	 * the left and from the right. On the right side the trimming stops behind a
+	 * <code>\n</code> character, like
+	 * {@link info.bliki.htmlcleaner.Utils#trimNewlineRight(String)}
+	 *
+	 */
+	public static CharSlice trimNewlineRight(String source, int start, int end) {
+		int leftIndex = start;
+		while (leftIndex < end && Character.isWhitespace(source.charAt(leftIndex))) {
+			leftIndex++;
+		}
+		if (leftIndex >= end) {
+			return new CharSlice(source, end, end);
+		}
+		int rightIndex = end;
+		while (rightIndex > start && Character.isWhitespace(source.charAt(rightIndex - 1))) {
+			rightIndex--;
+			if (source.charAt(rightIndex) == '\n') {
+				rightIndex++;
+				break;
+			}
+		}
+		return new CharSlice(source, leftIndex, rightIndex);
+	}
+
+	/**
+	 * Create a slice of the source range, where the whitespace is removed from
+	 * the left and from the right, like <code>String#trim()</code>.
+	 */
+	public static CharSlice trim(String source, int start, int end) {
+		while (start < end && source.charAt(start) <= ' ') {
+			start++;
+		}
+		while (start < end && source.charAt(end - 1) <= ' ') {
+			end--;
+		}
+		return new CharSlice(source, start, end);
+	}
+
+	public char charAt(int index) {
+		return fSource.charAt(fStart + index);
+	}
+
+	public int length() {
+		return fEnd - fStart;
+	}
+
+	public CharSequence subSequence(int start, int end) {
+		return new CharSlice(fSource, fStart + start, fStart + end);
+	}
+
+	/**
+	 * The source string of this slice.
+	 */
+	public String getSource() {
+		return fSource;
+	}
+
+	/**
+	 * The start offset (inclusive) in the source string.
+	 */
+	public int getStart() {
+		return fStart;
+	}
+
+	/**
+	 * The end offset (exclusive) in the source string.
+	 */
+	public int getEnd() {
+		return fEnd;
+	}
+
+	/**
+	 * A slice without the leading and trailing whitespace, like
+	 * <code>String#trim()</code>.
+	 */
+	public CharSlice trim() {
+		return trim(fSource, fStart, fEnd);
+	}
+
+	/**
+	 * Create the string of this slice.
+	 */
+	@Override
+	public String toString() {
+		if (fStart == 0 && fEnd == fSource.length()) {
+			return fSource;
+		}
+		return fSource.substring(fStart, fEnd);
+	}
+}
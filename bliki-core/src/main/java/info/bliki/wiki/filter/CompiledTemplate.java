@@ -0,0 +1,218 @@
+package info.bliki.wiki.filter;
+
+import info.bliki.wiki.model.Configuration;
+import info.bliki.wiki.model.IWikiModel;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable, preprocessed template body.
+ * 
+ * The template text is preprocessed once (comments, <code>noinclude</code>,
+ * <code>includeonly</code> and <code>onlyinclude</code> tags) and split into
+ * text segments and template parameter references
+ * <code>{{{name|default}}}</code>. Expanding a compiled template only binds the
+ * parameters of the template call; the nested template calls and parser
+ * functions of the bound text are parsed as usual.
+ * 
+ * Instances can be shared by all threads and wiki models.
+ * 
+ * @see TemplateParser#parseRecursive(CompiledTemplate, IWikiModel, Appendable,
+ *      Map)
+ */
+public final class CompiledTemplate {
+	private final String fRawContent;
+
+	private final String fContent;
+
+	/**
+	 * The start offsets of the <code>{{{...}}}</code> parameter references in the
+	 * preprocessed content.
+	 */
+	private final int[] fParameterStart;
+
+	/**
+	 * The end offsets (behind the closing <code>}}}</code>) of the parameter
+	 * references.
+	 */
+	private final int[] fParameterEnd;
+
+	private final String[] fParameterNames;
+
+	/**
+	 * The default values of the parameter references or <code>null</code>.
+	 */
+	private final String[] fDefaultValues;
+
+	/**
+	 * The end offset of the text, which is appended behind the last substituted
+	 * parameter.
+	 */
+	private final int fTailEnd;
+
+	private CompiledTemplate(String rawContent, String content, int[] parameterStart, int[] parameterEnd,
+			String[] parameterNames, String[] defaultValues, int tailEnd) {
+		fRawContent = rawContent;
+		fContent = content;
+		fParameterStart = parameterStart;
+		fParameterEnd = parameterEnd;
+		fParameterNames = parameterNames;
+		fDefaultValues = defaultValues;
+		fTailEnd = tailEnd;
+	}
+
+	/**
+	 * Compile the (trimmed) raw content of a template.
+	 * 
+	 * @param rawContent
+	 *          the raw template text
+	 * @param wikiModel
+	 *          the model which is used for preprocessing
+	 * @return <code>null</code> if the template can't be compiled, because the
+	 *         result of the preprocessing depends on the model (i.e. the template
+	 *         contains a signature)
+	 * @throws IOException
+	 */
+	public static CompiledTemplate compile(String rawContent, IWikiModel wikiModel) throws IOException {
+		if (rawContent.indexOf("~~~") >= 0) {
+			return null;
+		}
+		String content = TemplateParser.preprocess(rawContent, wikiModel, false);
+		if (content.indexOf("~~~") >= 0) {
+			return null;
+		}
+
+		// the same scanning rules as in WikipediaScanner#replaceTemplateParameters()
+		List<int[]> offsets = new ArrayList<int[]>();
+		List<String> names = new ArrayList<String>();
+		List<String> defaultValues = new ArrayList<String>();
+		int position = 0;
+		try {
+			while (position < content.length()) {
+				char ch = content.charAt(position++);
+				// find for '{{{[^{]'
+				if (ch == '{' && content.charAt(position) == '{' && content.charAt(position + 1) == '{'
+						&& content.charAt(position + 2) != '{') {
+					position += 2;
+					int parameterStart = position;
+					int temp[] = WikipediaScanner.findNestedParamEnd(content, parameterStart);
+					if (temp[0] >= 0) {
+						position = temp[0];
+						List<CharSlice> list = WikipediaScanner.splitByPipeSlices(content, parameterStart, position - 3, null);
+						if (list.size() > 0) {
+							offsets.add(new int[] { parameterStart - 3, position });
+							names.add(list.get(0).toString());
+							defaultValues.add(list.size() > 1 ? list.get(1).toString() : null);
+						}
+					}
+				}
+			}
+			if (position == content.length()) {
+				position++;
+			}
+		} catch (IndexOutOfBoundsException e) {
+			// ignore
+		}
+
+		int size = offsets.size();
+		int[] parameterStart = new int[size];
+		int[] parameterEnd = new int[size];
+		for (int i = 0; i < size; i++) {
+			int[] offset = offsets.get(i);
+			parameterStart[i] = offset[0];
+			parameterEnd[i] = offset[1];
+		}
+		return new CompiledTemplate(rawContent, content, parameterStart, parameterEnd, names.toArray(new String[size]),
+				defaultValues.toArray(new String[size]), position - 1);
+	}
+
+	/**
+	 * The raw template text, which was compiled.
+	 */
+	public String getRawContent() {
+		return fRawContent;
+	}
+
+	/**
+	 * The preprocessed template text.
+	 */
+	public String getContent() {
+		return fContent;
+	}
+
+	/**
+	 * The number of template parameter references in the preprocessed text.
+	 */
+	public int getParameterCount() {
+		return fParameterNames.length;
+	}
+
+	/**
+	 * Substitute the template parameter references with the values of the
+	 * template call.
+	 * 
+	 * @param wikiModel
+	 * @param templateParameters
+	 *          the parameters of the template call
+	 * @return the preprocessed text with substituted template parameters
+	 * @see WikipediaScanner#replaceTemplateParameters(String, Map)
+	 */
+	public String replaceTemplateParameters(IWikiModel wikiModel, Map<String, String> templateParameters) {
+		if (fParameterNames.length == 0) {
+			return fContent;
+		}
+		StringBuilder buffer = null;
+		int bufferStart = 0;
+		try {
+			int level = wikiModel.incrementRecursionLevel();
+			if (level > Configuration.PARSER_RECURSION_LIMIT) {
+				return fContent;
+			}
+			for (int i = 0; i < fParameterNames.length; i++) {
+				String parameterString = fParameterNames[i];
+				String value = null;
+				if (templateParameters != null) {
+					value = templateParameters.get(parameterString);
+				}
+				if (value == null) {
+					value = fDefaultValues[i];
+				}
+				if (value != null && value.length() <= Configuration.TEMPLATE_VALUE_LIMIT) {
+					if (buffer == null) {
+						buffer = new StringBuilder(fContent.length() + 128);
+					}
+					buffer.append(fContent, bufferStart, fParameterStart[i]);
+					StringBuilder recursiveResult = null;
+					if (value.indexOf("{{{") >= 0) {
+						WikipediaScanner scanner = new WikipediaScanner(value);
+						scanner.setModel(wikiModel);
+						recursiveResult = scanner.replaceTemplateParameters(value, templateParameters);
+					}
+					if (recursiveResult != null) {
+						wikiModel.appendTemplateParameter(buffer, parameterString, recursiveResult.toString());
+					} else {
+						wikiModel.appendTemplateParameter(buffer, parameterString, value);
+					}
+					bufferStart = fParameterEnd[i];
+					if (buffer.length() > Configuration.TEMPLATE_BUFFER_LIMIT) {
+						// Controls the scanner, when infinite recursion occurs the
+						// buffer grows out of control.
+						return buffer.toString();
+					}
+				}
+			}
+		} finally {
+			wikiModel.decrementRecursionLevel();
+		}
+		if (buffer == null) {
+			return fContent;
+		}
+		if (bufferStart < fTailEnd) {
+			buffer.append(fContent, bufferStart, fTailEnd);
+		}
+		return buffer.toString();
+	}
+}
@@ -3,10 +3,12 @@ package info.bliki.wiki.filter;
 import info.bliki.htmlcleaner.ContentToken;
 import info.bliki.htmlcleaner.EndTagToken;
 import info.bliki.htmlcleaner.TagNode;
+import info.bliki.htmlcleaner.TagTypes;
 import info.bliki.htmlcleaner.Utils;
 import info.bliki.wiki.model.Configuration;
 import info.bliki.wiki.model.IWikiModel;
 import info.bliki.wiki.model.ImageFormat;
+import info.bliki.wiki.model.RenderBudget;
 import info.bliki.wiki.tags.HTMLTag;
 
 import java.io.IOException;
@@ -19,6 +21,8 @@ import java.util.Map;
  * 
  */
 public class HTMLConverter implements ITextConverter {
+	private final static int A_TYPE = TagTypes.intern("a");
+
 	private boolean fNoLinks;
 
 	public HTMLConverter(boolean noLinks) {
@@ -39,8 +43,12 @@ public class HTMLConverter implements ITextConverter {
 							.append("<span class=\"error\">Error - recursion limit exceeded rendering tags in HTMLConverter#nodesToText().</span>");
 					return;
 				}
+				RenderBudget budget = model.getRenderBudget();
 				Iterator<? extends Object> childrenIt = nodes.iterator();
 				while (childrenIt.hasNext()) {
+					if (budget != null && budget.isTimeExceeded()) {
+						return;
+					}
 					Object item = childrenIt.next();
 					if (item != null) {
 						if (item instanceof List) {
@@ -78,21 +86,20 @@ public class HTMLConverter implements ITextConverter {
 
 	protected void nodeToHTML(TagNode node, Appendable resultBuffer, IWikiModel model) throws IOException {
 		String name = node.getName();
+		int typeId = node.getTypeId();
 		if (HTMLTag.NEW_LINES) {
-			if (name.equals("div") || name.equals("p") || name.equals("table") || name.equals("ul") || name.equals("ol")
-					|| name.equals("li") || name.equals("th") || name.equals("tr") || name.equals("td") || name.equals("pre")) {
+			if (TagTypes.contains(HTMLTag.NEW_LINE_TAGS, typeId)) {
 				resultBuffer.append('\n');
 			}
 		}
 		resultBuffer.append('<');
 		resultBuffer.append(name);
 
-		Map<String, String> tagAtttributes = node.getAttributes();
-
-		for (Map.Entry<String, String> currEntry : tagAtttributes.entrySet()) {
-			String attName = currEntry.getKey();
+		int attributeCount = node.getAttributeCount();
+		for (int i = 0; i < attributeCount; i++) {
+			String attName = node.getAttributeName(i);
 			if (attName.length() >= 1 && Character.isLetter(attName.charAt(0))) {
-				String attValue = currEntry.getValue();
+				String attValue = node.getAttributeValue(i);
 
 				resultBuffer.append(" ");
 				resultBuffer.append(attName);
@@ -103,7 +110,7 @@ public class HTMLConverter implements ITextConverter {
 		}
 
 		List<Object> children = node.getChildren();
-		if (children.size() == 0 && !name.equals("a")) {
+		if (children.size() == 0 && typeId != A_TYPE) {
 			resultBuffer.append(" />");
 		} else {
 			resultBuffer.append('>');
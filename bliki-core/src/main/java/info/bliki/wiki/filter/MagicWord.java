@@ -16,13 +16,14 @@
  */
 package info.bliki.wiki.filter;
 
-import info.bliki.wiki.model.IWikiModel;
+import info.bliki.wiki.model.IWikiModel;
+import info.bliki.wiki.model.TemplateCache;
 import info.bliki.wiki.namespaces.INamespace;
 
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.TimeZone;
 
 /**
@@ -172,87 +173,135 @@ public class MagicWord {
 
 	private static final String MAGIC_SERVER_NAME = "SERVERNAME";
 
-	private static List<String> MAGIC_WORDS = new ArrayList<String>();
+	// magic word IDs
+	/**
+	 * The IDs of the local date values; in the order of the
+	 * <code>DATE_PATTERNS</code>
+	 */
+	private static final int LOCAL_DATE = 0;
+
+	/**
+	 * The IDs of the current (UTC) date values; in the order of the
+	 * <code>DATE_PATTERNS</code>
+	 */
+	private static final int CURRENT_DATE = 12;
+
+	private static final int PAGE_NAME = 24;
+
+	private static final int FULL_PAGE_NAME = 25;
+
+	private static final int TALK_PAGE_NAME = 26;
+
+	/**
+	 * The ID of the magic words, which are returned unchanged
+	 */
+	private static final int OTHER = 27;
+
+	/**
+	 * The number of magic word IDs
+	 */
+	public static final int MAGIC_WORD_IDS = 28;
+
+	private static final String[] DATE_PATTERNS = { "d", "dd", "EEEE", "F", "MM", "MMM", "MMMM", "HH:mm", "HH", "w",
+			"yyyy", "yyyyMMddHHmmss" };
+
+	private static final TimeZone UTC = TimeZone.getTimeZone("GMT+00");
+
+	/**
+	 * The date formatters of the current thread; indexed by the magic word ID
+	 */
+	private static final ThreadLocal<SimpleDateFormat[]> DATE_FORMATTERS = new ThreadLocal<SimpleDateFormat[]>() {
+		@Override
+		protected SimpleDateFormat[] initialValue() {
+			return new SimpleDateFormat[CURRENT_DATE + DATE_PATTERNS.length];
+		}
+	};
+
+	private static final Map<String, Integer> MAGIC_WORDS = new HashMap<String, Integer>(128);
 
 	protected static final String TEMPLATE_INCLUSION = "template-inclusion";
 
 	// private HashMap parameterValues = new HashMap();
 
+	private static void addMagicWord(String name, int id) {
+		MAGIC_WORDS.put(name, Integer.valueOf(id));
+	}
+
 	static {
 		// current date values
-		MAGIC_WORDS.add(MAGIC_CURRENT_DAY);
-		MAGIC_WORDS.add(MAGIC_CURRENT_DAY2);
-		MAGIC_WORDS.add(MAGIC_CURRENT_DAY_NAME);
-		MAGIC_WORDS.add(MAGIC_CURRENT_DAY_OF_WEEK);
-		MAGIC_WORDS.add(MAGIC_CURRENT_MONTH);
-		MAGIC_WORDS.add(MAGIC_CURRENT_MONTH_ABBR);
-		MAGIC_WORDS.add(MAGIC_CURRENT_MONTH_NAME);
-		MAGIC_WORDS.add(MAGIC_CURRENT_TIME);
-		MAGIC_WORDS.add(MAGIC_CURRENT_HOUR);
-		MAGIC_WORDS.add(MAGIC_CURRENT_WEEK);
-		MAGIC_WORDS.add(MAGIC_CURRENT_YEAR);
-		MAGIC_WORDS.add(MAGIC_CURRENT_TIMESTAMP);
+		addMagicWord(MAGIC_CURRENT_DAY, CURRENT_DATE);
+		addMagicWord(MAGIC_CURRENT_DAY2, CURRENT_DATE + 1);
+		addMagicWord(MAGIC_CURRENT_DAY_NAME, CURRENT_DATE + 2);
+		addMagicWord(MAGIC_CURRENT_DAY_OF_WEEK, CURRENT_DATE + 3);
+		addMagicWord(MAGIC_CURRENT_MONTH, CURRENT_DATE + 4);
+		addMagicWord(MAGIC_CURRENT_MONTH_ABBR, CURRENT_DATE + 5);
+		addMagicWord(MAGIC_CURRENT_MONTH_NAME, CURRENT_DATE + 6);
+		addMagicWord(MAGIC_CURRENT_TIME, CURRENT_DATE + 7);
+		addMagicWord(MAGIC_CURRENT_HOUR, CURRENT_DATE + 8);
+		addMagicWord(MAGIC_CURRENT_WEEK, CURRENT_DATE + 9);
+		addMagicWord(MAGIC_CURRENT_YEAR, CURRENT_DATE + 10);
+		addMagicWord(MAGIC_CURRENT_TIMESTAMP, CURRENT_DATE + 11);
 		// local date values
-		MAGIC_WORDS.add(MAGIC_LOCAL_DAY);
-		MAGIC_WORDS.add(MAGIC_LOCAL_DAY2);
-		MAGIC_WORDS.add(MAGIC_LOCAL_DAY_NAME);
-		MAGIC_WORDS.add(MAGIC_LOCAL_DAY_OF_WEEK);
-		MAGIC_WORDS.add(MAGIC_LOCAL_MONTH);
-		MAGIC_WORDS.add(MAGIC_LOCAL_MONTH_ABBR);
-		MAGIC_WORDS.add(MAGIC_LOCAL_MONTH_NAME);
-		MAGIC_WORDS.add(MAGIC_LOCAL_TIME);
-		MAGIC_WORDS.add(MAGIC_LOCAL_HOUR);
-		MAGIC_WORDS.add(MAGIC_LOCAL_WEEK);
-		MAGIC_WORDS.add(MAGIC_LOCAL_YEAR);
-		MAGIC_WORDS.add(MAGIC_LOCAL_TIMESTAMP);
+		addMagicWord(MAGIC_LOCAL_DAY, LOCAL_DATE);
+		addMagicWord(MAGIC_LOCAL_DAY2, LOCAL_DATE + 1);
+		addMagicWord(MAGIC_LOCAL_DAY_NAME, LOCAL_DATE + 2);
+		addMagicWord(MAGIC_LOCAL_DAY_OF_WEEK, LOCAL_DATE + 3);
+		addMagicWord(MAGIC_LOCAL_MONTH, LOCAL_DATE + 4);
+		addMagicWord(MAGIC_LOCAL_MONTH_ABBR, LOCAL_DATE + 5);
+		addMagicWord(MAGIC_LOCAL_MONTH_NAME, LOCAL_DATE + 6);
+		addMagicWord(MAGIC_LOCAL_TIME, LOCAL_DATE + 7);
+		addMagicWord(MAGIC_LOCAL_HOUR, LOCAL_DATE + 8);
+		addMagicWord(MAGIC_LOCAL_WEEK, LOCAL_DATE + 9);
+		addMagicWord(MAGIC_LOCAL_YEAR, LOCAL_DATE + 10);
+		addMagicWord(MAGIC_LOCAL_TIMESTAMP, LOCAL_DATE + 11);
 		// statistics
-		MAGIC_WORDS.add(MAGIC_CURRENT_VERSION);
-		MAGIC_WORDS.add(MAGIC_NUMBER_ARTICLES);
-		MAGIC_WORDS.add(MAGIC_NUMBER_ARTICLES_R);
-		MAGIC_WORDS.add(MAGIC_NUMBER_PAGES);
-		MAGIC_WORDS.add(MAGIC_NUMBER_PAGES_R);
-		MAGIC_WORDS.add(MAGIC_NUMBER_FILES);
-		MAGIC_WORDS.add(MAGIC_NUMBER_FILES_R);
-		MAGIC_WORDS.add(MAGIC_NUMBER_USERS);
-		MAGIC_WORDS.add(MAGIC_NUMBER_USERS_R);
-		MAGIC_WORDS.add(MAGIC_NUMBER_ADMINS);
-		MAGIC_WORDS.add(MAGIC_NUMBER_ADMINS_R);
-		MAGIC_WORDS.add(MAGIC_PAGES_IN_NAMESPACE);
+		addMagicWord(MAGIC_CURRENT_VERSION, OTHER);
+		addMagicWord(MAGIC_NUMBER_ARTICLES, OTHER);
+		addMagicWord(MAGIC_NUMBER_ARTICLES_R, OTHER);
+		addMagicWord(MAGIC_NUMBER_PAGES, OTHER);
+		addMagicWord(MAGIC_NUMBER_PAGES_R, OTHER);
+		addMagicWord(MAGIC_NUMBER_FILES, OTHER);
+		addMagicWord(MAGIC_NUMBER_FILES_R, OTHER);
+		addMagicWord(MAGIC_NUMBER_USERS, OTHER);
+		addMagicWord(MAGIC_NUMBER_USERS_R, OTHER);
+		addMagicWord(MAGIC_NUMBER_ADMINS, OTHER);
+		addMagicWord(MAGIC_NUMBER_ADMINS_R, OTHER);
+		addMagicWord(MAGIC_PAGES_IN_NAMESPACE, OTHER);
 		// MAGIC_WORDS.add(MAGIC_PAGES_IN_NAMESPACE_NS);
 		// MAGIC_WORDS.add(MAGIC_PAGES_IN_NAMESPACE_NS_R);
 		// page values
-		MAGIC_WORDS.add(MAGIC_PAGE_NAME);
-		MAGIC_WORDS.add(MAGIC_PAGE_NAME_E);
-		MAGIC_WORDS.add(MAGIC_SUB_PAGE_NAME);
-		MAGIC_WORDS.add(MAGIC_SUB_PAGE_NAME_E);
-		MAGIC_WORDS.add(MAGIC_BASE_PAGE_NAME);
-		MAGIC_WORDS.add(MAGIC_BASE_PAGE_NAME_E);
-		MAGIC_WORDS.add(MAGIC_NAMESPACE);
-		MAGIC_WORDS.add(MAGIC_NAMESPACE_E);
-		MAGIC_WORDS.add(MAGIC_FULL_PAGE_NAME);
-		MAGIC_WORDS.add(MAGIC_FULL_PAGE_NAME_E);
-		MAGIC_WORDS.add(MAGIC_TALK_SPACE);
-		MAGIC_WORDS.add(MAGIC_TALK_SPACE_E);
-		MAGIC_WORDS.add(MAGIC_SUBJECT_SPACE);
-		MAGIC_WORDS.add(MAGIC_SUBJECT_SPACE_E);
-		MAGIC_WORDS.add(MAGIC_ARTICLE_SPACE);
-		MAGIC_WORDS.add(MAGIC_ARTICLE_SPACE_E);
-		MAGIC_WORDS.add(MAGIC_TALK_PAGE_NAME);
-		MAGIC_WORDS.add(MAGIC_TALK_PAGE_NAME_E);
-		MAGIC_WORDS.add(MAGIC_SUBJECT_PAGE_NAME);
-		MAGIC_WORDS.add(MAGIC_SUBJECT_PAGE_NAME_E);
-		MAGIC_WORDS.add(MAGIC_ARTICLE_PAGE_NAME);
-		MAGIC_WORDS.add(MAGIC_ARTICLE_PAGE_NAME_E);
-		MAGIC_WORDS.add(MAGIC_REVISION_ID);
-		MAGIC_WORDS.add(MAGIC_REVISION_DAY);
-		MAGIC_WORDS.add(MAGIC_REVISION_DAY2);
-		MAGIC_WORDS.add(MAGIC_REVISION_MONTH);
-		MAGIC_WORDS.add(MAGIC_REVISION_YEAR);
-		MAGIC_WORDS.add(MAGIC_REVISION_TIMESTAMP);
-		MAGIC_WORDS.add(MAGIC_SITE_NAME);
-		MAGIC_WORDS.add(MAGIC_SERVER);
-		MAGIC_WORDS.add(MAGIC_SCRIPT_PATH);
-		MAGIC_WORDS.add(MAGIC_SERVER_NAME);
+		addMagicWord(MAGIC_PAGE_NAME, PAGE_NAME);
+		addMagicWord(MAGIC_PAGE_NAME_E, OTHER);
+		addMagicWord(MAGIC_SUB_PAGE_NAME, OTHER);
+		addMagicWord(MAGIC_SUB_PAGE_NAME_E, OTHER);
+		addMagicWord(MAGIC_BASE_PAGE_NAME, OTHER);
+		addMagicWord(MAGIC_BASE_PAGE_NAME_E, OTHER);
+		addMagicWord(MAGIC_NAMESPACE, OTHER);
+		addMagicWord(MAGIC_NAMESPACE_E, OTHER);
+		addMagicWord(MAGIC_FULL_PAGE_NAME, FULL_PAGE_NAME);
+		addMagicWord(MAGIC_FULL_PAGE_NAME_E, OTHER);
+		addMagicWord(MAGIC_TALK_SPACE, OTHER);
+		addMagicWord(MAGIC_TALK_SPACE_E, OTHER);
+		addMagicWord(MAGIC_SUBJECT_SPACE, OTHER);
+		addMagicWord(MAGIC_SUBJECT_SPACE_E, OTHER);
+		addMagicWord(MAGIC_ARTICLE_SPACE, OTHER);
+		addMagicWord(MAGIC_ARTICLE_SPACE_E, OTHER);
+		addMagicWord(MAGIC_TALK_PAGE_NAME, TALK_PAGE_NAME);
+		addMagicWord(MAGIC_TALK_PAGE_NAME_E, OTHER);
+		addMagicWord(MAGIC_SUBJECT_PAGE_NAME, OTHER);
+		addMagicWord(MAGIC_SUBJECT_PAGE_NAME_E, OTHER);
+		addMagicWord(MAGIC_ARTICLE_PAGE_NAME, OTHER);
+		addMagicWord(MAGIC_ARTICLE_PAGE_NAME_E, OTHER);
+		addMagicWord(MAGIC_REVISION_ID, OTHER);
+		addMagicWord(MAGIC_REVISION_DAY, OTHER);
+		addMagicWord(MAGIC_REVISION_DAY2, OTHER);
+		addMagicWord(MAGIC_REVISION_MONTH, OTHER);
+		addMagicWord(MAGIC_REVISION_YEAR, OTHER);
+		addMagicWord(MAGIC_REVISION_TIMESTAMP, OTHER);
+		addMagicWord(MAGIC_SITE_NAME, OTHER);
+		addMagicWord(MAGIC_SERVER, OTHER);
+		addMagicWord(MAGIC_SCRIPT_PATH, OTHER);
+		addMagicWord(MAGIC_SERVER_NAME, OTHER);
 	}
 
 	/**
@@ -261,118 +310,108 @@ public class MagicWord {
 	 * Mediawiki magic words.
 	 */
 	public static boolean isMagicWord(String name) {
-		return MAGIC_WORDS.contains(name);
+		return MAGIC_WORDS.containsKey(name);
+	}
+
+	/**
+	 * Get the ID of a magic word.
+	 *
+	 * @param name
+	 *          the magic word
+	 * @return the ID (lower than {@link #MAGIC_WORD_IDS}) or <code>-1</code> if
+	 *         the name isn't a magic word
+	 */
+	public static int getMagicWordId(String name) {
+		Integer id = MAGIC_WORDS.get(name);
+		return id == null ? -1 : id.intValue();
+	}
+
+	/**
+	 * Check if the value of a magic word without parameter can be cached for
+	 * the current render. Only the date and page name values are evaluated;
+	 * all other magic words share one ID and are returned unchanged.
+	 *
+	 * @param id
+	 *          the magic word ID
+	 * @see #getMagicWordId(String)
+	 */
+	public static boolean isCacheable(int id) {
+		return id >= 0 && id != OTHER;
+	}
+
+	/**
+	 * Determine the context dependencies of a magic word.
+	 *
+	 * @param name
+	 *          the magic word
+	 * @param parameter
+	 *          the parameter of the magic word or an empty string
+	 * @return a combination of {@link TemplateCache#PAGE_DEPENDENCY} and
+	 *         {@link TemplateCache#VOLATILE_DEPENDENCY}
+	 */
+	public static int getTemplateDependency(String name, String parameter) {
+		if (name.startsWith("CURRENT") || name.startsWith("LOCAL")) {
+			return TemplateCache.VOLATILE_DEPENDENCY;
+		}
+		if (name.startsWith("REVISION")) {
+			return TemplateCache.PAGE_DEPENDENCY;
+		}
+		if (parameter.length() == 0
+				&& (name.indexOf("PAGENAME") >= 0 || name.startsWith(MAGIC_NAMESPACE) || name.startsWith(MAGIC_TALK_SPACE)
+						|| name.startsWith(MAGIC_SUBJECT_SPACE) || name.startsWith(MAGIC_ARTICLE_SPACE))) {
+			return TemplateCache.PAGE_DEPENDENCY;
+		}
+		return 0;
 	}
 
 	/**
 	 * Process a magic word, returning the value corresponding to the magic word
 	 * value. See http://meta.wikimedia.org/wiki/Help:Magic_words for a list of
-	 * Mediawiki magic words.
+	 * Mediawiki magic words. The date values are taken from the clock snapshot
+	 * {@link IWikiModel#getRenderTime()} of the current render.
 	 */
 	public static String processMagicWord(String name, String parameter, IWikiModel model) {
-		SimpleDateFormat formatter = new SimpleDateFormat();
-		TimeZone utc = TimeZone.getTimeZone("GMT+00");
-		Date current = new Date(System.currentTimeMillis());
-		// local date values
-		if (name.equals(MAGIC_LOCAL_DAY)) {
-			formatter.applyPattern("d");
-			return formatter.format(current);
-		} else if (name.equals(MAGIC_LOCAL_DAY2)) {
-			formatter.applyPattern("dd");
-			return formatter.format(current);
-		} else if (name.equals(MAGIC_LOCAL_DAY_NAME)) {
-			formatter.applyPattern("EEEE");
-			return formatter.format(current);
-		} else if (name.equals(MAGIC_LOCAL_DAY_OF_WEEK)) {
-			formatter.applyPattern("F");
-			return formatter.format(current);
-		} else if (name.equals(MAGIC_LOCAL_MONTH)) {
-			formatter.applyPattern("MM");
-			return formatter.format(current);
-		} else if (name.equals(MAGIC_LOCAL_MONTH_ABBR)) {
-			formatter.applyPattern("MMM");
-			return formatter.format(current);
-		} else if (name.equals(MAGIC_LOCAL_MONTH_NAME)) {
-			formatter.applyPattern("MMMM");
-			return formatter.format(current);
-		} else if (name.equals(MAGIC_LOCAL_TIME)) {
-			formatter.applyPattern("HH:mm");
-			return formatter.format(current);
-		} else if (name.equals(MAGIC_LOCAL_HOUR)) {
-			formatter.applyPattern("HH");
-			return formatter.format(current);
-		} else if (name.equals(MAGIC_LOCAL_WEEK)) {
-			formatter.applyPattern("w");
-			return formatter.format(current);
-		} else if (name.equals(MAGIC_LOCAL_YEAR)) {
-			formatter.applyPattern("yyyy");
-			return formatter.format(current);
-		} else if (name.equals(MAGIC_LOCAL_TIMESTAMP)) {
-			formatter.applyPattern("yyyyMMddHHmmss");
-			return formatter.format(current);
-		}
-		// current date values
-		formatter.setTimeZone(utc);
-		if (name.equals(MAGIC_CURRENT_DAY)) {
-			formatter.applyPattern("d");
-			return formatter.format(current);
-		} else if (name.equals(MAGIC_CURRENT_DAY2)) {
-			formatter.applyPattern("dd");
-			return formatter.format(current);
-		} else if (name.equals(MAGIC_CURRENT_DAY_NAME)) {
-			formatter.applyPattern("EEEE");
-			return formatter.format(current);
-		} else if (name.equals(MAGIC_CURRENT_DAY_OF_WEEK)) {
-			formatter.applyPattern("F");
-			return formatter.format(current);
-		} else if (name.equals(MAGIC_CURRENT_MONTH)) {
-			formatter.applyPattern("MM");
-			return formatter.format(current);
-		} else if (name.equals(MAGIC_CURRENT_MONTH_ABBR)) {
-			formatter.applyPattern("MMM");
-			return formatter.format(current);
-		} else if (name.equals(MAGIC_CURRENT_MONTH_NAME)) {
-			formatter.applyPattern("MMMM");
-			return formatter.format(current);
-		} else if (name.equals(MAGIC_CURRENT_TIME)) {
-			formatter.applyPattern("HH:mm");
-			return formatter.format(current);
-		} else if (name.equals(MAGIC_CURRENT_HOUR)) {
-			formatter.applyPattern("HH");
-			return formatter.format(current);
-		} else if (name.equals(MAGIC_CURRENT_WEEK)) {
-			formatter.applyPattern("w");
-			return formatter.format(current);
-		} else if (name.equals(MAGIC_CURRENT_YEAR)) {
-			formatter.applyPattern("yyyy");
-			return formatter.format(current);
-		} else if (name.equals(MAGIC_CURRENT_TIMESTAMP)) {
-			formatter.applyPattern("yyyyMMddHHmmss");
-			return formatter.format(current);
-		}
+		return processMagicWord(getMagicWordId(name), name, parameter, model);
+	}
 
-		if (name.equals(MAGIC_PAGE_NAME)) {
-			String temp = model.getPageName();
-			if (temp != null) {
-				if (parameter.length() > 0) {
-					return parameter;
+	/**
+	 * Process a magic word with the given ID.
+	 *
+	 * @see #getMagicWordId(String)
+	 */
+	public static String processMagicWord(int id, String name, String parameter, IWikiModel model) {
+		if (id < 0) {
+			return name;
+		}
+		if (id < CURRENT_DATE + DATE_PATTERNS.length) {
+			SimpleDateFormat[] formatters = DATE_FORMATTERS.get();
+			SimpleDateFormat formatter = formatters[id];
+			if (formatter == null) {
+				if (id < CURRENT_DATE) {
+					formatter = new SimpleDateFormat(DATE_PATTERNS[id - LOCAL_DATE]);
+				} else {
+					formatter = new SimpleDateFormat(DATE_PATTERNS[id - CURRENT_DATE]);
+					formatter.setTimeZone(UTC);
 				}
-				return temp;
+				formatters[id] = formatter;
 			}
+			return formatter.format(new Date(model.getRenderTime()));
 		}
-		
-		if (name.equals(MAGIC_FULL_PAGE_NAME)) {
-			String temp = model.getPageName();
+
+		String temp;
+		switch (id) {
+		case PAGE_NAME:
+		case FULL_PAGE_NAME:
+			temp = model.getPageName();
 			if (temp != null) {
 				if (parameter.length() > 0) {
 					return parameter;
 				}
 				return temp;
 			}
-		}
-		
-		if (name.equals(MAGIC_TALK_PAGE_NAME)) {
-			String temp = model.getPageName();
+			break;
+		case TALK_PAGE_NAME:
+			temp = model.getPageName();
 			if (temp != null) {
 				INamespace ns = model.getNamespace();
 				if (parameter.length() > 0) {
@@ -391,6 +430,7 @@ public class MagicWord {
 				}
 				return ns.getTalk() + temp;
 			}
+			break;
 		}
 
 		return name;
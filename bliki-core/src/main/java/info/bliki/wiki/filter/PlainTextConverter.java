@@ -6,6 +6,7 @@ import info.bliki.htmlcleaner.Utils;
 import info.bliki.wiki.model.Configuration;
 import info.bliki.wiki.model.IWikiModel;
 import info.bliki.wiki.model.ImageFormat;
+import info.bliki.wiki.model.RenderBudget;
 import info.bliki.wiki.tags.HTMLTag;
 
 import java.io.IOException;
@@ -40,8 +41,12 @@ public class PlainTextConverter implements ITextConverter {
               .append("Error - recursion limit exceeded rendering tags in PlainTextConverter#nodesToText().");
           return;
         }
+        RenderBudget budget = model.getRenderBudget();
         Iterator<? extends Object> childrenIt = nodes.iterator();
         while (childrenIt.hasNext()) {
+          if (budget != null && budget.isTimeExceeded()) {
+            return;
+          }
           Object item = childrenIt.next();
           if (item != null) {
             if (item instanceof List) {
@@ -19,6 +19,21 @@ public class SectionHeader extends StringPair {
 		this.fEndPosition = endPosition;
 	}
 
+	/**
+	 * The level of the head (i.e. <code>2</code> for <code>== head ==</code>)
+	 */
+	public int getLevel() {
+		return fLevel;
+	}
+
+	public int getStartPosition() {
+		return fStartPosition;
+	}
+
+	public int getEndPosition() {
+		return fEndPosition;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
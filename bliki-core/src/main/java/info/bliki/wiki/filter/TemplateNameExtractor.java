@@ -0,0 +1,176 @@
+package info.bliki.wiki.filter;
+
+import info.bliki.wiki.model.IWikiModel;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A lightweight scanner which extracts the names of the called templates from
+ * a raw wiki text, without expanding the templates. The scanner is used to
+ * prefetch the templates of a page before the page is rendered.
+ * 
+ * Parser functions, magic words, template parameters and template names which
+ * are created dynamically (i.e. <code>{{Flag{{{1}}}}}</code>) are ignored.
+ * Templates which are called inside of parser functions are returned, even if
+ * the branch of the parser function isn't used.
+ */
+public class TemplateNameExtractor {
+	private final static String[] TEMPLATE_PREFIXES = { "subst:", "safesubst:", "msgnw:", "msg:", "raw:" };
+
+	/**
+	 * Normalize a page name; underscores are replaced by spaces and the first
+	 * character is converted to upper case.
+	 * 
+	 * @param name
+	 *          the page name
+	 * @return the normalized page name
+	 */
+	public static String normalize(String name) {
+		name = name.replace('_', ' ').trim();
+		if (name.length() > 0 && Character.isLowerCase(name.charAt(0))) {
+			return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+		}
+		return name;
+	}
+
+	/**
+	 * Extract the names of the templates called in the raw wiki text.
+	 * 
+	 * @param rawWikiText
+	 *          the raw wiki text
+	 * @param wikiModel
+	 *          the wiki model which defines the namespaces and parser functions
+	 * @param transcluded
+	 *          if <code>true</code> the raw wiki text is the text of a template;
+	 *          the <code>&lt;noinclude&gt;</code> sections are ignored and the
+	 *          target of a <code>#REDIRECT</code> is returned
+	 * @return the normalized names of the templates without the template
+	 *         namespace prefix, in the order of their first call
+	 */
+	public static Set<String> extract(String rawWikiText, IWikiModel wikiModel, boolean transcluded) {
+		Set<String> result = new LinkedHashSet<String>();
+		if (transcluded) {
+			String redirect = getRedirectTemplateName(rawWikiText, wikiModel);
+			if (redirect != null) {
+				result.add(redirect);
+				return result;
+			}
+			rawWikiText = removeNoinclude(rawWikiText);
+		}
+		int length = rawWikiText.length();
+		int index = 0;
+		while ((index = rawWikiText.indexOf("{{", index)) >= 0) {
+			int start = index + 2;
+			while (start < length && rawWikiText.charAt(start) == '{') {
+				start++;
+			}
+			if (start - index != 2) {
+				// template parameter {{{...}}} or nested braces
+				index = start;
+				continue;
+			}
+			int end = start;
+			char ch = 0;
+			while (end < length) {
+				ch = rawWikiText.charAt(end);
+				if (ch == '|' || ch == '}' || ch == '{' || ch == '<' || ch == '[') {
+					break;
+				}
+				end++;
+			}
+			index = end;
+			if (end == length || ch == '{' || ch == '<' || ch == '[') {
+				// dynamic or invalid template name
+				continue;
+			}
+			String name = getTemplateName(rawWikiText.substring(start, end).trim(), wikiModel);
+			if (name != null) {
+				result.add(name);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the name of the template, which is the target of a
+	 * <code>#REDIRECT [[...]]</code> link.
+	 * 
+	 * @return <code>null</code> if the text doesn't redirect to a template
+	 */
+	private static String getRedirectTemplateName(String text, IWikiModel wikiModel) {
+		String trimmed = text.trim();
+		if (trimmed.length() == 0 || trimmed.charAt(0) != '#' || !WikipediaScanner.startsWith(trimmed, 1, "redirect", true)) {
+			return null;
+		}
+		int start = trimmed.indexOf("[[");
+		int end = start < 0 ? -1 : trimmed.indexOf("]]", start);
+		if (end < 0) {
+			return null;
+		}
+		String link = trimmed.substring(start + 2, end);
+		int colonIndex = link.indexOf(':');
+		if (colonIndex > 0 && wikiModel.isTemplateNamespace(link.substring(0, colonIndex).trim())) {
+			String name = normalize(link.substring(colonIndex + 1));
+			return name.length() == 0 ? null : name;
+		}
+		return null;
+	}
+
+	/**
+	 * Remove the <code>&lt;noinclude&gt;</code> sections of a template.
+	 */
+	private static String removeNoinclude(String text) {
+		int index = text.indexOf("<noinclude>");
+		if (index < 0) {
+			return text;
+		}
+		StringBuilder buf = new StringBuilder(text.length());
+		int lastIndex = 0;
+		while (index >= 0) {
+			buf.append(text, lastIndex, index);
+			int endIndex = text.indexOf("</noinclude>", index);
+			if (endIndex < 0) {
+				return buf.toString();
+			}
+			lastIndex = endIndex + 12;
+			index = text.indexOf("<noinclude>", lastIndex);
+		}
+		buf.append(text, lastIndex, text.length());
+		return buf.toString();
+	}
+
+	/**
+	 * Get the name of the template from the text of a template call.
+	 * 
+	 * @return <code>null</code> if the text doesn't call a template
+	 */
+	private static String getTemplateName(String name, IWikiModel wikiModel) {
+		if (name.length() == 0 || name.charAt(0) == '#' || name.charAt(0) == ':' || name.indexOf('\n') >= 0) {
+			// parser function or main namespace
+			return null;
+		}
+		for (int i = 0; i < TEMPLATE_PREFIXES.length; i++) {
+			if (name.regionMatches(true, 0, TEMPLATE_PREFIXES[i], 0, TEMPLATE_PREFIXES[i].length())) {
+				name = name.substring(TEMPLATE_PREFIXES[i].length()).trim();
+				break;
+			}
+		}
+		int colonIndex = name.indexOf(':');
+		if (colonIndex > 0) {
+			String prefix = name.substring(0, colonIndex).trim();
+			if (MagicWord.isMagicWord(prefix) || wikiModel.getTemplateFunction(prefix) != null) {
+				return null;
+			}
+			if (wikiModel.isTemplateNamespace(prefix)) {
+				name = name.substring(colonIndex + 1);
+			} else if (wikiModel.isNamespace(prefix)) {
+				return null;
+			}
+		} else if (MagicWord.isMagicWord(name)) {
+			return null;
+		}
+		name = normalize(name);
+		return name.length() == 0 ? null : name;
+	}
+}
@@ -1,8 +1,9 @@
 package info.bliki.wiki.filter;
 
-import info.bliki.htmlcleaner.Utils;
 import info.bliki.wiki.model.Configuration;
 import info.bliki.wiki.model.IWikiModel;
+import info.bliki.wiki.model.RenderBudget;
+import info.bliki.wiki.model.RenderProfile;
 import info.bliki.wiki.tags.util.WikiTagNode;
 import info.bliki.wiki.template.ITemplateFunction;
 
@@ -21,6 +22,14 @@ import java.util.regex.Pattern;
 public class TemplateParser extends AbstractParser {
 	private static final Pattern HTML_COMMENT_PATTERN = Pattern.compile("<!--(.*?)-->");
 
+	/**
+	 * If <code>true</code> all passes of the template parser run, even if the
+	 * text doesn't contain any markup which could be changed by a pass. The
+	 * result is the same; this is only used as the baseline for measuring the
+	 * skipped passes.
+	 */
+	public static boolean RUN_ALL_PASSES = false;
+
 	/**
 	 * If true, parses only signatures, ignoring templates and parameters
 	 */
@@ -90,50 +99,87 @@ public class TemplateParser extends AbstractParser {
 				// ") exceeded parsing templates.");
 				return;
 			}
+			RenderBudget budget = wikiModel.getRenderBudget();
+			if (budget != null && budget.isExpansionExceeded()) {
+				return;
+			}
 
-			TemplateParser parser = new TemplateParser(rawWikitext, parseOnlySignature, renderTemplate);
-			parser.setModel(wikiModel);
-			StringBuilder sb = new StringBuilder(rawWikitext.length());
-			parser.runPreprocessParser(sb, false);
+			// every pass is skipped, if the text doesn't contain any markup which
+			// could be changed by the pass
 			if (parseOnlySignature) {
-				writer.append(sb);
+				if (RUN_ALL_PASSES || containsChar(rawWikitext, '<', '~')) {
+					TemplateParser parser = new TemplateParser(rawWikitext, parseOnlySignature, renderTemplate);
+					parser.setModel(wikiModel);
+					StringBuilder sb = new StringBuilder(rawWikitext.length());
+					parser.runPreprocessParser(sb, false);
+					writer.append(sb);
+				} else {
+					writer.append(rawWikitext);
+				}
 				return;
 			}
+			String preprocessedContent = preprocess(rawWikitext, wikiModel, renderTemplate);
 
-			int len = sb.length();
-			parser = new TemplateParser(sb.toString(), false, renderTemplate);
-			parser.setModel(wikiModel);
-			sb = new StringBuilder(len);
-			parser.runPreprocessParser(sb, true);
-
-			StringBuilder parameterBuffer = sb;
-			StringBuilder plainBuffer = sb;
-			if (templateParameterMap != null && (!templateParameterMap.isEmpty())) {
-				String preprocessedContent = parameterBuffer.toString();
+			String plainContent = preprocessedContent;
+			if (templateParameterMap != null && (!templateParameterMap.isEmpty())
+					&& (RUN_ALL_PASSES || preprocessedContent.indexOf("{{{") >= 0)) {
 				WikipediaScanner scanner = new WikipediaScanner(preprocessedContent);
 				scanner.setModel(wikiModel);
-				parameterBuffer = scanner.replaceTemplateParameters(preprocessedContent, templateParameterMap);
+				StringBuilder parameterBuffer = scanner.replaceTemplateParameters(preprocessedContent, templateParameterMap);
 				if (parameterBuffer != null) {
-					plainBuffer = parameterBuffer;
+					plainContent = parameterBuffer.toString();
 				}
 			}
-			parser = new TemplateParser(plainBuffer.toString(), parseOnlySignature, renderTemplate);
-			parser.setModel(wikiModel);
-			// parser.initialize(plainBuffer.toString());
-			sb = new StringBuilder(plainBuffer.length());
-			parser.runParser(sb);
+			parsePlainContent(plainContent, wikiModel, writer, renderTemplate);
+			return;
+		} catch (Exception e) {
+			e.printStackTrace();
+			writer.append(e.getClass().getSimpleName());
+		} catch (Error e) {
+			e.printStackTrace();
+			writer.append(e.getClass().getSimpleName());
+		} finally {
+			wikiModel.decrementRecursionLevel();
+		}
+	}
 
-			if (!renderTemplate) {
-				String redirectedLink = AbstractParser.parseRedirect(sb.toString(), wikiModel);
-				if (redirectedLink != null) {
-					String redirectedContent = AbstractParser.getRedirectedTemplateContent(wikiModel, redirectedLink, null);
-					if (redirectedContent != null) {
-						parseRecursive(redirectedContent, wikiModel, writer, parseOnlySignature, renderTemplate);
-						return;
-					}
-				}
+	/**
+	 * Expand a compiled template with the given template parameters. The
+	 * result is the same as the result of
+	 * <code>parseRecursive(template.getRawContent(), wikiModel, writer, false, false, templateParameterMap)</code>
+	 * , but the template doesn't need to be preprocessed and scanned for
+	 * template parameters again.
+	 * 
+	 * @param template
+	 *          the compiled template
+	 * @param wikiModel
+	 * @param writer
+	 * @param templateParameterMap
+	 *          the parameters of the template call
+	 * @throws IOException
+	 * @see CompiledTemplate
+	 */
+	public static void parseRecursive(CompiledTemplate template, IWikiModel wikiModel, Appendable writer,
+			Map<String, String> templateParameterMap) throws IOException {
+		try {
+			int level = wikiModel.incrementRecursionLevel();
+			if (level > Configuration.PARSER_RECURSION_LIMIT) {
+				writer.append("Error - recursion limit exceeded parsing templates.");
+				return;
 			}
-			writer.append(sb);
+			if (wikiModel.incrementTemplateRecursionCount() > Configuration.TEMPLATE_RECURSION_LIMIT) {
+				return;
+			}
+			RenderBudget budget = wikiModel.getRenderBudget();
+			if (budget != null && budget.isExpansionExceeded()) {
+				return;
+			}
+
+			String plainContent = template.getContent();
+			if (templateParameterMap != null && (!templateParameterMap.isEmpty())) {
+				plainContent = template.replaceTemplateParameters(wikiModel, templateParameterMap);
+			}
+			parsePlainContent(plainContent, wikiModel, writer, false);
 			return;
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -146,6 +192,98 @@ public class TemplateParser extends AbstractParser {
 		}
 	}
 
+	/**
+	 * Run the preprocessor passes, which handle comments, signatures and the
+	 * <code>&lt;includeonly&gt;</code>, <code>&lt;onlyinclude&gt;</code> and
+	 * <code>&lt;noinclude&gt;</code> tags.
+	 * 
+	 * @param rawWikitext
+	 * @param wikiModel
+	 * @param renderTemplate
+	 * @return the preprocessed text
+	 * @throws IOException
+	 */
+	static String preprocess(String rawWikitext, IWikiModel wikiModel, boolean renderTemplate) throws IOException {
+		if (!RUN_ALL_PASSES && !containsChar(rawWikitext, '<', '~')) {
+			return rawWikitext;
+		}
+		TemplateParser parser = new TemplateParser(rawWikitext, false, renderTemplate);
+		parser.setModel(wikiModel);
+		StringBuilder sb = new StringBuilder(rawWikitext.length());
+		parser.runPreprocessParser(sb, false);
+
+		if (RUN_ALL_PASSES || sb.indexOf("<!--") >= 0 || sb.indexOf("~") >= 0) {
+			// the first pass may have created new comments or signatures
+			int len = sb.length();
+			parser = new TemplateParser(sb.toString(), false, renderTemplate);
+			parser.setModel(wikiModel);
+			sb = new StringBuilder(len);
+			parser.runPreprocessParser(sb, true);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Parse the templates of the preprocessed text with substituted template
+	 * parameters and follow a template redirect.
+	 */
+	private static void parsePlainContent(String plainContent, IWikiModel wikiModel, Appendable writer, boolean renderTemplate)
+			throws IOException {
+		CharSequence result = plainContent;
+		if (RUN_ALL_PASSES || containsChar(plainContent, '{', '<', '~')) {
+			TemplateParser parser = new TemplateParser(plainContent, false, renderTemplate);
+			parser.setModel(wikiModel);
+			StringBuilder sb = new StringBuilder(plainContent.length());
+			parser.runParser(sb);
+			result = sb;
+		}
+
+		if (!renderTemplate && (RUN_ALL_PASSES || startsWithRedirect(result))) {
+			String redirectedLink = AbstractParser.parseRedirect(result.toString(), wikiModel);
+			if (redirectedLink != null) {
+				String redirectedContent = AbstractParser.getRedirectedTemplateContent(wikiModel, redirectedLink, null);
+				if (redirectedContent != null) {
+					parseRecursive(redirectedContent, wikiModel, writer, false, renderTemplate);
+					return;
+				}
+			}
+		}
+		writer.append(result);
+	}
+
+	/**
+	 * Check if the text contains one of the given characters.
+	 */
+	static boolean containsChar(String text, char ch1, char ch2) {
+		return text.indexOf(ch1) >= 0 || text.indexOf(ch2) >= 0;
+	}
+
+	/**
+	 * Check if the text contains one of the given characters.
+	 */
+	private static boolean containsChar(String text, char ch1, char ch2, char ch3) {
+		return text.indexOf(ch1) >= 0 || text.indexOf(ch2) >= 0 || text.indexOf(ch3) >= 0;
+	}
+
+	/**
+	 * Check if the first non whitespace character is a '#', which may start a
+	 * <code>#REDIRECT [[...]]</code> link.
+	 * 
+	 * @see AbstractParser#parseRedirect(String, IWikiModel)
+	 */
+	private static boolean startsWithRedirect(CharSequence text) {
+		for (int i = 0; i < text.length(); i++) {
+			char ch = text.charAt(i);
+			if (ch == '#') {
+				return true;
+			}
+			if (!Character.isWhitespace(ch)) {
+				return false;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Preprocess parsing of the <code>&lt;includeonly&gt;</code>,
 	 * <code>&lt;onlyinclude&gt;</code> and <code>&lt;noinclude&gt;</code> tags
@@ -219,6 +357,7 @@ public class TemplateParser extends AbstractParser {
 		// int oldCurrentPosition = 0;
 		fWhiteStart = true;
 		fWhiteStartPosition = fCurrentPosition;
+		RenderBudget budget = fWikiModel.getRenderBudget();
 		try {
 			while (fCurrentPosition < fStringSource.length()) {
 				// if (oldCurrentPosition >= fCurrentPosition) {
@@ -227,6 +366,10 @@ public class TemplateParser extends AbstractParser {
 				// System.exit(-1);
 				// }
 				char ch = fStringSource.charAt(fCurrentPosition++);
+				if (ch == '{' && budget != null && budget.isExpansionExceeded()) {
+					// return the partial result
+					break;
+				}
 
 				// oldCurrentPosition = fCurrentPosition;
 				// ---------Identify the next token-------------
@@ -491,7 +634,7 @@ public class TemplateParser extends AbstractParser {
 				final int whiteEndPosition = fCurrentPosition - diff;
 				int count = whiteEndPosition - whiteStartPosition;
 				if (count > 0) {
-					if (stripHTMLComments) {
+					if (stripHTMLComments && (RUN_ALL_PASSES || containsHTMLComment(whiteStartPosition, whiteEndPosition))) {
 						writer.append(HTML_COMMENT_PATTERN.matcher(fStringSource.substring(whiteStartPosition, whiteEndPosition))
 								.replaceAll(""));
 					} else {
@@ -504,6 +647,16 @@ public class TemplateParser extends AbstractParser {
 		}
 	}
 
+	private boolean containsHTMLComment(int startPosition, int endPosition) {
+		for (int i = startPosition; i < endPosition - 3; i++) {
+			if (fStringSource.charAt(i) == '<' && fStringSource.charAt(i + 1) == '!' && fStringSource.charAt(i + 2) == '-'
+					&& fStringSource.charAt(i + 3) == '-') {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	private boolean parseTemplateOrTemplateParameter(Appendable writer) throws IOException {
 		if (fStringSource.charAt(fCurrentPosition) == '{') {
 			appendContent(writer, fWhiteStart, fWhiteStartPosition, 1, true);
@@ -559,9 +712,9 @@ public class TemplateParser extends AbstractParser {
 		int endPosition = fCurrentPosition;
 		String plainContent = null;
 		int endOffset = fCurrentPosition - 2;
-		Object[] objs = createParameterMap(fStringSource, startTemplatePosition, fCurrentPosition - startTemplatePosition - 2);
-		List<String> parts = (List<String>) objs[0];
-		String templateName = ((String) objs[1]).trim();
+		List<CharSlice> parts = createParameterMap(fStringSource, startTemplatePosition, fCurrentPosition - startTemplatePosition
+				- 2);
+		String templateName = parts.get(0).trim().toString();
 		StringBuilder buf = new StringBuilder((templateName.length()) + (templateName.length() / 10));
 		TemplateParser.parse(templateName, fWikiModel, buf, false);
 		templateName = buf.toString();
@@ -573,8 +726,17 @@ public class TemplateParser extends AbstractParser {
 				if (templateFunction != null) {
 					// if (function.charAt(0) == '#') {
 					// #if:, #ifeq:,...
-					parts.set(0, templateName.substring(currOffset));
-					plainContent = templateFunction.parseFunction(parts, fWikiModel, fStringSource, startTemplatePosition + currOffset, endOffset);
+					RenderProfile profile = fWikiModel.getRenderProfile();
+					if (profile != null) {
+						profile.addParserFunctionCall(function);
+					}
+					List<String> list = new ArrayList<String>(parts.size());
+					list.add(templateName.substring(currOffset));
+					for (int i = 1; i < parts.size(); i++) {
+						list.add(parts.get(i).toString());
+					}
+					plainContent = templateFunction.parseFunction(list, fWikiModel, fStringSource, startTemplatePosition + currOffset,
+							endOffset);
 					fCurrentPosition = endPosition;
 					if (plainContent != null) {
 						TemplateParser.parseRecursive(plainContent, fWikiModel, writer, false, false);
@@ -639,77 +801,80 @@ public class TemplateParser extends AbstractParser {
 	}
 
 	/**
-	 * Create a map from the parameters defined in a template call
+	 * Split a template call into its parts. The parts are slices of the source
+	 * string; the first part contains the template name.
 	 * 
-	 * @return the templates parameters <code>java.util.List</code> at index [0];
-	 *         the template name at index [1]
+	 * @return the templates parameters <code>java.util.List</code>
 	 * 
 	 */
-	private static Object[] createParameterMap(String src, int startOffset, int len) {
-		Object[] objs = new Object[2];
+	private static List<CharSlice> createParameterMap(String src, int startOffset, int len) {
 		int currOffset = startOffset;
 		int endOffset = startOffset + len;
-		List<String> resultList = new ArrayList<String>();
-		objs[0] = resultList;
-		resultList = WikipediaScanner.splitByPipe(src, currOffset, endOffset, resultList);
+		List<CharSlice> resultList = new ArrayList<CharSlice>();
+		resultList = WikipediaScanner.splitByPipeSlices(src, currOffset, endOffset, resultList);
 		if (resultList.size() <= 1) {
 			// set the template name
-			objs[1] = src.subSequence(startOffset, startOffset + len);//new String(src, startOffset, len);
-		} else {
-			objs[1] = resultList.get(0);
+			CharSlice name = new CharSlice(src, startOffset, endOffset);
+			if (resultList.size() == 0) {
+				resultList.add(name);
+			} else {
+				resultList.set(0, name);
+			}
 		}
-		return objs;
+		return resultList;
 	}
 
 	/**
 	 * Create a single parameter defined in a template call and add it to the
-	 * parameters map
+	 * parameters map. The parameter is scanned in the shared source string of
+	 * the slice; only the parameter name and value are converted to strings.
 	 * 
 	 */
-	private static void createSingleParameter(String srcString, Map<String, String> map, List<String> unnamedParams,
+	private static void createSingleParameter(CharSlice slice, Map<String, String> map, List<String> unnamedParams,
 			boolean trimNewlineRight) {
-		int currOffset = 0;
-		char[] src = srcString.toCharArray();
-		int endOffset = srcString.length();
+		String srcString = slice.getSource();
+		int currOffset = slice.getStart();
+		int endOffset = slice.getEnd();
 		char ch;
 		String parameter = null;
 		String value;
 		boolean equalCharParsed = false;
 
 		int lastOffset = currOffset;
-		int[] temp = new int[] { -1, -1 };
+		int temp;
 		try {
 			while (currOffset < endOffset) {
-				ch = src[currOffset++];
-				if (ch == '[' && src[currOffset] == '[') {
+				ch = srcString.charAt(currOffset++);
+				if (ch == '[' && WikipediaScanner.charAt(srcString, currOffset, endOffset) == '[') {
 					currOffset++;
-					temp[0] = WikipediaScanner.findNestedEnd(srcString, '[', ']', currOffset);
-					if (temp[0] >= 0) {
-						currOffset = temp[0];
+					temp = WikipediaScanner.findNestedEnd(srcString, '[', ']', currOffset, endOffset);
+					if (temp >= 0) {
+						currOffset = temp;
 					}
-				} else if (ch == '{' && src[currOffset] == '{') {
+				} else if (ch == '{' && WikipediaScanner.charAt(srcString, currOffset, endOffset) == '{') {
 					currOffset++;
-					if (src[currOffset] == '{' && src[currOffset + 1] != '{') {
+					if (WikipediaScanner.charAt(srcString, currOffset, endOffset) == '{'
+							&& WikipediaScanner.charAt(srcString, currOffset + 1, endOffset) != '{') {
 						currOffset++;
-						temp = WikipediaScanner.findNestedParamEnd(srcString, currOffset);
-						if (temp[0] >= 0) {
-							currOffset = temp[0];
+						temp = WikipediaScanner.findNestedParamEnd(srcString, currOffset, endOffset)[0];
+						if (temp >= 0) {
+							currOffset = temp;
 						} else {
 							currOffset--;
-							temp[0] = WikipediaScanner.findNestedTemplateEnd(srcString, currOffset);
-							if (temp[0] >= 0) {
-								currOffset = temp[0];
+							temp = WikipediaScanner.findNestedTemplateEnd(srcString, currOffset, endOffset);
+							if (temp >= 0) {
+								currOffset = temp;
 							}
 						}
 					} else {
-						temp[0] = WikipediaScanner.findNestedTemplateEnd(srcString, currOffset);
-						if (temp[0] >= 0) {
-							currOffset = temp[0];
+						temp = WikipediaScanner.findNestedTemplateEnd(srcString, currOffset, endOffset);
+						if (temp >= 0) {
+							currOffset = temp;
 						}
 					}
 				} else if (ch == '=') {
 					if (!equalCharParsed) {
-						parameter = srcString.substring(lastOffset, currOffset - 1).trim();
+						parameter = CharSlice.trim(srcString, lastOffset, currOffset - 1).toString();
 						lastOffset = currOffset;
 					}
 					equalCharParsed = true;
@@ -721,9 +886,9 @@ public class TemplateParser extends AbstractParser {
 		} finally {
 			if (currOffset > lastOffset) {
 				if (trimNewlineRight) {
-					value = Utils.trimNewlineRight(srcString.substring(lastOffset, currOffset));
+					value = CharSlice.trimNewlineRight(srcString, lastOffset, currOffset).toString();
 				} else {
-					value = srcString.substring(lastOffset, currOffset).trim();
+					value = CharSlice.trim(srcString, lastOffset, currOffset).toString();
 				}
 				if (parameter != null) {
 					map.put(parameter, value);
@@ -5,11 +5,14 @@ import info.bliki.htmlcleaner.ContentToken;
 import info.bliki.htmlcleaner.EndTagToken;
 import info.bliki.htmlcleaner.TagNode;
 import info.bliki.htmlcleaner.TagToken;
+import info.bliki.htmlcleaner.TagTypes;
 import info.bliki.wiki.model.Configuration;
 import info.bliki.wiki.model.DefaultEventListener;
 import info.bliki.wiki.model.IEventListener;
 import info.bliki.wiki.model.ITableOfContent;
 import info.bliki.wiki.model.IWikiModel;
+import info.bliki.wiki.model.RenderBudget;
+import info.bliki.wiki.model.RenderProfile;
 import info.bliki.wiki.tags.HTMLBlockTag;
 import info.bliki.wiki.tags.HTMLTag;
 import info.bliki.wiki.tags.HrTag;
@@ -24,6 +27,7 @@ import info.bliki.wiki.tags.util.NodeAttribute;
 import info.bliki.wiki.tags.util.TagStack;
 import info.bliki.wiki.tags.util.WikiTagNode;
 
+import java.util.BitSet;
 import java.util.List;
 
 /**
@@ -274,14 +278,8 @@ public class WikipediaParser extends AbstractParser implements IParser {
 							if (tag instanceof WPPreTag) {
 								addPreformattedText();
 							} else {
-								String allowedParents = Configuration.HTML_PARAGRAPH_OPEN.getParents();
-								if (allowedParents != null) {
-
-									int index = -1;
-									index = allowedParents.indexOf("|" + tag.getName() + "|");
-									if (index >= 0) {
-										addParagraph();
-									}
+								if (Configuration.HTML_PARAGRAPH_OPEN.isAllowedParent(tag)) {
+									addParagraph();
 								}
 							}
 						}
@@ -355,8 +353,7 @@ public class WikipediaParser extends AbstractParser implements IParser {
 
 										fCurrentPosition = scanner.getPosition();//fScannerPosition;
 
-										String allowedParents = tag.getParents();
-										if (allowedParents != null) {
+										if (tag.getParentTypes() != null) {
 											reduceTokenStack(tag);
 										}
 										createTag(tag, tagNode, tagNode.getEndPosition());
@@ -1144,7 +1141,12 @@ public class WikipediaParser extends AbstractParser implements IParser {
 
 	public void runParser() {
 		int token = TokenSTART;
+		RenderBudget budget = fWikiModel.getRenderBudget();
 		while ((token = getNextToken()) != TokenEOF) {
+			if (budget != null && budget.isParseExceeded()) {
+				// return the partial result
+				break;
+			}
 			switch (token) {
 			case TokenBOLDITALIC:
 				if (fWikiModel.stackSize() > 0 && fWikiModel.peekNode().equals(BOLDITALIC)) {
@@ -1243,17 +1245,17 @@ public class WikipediaParser extends AbstractParser implements IParser {
 	 * stack
 	 */
 	private void reduceTokenStack(TagToken node) {
-		String allowedParents = node.getParents();
+		BitSet allowedParents = node.getParentTypes();
 		if (allowedParents != null) {
 			TagToken tag;
-			int index = -1;
+			int nodeId = node.getTypeId();
 
 			while (fWikiModel.stackSize() > 0) {
 				tag = fWikiModel.peekNode();
-				index = allowedParents.indexOf("|" + tag.getName() + "|");
-				if (index < 0) {
+				int tagId = tag.getTypeId();
+				if (!TagTypes.contains(allowedParents, tagId)) {
 					fWikiModel.popNode();
-					if (tag.getName().equals(node.getName())) {
+					if (nodeId >= 0 ? tagId == nodeId : tag.getName().equals(node.getName())) {
 						// for wrong nested HTML tags like <table> <tr><td>number
 						// 1<tr><td>number 2</table>
 						break;
@@ -1275,19 +1277,19 @@ public class WikipediaParser extends AbstractParser implements IParser {
 	 */
 	private void reduceStackUntilToken(TagToken node) {
 		TagToken tag;
-		int index = -1;
-		String allowedParents = node.getParents();
+		int nodeId = node.getTypeId();
+		BitSet allowedParents = node.getParentTypes();
 		while (fWikiModel.stackSize() > 0) {
 			tag = fWikiModel.peekNode();
-			if (node.getName().equals(tag.getName())) {
+			int tagId = tag.getTypeId();
+			if (nodeId >= 0 ? tagId == nodeId : node.getName().equals(tag.getName())) {
 				fWikiModel.popNode();
 				break;
 			}
 			if (allowedParents == null) {
 				fWikiModel.popNode();
 			} else {
-				index = allowedParents.indexOf("|" + tag.getName() + "|");
-				if (index < 0) {
+				if (!TagTypes.contains(allowedParents, tagId)) {
 					fWikiModel.popNode();
 				} else {
 					break;
@@ -1337,22 +1339,16 @@ public class WikipediaParser extends AbstractParser implements IParser {
 			} else {
 				buf = new StringBuilder(rawWikiText.length() + rawWikiText.length() / 10);
 			}
+			RenderProfile profile = wikiModel.getRenderProfile();
 			if (parseTemplates) {
-				String pass1Text = null;
-				try {
-					TemplateParser.parse(rawWikiText, wikiModel, buf, wikiModel.isTemplateTopic());
-					pass1Text = buf.toString();
-				} catch (Exception ioe) {
-					ioe.printStackTrace();
-					pass1Text = "<span class=\"error\">TemplateParser exception: " + ioe.getClass().getSimpleName() + "</span>";
-				}
+				String pass1Text = parseTemplates(rawWikiText, wikiModel, buf, profile);
 				String redirectedLink = AbstractParser.parseRedirect(pass1Text, wikiModel);
 				if (redirectedLink == null) {
-					parseRecursive(pass1Text, wikiModel, false, false);
+					parseRecursive(pass1Text, wikiModel, false, false, profile);
 				}
 			} else {
 				if (AbstractParser.parseRedirect(rawWikiText, wikiModel) == null) {
-					parseRecursive(rawWikiText, wikiModel, false, false);
+					parseRecursive(rawWikiText, wikiModel, false, false, profile);
 				}
 			}
 		} finally {
@@ -1361,6 +1357,55 @@ public class WikipediaParser extends AbstractParser implements IParser {
 		}
 	}
 
+	/**
+	 * Parse a section of an article on the first recursion level. This is the
+	 * same as <code>parse(rawWikiText, wikiModel, true, null)</code>, but the
+	 * wiki model doesn't call the <code>setUp()</code> or <code>tearDown()</code>
+	 * methods and redirects aren't recognized, so that the sections of an
+	 * article can be parsed one after another.
+	 * 
+	 * @param rawWikiText
+	 *          the raw text of the section
+	 * @param wikiModel
+	 *          a suitable wiki model for the given wiki article text
+	 * @see info.bliki.wiki.model.SectionCache
+	 */
+	public static void parseSection(String rawWikiText, IWikiModel wikiModel) {
+		RenderProfile profile = wikiModel.getRenderProfile();
+		StringBuilder buf = new StringBuilder(rawWikiText.length() + rawWikiText.length() / 10);
+		parseRecursive(parseTemplates(rawWikiText, wikiModel, buf, profile), wikiModel, false, false, profile);
+	}
+
+	private static String parseTemplates(String rawWikiText, IWikiModel wikiModel, Appendable buf, RenderProfile profile) {
+		if (profile != null) {
+			profile.beginPhase(RenderProfile.PREPROCESS_PHASE);
+		}
+		try {
+			TemplateParser.parse(rawWikiText, wikiModel, buf, wikiModel.isTemplateTopic());
+			return buf.toString();
+		} catch (Exception ioe) {
+			ioe.printStackTrace();
+			return "<span class=\"error\">TemplateParser exception: " + ioe.getClass().getSimpleName() + "</span>";
+		} finally {
+			if (profile != null) {
+				profile.endPhase(RenderProfile.PREPROCESS_PHASE);
+			}
+		}
+	}
+
+	private static TagStack parseRecursive(String rawWikitext, IWikiModel wikiModel, boolean createOnlyLocalStack, boolean noTOC,
+			RenderProfile profile) {
+		if (profile == null) {
+			return parseRecursive(rawWikitext, wikiModel, createOnlyLocalStack, noTOC);
+		}
+		profile.beginPhase(RenderProfile.PARSE_PHASE);
+		try {
+			return parseRecursive(rawWikitext, wikiModel, createOnlyLocalStack, noTOC);
+		} finally {
+			profile.endPhase(RenderProfile.PARSE_PHASE);
+		}
+	}
+
 	/**
 	 * Call the parser on the subsequent recursion levels, where the subtexts (of
 	 * templates, table cells, list items or image captions) don't contain a table
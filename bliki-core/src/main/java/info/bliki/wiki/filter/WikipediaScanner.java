@@ -633,6 +633,7 @@ public class WikipediaScanner {
 			}
 			char ch;
 			int parameterStart = -1;
+			List<CharSlice> slices = null;
 			StringBuilder recursiveResult;
 			while (fScannerPosition < fStringSource.length()) {
 				ch = fStringSource.charAt(fScannerPosition++);
@@ -645,15 +646,22 @@ public class WikipediaScanner {
 					int temp[] = findNestedParamEnd(fStringSource, parameterStart);
 					if (temp[0] >= 0) {
 						fScannerPosition = temp[0];
-						List<String> list = splitByPipe(fStringSource, parameterStart, fScannerPosition - 3, null);
+						if (slices == null) {
+							slices = new ArrayList<CharSlice>();
+						} else {
+							slices.clear();
+						}
+						// only the parameter name and the used value are converted to
+						// strings
+						List<CharSlice> list = splitByPipeSlices(fStringSource, parameterStart, fScannerPosition - 3, slices);
 						if (list.size() > 0) {
-							String parameterString = list.get(0);
+							String parameterString = list.get(0).toString();
 							String value = null;
 							if (templateParameters != null) {
 								value = templateParameters.get(parameterString);
 							}
 							if (value == null && list.size() > 1) {
-								value = list.get(1);
+								value = list.get(1).toString();
 							}
 							if (value != null) {
 								if (value.length() <= Configuration.TEMPLATE_VALUE_LIMIT) {
@@ -709,7 +717,6 @@ public class WikipediaScanner {
 	 * @return
 	 */
 	public static List<String> splitByPipe(String sourceString, List<String> resultList) {
-		// TODO optimize this to avoid new char[] generation inside toCharArray() ?
 		return splitByPipe(sourceString, 0, sourceString.length(), resultList);
 	}
 
@@ -727,10 +734,31 @@ public class WikipediaScanner {
 		if (resultList == null) {
 			resultList = new ArrayList<String>();
 		}
+		List<CharSlice> slices = splitByPipeSlices(srcArray, currOffset, endOffset, new ArrayList<CharSlice>());
+		for (int i = 0; i < slices.size(); i++) {
+			resultList.add(slices.get(i).toString());
+		}
+		return resultList;
+	}
+
+	/**
+	 * Split the given src string by pipe symbol (i.e. &quot;|&quot;) into
+	 * slices, which share the characters of the source string. Every slice is
+	 * trimmed like {@link Utils#trimNewlineRight(String)}.
+	 * 
+	 * @param srcArray
+	 * @param currOffset
+	 * @param endOffset
+	 * @param resultList
+	 *          the list which contains the splitted slices
+	 * @return
+	 */
+	public static List<CharSlice> splitByPipeSlices(String srcArray, int currOffset, int endOffset, List<CharSlice> resultList) {
+		if (resultList == null) {
+			resultList = new ArrayList<CharSlice>();
+		}
 		char ch;
-		String value;
-		int[] temp = new int[] { -1, -1 };
-		;
+		int temp;
 		int lastOffset = currOffset;
 		try {
 			while (currOffset < endOffset) {
@@ -738,55 +766,59 @@ public class WikipediaScanner {
 				// match '[['
 				if (ch == '[' && srcArray.charAt(currOffset) == '[') {
 					currOffset++;
-					temp[0] = findNestedEnd(srcArray, '[', ']', currOffset);
-					if (temp[0] >= 0) {
-						currOffset = temp[0];
+					temp = findNestedEnd(srcArray, '[', ']', currOffset);
+					if (temp >= 0) {
+						currOffset = temp;
 					}
 				// match '{{'
 				} else if (ch == '{' && srcArray.charAt(currOffset) == '{') {
 					currOffset++;
 					if (srcArray.charAt(currOffset) == '{' && srcArray.charAt(currOffset + 1) != '{') {
 						currOffset++;
-						temp = findNestedParamEnd(srcArray, currOffset);
-						if (temp[0] >= 0) {
-							currOffset = temp[0];
+						temp = findNestedParamEnd(srcArray, currOffset)[0];
+						if (temp >= 0) {
+							currOffset = temp;
 						}
 					} else {
-						temp[0] = findNestedTemplateEnd(srcArray, currOffset);
-						if (temp[0] >= 0) {
-							currOffset = temp[0];
+						temp = findNestedTemplateEnd(srcArray, currOffset);
+						if (temp >= 0) {
+							currOffset = temp;
 						}
 					}
 				} else if (ch == '|') {
-					value = Utils.trimNewlineRight(srcArray.substring(lastOffset, currOffset - 1));
-					resultList.add(value);
+					resultList.add(CharSlice.trimNewlineRight(srcArray, lastOffset, currOffset - 1));
 					lastOffset = currOffset;
 				}
 			}
-
-			if (currOffset > lastOffset) {
-				resultList.add(Utils.trimNewlineRight(srcArray.substring(lastOffset, currOffset)));
-			} else if (currOffset == lastOffset) {
-				resultList.add("");
-			}
 		} catch (IndexOutOfBoundsException e) {
-			if (currOffset > lastOffset) {
-				resultList.add(Utils.trimNewlineRight(srcArray.substring(lastOffset, currOffset)));
-			} else if (currOffset == lastOffset) {
-				resultList.add("");
-			}
+			// end of source string
+		}
+		if (currOffset > lastOffset) {
+			resultList.add(CharSlice.trimNewlineRight(srcArray, lastOffset, currOffset));
+		} else if (currOffset == lastOffset) {
+			resultList.add(new CharSlice(srcArray, lastOffset, lastOffset));
 		}
 		return resultList;
 	}
 
 	public static final int findNestedEnd(final String sourceArray, final char startCh, final char endChar, int startPosition) {
+		return findNestedEnd(sourceArray, startCh, endChar, startPosition, sourceArray.length());
+	}
+
+	/**
+	 * Like {@link #findNestedEnd(String, char, char, int)}, but the source string
+	 * ends at <code>endPosition</code>
+	 */
+	public static final int findNestedEnd(final String sourceArray, final char startCh, final char endChar, int startPosition,
+			int endPosition) {
 		int level = 1;
 		int position = startPosition;
-		while (position < sourceArray.length()) {
-			if(Util.matchCurrent(sourceArray, position, startCh) && Util.matchNext(sourceArray, position, startCh)) {
+		while (position < endPosition) {
+			if (matchCurrent(sourceArray, position, endPosition, startCh) && matchCurrent(sourceArray, position + 1, endPosition, startCh)) {
 				position += 2;
 				level++;
-			} else if(Util.matchCurrent(sourceArray, position, endChar) && Util.matchNext(sourceArray, position, endChar)) {
+			} else if (matchCurrent(sourceArray, position, endPosition, endChar)
+					&& matchCurrent(sourceArray, position + 1, endPosition, endChar)) {
 				position += 2;
 				if(--level == 0)
 					return position;
@@ -799,9 +831,17 @@ public class WikipediaScanner {
 	}
 
 	public static final int findNestedTemplateEnd(final String sourceArray, int startPosition) {
+		return findNestedTemplateEnd(sourceArray, startPosition, sourceArray.length());
+	}
+
+	/**
+	 * Like {@link #findNestedTemplateEnd(String, int)}, but the source string ends
+	 * at <code>endPosition</code>
+	 */
+	public static final int findNestedTemplateEnd(final String sourceArray, int startPosition, int endPosition) {
 		int countSingleOpenBraces = 0;
 		int position = startPosition;
-		while (position < sourceArray.length()) { 
+		while (position < endPosition) {
 			switch(sourceArray.charAt(position++)) {
 			case '{':
 				countSingleOpenBraces++;
@@ -809,7 +849,7 @@ public class WikipediaScanner {
 			case '}':
 				if(countSingleOpenBraces > 0)
 					countSingleOpenBraces--;
-				else if(Util.matchCurrent(sourceArray, position, '}'))
+				else if (matchCurrent(sourceArray, position, endPosition, '}'))
 					return ++position;
 				break;
 			}
@@ -818,8 +858,16 @@ public class WikipediaScanner {
 	}
 
 	public static final int[] findNestedParamEnd(final String sourceArray, int startPosition) {
+		return findNestedParamEnd(sourceArray, startPosition, sourceArray.length());
+	}
+
+	/**
+	 * Like {@link #findNestedParamEnd(String, int)}, but the source string ends at
+	 * <code>endPosition</code>
+	 */
+	public static final int[] findNestedParamEnd(final String sourceArray, int startPosition, int endPosition) {
 		char ch;
-		int len = sourceArray.length();
+		int len = endPosition;
 		int countSingleOpenBraces = 0;
 		int parameterPosition = startPosition;
 		// int templatePosition = -1;
@@ -827,14 +875,15 @@ public class WikipediaScanner {
 		try {
 			while (true) {
 				
-				ch = sourceArray.charAt(parameterPosition++);
+				ch = charAt(sourceArray, parameterPosition++, len);
 				if (ch == '{') {
-					if (sourceArray.charAt(parameterPosition) == '{') {
+					if (charAt(sourceArray, parameterPosition, len) == '{') {
 						parameterPosition++;
-						if ((len > parameterPosition) && sourceArray.charAt(parameterPosition) == '{' && sourceArray.charAt(parameterPosition + 1) != '{') {
+						if ((len > parameterPosition) && sourceArray.charAt(parameterPosition) == '{'
+								&& charAt(sourceArray, parameterPosition + 1, len) != '{') {
 							// template parameter beginning
 							parameterPosition++;
-							int[] temp = findNestedParamEnd(sourceArray, parameterPosition);
+							int[] temp = findNestedParamEnd(sourceArray, parameterPosition, len);
 							if (temp[0] >= 0) {
 								parameterPosition = temp[0];
 							} else {
@@ -846,7 +895,7 @@ public class WikipediaScanner {
 							}
 						} else {
 							// template beginning
-							int temp = findNestedTemplateEnd(sourceArray, parameterPosition);
+							int temp = findNestedTemplateEnd(sourceArray, parameterPosition, len);
 							if (temp < 0) {
 								return new int[] { -1, -1 };
 							}
@@ -859,8 +908,8 @@ public class WikipediaScanner {
 					if (countSingleOpenBraces > 0) {
 						countSingleOpenBraces--;
 					} else {
-						if (sourceArray.charAt(parameterPosition) == '}') {
-							if (sourceArray.charAt(parameterPosition + 1) == '}') {
+						if (charAt(sourceArray, parameterPosition, len) == '}') {
+							if (charAt(sourceArray, parameterPosition + 1, len) == '}') {
 								// template parameter ending
 								return new int[] { parameterPosition + 2, -1 };
 							} else {
@@ -876,6 +925,24 @@ public class WikipediaScanner {
 		}
 	}
 
+	/**
+	 * Get the character at the given position of a source string, which ends at
+	 * <code>endPosition</code>
+	 * 
+	 * @throws IndexOutOfBoundsException
+	 *           if the position isn't lower than <code>endPosition</code>
+	 */
+	static final char charAt(final String sourceArray, int position, int endPosition) {
+		if (position >= endPosition) {
+			throw new StringIndexOutOfBoundsException(position);
+		}
+		return sourceArray.charAt(position);
+	}
+
+	private static boolean matchCurrent(final String sourceArray, int position, int endPosition, char ch) {
+		return position < endPosition ? sourceArray.charAt(position) == ch : false;
+	}
+
 	public static final int findStackedTemplateEnd(final char[] sourceArray, final char startCh, final char endChar, int startPosition) {
 		char ch;
 		int templateLevel = 0;
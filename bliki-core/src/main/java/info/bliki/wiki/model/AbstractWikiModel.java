@@ -10,6 +10,7 @@ import info.bliki.wiki.filter.AbstractParser;
 import info.bliki.wiki.filter.Encoder;
 import info.bliki.wiki.filter.HTMLConverter;
 import info.bliki.wiki.filter.ITextConverter;
+import info.bliki.wiki.filter.CompiledTemplate;
 import info.bliki.wiki.filter.MagicWord;
 import info.bliki.wiki.filter.PDFConverter;
 import info.bliki.wiki.filter.SectionHeader;
@@ -21,6 +22,7 @@ import info.bliki.wiki.tags.TableOfContentTag;
 import info.bliki.wiki.tags.WPATag;
 import info.bliki.wiki.tags.WPTag;
 import info.bliki.wiki.tags.code.SourceCodeFormatter;
+import info.bliki.wiki.tags.util.StreamingTagStack;
 import info.bliki.wiki.tags.util.TagStack;
 import info.bliki.wiki.template.ITemplateFunction;
 import info.bliki.wiki.template.extension.AttributeList;
@@ -36,13 +38,34 @@ import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Standard model implementation for the Wikipedia syntax
  * 
  */
 public abstract class AbstractWikiModel implements IWikiModel, IContext {
-	private static int fNextNumberCounter = 0;
+	/**
+	 * Process-wide sequence for {@link #getNextGlobalNumber()}
+	 */
+	private static final AtomicInteger NEXT_GLOBAL_NUMBER = new AtomicInteger();
+
+	/**
+	 * The next number of the current render
+	 */
+	private int fNextNumber;
+
+	/**
+	 * The clock snapshot of the current render; <code>0</code> if no render was
+	 * started
+	 */
+	private long fRenderTime;
+
+	/**
+	 * The values of the magic words without parameter in the current render;
+	 * indexed by the magic word ID
+	 */
+	private String[] fMagicWordValues;
 
 	protected ArrayList<Reference> fReferences;
 
@@ -54,6 +77,30 @@ public abstract class AbstractWikiModel implements IWikiModel, IContext {
 
 	protected int fTemplateRecursionCount;
 
+	/**
+	 * The context dependencies (see {@link TemplateCache}) of the currently
+	 * expanded template.
+	 */
+	protected int fTemplateDependency;
+
+	/**
+	 * The profile of the current render; <code>null</code> if profiling isn't
+	 * enabled.
+	 */
+	protected RenderProfile fRenderProfile = null;
+
+	/**
+	 * The resource limits of the current render; <code>null</code> if the render
+	 * isn't limited.
+	 */
+	protected RenderBudget fRenderBudget = null;
+
+	/**
+	 * The nesting depth of the template expansions, which are measured for the
+	 * render budget.
+	 */
+	private int fBudgetedExpansionDepth = 0;
+
 	protected TagStack fTagStack;
 
 	private boolean fInitialized;
@@ -221,6 +268,13 @@ public abstract class AbstractWikiModel implements IWikiModel, IContext {
 
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public void addTemplateDependency(int dependency) {
+		fTemplateDependency |= dependency;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -295,6 +349,9 @@ public abstract class AbstractWikiModel implements IWikiModel, IContext {
 	 * {@inheritDoc}
 	 */
 	public void append(BaseToken contentNode) {
+		if (fRenderBudget != null) {
+			fRenderBudget.addNode();
+		}
 		fTagStack.append(contentNode);
 	}
 
@@ -1040,8 +1097,37 @@ public abstract class AbstractWikiModel implements IWikiModel, IContext {
 	/**
 	 * {@inheritDoc}
 	 */
-	public synchronized int getNextNumber() {
-		return fNextNumberCounter++;
+	public int getNextNumber() {
+		return fNextNumber++;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getRenderTime() {
+		if (fRenderTime == 0L) {
+			return System.currentTimeMillis();
+		}
+		return fRenderTime;
+	}
+
+	/**
+	 * Take a new clock snapshot and clear the values, which depend on it.
+	 */
+	private void startRenderTime() {
+		fRenderTime = System.currentTimeMillis();
+		fMagicWordValues = null;
+	}
+
+	/**
+	 * Get the next number of a process-wide sequence, which is shared by all
+	 * wiki models and threads. The numbers depend on the order of the renders, so
+	 * use {@link #getNextNumber()} for IDs in the rendered output.
+	 * 
+	 * @return the next <code>int</code> number.
+	 */
+	public static int getNextGlobalNumber() {
+		return NEXT_GLOBAL_NUMBER.getAndIncrement();
 	}
 
 	/**
@@ -1098,8 +1184,22 @@ public abstract class AbstractWikiModel implements IWikiModel, IContext {
 				parameter = magicWord.substring(index + 1).trim();
 				magicWord = magicWord.substring(0, index);
 			}
-			if (MagicWord.isMagicWord(magicWord)) {
-				return MagicWord.processMagicWord(magicWord, parameter, this);
+			int id = MagicWord.getMagicWordId(magicWord);
+			if (id >= 0) {
+				addTemplateDependency(MagicWord.getTemplateDependency(magicWord, parameter));
+				if (parameter.length() > 0 || !MagicWord.isCacheable(id)) {
+					return MagicWord.processMagicWord(id, magicWord, parameter, this);
+				}
+				// the values without parameter don't change within a render
+				if (fMagicWordValues == null) {
+					fMagicWordValues = new String[MagicWord.MAGIC_WORD_IDS];
+				}
+				String value = fMagicWordValues[id];
+				if (value == null) {
+					value = MagicWord.processMagicWord(id, magicWord, parameter, this);
+					fMagicWordValues[id] = value;
+				}
+				return value;
 			}
 		}
 		return null;
@@ -1119,6 +1219,20 @@ public abstract class AbstractWikiModel implements IWikiModel, IContext {
 		return fRedirectLink;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public RenderProfile getRenderProfile() {
+		return fRenderProfile;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public RenderBudget getRenderBudget() {
+		return fRenderBudget;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -1156,11 +1270,35 @@ public abstract class AbstractWikiModel implements IWikiModel, IContext {
 
 	/**
 	 * {@inheritDoc}
+	 * 
+	 * @deprecated use {@link #getTemplateCache()}
 	 */
+	@Deprecated
 	public Map<String, String> getTemplateCallsCache() {
 		return fConfiguration.getTemplateCallsCache();
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public TemplateCache getTemplateCache() {
+		return fConfiguration.getTemplateCache();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public CompiledTemplateCache getCompiledTemplateCache() {
+		return fConfiguration.getCompiledTemplateCache();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public PageExistenceIndex getPageExistenceIndex() {
+		return fConfiguration.getPageExistenceIndex();
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -1214,6 +1352,9 @@ public abstract class AbstractWikiModel implements IWikiModel, IContext {
 	 * {@inheritDoc}
 	 */
 	public int incrementRecursionLevel() {
+		if (fRenderProfile != null) {
+			fRenderProfile.updateRecursionDepth(fRecursionLevel + 1);
+		}
 		return ++fRecursionLevel;
 	}
 
@@ -1239,6 +1380,11 @@ public abstract class AbstractWikiModel implements IWikiModel, IContext {
 			fRecursionLevel = 0;
 			fTemplateRecursionCount = 0;
 			fSectionCounter = 0;
+			fNextNumber = 0;
+			startRenderTime();
+			if (fRenderBudget != null) {
+				fRenderBudget.start();
+			}
 			fInitialized = true;
 		}
 	}
@@ -1340,6 +1486,42 @@ public abstract class AbstractWikiModel implements IWikiModel, IContext {
 		return true;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean pageExists(String namespace, String articleName) {
+		if (fRenderBudget != null && !fRenderBudget.addExpensiveFunctionCall()) {
+			return false;
+		}
+		PageExistenceIndex index = getPageExistenceIndex();
+		if (index == null) {
+			return queryPageExists(namespace, articleName);
+		}
+		Boolean exists = index.get(namespace, articleName);
+		if (exists == null) {
+			exists = Boolean.valueOf(queryPageExists(namespace, articleName));
+			index.put(namespace, articleName, exists.booleanValue());
+		}
+		return exists.booleanValue();
+	}
+
+	/**
+	 * Look up if the page exists in the wiki. This default implementation checks
+	 * if {@link #getRawWikiContent(String, String, Map)} returns a content;
+	 * subclasses should override this method if the existence of a page can be
+	 * checked without fetching its content.
+	 * 
+	 * @param namespace
+	 *          the namespace of the page or an empty string
+	 * @param articleName
+	 *          the name of the page
+	 * @return <code>true</code> if the page exists
+	 * @see #pageExists(String, String)
+	 */
+	protected boolean queryPageExists(String namespace, String articleName) {
+		return getRawWikiContent(namespace, articleName, null) != null;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -1376,6 +1558,7 @@ public abstract class AbstractWikiModel implements IWikiModel, IContext {
 		}
 		if (!parseOnlySignature) {
 			initialize();
+			startRenderTime();
 		}
 		StringBuilder buf = new StringBuilder(rawWikiText.length() + rawWikiText.length() / 10);
 		try {
@@ -1405,6 +1588,9 @@ public abstract class AbstractWikiModel implements IWikiModel, IContext {
 	 * {@inheritDoc}
 	 */
 	public boolean pushNode(TagToken node) {
+		if (fRenderBudget != null) {
+			fRenderBudget.addNode();
+		}
 		return fTagStack.push(node);
 	}
 
@@ -1443,29 +1629,209 @@ public abstract class AbstractWikiModel implements IWikiModel, IContext {
 	 * {@inheritDoc}
 	 */
 	public String render(ITextConverter converter, String rawWikiText) {
-		initialize();
 		if (rawWikiText == null) {
+			initialize();
 			return "";
 		}
-		WikipediaParser.parse(rawWikiText, this, true, null);
 		if (converter != null) {
 			StringBuilder buf = new StringBuilder(rawWikiText.length() + rawWikiText.length() / 10);
-			List<BaseToken> list = fTagStack.getNodeList();
-
 			try {
-				converter.nodesToText(list, buf, this);
+				render(converter, rawWikiText, buf);
 			} catch (IOException e) {
 				e.printStackTrace();
 				return null;
-			} finally {
-				fInitialized = false;
 			}
 			return buf.toString();
 		}
+		initialize();
+		WikipediaParser.parse(rawWikiText, this, true, null);
 		fInitialized = false;
+		if (fRenderProfile != null) {
+			fRenderProfile.addRender();
+		}
 		return null;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public void render(ITextConverter converter, String rawWikiText, Appendable buffer) throws IOException {
+		initialize();
+		if (rawWikiText == null) {
+			return;
+		}
+		try {
+			WikipediaParser.parse(rawWikiText, this, true, null);
+			if (converter != null) {
+				List<BaseToken> list = fTagStack.getNodeList();
+				RenderProfile profile = fRenderProfile;
+				if (profile != null) {
+					profile.beginPhase(RenderProfile.OUTPUT_PHASE);
+				}
+				try {
+					converter.nodesToText(list, buffer, this);
+				} finally {
+					if (profile != null) {
+						profile.endPhase(RenderProfile.OUTPUT_PHASE);
+					}
+				}
+				appendRenderBudgetError(buffer);
+			}
+			if (fRenderProfile != null) {
+				fRenderProfile.addRender();
+			}
+		} finally {
+			fInitialized = false;
+		}
+	}
+
+	/**
+	 * Render the wiki text incrementally. The text is split into sections and
+	 * only the sections, which aren't found in the given section cache, are
+	 * parsed and rendered. Texts which can't be split are rendered completely.
+	 * 
+	 * @param converter
+	 *          a text converter. <b>Note</b> the converter may be
+	 *          <code>null</code>, if you only would like to analyze the raw wiki
+	 *          text and don't need to convert. This speeds up the parsing
+	 *          process.
+	 * @param rawWikiText
+	 *          a raw wiki text
+	 * @param buffer
+	 *          the buffer to append the rendered article
+	 * @param sectionCache
+	 *          the cache for the rendered sections of this article;
+	 *          <code>null</code> if the text should be rendered completely
+	 * @throws IOException
+	 * @see SectionCache
+	 */
+	public void render(ITextConverter converter, String rawWikiText, Appendable buffer, SectionCache sectionCache)
+			throws IOException {
+		List<String> sections = null;
+		if (sectionCache != null && converter != null && rawWikiText != null) {
+			sections = SectionCache.splitSections(rawWikiText);
+		}
+		if (sections == null) {
+			render(converter, rawWikiText, buffer);
+			return;
+		}
+		initialize();
+		try {
+			setUp();
+			try {
+				sectionCache.render(this, converter, sections, buffer);
+			} finally {
+				tearDown();
+			}
+			appendRenderBudgetError(buffer);
+			if (fRenderProfile != null) {
+				fRenderProfile.addRender();
+			}
+		} finally {
+			fInitialized = false;
+		}
+	}
+
+	/**
+	 * Render the wiki text incrementally to HTML.
+	 * 
+	 * @param rawWikiText
+	 *          a raw wiki text
+	 * @param sectionCache
+	 *          the cache for the rendered sections of this article
+	 * @return the rendered HTML
+	 * @see #render(ITextConverter, String, Appendable, SectionCache)
+	 */
+	public String render(String rawWikiText, SectionCache sectionCache) {
+		if (rawWikiText == null) {
+			return "";
+		}
+		StringBuilder buf = new StringBuilder(rawWikiText.length() + rawWikiText.length() / 10);
+		try {
+			render(new HTMLConverter(), rawWikiText, buf, sectionCache);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * Render the wiki text without building the complete node tree. Every
+	 * completed top-level node (i.e. a paragraph, a table or a list) is rendered
+	 * directly to the buffer and dropped, so the memory scales with the largest
+	 * top-level node instead of the article size. The result is the same as the
+	 * result of {@link #render(ITextConverter, String, Appendable)}.
+	 * 
+	 * <b>Note:</b> the node list of the model is empty after the render.
+	 * 
+	 * @param converter
+	 *          a text converter
+	 * @param rawWikiText
+	 *          a raw wiki text
+	 * @param buffer
+	 *          the buffer to append the rendered text
+	 * @throws IOException
+	 * @see StreamingTagStack
+	 */
+	public void renderStreaming(ITextConverter converter, String rawWikiText, Appendable buffer) throws IOException {
+		initialize();
+		if (rawWikiText == null) {
+			return;
+		}
+		try {
+			StreamingTagStack stack = new StreamingTagStack(converter, buffer, this);
+			fTagStack = stack;
+			WikipediaParser.parse(rawWikiText, this, true, null);
+			RenderProfile profile = fRenderProfile;
+			if (profile != null) {
+				profile.beginPhase(RenderProfile.OUTPUT_PHASE);
+			}
+			try {
+				stack.finish();
+			} finally {
+				if (profile != null) {
+					profile.endPhase(RenderProfile.OUTPUT_PHASE);
+				}
+			}
+			appendRenderBudgetError(buffer);
+			if (fRenderProfile != null) {
+				fRenderProfile.addRender();
+			}
+		} finally {
+			fInitialized = false;
+		}
+	}
+
+	/**
+	 * Render the wiki text to HTML without building the complete node tree.
+	 * 
+	 * @param rawWikiText
+	 *          a raw wiki text
+	 * @param buffer
+	 *          the buffer to append the rendered HTML
+	 * @throws IOException
+	 * @see #renderStreaming(ITextConverter, String, Appendable)
+	 */
+	public void renderStreaming(String rawWikiText, Appendable buffer) throws IOException {
+		renderStreaming(new HTMLConverter(), rawWikiText, buffer);
+	}
+
+	private void appendRenderBudgetError(Appendable buffer) throws IOException {
+		if (fRenderBudget != null && fRenderBudget.isExceeded()) {
+			buffer.append("<span class=\"error\">Error - render budget exceeded: ");
+			buffer.append(fRenderBudget.getExceededLimitName());
+			buffer.append("</span>");
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void render(String rawWikiText, Appendable buffer) throws IOException {
+		render(new HTMLConverter(), rawWikiText, buffer);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -1573,6 +1939,21 @@ public abstract class AbstractWikiModel implements IWikiModel, IContext {
 	 */
 	public void setPageName(String pageTitle) {
 		fPageTitle = pageTitle;
+		fMagicWordValues = null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void setRenderProfile(RenderProfile profile) {
+		fRenderProfile = profile;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void setRenderBudget(RenderBudget budget) {
+		fRenderBudget = budget;
 	}
 
 	/**
@@ -1584,11 +1965,35 @@ public abstract class AbstractWikiModel implements IWikiModel, IContext {
 
 	/**
 	 * {@inheritDoc}
+	 * 
+	 * @deprecated use {@link #setTemplateCache(TemplateCache)}
 	 */
+	@Deprecated
 	public void setTemplateCallsCache(Map<String, String> map) {
 		fConfiguration.setTemplateCallsCache(map);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public void setTemplateCache(TemplateCache cache) {
+		fConfiguration.setTemplateCache(cache);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void setCompiledTemplateCache(CompiledTemplateCache cache) {
+		fConfiguration.setCompiledTemplateCache(cache);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void setPageExistenceIndex(PageExistenceIndex index) {
+		fConfiguration.setPageExistenceIndex(index);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -1596,6 +2001,31 @@ public abstract class AbstractWikiModel implements IWikiModel, IContext {
 		fParserRecursionCount = 0;
 		fRecursionLevel = 0;
 		fTemplateRecursionCount = 0;
+		fTemplateDependency = 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void reset() {
+		fParserRecursionCount = 0;
+		fRecursionLevel = 0;
+		fTemplateRecursionCount = 0;
+		fTemplateDependency = 0;
+		fInitialized = false;
+		fReferences = null;
+		fReferenceNames = null;
+		fTableOfContentTag = null;
+		fTableOfContent = null;
+		fToCSet = null;
+		fSectionCounter = 0;
+		fNextNumber = 0;
+		fRenderTime = 0L;
+		fMagicWordValues = null;
+		fRedirectLink = null;
+		fRenderProfile = null;
+		fRenderBudget = null;
+		fPageTitle = "PAGENAME";
 	}
 
 	/**
@@ -1627,14 +2057,89 @@ public abstract class AbstractWikiModel implements IWikiModel, IContext {
 	 * @throws IOException
 	 */
 	public void substituteTemplateCall(String templateName, Map<String, String> parameterMap, Appendable writer) throws IOException {
+		String namespace;
+		String name;
+		if (templateName.length() > 0 && templateName.charAt(0) == ':') {
+			namespace = "";
+			name = templateName.substring(1);
+		} else {
+			namespace = getTemplateNamespace();
+			name = templateName;
+			addTemplate(templateName);
+		}
 
+		RenderBudget budget = fRenderBudget;
+		if (budget == null) {
+			profileTemplateCall(templateName, namespace, name, parameterMap, writer);
+			return;
+		}
+		if (!budget.addTemplateCall()) {
+			return;
+		}
+		if (fBudgetedExpansionDepth > 0) {
+			// a nested expansion is measured as part of the outermost expansion
+			profileTemplateCall(templateName, namespace, name, parameterMap, writer);
+			return;
+		}
+		// measure the size of the expansion, before it's appended
+		StringBuilder expansion = new StringBuilder();
+		fBudgetedExpansionDepth++;
+		try {
+			profileTemplateCall(templateName, namespace, name, parameterMap, expansion);
+		} finally {
+			fBudgetedExpansionDepth--;
+		}
+		if (budget.addExpandedSize(expansion.length())) {
+			writer.append(expansion);
+		}
+	}
+
+	private void profileTemplateCall(String templateName, String namespace, String name, Map<String, String> parameterMap,
+			Appendable writer) throws IOException {
+		RenderProfile profile = fRenderProfile;
+		if (profile == null) {
+			substituteTemplateCall(templateName, namespace, name, parameterMap, writer);
+			return;
+		}
+		long startTime = System.nanoTime();
+		try {
+			substituteTemplateCall(templateName, namespace, name, parameterMap, writer);
+		} finally {
+			profile.addTemplateExpansion(namespace + ':' + name, System.nanoTime() - startTime);
+		}
+	}
+
+	// the deprecated template calls cache map is still used, if no TemplateCache
+	// is configured
+	@SuppressWarnings("deprecation")
+	private void substituteTemplateCall(String templateName, String namespace, String name, Map<String, String> parameterMap,
+			Appendable writer) throws IOException {
+		TemplateCache templateCache = getTemplateCache();
 		Map<String, String> templateCallsCache = null;
 		String cacheKey = null;
-		if (this instanceof IConfiguration) {
-			IConfiguration config = this;
-			templateCallsCache = config.getTemplateCallsCache();
+		if (templateCache != null) {
+			cacheKey = templateCache.createKey(namespace, name, parameterMap, getPageName());
+			if (cacheKey != null) {
+				String value = templateCache.get(cacheKey);
+				if (value != null) {
+					if (templateCache.isPageDependent(namespace, name)) {
+						addTemplateDependency(TemplateCache.PAGE_DEPENDENCY);
+					}
+					if (fRenderProfile != null) {
+						fRenderProfile.addTemplateCacheHit();
+					}
+					writer.append(value);
+					return;
+				}
+			}
+		} else {
+			templateCallsCache = getTemplateCallsCache();
 			if (templateCallsCache != null) {
 				StringBuilder cacheKeyBuffer = new StringBuilder();
+				cacheKeyBuffer.append(namespace);
+				cacheKeyBuffer.append(':');
+				cacheKeyBuffer.append(name);
+				cacheKeyBuffer.append("|");
 				for (Entry<String, String> entry : parameterMap.entrySet()) {
 					cacheKeyBuffer.append(entry.getKey());
 					cacheKeyBuffer.append("=");
@@ -1645,35 +2150,57 @@ public abstract class AbstractWikiModel implements IWikiModel, IContext {
 				if (cacheKey.length() < 256) {
 					String value = templateCallsCache.get(cacheKey);
 					if (value != null) {
-						// System.out.println("Cache key: " + cacheKey);
+						if (fRenderProfile != null) {
+							fRenderProfile.addTemplateCacheHit();
+						}
 						writer.append(value);
 						return;
 					}
 				}
 			}
 		}
-		String plainContent;
-		if (templateName.length() > 0 && templateName.charAt(0) == ':') {
-			// invalidate cache:
-			templateCallsCache = null;
-			plainContent = getRawWikiContent("", templateName.substring(1), parameterMap);
-		} else {
-			addTemplate(templateName);
-			plainContent = getRawWikiContent(getTemplateNamespace(), templateName, parameterMap);
-		}
 
-		if (plainContent != null) {
-			StringBuilder templateBuffer = new StringBuilder(plainContent.length());
-			TemplateParser.parseRecursive(plainContent.trim(), this, templateBuffer, false, false, parameterMap);
-			if (templateCallsCache != null && cacheKey != null && cacheKey.length() < 256) {
-				// save this template call in the cache
-				String cacheValue = templateBuffer.toString();
-				templateCallsCache.put(cacheKey, cacheValue);
-				writer.append(cacheValue);
-			} else {
+		// collect the context dependencies of this template call separately
+		int parentDependency = fTemplateDependency;
+		fTemplateDependency = 0;
+		try {
+			String plainContent = getRawWikiContent(namespace, name, parameterMap);
+			if (fRenderProfile != null) {
+				fRenderProfile.addRawWikiContentLookup(plainContent != null);
+			}
+			if (plainContent != null) {
+				StringBuilder templateBuffer = new StringBuilder(plainContent.length());
+				CompiledTemplateCache compiledTemplateCache = getCompiledTemplateCache();
+				CompiledTemplate compiledTemplate = null;
+				if (compiledTemplateCache != null && fTemplateDependency == 0) {
+					// magic words are context dependent and not compiled
+					compiledTemplate = compiledTemplateCache.getCompiledTemplate(namespace + ':' + name, plainContent.trim(), this);
+				}
+				if (compiledTemplate != null) {
+					TemplateParser.parseRecursive(compiledTemplate, this, templateBuffer, parameterMap);
+				} else {
+					TemplateParser.parseRecursive(plainContent.trim(), this, templateBuffer, false, false, parameterMap);
+				}
+				if (templateCache != null) {
+					if (cacheKey != null && templateCache.addDependency(namespace, name, fTemplateDependency)) {
+						String cacheValue = templateBuffer.toString();
+						// the key changes, if a page dependency was detected
+						templateCache.put(templateCache.createKey(namespace, name, parameterMap, getPageName()), cacheValue);
+						writer.append(cacheValue);
+						return;
+					}
+				} else if (templateCallsCache != null && cacheKey.length() < 256 && fTemplateDependency == 0) {
+					// save this template call in the cache
+					String cacheValue = templateBuffer.toString();
+					templateCallsCache.put(cacheKey, cacheValue);
+					writer.append(cacheValue);
+					return;
+				}
 				writer.append(templateBuffer);
+				return;
 			}
-			return;
+		} finally {
+			fTemplateDependency |= parentDependency;
 		}
 		// if no template found insert plain template name string:
 		writer.append("{{");
@@ -0,0 +1,117 @@
+package info.bliki.wiki.model;
+
+import info.bliki.wiki.filter.CompiledTemplate;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe cache of compiled template bodies, which can be shared by all
+ * wiki models (and threads) rendering pages of the same wiki.
+ * 
+ * A compiled template is stored under its qualified name together with the raw
+ * text it was compiled from. If the raw text of a template changes (i.e. a new
+ * revision of the template is used), the template is compiled again and
+ * replaces the old entry. The least recently used templates are evicted, if the
+ * cache is full.
+ * 
+ * @see Configuration#setCompiledTemplateCache(CompiledTemplateCache)
+ */
+public class CompiledTemplateCache {
+	public final static int DEFAULT_MAX_ENTRIES = 4096;
+
+	private final LinkedHashMap<String, CompiledTemplate> fTemplates;
+
+	private final AtomicLong fHits = new AtomicLong();
+
+	private final AtomicLong fMisses = new AtomicLong();
+
+	public CompiledTemplateCache() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * 
+	 * @param maxEntries
+	 *          the maximum number of cached templates
+	 */
+	public CompiledTemplateCache(final int maxEntries) {
+		fTemplates = new LinkedHashMap<String, CompiledTemplate>(256, 0.75f, true) {
+			private static final long serialVersionUID = -5178230154838209117L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CompiledTemplate> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Get the compiled version of a template and compile the template if
+	 * necessary.
+	 * 
+	 * @param qualifiedTemplateName
+	 *          the template name with its namespace prefix (i.e.
+	 *          <code>Template:Infobox</code>)
+	 * @param rawContent
+	 *          the trimmed raw text of the template
+	 * @param wikiModel
+	 *          the model which is used for compiling
+	 * @return <code>null</code> if the template can't be compiled
+	 * @throws IOException
+	 */
+	public CompiledTemplate getCompiledTemplate(String qualifiedTemplateName, String rawContent, IWikiModel wikiModel)
+			throws IOException {
+		CompiledTemplate template;
+		synchronized (fTemplates) {
+			template = fTemplates.get(qualifiedTemplateName);
+		}
+		if (template != null && template.getRawContent().equals(rawContent)) {
+			fHits.incrementAndGet();
+			return template;
+		}
+		fMisses.incrementAndGet();
+		template = CompiledTemplate.compile(rawContent, wikiModel);
+		if (template != null) {
+			synchronized (fTemplates) {
+				fTemplates.put(qualifiedTemplateName, template);
+			}
+		}
+		return template;
+	}
+
+	/**
+	 * Remove all compiled templates and reset the statistics.
+	 */
+	public void clear() {
+		synchronized (fTemplates) {
+			fTemplates.clear();
+		}
+		fHits.set(0L);
+		fMisses.set(0L);
+	}
+
+	public long getHits() {
+		return fHits.get();
+	}
+
+	public long getMisses() {
+		return fMisses.get();
+	}
+
+	/**
+	 * The current number of compiled templates.
+	 */
+	public int size() {
+		synchronized (fTemplates) {
+			return fTemplates.size();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "CompiledTemplateCache[size=" + size() + ", hits=" + getHits() + ", misses=" + getMisses() + "]";
+	}
+}
@@ -1,6 +1,7 @@
 package info.bliki.wiki.model;
 
 import info.bliki.htmlcleaner.TagToken;
+import info.bliki.htmlcleaner.TagTypes;
 import info.bliki.wiki.tags.ATag;
 import info.bliki.wiki.tags.BrTag;
 import info.bliki.wiki.tags.DdTag;
@@ -156,6 +157,13 @@ public class Configuration implements IConfiguration {
 	final public static HTMLTag HTML_PRE_OPEN = new PreTag();
 
 	public static Map<String, String> TEMPLATE_CALLS_CACHE = null;
+
+	public static TemplateCache TEMPLATE_CACHE = null;
+
+	public static CompiledTemplateCache COMPILED_TEMPLATE_CACHE = null;
+
+	public static PageExistenceIndex PAGE_EXISTENCE_INDEX = null;
+
 	/**
 	 * Interwiki links pointing to other wikis in the web
 	 */
@@ -366,7 +374,8 @@ public class Configuration implements IConfiguration {
 	protected static final Map<String, String> INTERWIKI_MAP = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
 
 	/**
-	 * Map the HTML token string to the correspoding TagToken implementation
+	 * Map the HTML token string to the correspoding TagToken implementation. The
+	 * token strings are registered in {@link TagTypes}.
 	 */
 	protected static final HashMap<String, TagToken> TAG_TOKEN_MAP = new HashMap<String, TagToken>();
 
@@ -494,6 +503,11 @@ public class Configuration implements IConfiguration {
 		TAG_TOKEN_MAP.put("span", HTML_SPAN_OPEN);
 
 		TAG_TOKEN_MAP.put("cite", HTML_CITE_OPEN);
+
+		for (Map.Entry<String, TagToken> entry : TAG_TOKEN_MAP.entrySet()) {
+			TagTypes.intern(entry.getKey());
+			TagTypes.intern(entry.getValue().getName());
+		}
 	}
 
 	public final static Configuration DEFAULT_CONFIGURATION = new Configuration();
@@ -589,11 +603,23 @@ public class Configuration implements IConfiguration {
 	 * 
 	 * @return <code>null</code> if no cache implementation is set.
 	 * @see #setTemplateCallsCache(Map)
+	 * @deprecated use {@link #getTemplateCache()}
 	 */
+	@Deprecated
 	public Map<String, String> getTemplateCallsCache() {
 		return TEMPLATE_CALLS_CACHE;
 	}
 
+	/**
+	 * Get the currently configured thread-safe cache for template calls.
+	 * 
+	 * @return <code>null</code> if no cache is set.
+	 * @see #setTemplateCache(TemplateCache)
+	 */
+	public TemplateCache getTemplateCache() {
+		return TEMPLATE_CACHE;
+	}
+
 	/**
 	 * Set a cache map implementation. For example based on <a
 	 * href="http://jcp.org/en/jsr/detail?id=107">JSR 107</a>. Template calls
@@ -602,11 +628,72 @@ public class Configuration implements IConfiguration {
 	 * 
 	 * @param map
 	 *          the cache implementation
+	 * @deprecated use {@link #setTemplateCache(TemplateCache)}; the map isn't
+	 *             used if a <code>TemplateCache</code> is set.
 	 */
+	@Deprecated
 	public void setTemplateCallsCache(Map<String, String> map) {
 		TEMPLATE_CALLS_CACHE = map;
 	}
 
+	/**
+	 * Set a thread-safe cache for template calls, which can be shared by all
+	 * models rendering pages of the same wiki. Template calls which use the same
+	 * parameters over and over again do lookup this cache and use the preparsed
+	 * result if available.
+	 * 
+	 * @param cache
+	 *          the cache or <code>null</code> to disable caching
+	 */
+	public void setTemplateCache(TemplateCache cache) {
+		TEMPLATE_CACHE = cache;
+	}
+
+	/**
+	 * Get the currently configured cache for compiled templates.
+	 * 
+	 * @return <code>null</code> if no cache is set.
+	 * @see #setCompiledTemplateCache(CompiledTemplateCache)
+	 */
+	public CompiledTemplateCache getCompiledTemplateCache() {
+		return COMPILED_TEMPLATE_CACHE;
+	}
+
+	/**
+	 * Set a thread-safe cache for compiled templates. Templates which are called
+	 * over and over again are only preprocessed and scanned for template
+	 * parameters once.
+	 * 
+	 * @param cache
+	 *          the cache or <code>null</code> to disable the compiled templates
+	 */
+	public void setCompiledTemplateCache(CompiledTemplateCache cache) {
+		COMPILED_TEMPLATE_CACHE = cache;
+	}
+
+	/**
+	 * Get the currently configured index of existing pages.
+	 * 
+	 * @return <code>null</code> if no index is set.
+	 * @see #setPageExistenceIndex(PageExistenceIndex)
+	 */
+	public PageExistenceIndex getPageExistenceIndex() {
+		return PAGE_EXISTENCE_INDEX;
+	}
+
+	/**
+	 * Set a thread-safe index of existing pages. The results of page existence
+	 * checks (i.e. for <code>{{#ifexist:...}}</code>) are stored in this index
+	 * and links to pages which are known to be missing are rendered as <i>red
+	 * links</i>.
+	 * 
+	 * @param index
+	 *          the index or <code>null</code> to disable the index
+	 */
+	public void setPageExistenceIndex(PageExistenceIndex index) {
+		PAGE_EXISTENCE_INDEX = index;
+	}
+
 	public Map<String, SourceCodeFormatter> getCodeFormatterMap() {
 		return CODE_FORMATTER_MAP;
 	}
@@ -620,6 +707,8 @@ public class Configuration implements IConfiguration {
 	}
 
 	public TagToken addTokenTag(String key, TagToken value) {
+		TagTypes.intern(key);
+		TagTypes.intern(value.getName());
 		return TAG_TOKEN_MAP.put(key, value);
 	}
 
@@ -89,9 +89,19 @@ public interface IConfiguration {
 	 * 
 	 * @return <code>null</code> if no cache implementation is set.
 	 * @see #setTemplateCallsCache(Map)
+	 * @deprecated use {@link #getTemplateCache()}
 	 */
+	@Deprecated
 	public Map<String, String> getTemplateCallsCache();
 
+	/**
+	 * Get the currently configured thread-safe cache for template calls.
+	 * 
+	 * @return <code>null</code> if no cache is set.
+	 * @see #setTemplateCache(TemplateCache)
+	 */
+	public TemplateCache getTemplateCache();
+
 	/**
 	 * Get the <a
 	 * href="http://www.mediawiki.org/wiki/Manual:Parser_functions">template
@@ -125,6 +135,51 @@ public interface IConfiguration {
 	 * 
 	 * @param map
 	 *          the cache implementation
+	 * @deprecated use {@link #setTemplateCache(TemplateCache)}
 	 */
+	@Deprecated
 	public void setTemplateCallsCache(Map<String, String> map);
+
+	/**
+	 * Set a thread-safe cache for template calls, which can be shared by all
+	 * models rendering pages of the same wiki.
+	 * 
+	 * @param cache
+	 *          the cache or <code>null</code> to disable caching
+	 */
+	public void setTemplateCache(TemplateCache cache);
+
+	/**
+	 * Get the currently configured cache for compiled templates.
+	 * 
+	 * @return <code>null</code> if no cache is set.
+	 * @see #setCompiledTemplateCache(CompiledTemplateCache)
+	 */
+	public CompiledTemplateCache getCompiledTemplateCache();
+
+	/**
+	 * Set a thread-safe cache for compiled templates, which can be shared by all
+	 * models rendering pages of the same wiki.
+	 * 
+	 * @param cache
+	 *          the cache or <code>null</code> to disable the compiled templates
+	 */
+	public void setCompiledTemplateCache(CompiledTemplateCache cache);
+
+	/**
+	 * Get the currently configured index of existing pages.
+	 * 
+	 * @return <code>null</code> if no index is set.
+	 * @see #setPageExistenceIndex(PageExistenceIndex)
+	 */
+	public PageExistenceIndex getPageExistenceIndex();
+
+	/**
+	 * Set a thread-safe index of existing pages, which can be shared by all
+	 * models rendering pages of the same wiki.
+	 * 
+	 * @param index
+	 *          the index or <code>null</code> to disable the index
+	 */
+	public void setPageExistenceIndex(PageExistenceIndex index);
 }
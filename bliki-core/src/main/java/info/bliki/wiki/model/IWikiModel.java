@@ -77,6 +77,18 @@ public interface IWikiModel extends IConfiguration {
 	 */
 	public void addTemplate(String template);
 
+	/**
+	 * Record a context dependency of the currently expanded template. Template
+	 * calls which depend on the current time aren't stored in the
+	 * {@link TemplateCache}, template calls which depend on the page name are
+	 * cached per page.
+	 * 
+	 * @param dependency
+	 *          {@link TemplateCache#PAGE_DEPENDENCY} or
+	 *          {@link TemplateCache#VOLATILE_DEPENDENCY}
+	 */
+	public void addTemplateDependency(int dependency);
+
 	/**
 	 * Add a reference (i.e. footnote) to the internal list
 	 * 
@@ -432,7 +444,9 @@ public interface IWikiModel extends IConfiguration {
 	public INamespace getNamespace();
 
 	/**
-	 * Get the next unique number
+	 * Get the next unique number of the current render. The numbers restart
+	 * with <code>0</code> for every render, so that the same wiki text is always
+	 * rendered with the same numbers (i.e. in anchor IDs).
 	 * 
 	 * @return the next <code>int</code> number.
 	 */
@@ -470,6 +484,21 @@ public interface IWikiModel extends IConfiguration {
 	 */
 	public String getRawWikiContent(String namespace, String templateName, Map<String, String> templateParameters);
 
+	/**
+	 * Check if the page with the given namespace and article name exists. The
+	 * result is looked up in the configured {@link PageExistenceIndex} first.
+	 * Without an index this method returns <code>true</code> if
+	 * {@link #getRawWikiContent(String, String, Map)} returns a content.
+	 * 
+	 * @param namespace
+	 *          the namespace of the page or an empty string
+	 * @param articleName
+	 *          the name of the page
+	 * @return <code>true</code> if the page exists
+	 * @see Configuration#setPageExistenceIndex(PageExistenceIndex)
+	 */
+	public boolean pageExists(String namespace, String articleName);
+
 	/**
 	 * Get the current recursion level of the parser. The recursion level is used
 	 * to prevent infinite nesting of templates, tables, lists and other parser
@@ -487,6 +516,31 @@ public interface IWikiModel extends IConfiguration {
 	 */
 	public String getRedirectLink();
 
+	/**
+	 * Get the profile, which records the timings and counters of the rendering.
+	 * 
+	 * @return <code>null</code> if profiling isn't enabled
+	 * @see #setRenderProfile(RenderProfile)
+	 */
+	public RenderProfile getRenderProfile();
+
+	/**
+	 * Get the resource limits of the rendering.
+	 * 
+	 * @return <code>null</code> if the rendering isn't limited
+	 * @see #setRenderBudget(RenderBudget)
+	 */
+	public RenderBudget getRenderBudget();
+
+	/**
+	 * Get the clock snapshot of the current render. All date and time values of
+	 * a render (i.e. <code>{{CURRENTYEAR}}</code> or <code>{{#time:...}}</code>)
+	 * are computed from this time, so that they are consistent within a page.
+	 * 
+	 * @return the time in milliseconds since January 1, 1970 UTC
+	 */
+	public long getRenderTime();
+
 	/**
 	 * Get the internal list of references (i.e. footnotes)
 	 * 
@@ -784,6 +838,24 @@ public interface IWikiModel extends IConfiguration {
 	 */
 	public String render(ITextConverter converter, String rawWikiText);
 
+	/**
+	 * Render the raw Wikipedia text for a given converter directly into the
+	 * given buffer. The rendered text isn't collected in an intermediate string,
+	 * so a <code>java.io.Writer</code> (i.e. the writer of a servlet response or
+	 * a buffered file writer) receives the output while the page is converted.
+	 * 
+	 * @param converter
+	 *          a text converter. If the converter is <code>null</code> the raw
+	 *          wiki text is only parsed.
+	 * @param rawWikiText
+	 *          a raw wiki text
+	 * @param buffer
+	 *          the buffer or writer for the converted text
+	 * @throws IOException
+	 *           if the buffer throws an IOException
+	 */
+	public void render(ITextConverter converter, String rawWikiText, Appendable buffer) throws IOException;
+
 	/**
 	 * Render the raw Wikipedia text into an HTML string and use the default
 	 * HTMLConverter
@@ -793,6 +865,20 @@ public interface IWikiModel extends IConfiguration {
 	 */
 	public String render(String rawWikiText);
 
+	/**
+	 * Render the raw Wikipedia text directly into the given buffer and use the
+	 * default HTMLConverter
+	 * 
+	 * @param rawWikiText
+	 *          a raw wiki text
+	 * @param buffer
+	 *          the buffer or writer for the HTML text
+	 * @throws IOException
+	 *           if the buffer throws an IOException
+	 * @see #render(ITextConverter, String, Appendable)
+	 */
+	public void render(String rawWikiText, Appendable buffer) throws IOException;
+
 	/**
 	 * Render the raw Wikipedia text into an HTML string and use the default
 	 * PDFConverter. The resulting XHTML could be used as input for the Flying
@@ -818,6 +904,27 @@ public interface IWikiModel extends IConfiguration {
 	 */
 	public void setPageName(String pageTitle);
 
+	/**
+	 * Enable the profiling of the following renders. The timings and counters of
+	 * every render are added to the given profile. Profiling is disabled by
+	 * default and by {@link #reset()}.
+	 * 
+	 * @param profile
+	 *          the profile or <code>null</code> to disable profiling
+	 */
+	public void setRenderProfile(RenderProfile profile);
+
+	/**
+	 * Limit the resources of the following renders. The budget is restarted at
+	 * the beginning of every render; if a limit is exceeded the partial result
+	 * is rendered with an appended error marker. Renders aren't limited by
+	 * default and after {@link #reset()}.
+	 * 
+	 * @param budget
+	 *          the budget or <code>null</code> for unlimited renders
+	 */
+	public void setRenderBudget(RenderBudget budget);
+
 	/**
 	 * Activate the parsing of semantic Mediawiki (SMW) links See <a
 	 * href="http://en.wikipedia.org/wiki/Semantic_MediaWiki">Semantic
@@ -832,6 +939,20 @@ public interface IWikiModel extends IConfiguration {
 	 */
 	public void setUp();
 
+	/**
+	 * Reset all page dependent state of the model (i.e. references, table of
+	 * contents, categories, links, page name and recursion counters), so that
+	 * the model can be reused to render another page. The internal collections
+	 * may be cleared and reused, so the results of the previous page (for
+	 * example the categories map) must be copied before calling this method.
+	 * 
+	 * A model is in the same state after <code>reset()</code> as a newly created
+	 * model after <code>setUp()</code>.
+	 * 
+	 * @see WikiModelPool
+	 */
+	public void reset();
+
 	/**
 	 * Show the syntax highlighting of the source code
 	 * 
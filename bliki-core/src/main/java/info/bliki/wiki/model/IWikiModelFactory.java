@@ -0,0 +1,14 @@
+package info.bliki.wiki.model;
+
+/**
+ * Creates new wiki models for a {@link WikiModelPool}.
+ * 
+ * @param <T>
+ *          the type of the created wiki models
+ */
+public interface IWikiModelFactory<T extends IWikiModel> {
+	/**
+	 * Create a new wiki model.
+	 */
+	public T createWikiModel();
+}
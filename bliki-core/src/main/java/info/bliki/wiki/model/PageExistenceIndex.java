@@ -0,0 +1,296 @@
+package info.bliki.wiki.model;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe index of existing pages, which can be shared by all wiki models
+ * (and threads) rendering pages of the same wiki. It is used by
+ * <code>{{#ifexist:...}}</code> and for the detection of links to missing
+ * pages (<i>red links</i>), so that the content of a page doesn't need to be
+ * fetched only to check if the page exists.
+ * 
+ * The index consists of two parts:
+ * <ul>
+ * <li>a Bloom filter with the titles of all existing pages, which can be
+ * filled in bulk with {@link #addExistingPage(String)} (for example from the
+ * titles of a dump) and is marked as complete with
+ * {@link #setComplete(boolean)}. A title which isn't contained in a complete
+ * Bloom filter doesn't exist.</li>
+ * <li>an exact cache of the already checked titles, which stores existing and
+ * missing pages.</li>
+ * </ul>
+ * 
+ * The titles are normalized: underscores are replaced by spaces and the first
+ * character of the page name is converted to upper case.
+ * 
+ * @see Configuration#setPageExistenceIndex(PageExistenceIndex)
+ */
+public class PageExistenceIndex {
+	public final static int DEFAULT_EXPECTED_PAGES = 1000000;
+
+	public final static double DEFAULT_FALSE_POSITIVE_PROBABILITY = 0.01;
+
+	public final static int DEFAULT_MAX_CACHED_TITLES = 100000;
+
+	/**
+	 * The bits of the Bloom filter.
+	 */
+	private final AtomicLongArray fBits;
+
+	private final long fNumberOfBits;
+
+	private final int fNumberOfHashFunctions;
+
+	private final int fMaxCachedTitles;
+
+	private final ConcurrentHashMap<String, Boolean> fCachedTitles;
+
+	private volatile boolean fComplete = false;
+
+	private final AtomicLong fHits = new AtomicLong();
+
+	private final AtomicLong fMisses = new AtomicLong();
+
+	public PageExistenceIndex() {
+		this(DEFAULT_EXPECTED_PAGES, DEFAULT_FALSE_POSITIVE_PROBABILITY, DEFAULT_MAX_CACHED_TITLES);
+	}
+
+	/**
+	 * 
+	 * @param expectedPages
+	 *          the expected number of existing pages in the Bloom filter
+	 * @param falsePositiveProbability
+	 *          the probability that the Bloom filter contains a title which
+	 *          doesn't exist (i.e. <code>0.01</code>)
+	 * @param maxCachedTitles
+	 *          the maximum number of titles in the exact cache
+	 */
+	public PageExistenceIndex(int expectedPages, double falsePositiveProbability, int maxCachedTitles) {
+		if (expectedPages < 1) {
+			expectedPages = 1;
+		}
+		long numberOfBits = (long) Math.ceil(-expectedPages * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+		fNumberOfBits = Math.max(64L, ((numberOfBits + 63L) / 64L) * 64L);
+		fNumberOfHashFunctions = Math.max(1, (int) Math.round((double) fNumberOfBits / expectedPages * Math.log(2)));
+		fBits = new AtomicLongArray((int) (fNumberOfBits / 64L));
+		fMaxCachedTitles = maxCachedTitles;
+		fCachedTitles = new ConcurrentHashMap<String, Boolean>();
+	}
+
+	/**
+	 * Normalize a page title.
+	 * 
+	 * @param namespace
+	 *          the namespace of the page or an empty string
+	 * @param articleName
+	 *          the name of the page
+	 * @return the title in the form <code>Namespace:Article name</code>
+	 */
+	public static String createTitle(String namespace, String articleName) {
+		String name = articleName.replace('_', ' ').trim();
+		if (name.length() > 0 && Character.isLowerCase(name.charAt(0))) {
+			name = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+		}
+		if (namespace == null || namespace.length() == 0) {
+			return name;
+		}
+		return namespace.replace('_', ' ').trim() + ':' + name;
+	}
+
+	/**
+	 * Normalize a page title, which may contain a namespace prefix.
+	 */
+	private static String createTitle(String title) {
+		int index = title.indexOf(':');
+		if (index > 0) {
+			return createTitle(title.substring(0, index), title.substring(index + 1));
+		}
+		return createTitle("", title);
+	}
+
+	/**
+	 * Add the title of an existing page to the Bloom filter.
+	 * 
+	 * @param title
+	 *          the title of the page with its namespace prefix
+	 */
+	public void addExistingPage(String title) {
+		addToBloomFilter(createTitle(title));
+	}
+
+	/**
+	 * Add the titles of existing pages to the Bloom filter.
+	 * 
+	 * @param titles
+	 *          the titles of the pages with their namespace prefix
+	 */
+	public void addExistingPages(Collection<String> titles) {
+		for (String title : titles) {
+			addToBloomFilter(createTitle(title));
+		}
+	}
+
+	/**
+	 * Mark the Bloom filter as complete, i.e. the titles of all existing pages
+	 * were added with {@link #addExistingPage(String)}. Titles which aren't
+	 * contained in a complete Bloom filter are reported as missing without a
+	 * lookup.
+	 */
+	public void setComplete(boolean complete) {
+		fComplete = complete;
+	}
+
+	public boolean isComplete() {
+		return fComplete;
+	}
+
+	/**
+	 * Check if the page exists without a lookup in the wiki.
+	 * 
+	 * @param namespace
+	 *          the namespace of the page or an empty string
+	 * @param articleName
+	 *          the name of the page
+	 * @return <code>Boolean.TRUE</code> or <code>Boolean.FALSE</code> if the
+	 *         existence of the page is known; <code>null</code> if the page must
+	 *         be looked up in the wiki
+	 */
+	public Boolean get(String namespace, String articleName) {
+		String title = createTitle(namespace, articleName);
+		Boolean exists = fCachedTitles.get(title);
+		if (exists == null && fComplete && !mightContain(title)) {
+			exists = Boolean.FALSE;
+		}
+		if (exists == null) {
+			fMisses.incrementAndGet();
+		} else {
+			fHits.incrementAndGet();
+		}
+		return exists;
+	}
+
+	/**
+	 * Store the result of a page lookup.
+	 * 
+	 * @param namespace
+	 *          the namespace of the page or an empty string
+	 * @param articleName
+	 *          the name of the page
+	 * @param exists
+	 *          <code>true</code> if the page exists
+	 */
+	public void put(String namespace, String articleName, boolean exists) {
+		String title = createTitle(namespace, articleName);
+		if (exists) {
+			addToBloomFilter(title);
+		}
+		if (fCachedTitles.size() >= fMaxCachedTitles) {
+			// the cache is only a shortcut; simply start again
+			fCachedTitles.clear();
+		}
+		fCachedTitles.put(title, Boolean.valueOf(exists));
+	}
+
+	/**
+	 * Store the result of a page lookup.
+	 * 
+	 * @param title
+	 *          the title of the page with its namespace prefix
+	 * @param exists
+	 *          <code>true</code> if the page exists
+	 */
+	public void put(String title, boolean exists) {
+		int index = title.indexOf(':');
+		if (index > 0) {
+			put(title.substring(0, index), title.substring(index + 1), exists);
+		} else {
+			put("", title, exists);
+		}
+	}
+
+	/**
+	 * Remove all cached lookup results and reset the statistics. The Bloom
+	 * filter is kept.
+	 */
+	public void clear() {
+		fCachedTitles.clear();
+		fHits.set(0L);
+		fMisses.set(0L);
+	}
+
+	public long getHits() {
+		return fHits.get();
+	}
+
+	public long getMisses() {
+		return fMisses.get();
+	}
+
+	/**
+	 * The current number of titles in the exact cache.
+	 */
+	public int size() {
+		return fCachedTitles.size();
+	}
+
+	private void addToBloomFilter(String title) {
+		long hash = hash64(title);
+		int hash1 = (int) hash;
+		int hash2 = (int) (hash >>> 32);
+		for (int i = 1; i <= fNumberOfHashFunctions; i++) {
+			long bit = bitIndex(hash1 + i * hash2);
+			int index = (int) (bit >>> 6);
+			long mask = 1L << (bit & 63);
+			long value;
+			do {
+				value = fBits.get(index);
+				if ((value & mask) != 0L) {
+					break;
+				}
+			} while (!fBits.compareAndSet(index, value, value | mask));
+		}
+	}
+
+	private boolean mightContain(String title) {
+		long hash = hash64(title);
+		int hash1 = (int) hash;
+		int hash2 = (int) (hash >>> 32);
+		for (int i = 1; i <= fNumberOfHashFunctions; i++) {
+			long bit = bitIndex(hash1 + i * hash2);
+			if ((fBits.get((int) (bit >>> 6)) & (1L << (bit & 63))) == 0L) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private long bitIndex(int combinedHash) {
+		return (combinedHash & 0x7fffffffL) % fNumberOfBits;
+	}
+
+	/**
+	 * A 64-bit FNV-1a hash of the characters of the string.
+	 */
+	private static long hash64(String str) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < str.length(); i++) {
+			char ch = str.charAt(i);
+			hash ^= ch & 0xff;
+			hash *= 0x100000001b3L;
+			hash ^= ch >>> 8;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		long hits = getHits();
+		long lookups = hits + getMisses();
+		return "PageExistenceIndex[size=" + size() + ", complete=" + fComplete + ", hits=" + hits + ", misses=" + getMisses()
+				+ ", hitRate=" + (lookups == 0L ? 0L : (hits * 100L / lookups)) + "%]";
+	}
+}
@@ -0,0 +1,354 @@
+package info.bliki.wiki.model;
+
+/**
+ * The resource limits of a single render: a wall-clock deadline, the size of
+ * the expanded templates, the number of parsed nodes, the number of template
+ * calls and the number of expensive parser function calls (i.e.
+ * <code>{{#ifexist:...}}</code>).
+ *
+ * Limits are opt-in: set a budget with
+ * {@link IWikiModel#setRenderBudget(RenderBudget)} before calling
+ * <code>render()</code>. The counters are restarted at the beginning of every
+ * render. If a limit is exceeded, the parsers stop and the partial result is
+ * returned with an appended error marker:
+ * <ul>
+ * <li>if a template or size limit is exceeded, no more templates are expanded,
+ * but the already expanded text is parsed and rendered</li>
+ * <li>if the node limit is exceeded, the parsing stops, but the already parsed
+ * nodes are rendered</li>
+ * <li>if the deadline is exceeded or the render is cancelled, all phases stop
+ * as soon as possible</li>
+ * </ul>
+ *
+ * Example:
+ *
+ * <pre>
+ * RenderBudget budget = new RenderBudget();
+ * budget.setTimeout(2000);
+ * budget.setMaxTemplateCalls(5000);
+ * wikiModel.setRenderBudget(budget);
+ * String html = wikiModel.render(rawWikiText);
+ * if (budget.isExceeded()) {
+ *   System.out.println(budget.getExceededLimitName());
+ * }
+ * </pre>
+ *
+ * A budget must not be used by two models at the same time; only
+ * {@link #cancel()} may be called from another thread.
+ */
+public class RenderBudget {
+	/**
+	 * The wall-clock deadline
+	 */
+	public final static int DEADLINE = 0;
+
+	/**
+	 * The cumulative size of all template expansions
+	 */
+	public final static int EXPANDED_SIZE = 1;
+
+	/**
+	 * The number of parsed nodes
+	 */
+	public final static int NODE_COUNT = 2;
+
+	/**
+	 * The number of template calls
+	 */
+	public final static int TEMPLATE_CALLS = 3;
+
+	/**
+	 * The number of expensive parser function calls
+	 */
+	public final static int EXPENSIVE_FUNCTION_CALLS = 4;
+
+	/**
+	 * The render was cancelled with {@link #cancel()}
+	 */
+	public final static int CANCELLED = 5;
+
+	private final static String[] LIMIT_NAMES = { "deadline", "expanded size", "node count", "template calls",
+			"expensive function calls", "cancelled" };
+
+	/**
+	 * The number of checks between two reads of the system clock
+	 */
+	private final static int CLOCK_CHECK_INTERVAL = 64;
+
+	private long fTimeout = 0;
+
+	private int fMaxExpandedSize = Integer.MAX_VALUE;
+
+	private int fMaxNodes = Integer.MAX_VALUE;
+
+	private int fMaxTemplateCalls = Integer.MAX_VALUE;
+
+	private int fMaxExpensiveFunctionCalls = Integer.MAX_VALUE;
+
+	/**
+	 * The deadline in <code>System.nanoTime()</code> units; only valid if
+	 * <code>fTimeout &gt; 0</code>
+	 */
+	private long fDeadline;
+
+	private int fClockCheckCountdown;
+
+	private long fExpandedSize;
+
+	private int fNodeCount;
+
+	private int fTemplateCalls;
+
+	private int fExpensiveFunctionCalls;
+
+	/**
+	 * The first exceeded limit or <code>-1</code>
+	 */
+	private int fExceededLimit;
+
+	private boolean fTimeExceeded;
+
+	private boolean fParseExceeded;
+
+	private boolean fExpansionExceeded;
+
+	private volatile boolean fCancelled;
+
+	/**
+	 * Create a budget without limits.
+	 */
+	public RenderBudget() {
+		start();
+	}
+
+	/**
+	 * Restart the counters and the deadline. Called by the wiki model at the
+	 * beginning of every render.
+	 */
+	public void start() {
+		fDeadline = fTimeout > 0 ? System.nanoTime() + fTimeout * 1000000L : 0L;
+		fClockCheckCountdown = CLOCK_CHECK_INTERVAL;
+		fExpandedSize = 0;
+		fNodeCount = 0;
+		fTemplateCalls = 0;
+		fExpensiveFunctionCalls = 0;
+		fExceededLimit = -1;
+		fTimeExceeded = false;
+		fParseExceeded = false;
+		fExpansionExceeded = false;
+		fCancelled = false;
+	}
+
+	/**
+	 * Cancel the running render. The parsers stop at their next check and the
+	 * partial result is returned. May be called from any thread.
+	 */
+	public void cancel() {
+		fCancelled = true;
+	}
+
+	private void exceed(int limit) {
+		if (fExceededLimit < 0) {
+			fExceededLimit = limit;
+		}
+		fExpansionExceeded = true;
+		if (limit == NODE_COUNT || limit == DEADLINE || limit == CANCELLED) {
+			fParseExceeded = true;
+			if (limit != NODE_COUNT) {
+				fTimeExceeded = true;
+			}
+		}
+	}
+
+	/**
+	 * Check if the deadline is exceeded or the render was cancelled. The system
+	 * clock is only read on every 64th call, so this
+	 * method can be called in the inner parser loops.
+	 *
+	 * @return <code>true</code> if the render should stop
+	 */
+	public boolean isTimeExceeded() {
+		if (fTimeExceeded) {
+			return true;
+		}
+		if (fCancelled) {
+			exceed(CANCELLED);
+			return true;
+		}
+		if (fTimeout > 0 && --fClockCheckCountdown <= 0) {
+			fClockCheckCountdown = CLOCK_CHECK_INTERVAL;
+			if (System.nanoTime() - fDeadline >= 0) {
+				exceed(DEADLINE);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Check if the parsing should stop, because the time or node limit is
+	 * exceeded.
+	 */
+	public boolean isParseExceeded() {
+		return fParseExceeded || isTimeExceeded();
+	}
+
+	/**
+	 * Check if the template expansion should stop, because any limit is
+	 * exceeded.
+	 */
+	public boolean isExpansionExceeded() {
+		return fExpansionExceeded || isTimeExceeded();
+	}
+
+	/**
+	 * Check if any limit was exceeded in the current (or last) render. Doesn't
+	 * read the system clock.
+	 */
+	public boolean isExceeded() {
+		return fExceededLimit >= 0;
+	}
+
+	/**
+	 * Count a template call.
+	 *
+	 * @return <code>false</code> if the template shouldn't be expanded anymore
+	 */
+	public boolean addTemplateCall() {
+		if (++fTemplateCalls > fMaxTemplateCalls) {
+			exceed(TEMPLATE_CALLS);
+		}
+		return !isExpansionExceeded();
+	}
+
+	/**
+	 * Count an expensive parser function call.
+	 *
+	 * @return <code>false</code> if the function shouldn't be evaluated anymore
+	 */
+	public boolean addExpensiveFunctionCall() {
+		if (++fExpensiveFunctionCalls > fMaxExpensiveFunctionCalls) {
+			exceed(EXPENSIVE_FUNCTION_CALLS);
+		}
+		return !isExpansionExceeded();
+	}
+
+	/**
+	 * Add the size of an expanded template, which isn't nested in another
+	 * template.
+	 *
+	 * @return <code>false</code> if the expanded text shouldn't be used anymore
+	 */
+	public boolean addExpandedSize(int size) {
+		fExpandedSize += size;
+		if (fExpandedSize > fMaxExpandedSize) {
+			exceed(EXPANDED_SIZE);
+		}
+		return !isExpansionExceeded();
+	}
+
+	/**
+	 * Count a parsed node.
+	 */
+	public void addNode() {
+		if (++fNodeCount > fMaxNodes) {
+			exceed(NODE_COUNT);
+		}
+	}
+
+	/**
+	 * The first exceeded limit (i.e. {@link #DEADLINE}) or <code>-1</code> if no
+	 * limit was exceeded.
+	 */
+	public int getExceededLimit() {
+		return fExceededLimit;
+	}
+
+	/**
+	 * The name of the first exceeded limit or <code>null</code> if no limit was
+	 * exceeded.
+	 */
+	public String getExceededLimitName() {
+		return fExceededLimit < 0 ? null : LIMIT_NAMES[fExceededLimit];
+	}
+
+	public long getExpandedSize() {
+		return fExpandedSize;
+	}
+
+	public int getNodeCount() {
+		return fNodeCount;
+	}
+
+	public int getTemplateCalls() {
+		return fTemplateCalls;
+	}
+
+	public int getExpensiveFunctionCalls() {
+		return fExpensiveFunctionCalls;
+	}
+
+	public long getTimeout() {
+		return fTimeout;
+	}
+
+	/**
+	 * Set the wall-clock time limit of a render.
+	 *
+	 * @param timeout
+	 *          the time limit in milliseconds; <code>0</code> for no limit
+	 */
+	public void setTimeout(long timeout) {
+		fTimeout = timeout;
+	}
+
+	public int getMaxExpandedSize() {
+		return fMaxExpandedSize;
+	}
+
+	/**
+	 * Set the maximum cumulative number of characters of all template
+	 * expansions. Nested expansions are only counted as part of the outermost
+	 * expansion.
+	 */
+	public void setMaxExpandedSize(int maxExpandedSize) {
+		fMaxExpandedSize = maxExpandedSize;
+	}
+
+	public int getMaxNodes() {
+		return fMaxNodes;
+	}
+
+	public void setMaxNodes(int maxNodes) {
+		fMaxNodes = maxNodes;
+	}
+
+	public int getMaxTemplateCalls() {
+		return fMaxTemplateCalls;
+	}
+
+	public void setMaxTemplateCalls(int maxTemplateCalls) {
+		fMaxTemplateCalls = maxTemplateCalls;
+	}
+
+	public int getMaxExpensiveFunctionCalls() {
+		return fMaxExpensiveFunctionCalls;
+	}
+
+	public void setMaxExpensiveFunctionCalls(int maxExpensiveFunctionCalls) {
+		fMaxExpensiveFunctionCalls = maxExpensiveFunctionCalls;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder buf = new StringBuilder();
+		buf.append("Template calls: ").append(fTemplateCalls).append('\n');
+		buf.append("Expensive function calls: ").append(fExpensiveFunctionCalls).append('\n');
+		buf.append("Expanded size: ").append(fExpandedSize).append('\n');
+		buf.append("Node count: ").append(fNodeCount).append('\n');
+		if (fExceededLimit >= 0) {
+			buf.append("Exceeded limit: ").append(LIMIT_NAMES[fExceededLimit]).append('\n');
+		}
+		return buf.toString();
+	}
+}
@@ -0,0 +1,396 @@
+package info.bliki.wiki.model;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects timings and counters of the rendering of one or more pages, similar
+ * to the &quot;NewPP limit report&quot; of Mediawiki.
+ *
+ * Profiling is opt-in: set a profile with
+ * {@link IWikiModel#setRenderProfile(RenderProfile)} before calling
+ * <code>render()</code> and read the results from the profile afterwards. A
+ * profile which is used for several renders sums up their results; profiles of
+ * different models (i.e. threads) can be merged with {@link #add(RenderProfile)}.
+ *
+ * Example:
+ *
+ * <pre>
+ * RenderProfile profile = new RenderProfile();
+ * wikiModel.setRenderProfile(profile);
+ * String html = wikiModel.render(rawWikiText);
+ * System.out.println(profile);
+ * </pre>
+ *
+ * The template times are inclusive, i.e. the time of a template contains the
+ * times of the templates and parser functions it calls. A profile must not be
+ * used by two models at the same time.
+ */
+public class RenderProfile {
+	/**
+	 * The template expansion phase (<code>TemplateParser</code>)
+	 */
+	public final static int PREPROCESS_PHASE = 0;
+
+	/**
+	 * The block parsing phase (<code>WikipediaParser</code>)
+	 */
+	public final static int PARSE_PHASE = 1;
+
+	/**
+	 * The output phase (i.e. <code>HTMLConverter</code>)
+	 */
+	public final static int OUTPUT_PHASE = 2;
+
+	private final static String[] PHASE_NAMES = { "preprocess", "parse", "output" };
+
+	/**
+	 * Measures the thread CPU time; <code>null</code> if the JVM doesn't support
+	 * it (or restricts the access)
+	 */
+	private final static ThreadMXBean THREAD_MX_BEAN;
+
+	static {
+		ThreadMXBean bean = null;
+		try {
+			bean = ManagementFactory.getThreadMXBean();
+			if (!bean.isCurrentThreadCpuTimeSupported()) {
+				bean = null;
+			}
+		} catch (Throwable e) {
+			// i.e. java.lang.management isn't available
+		}
+		THREAD_MX_BEAN = bean;
+	}
+
+	/**
+	 * The expansion count and the cumulative time of a template.
+	 */
+	public static class TemplateProfile {
+		private final String fName;
+
+		private int fCount;
+
+		private long fNanos;
+
+		TemplateProfile(String name) {
+			fName = name;
+		}
+
+		/**
+		 * The template name with its namespace prefix.
+		 */
+		public String getName() {
+			return fName;
+		}
+
+		public int getCount() {
+			return fCount;
+		}
+
+		/**
+		 * The cumulative (inclusive) expansion time in nanoseconds.
+		 */
+		public long getNanos() {
+			return fNanos;
+		}
+
+		@Override
+		public String toString() {
+			return fName + ": " + fCount + " calls, " + (fNanos / 1000000L) + "ms";
+		}
+	}
+
+	private final long[] fPhaseWallNanos = new long[PHASE_NAMES.length];
+
+	private final long[] fPhaseCpuNanos = new long[PHASE_NAMES.length];
+
+	private final int[] fPhaseDepth = new int[PHASE_NAMES.length];
+
+	private final long[] fPhaseWallStart = new long[PHASE_NAMES.length];
+
+	private final long[] fPhaseCpuStart = new long[PHASE_NAMES.length];
+
+	private final Map<String, TemplateProfile> fTemplates;
+
+	private final Map<String, int[]> fParserFunctionCalls;
+
+	private int fRenderCount;
+
+	private int fRawWikiContentLookups;
+
+	private int fRawWikiContentMisses;
+
+	private int fTemplateCacheHits;
+
+	private int fMaxRecursionDepth;
+
+	public RenderProfile() {
+		fTemplates = new HashMap<String, TemplateProfile>();
+		fParserFunctionCalls = new HashMap<String, int[]>();
+		clear();
+	}
+
+	private static long currentCpuTime() {
+		return THREAD_MX_BEAN != null ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : 0L;
+	}
+
+	/**
+	 * Start the time measurement of a phase. Nested calls for the same phase are
+	 * only measured once.
+	 *
+	 * @param phase
+	 *          one of {@link #PREPROCESS_PHASE}, {@link #PARSE_PHASE} or
+	 *          {@link #OUTPUT_PHASE}
+	 */
+	public void beginPhase(int phase) {
+		if (fPhaseDepth[phase]++ == 0) {
+			fPhaseWallStart[phase] = System.nanoTime();
+			fPhaseCpuStart[phase] = currentCpuTime();
+		}
+	}
+
+	/**
+	 * Stop the time measurement of a phase.
+	 *
+	 * @param phase
+	 *          the phase used in {@link #beginPhase(int)}
+	 */
+	public void endPhase(int phase) {
+		if (--fPhaseDepth[phase] == 0) {
+			fPhaseWallNanos[phase] += System.nanoTime() - fPhaseWallStart[phase];
+			fPhaseCpuNanos[phase] += currentCpuTime() - fPhaseCpuStart[phase];
+		}
+	}
+
+	/**
+	 * Record the expansion of a template.
+	 *
+	 * @param qualifiedName
+	 *          the template name with its namespace prefix
+	 * @param nanos
+	 *          the expansion time in nanoseconds
+	 */
+	public void addTemplateExpansion(String qualifiedName, long nanos) {
+		TemplateProfile templateProfile = fTemplates.get(qualifiedName);
+		if (templateProfile == null) {
+			templateProfile = new TemplateProfile(qualifiedName);
+			fTemplates.put(qualifiedName, templateProfile);
+		}
+		templateProfile.fCount++;
+		templateProfile.fNanos += nanos;
+	}
+
+	/**
+	 * Record the call of a parser function (i.e. <code>#if</code>).
+	 */
+	public void addParserFunctionCall(String functionName) {
+		int[] count = fParserFunctionCalls.get(functionName);
+		if (count == null) {
+			fParserFunctionCalls.put(functionName, new int[] { 1 });
+		} else {
+			count[0]++;
+		}
+	}
+
+	/**
+	 * Record a lookup of the raw content of a template.
+	 *
+	 * @param found
+	 *          <code>false</code> if no content was found
+	 */
+	public void addRawWikiContentLookup(boolean found) {
+		fRawWikiContentLookups++;
+		if (!found) {
+			fRawWikiContentMisses++;
+		}
+	}
+
+	/**
+	 * Record a template call which was answered from a template cache.
+	 */
+	public void addTemplateCacheHit() {
+		fTemplateCacheHits++;
+	}
+
+	/**
+	 * Record the current recursion level of the parser.
+	 */
+	public void updateRecursionDepth(int recursionLevel) {
+		if (recursionLevel > fMaxRecursionDepth) {
+			fMaxRecursionDepth = recursionLevel;
+		}
+	}
+
+	/**
+	 * Record a completed render.
+	 */
+	public void addRender() {
+		fRenderCount++;
+	}
+
+	/**
+	 * Add the results of another profile to this profile.
+	 *
+	 * @param profile
+	 *          the profile of another (completed) render
+	 */
+	public synchronized void add(RenderProfile profile) {
+		for (int i = 0; i < PHASE_NAMES.length; i++) {
+			fPhaseWallNanos[i] += profile.fPhaseWallNanos[i];
+			fPhaseCpuNanos[i] += profile.fPhaseCpuNanos[i];
+		}
+		for (TemplateProfile templateProfile : profile.fTemplates.values()) {
+			TemplateProfile thisProfile = fTemplates.get(templateProfile.fName);
+			if (thisProfile == null) {
+				thisProfile = new TemplateProfile(templateProfile.fName);
+				fTemplates.put(templateProfile.fName, thisProfile);
+			}
+			thisProfile.fCount += templateProfile.fCount;
+			thisProfile.fNanos += templateProfile.fNanos;
+		}
+		for (Map.Entry<String, int[]> entry : profile.fParserFunctionCalls.entrySet()) {
+			int[] count = fParserFunctionCalls.get(entry.getKey());
+			if (count == null) {
+				fParserFunctionCalls.put(entry.getKey(), new int[] { entry.getValue()[0] });
+			} else {
+				count[0] += entry.getValue()[0];
+			}
+		}
+		fRenderCount += profile.fRenderCount;
+		fRawWikiContentLookups += profile.fRawWikiContentLookups;
+		fRawWikiContentMisses += profile.fRawWikiContentMisses;
+		fTemplateCacheHits += profile.fTemplateCacheHits;
+		if (profile.fMaxRecursionDepth > fMaxRecursionDepth) {
+			fMaxRecursionDepth = profile.fMaxRecursionDepth;
+		}
+	}
+
+	/**
+	 * Remove all results.
+	 */
+	public synchronized void clear() {
+		for (int i = 0; i < PHASE_NAMES.length; i++) {
+			fPhaseWallNanos[i] = 0L;
+			fPhaseCpuNanos[i] = 0L;
+			fPhaseDepth[i] = 0;
+		}
+		fTemplates.clear();
+		fParserFunctionCalls.clear();
+		fRenderCount = 0;
+		fRawWikiContentLookups = 0;
+		fRawWikiContentMisses = 0;
+		fTemplateCacheHits = 0;
+		fMaxRecursionDepth = 0;
+	}
+
+	/**
+	 * The wall clock time of the phase in nanoseconds.
+	 */
+	public long getWallNanos(int phase) {
+		return fPhaseWallNanos[phase];
+	}
+
+	/**
+	 * The CPU time of the phase in nanoseconds; <code>0</code> if the JVM
+	 * doesn't support the measurement of the thread CPU time.
+	 */
+	public long getCpuNanos(int phase) {
+		return fPhaseCpuNanos[phase];
+	}
+
+	/**
+	 * The profiles of all expanded templates, sorted by their cumulative time
+	 * (longest first).
+	 */
+	public List<TemplateProfile> getTemplateProfiles() {
+		List<TemplateProfile> list = new ArrayList<TemplateProfile>(fTemplates.values());
+		Collections.sort(list, new Comparator<TemplateProfile>() {
+			public int compare(TemplateProfile o1, TemplateProfile o2) {
+				return o1.fNanos > o2.fNanos ? -1 : (o1.fNanos == o2.fNanos ? o1.fName.compareTo(o2.fName) : 1);
+			}
+		});
+		return list;
+	}
+
+	/**
+	 * The profile of a template.
+	 *
+	 * @param qualifiedName
+	 *          the template name with its namespace prefix (i.e.
+	 *          <code>Template:Infobox</code>)
+	 * @return <code>null</code> if the template wasn't expanded
+	 */
+	public TemplateProfile getTemplateProfile(String qualifiedName) {
+		return fTemplates.get(qualifiedName);
+	}
+
+	/**
+	 * The number of calls of all parser functions by their names.
+	 */
+	public Map<String, Integer> getParserFunctionCalls() {
+		Map<String, Integer> map = new HashMap<String, Integer>();
+		for (Map.Entry<String, int[]> entry : fParserFunctionCalls.entrySet()) {
+			map.put(entry.getKey(), Integer.valueOf(entry.getValue()[0]));
+		}
+		return map;
+	}
+
+	public int getRenderCount() {
+		return fRenderCount;
+	}
+
+	public int getRawWikiContentLookups() {
+		return fRawWikiContentLookups;
+	}
+
+	/**
+	 * The number of raw content lookups, which didn't find a content.
+	 */
+	public int getRawWikiContentMisses() {
+		return fRawWikiContentMisses;
+	}
+
+	public int getTemplateCacheHits() {
+		return fTemplateCacheHits;
+	}
+
+	public int getMaxRecursionDepth() {
+		return fMaxRecursionDepth;
+	}
+
+	/**
+	 * A report in the style of the Mediawiki &quot;NewPP limit report&quot;.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder buf = new StringBuilder(512);
+		buf.append("Render profile\n");
+		buf.append("Renders: ").append(fRenderCount).append('\n');
+		for (int i = 0; i < PHASE_NAMES.length; i++) {
+			buf.append(PHASE_NAMES[i]).append(" time: ").append(fPhaseWallNanos[i] / 1000000L).append("ms wall, ").append(
+					fPhaseCpuNanos[i] / 1000000L).append("ms cpu\n");
+		}
+		buf.append("Raw content lookups: ").append(fRawWikiContentLookups).append(" (").append(fRawWikiContentMisses).append(
+				" missing)\n");
+		buf.append("Template cache hits: ").append(fTemplateCacheHits).append('\n');
+		buf.append("Highest expansion depth: ").append(fMaxRecursionDepth).append('\n');
+		List<String> functionNames = new ArrayList<String>(fParserFunctionCalls.keySet());
+		Collections.sort(functionNames);
+		for (String functionName : functionNames) {
+			buf.append("Parser function ").append(functionName).append(": ").append(fParserFunctionCalls.get(functionName)[0]).append(
+					" calls\n");
+		}
+		buf.append("Transclusion expansion time report:\n");
+		for (TemplateProfile templateProfile : getTemplateProfiles()) {
+			buf.append("  ").append(templateProfile).append('\n');
+		}
+		return buf.toString();
+	}
+}
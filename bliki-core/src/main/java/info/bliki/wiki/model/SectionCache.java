@@ -0,0 +1,659 @@
+package info.bliki.wiki.model;
+
+import info.bliki.htmlcleaner.BaseToken;
+import info.bliki.htmlcleaner.TagNode;
+import info.bliki.wiki.filter.ITextConverter;
+import info.bliki.wiki.filter.SectionHeader;
+import info.bliki.wiki.filter.WikipediaParser;
+import info.bliki.wiki.tags.HTMLTag;
+import info.bliki.wiki.tags.ReferencesTag;
+import info.bliki.wiki.tags.TableOfContentTag;
+import info.bliki.wiki.tags.util.TagStack;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A cache for the incremental rendering of an article, which is edited and
+ * rendered again and again (for example in the preview of an editor).
+ *
+ * The wiki text is split into sections at the headings of the top level text.
+ * The rendered HTML and the side effects (references, table of contents
+ * entries, categories, links and templates) of every section are cached. A
+ * section is rendered again only if its text changed, or if the preceding
+ * sections changed the numbering of the references or of the sections. The
+ * table of contents and the <code>&lt;references/&gt;</code> lists are
+ * rendered separately and inserted after all sections are rendered.
+ *
+ * Example:
+ *
+ * <pre>
+ * SectionCache sectionCache = new SectionCache();
+ * // for every preview of the edited article:
+ * String html = wikiModel.render(rawWikiText, sectionCache);
+ * </pre>
+ *
+ * Articles which can't be split safely (i.e. redirects or articles with a
+ * <code>__TOC__</code>, <code>__NOTOC__</code> or <code>__FORCETOC__</code>
+ * identifier) are rendered completely. Sections whose templates depend on the
+ * current time are never cached.
+ *
+ * A cache should only be used for a single article and wiki model
+ * configuration.
+ *
+ * @see AbstractWikiModel#render(ITextConverter, String, Appendable,
+ *      SectionCache)
+ */
+public class SectionCache {
+	public final static int DEFAULT_MAX_ENTRIES = 256;
+
+	private final static String TOC_PLACEHOLDER = "<!--bliki:toc-->";
+
+	private final static String REFERENCES_PLACEHOLDER = "<!--bliki:references:";
+
+	private final static String PLACEHOLDER_END = "-->";
+
+	/**
+	 * Tags whose content is not parsed, so that they can't contain a section
+	 * head
+	 */
+	private final static String[] RAW_TAGS = { "nowiki", "pre", "source", "math", "syntaxhighlight" };
+
+	/**
+	 * Tags which could contain a section head; these tags must not span several
+	 * sections
+	 */
+	private final static String[] NESTED_TAGS = { "ref", "references", "gallery", "div", "noinclude", "includeonly" };
+
+	/**
+	 * Identifiers which change the table of contents of the whole article
+	 */
+	private final static String[] TOC_IDENTIFIERS = { "__TOC__", "__NOTOC__", "__FORCETOC__", "<onlyinclude" };
+
+	/**
+	 * The cache key of a section: the section text and the state of the model
+	 * before the section is rendered.
+	 */
+	private static class Key {
+		private final String fState;
+
+		private final String fText;
+
+		Key(String state, String text) {
+			fState = state;
+			fText = text;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * fState.hashCode() + fText.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return fText.equals(other.fText) && fState.equals(other.fState);
+		}
+	}
+
+	/**
+	 * The rendered HTML and the side effects of a section.
+	 */
+	private static class Section {
+		String fHtml;
+
+		boolean fCreatesToC;
+
+		List<SectionHeader> fHeaders;
+
+		int fSectionCount;
+
+		/**
+		 * The new references of this section
+		 */
+		List<Reference> fReferences;
+
+		/**
+		 * The indexes of the references of the preceding sections, which are used
+		 * again in this section
+		 */
+		List<Integer> fReusedReferences;
+
+		Map<String, String> fCategories;
+
+		Set<String> fLinks;
+
+		Set<String> fTemplates;
+
+		List<SemanticRelation> fSemanticRelations;
+
+		List<SemanticAttribute> fSemanticAttributes;
+
+		/**
+		 * Apply the side effects of this section to the model.
+		 */
+		void replay(AbstractWikiModel model) {
+			if (fCreatesToC) {
+				model.createTableOfContent(false);
+			}
+			for (int i = 0; i < fHeaders.size(); i++) {
+				SectionHeader header = fHeaders.get(i);
+				model.addToTableOfContent(model.fTableOfContent, header, header.getLevel());
+			}
+			model.fSectionCounter += fSectionCount;
+			for (int i = 0; i < fReusedReferences.size(); i++) {
+				model.fReferences.get(fReusedReferences.get(i).intValue()).incCounter();
+			}
+			for (int i = 0; i < fReferences.size(); i++) {
+				addReference(model, fReferences.get(i));
+			}
+			if (model instanceof WikiModel) {
+				addPageData((WikiModel) model, this);
+			}
+		}
+	}
+
+	/**
+	 * Renders a placeholder for the table of contents or a references list.
+	 */
+	private static class PlaceholderTag extends HTMLTag {
+		PlaceholderTag(String name) {
+			super(name);
+		}
+
+		@Override
+		public void renderHTML(ITextConverter converter, Appendable writer, IWikiModel model) throws IOException {
+			if (getName().equals("references")) {
+				// the references list contains the references, which are rendered up
+				// to this position
+				List<Reference> references = model.getReferences();
+				writer.append(REFERENCES_PLACEHOLDER);
+				writer.append(Integer.toString(references == null ? -1 : references.size()));
+				writer.append(PLACEHOLDER_END);
+			} else {
+				writer.append(TOC_PLACEHOLDER);
+			}
+		}
+
+		@Override
+		public boolean isReduceTokenStack() {
+			return false;
+		}
+	}
+
+	private final LinkedHashMap<Key, Section> fSections;
+
+	private final int fMaxEntries;
+
+	private long fHits = 0L;
+
+	private long fMisses = 0L;
+
+	public SectionCache() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 *
+	 * @param maxEntries
+	 *          the maximum number of cached sections; the least recently used
+	 *          sections are evicted
+	 */
+	public SectionCache(int maxEntries) {
+		fMaxEntries = maxEntries;
+		fSections = new LinkedHashMap<Key, Section>(64, 0.75f, true);
+	}
+
+	/**
+	 * Split the wiki text into sections. A section starts at a head of the top
+	 * level text, which isn't contained in a template call, a table, a comment or
+	 * a tag.
+	 *
+	 * @param rawWikiText
+	 * @return the sections or <code>null</code> if the text shouldn't be split
+	 */
+	public static List<String> splitSections(String rawWikiText) {
+		for (int i = 0; i < TOC_IDENTIFIERS.length; i++) {
+			if (rawWikiText.indexOf(TOC_IDENTIFIERS[i]) >= 0) {
+				return null;
+			}
+		}
+		String trimmed = rawWikiText.trim();
+		if (trimmed.length() > 0 && trimmed.charAt(0) == '#') {
+			// possibly a redirect
+			return null;
+		}
+		List<String> sections = new ArrayList<String>();
+		int length = rawWikiText.length();
+		int sectionStart = 0;
+		int templateLevel = 0;
+		int tableLevel = 0;
+		int tagLevel = 0;
+		boolean lineStart = true;
+		int position = 0;
+		scan: while (position < length) {
+			char ch = rawWikiText.charAt(position);
+			if (lineStart) {
+				lineStart = false;
+				if (ch == '=') {
+					if (position > sectionStart && templateLevel == 0 && tableLevel == 0 && tagLevel == 0
+							&& isHead(rawWikiText, position)) {
+						sections.add(rawWikiText.substring(sectionStart, position));
+						sectionStart = position;
+					}
+				} else if (rawWikiText.startsWith("{|", position)) {
+					tableLevel++;
+					position += 2;
+					continue;
+				} else if (rawWikiText.startsWith("|}", position)) {
+					if (tableLevel > 0) {
+						tableLevel--;
+					}
+					position += 2;
+					continue;
+				}
+			}
+			switch (ch) {
+			case '\n':
+				lineStart = true;
+				break;
+			case '{':
+				if (rawWikiText.startsWith("{{", position)) {
+					templateLevel++;
+					position += 2;
+					continue;
+				}
+				break;
+			case '}':
+				if (templateLevel > 0 && rawWikiText.startsWith("}}", position)) {
+					templateLevel--;
+					position += 2;
+					continue;
+				}
+				break;
+			case '<':
+				if (rawWikiText.startsWith("<!--", position)) {
+					int commentEnd = rawWikiText.indexOf("-->", position + 4);
+					if (commentEnd < 0) {
+						break scan;
+					}
+					position = commentEnd + 3;
+					continue;
+				}
+				int tagEnd = rawWikiText.indexOf('>', position);
+				if (tagEnd < 0) {
+					break scan;
+				}
+				boolean endTag = rawWikiText.charAt(position + 1) == '/';
+				boolean emptyTag = rawWikiText.charAt(tagEnd - 1) == '/';
+				int nameStart = endTag ? position + 2 : position + 1;
+				if (!endTag && !emptyTag) {
+					String rawTag = startsWithTag(rawWikiText, nameStart, RAW_TAGS);
+					if (rawTag != null) {
+						int rawEnd = indexOfIgnoreCase(rawWikiText, "</" + rawTag, tagEnd);
+						if (rawEnd < 0) {
+							break scan;
+						}
+						position = rawEnd + 2;
+						continue;
+					}
+				}
+				if (!emptyTag && startsWithTag(rawWikiText, nameStart, NESTED_TAGS) != null) {
+					if (endTag) {
+						if (tagLevel > 0) {
+							tagLevel--;
+						}
+					} else {
+						tagLevel++;
+					}
+				}
+				break;
+			}
+			position++;
+		}
+		sections.add(rawWikiText.substring(sectionStart));
+		if (sections.size() < 2) {
+			return null;
+		}
+		return sections;
+	}
+
+	/**
+	 * Check if the line at the given position is a section head.
+	 */
+	private static boolean isHead(String text, int position) {
+		int lineEnd = text.indexOf('\n', position);
+		if (lineEnd < 0) {
+			lineEnd = text.length();
+		}
+		while (lineEnd > position && Character.isWhitespace(text.charAt(lineEnd - 1))) {
+			lineEnd--;
+		}
+		if (lineEnd - position < 3 || text.charAt(lineEnd - 1) != '=') {
+			return false;
+		}
+		for (int i = position; i < lineEnd; i++) {
+			if (text.charAt(i) != '=') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Get the tag name of the given list, which starts at the given position.
+	 */
+	private static String startsWithTag(String text, int position, String[] tagNames) {
+		for (int i = 0; i < tagNames.length; i++) {
+			String tagName = tagNames[i];
+			int end = position + tagName.length();
+			if (text.regionMatches(true, position, tagName, 0, tagName.length()) && end < text.length()) {
+				char ch = text.charAt(end);
+				if (ch == '>' || ch == '/' || Character.isWhitespace(ch)) {
+					return tagName;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static int indexOfIgnoreCase(String text, String str, int fromIndex) {
+		int last = text.length() - str.length();
+		for (int i = fromIndex; i <= last; i++) {
+			if (text.regionMatches(true, i, str, 0, str.length())) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Render the sections of an article. The wiki model must be initialized and
+	 * set up.
+	 *
+	 * @param model
+	 *          the wiki model
+	 * @param converter
+	 *          the text converter
+	 * @param sections
+	 *          the sections created by {@link #splitSections(String)}
+	 * @param buffer
+	 *          the buffer to append the rendered article
+	 * @throws IOException
+	 */
+	synchronized void render(AbstractWikiModel model, ITextConverter converter, List<String> sections, Appendable buffer)
+			throws IOException {
+		StringBuilder html = new StringBuilder();
+		for (int i = 0; i < sections.size(); i++) {
+			Key key = new Key(createState(model), sections.get(i));
+			Section section = fSections.get(key);
+			if (section != null) {
+				fHits++;
+				section.replay(model);
+			} else {
+				fMisses++;
+				section = renderSection(model, converter, key.fText);
+				RenderBudget budget = model.fRenderBudget;
+				if (budget != null && budget.isExceeded()) {
+					// return the partial result
+					html.append(section.fHtml);
+					break;
+				}
+				if ((model.fTemplateDependency & TemplateCache.VOLATILE_DEPENDENCY) == 0) {
+					fSections.put(key, section);
+					if (fSections.size() > fMaxEntries) {
+						fSections.remove(fSections.keySet().iterator().next());
+					}
+				}
+			}
+			html.append(section.fHtml);
+		}
+		appendHTML(model, converter, html, buffer);
+	}
+
+	/**
+	 * Create the key of the model state, which influences the rendering of the
+	 * next section: the numbers of the references and sections and the existence
+	 * of the table of contents.
+	 */
+	private static String createState(AbstractWikiModel model) {
+		StringBuilder buf = new StringBuilder();
+		buf.append(model.fSectionCounter);
+		buf.append(model.fTableOfContentTag == null ? 'n' : 't');
+		List<Reference> references = model.fReferences;
+		if (references != null) {
+			buf.append(references.size());
+			for (int i = 0; i < references.size(); i++) {
+				Reference reference = references.get(i);
+				String name = reference.getAttribute();
+				if (name != null && name.length() > 0) {
+					buf.append('\u0000');
+					buf.append(i);
+					buf.append(name);
+					buf.append('\u0001');
+					buf.append(reference.getCounter());
+				}
+			}
+		}
+		return buf.toString();
+	}
+
+	private static Section renderSection(AbstractWikiModel model, ITextConverter converter, String text) throws IOException {
+		Section section = new Section();
+		boolean hasToC = model.fTableOfContentTag != null;
+		int headerCount = hasToC ? model.fTableOfContentTag.getSectionHeaders().size() : 0;
+		int sectionCounter = model.fSectionCounter;
+		List<Reference> references = model.fReferences;
+		int referenceCount = references == null ? 0 : references.size();
+		int[] referenceCounters = new int[referenceCount];
+		for (int i = 0; i < referenceCount; i++) {
+			referenceCounters[i] = references.get(i).getCounter();
+		}
+		WikiModel wikiModel = null;
+		Section pageData = null;
+		if (model instanceof WikiModel) {
+			// collect the page data of this section separately
+			wikiModel = (WikiModel) model;
+			pageData = new Section();
+			swapPageData(wikiModel, pageData);
+		}
+
+		model.fTagStack = new TagStack();
+		model.fTemplateDependency = 0;
+		WikipediaParser.parseSection(text, model);
+		List<BaseToken> nodes = model.fTagStack.getNodeList();
+		replaceTags(nodes);
+		StringBuilder html = new StringBuilder(text.length() + text.length() / 4);
+		RenderProfile profile = model.fRenderProfile;
+		if (profile != null) {
+			profile.beginPhase(RenderProfile.OUTPUT_PHASE);
+		}
+		try {
+			converter.nodesToText(nodes, html, model);
+		} finally {
+			if (profile != null) {
+				profile.endPhase(RenderProfile.OUTPUT_PHASE);
+			}
+		}
+		section.fHtml = html.toString();
+
+		section.fCreatesToC = !hasToC && model.fTableOfContentTag != null;
+		if (model.fTableOfContentTag != null) {
+			List<SectionHeader> headers = model.fTableOfContentTag.getSectionHeaders();
+			section.fHeaders = new ArrayList<SectionHeader>(headers.subList(headerCount, headers.size()));
+		} else {
+			section.fHeaders = new ArrayList<SectionHeader>();
+		}
+		section.fSectionCount = model.fSectionCounter - sectionCounter;
+		section.fReusedReferences = new ArrayList<Integer>();
+		section.fReferences = new ArrayList<Reference>();
+		references = model.fReferences;
+		if (references != null) {
+			for (int i = 0; i < referenceCount; i++) {
+				for (int j = referenceCounters[i]; j < references.get(i).getCounter(); j++) {
+					section.fReusedReferences.add(Integer.valueOf(i));
+				}
+			}
+			for (int i = referenceCount; i < references.size(); i++) {
+				// the counter of the reference could be changed by the following
+				// sections
+				section.fReferences.add(copyReference(references.get(i)));
+			}
+		}
+		if (wikiModel != null) {
+			swapPageData(wikiModel, pageData);
+			section.fCategories = pageData.fCategories;
+			section.fLinks = pageData.fLinks;
+			section.fTemplates = pageData.fTemplates;
+			section.fSemanticRelations = pageData.fSemanticRelations;
+			section.fSemanticAttributes = pageData.fSemanticAttributes;
+			addPageData(wikiModel, section);
+		}
+		return section;
+	}
+
+	/**
+	 * Exchange the categories, links, templates and semantic data of the wiki
+	 * model with the data of the given section.
+	 */
+	private static void swapPageData(WikiModel model, Section data) {
+		Map<String, String> categories = model.categories;
+		model.categories = data.fCategories == null ? new HashMap<String, String>() : data.fCategories;
+		data.fCategories = categories;
+		Set<String> links = model.links;
+		model.links = data.fLinks == null ? new HashSet<String>() : data.fLinks;
+		data.fLinks = links;
+		Set<String> templates = model.templates;
+		model.templates = data.fTemplates == null ? new HashSet<String>() : data.fTemplates;
+		data.fTemplates = templates;
+		List<SemanticRelation> semanticRelations = model.semanticRelations;
+		model.semanticRelations = data.fSemanticRelations;
+		data.fSemanticRelations = semanticRelations;
+		List<SemanticAttribute> semanticAttributes = model.semanticAttributes;
+		model.semanticAttributes = data.fSemanticAttributes;
+		data.fSemanticAttributes = semanticAttributes;
+	}
+
+	private static void addPageData(WikiModel model, Section section) {
+		model.categories.putAll(section.fCategories);
+		model.links.addAll(section.fLinks);
+		model.templates.addAll(section.fTemplates);
+		if (section.fSemanticRelations != null) {
+			for (int i = 0; i < section.fSemanticRelations.size(); i++) {
+				SemanticRelation relation = section.fSemanticRelations.get(i);
+				model.addSemanticRelation(relation.getRelation(), relation.getValue());
+			}
+		}
+		if (section.fSemanticAttributes != null) {
+			for (int i = 0; i < section.fSemanticAttributes.size(); i++) {
+				SemanticAttribute attribute = section.fSemanticAttributes.get(i);
+				model.addSemanticAttribute(attribute.getAttribute(), attribute.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Add a copy of a cached reference to the model.
+	 */
+	private static void addReference(AbstractWikiModel model, Reference reference) {
+		if (model.fReferences == null) {
+			model.fReferences = new ArrayList<Reference>();
+			model.fReferenceNames = new HashMap<String, Integer>();
+		}
+		model.fReferences.add(copyReference(reference));
+		String name = reference.getAttribute();
+		if (name != null && name.length() > 0) {
+			model.fReferenceNames.put(name, Integer.valueOf(model.fReferences.size()));
+		}
+	}
+
+	private static Reference copyReference(Reference reference) {
+		Reference copy = new Reference(reference.getRefString(), reference.getAttribute());
+		for (int i = 0; i < reference.getCounter(); i++) {
+			copy.incCounter();
+		}
+		return copy;
+	}
+
+	/**
+	 * Replace the table of contents and the references lists with placeholders,
+	 * which are rendered after all sections.
+	 */
+	private static void replaceTags(List<? super TagNode> nodes) {
+		for (int i = 0; i < nodes.size(); i++) {
+			Object node = nodes.get(i);
+			if (node instanceof TableOfContentTag) {
+				nodes.set(i, new PlaceholderTag("div"));
+			} else if (node instanceof ReferencesTag) {
+				nodes.set(i, new PlaceholderTag("references"));
+			} else if (node instanceof TagNode) {
+				replaceTags(((TagNode) node).getChildren());
+			}
+		}
+	}
+
+	/**
+	 * Append the rendered sections and insert the table of contents and the
+	 * references lists.
+	 */
+	private static void appendHTML(AbstractWikiModel model, ITextConverter converter, StringBuilder html, Appendable buffer)
+			throws IOException {
+		int position = 0;
+		int placeholderStart;
+		while ((placeholderStart = html.indexOf("<!--bliki:", position)) >= 0) {
+			buffer.append(html, position, placeholderStart);
+			position = html.indexOf(PLACEHOLDER_END, placeholderStart) + PLACEHOLDER_END.length();
+			if (position - placeholderStart == TOC_PLACEHOLDER.length()) {
+				TableOfContentTag tableOfContentTag = model.fTableOfContentTag;
+				if (tableOfContentTag != null && tableOfContentTag.getSectionHeaders().size() > 3) {
+					tableOfContentTag.setShowToC(true);
+					tableOfContentTag.renderHTML(converter, buffer, model);
+				}
+			} else {
+				int count = Integer.parseInt(html.substring(placeholderStart + REFERENCES_PLACEHOLDER.length(), position
+						- PLACEHOLDER_END.length()));
+				if (count >= 0) {
+					ReferencesTag.appendReferences(model.fReferences.subList(0, count), buffer);
+				}
+			}
+		}
+		buffer.append(html, position, html.length());
+	}
+
+	/**
+	 * Remove all cached sections.
+	 */
+	public synchronized void clear() {
+		fSections.clear();
+	}
+
+	/**
+	 * The number of sections, which were found in the cache.
+	 */
+	public synchronized long getHits() {
+		return fHits;
+	}
+
+	/**
+	 * The number of sections, which were rendered.
+	 */
+	public synchronized long getMisses() {
+		return fMisses;
+	}
+
+	public synchronized int size() {
+		return fSections.size();
+	}
+}
@@ -0,0 +1,303 @@
+package info.bliki.wiki.model;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe cache for the results of template calls, which can be shared
+ * by all wiki models (and threads) rendering pages of the same wiki.
+ *
+ * The cache key is created from the namespace, the template name and the
+ * sorted template parameters. Templates which use the page name (for example
+ * with <code>{{PAGENAME}}</code>) additionally get the page name in their key.
+ * Templates which use the current time or date (for example with
+ * <code>{{#time:...}}</code> or <code>{{CURRENTYEAR}}</code>) are never cached.
+ * These dependencies are detected automatically while a template is expanded;
+ * other templates can be excluded with {@link #addExcludedTemplate(String)}.
+ *
+ * The cache is split into segments, which are bounded by the number of
+ * entries and by their weight (the number of characters of key and value).
+ * Every segment evicts its least recently used entries.
+ *
+ * @see Configuration#setTemplateCache(TemplateCache)
+ */
+public class TemplateCache {
+	/**
+	 * The template result depends on the name of the rendered page.
+	 */
+	public final static int PAGE_DEPENDENCY = 1;
+
+	/**
+	 * The template result depends on the current time or another volatile value
+	 * and shouldn't be cached.
+	 */
+	public final static int VOLATILE_DEPENDENCY = 2;
+
+	public final static int DEFAULT_MAX_ENTRIES = 16384;
+
+	public final static long DEFAULT_MAX_WEIGHT = 8L * 1024L * 1024L;
+
+	private final static int NUMBER_OF_SEGMENTS = 16;
+
+	private final static char KEY_SEPARATOR = '\u0000';
+
+	private final static char VALUE_SEPARATOR = '\u0001';
+
+	/**
+	 * A single LRU ordered segment of the cache.
+	 */
+	private static class Segment extends LinkedHashMap<String, String> {
+		private static final long serialVersionUID = 4520871360424093312L;
+
+		long weight = 0L;
+
+		Segment() {
+			super(64, 0.75f, true);
+		}
+	}
+
+	private final Segment[] fSegments;
+
+	private final int fMaxSegmentEntries;
+
+	private final long fMaxSegmentWeight;
+
+	private final ConcurrentHashMap<String, Boolean> fExcludedTemplates;
+
+	private final ConcurrentHashMap<String, Boolean> fPageDependentTemplates;
+
+	private final AtomicLong fHits = new AtomicLong();
+
+	private final AtomicLong fMisses = new AtomicLong();
+
+	private final AtomicLong fEvictions = new AtomicLong();
+
+	public TemplateCache() {
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_WEIGHT);
+	}
+
+	/**
+	 *
+	 * @param maxEntries
+	 *          the maximum number of cached template calls
+	 * @param maxWeight
+	 *          the maximum number of characters of all cached keys and values
+	 */
+	public TemplateCache(int maxEntries, long maxWeight) {
+		fSegments = new Segment[NUMBER_OF_SEGMENTS];
+		for (int i = 0; i < NUMBER_OF_SEGMENTS; i++) {
+			fSegments[i] = new Segment();
+		}
+		fMaxSegmentEntries = Math.max(1, maxEntries / NUMBER_OF_SEGMENTS);
+		fMaxSegmentWeight = Math.max(1L, maxWeight / NUMBER_OF_SEGMENTS);
+		fExcludedTemplates = new ConcurrentHashMap<String, Boolean>();
+		fPageDependentTemplates = new ConcurrentHashMap<String, Boolean>();
+	}
+
+	private Segment getSegment(String key) {
+		int hash = key.hashCode();
+		// spread the higher bits
+		hash ^= (hash >>> 20) ^ (hash >>> 12);
+		hash ^= (hash >>> 7) ^ (hash >>> 4);
+		return fSegments[hash & (NUMBER_OF_SEGMENTS - 1)];
+	}
+
+	/**
+	 * Create the key for a template call.
+	 *
+	 * @param namespace
+	 *          the namespace of the template
+	 * @param templateName
+	 *          the name of the template
+	 * @param parameterMap
+	 *          the template parameters
+	 * @param pageName
+	 *          the name of the rendered page
+	 * @return <code>null</code> if the template shouldn't be cached
+	 */
+	public String createKey(String namespace, String templateName, Map<String, String> parameterMap, String pageName) {
+		String qualifiedName = namespace + ':' + templateName;
+		if (fExcludedTemplates.containsKey(qualifiedName)) {
+			return null;
+		}
+		StringBuilder buf = new StringBuilder(qualifiedName.length() + 16 * parameterMap.size());
+		buf.append(qualifiedName);
+		buf.append(KEY_SEPARATOR);
+		// the order of named parameters doesn't change the result
+		Map<String, String> sortedMap = parameterMap.size() > 1 ? new TreeMap<String, String>(parameterMap) : parameterMap;
+		for (Map.Entry<String, String> entry : sortedMap.entrySet()) {
+			buf.append(entry.getKey());
+			buf.append(VALUE_SEPARATOR);
+			buf.append(entry.getValue());
+			buf.append(KEY_SEPARATOR);
+		}
+		if (fPageDependentTemplates.containsKey(qualifiedName)) {
+			buf.append(KEY_SEPARATOR);
+			buf.append(pageName);
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * Get the cached result of a template call.
+	 *
+	 * @param key
+	 *          a key created with
+	 *          {@link #createKey(String, String, Map, String)}
+	 * @return <code>null</code> if the template call isn't cached
+	 */
+	public String get(String key) {
+		Segment segment = getSegment(key);
+		String value;
+		synchronized (segment) {
+			value = segment.get(key);
+		}
+		if (value == null) {
+			fMisses.incrementAndGet();
+		} else {
+			fHits.incrementAndGet();
+		}
+		return value;
+	}
+
+	/**
+	 * Store the result of a template call.
+	 *
+	 * @param key
+	 *          a key created with
+	 *          {@link #createKey(String, String, Map, String)}
+	 * @param value
+	 *          the expanded template
+	 */
+	public void put(String key, String value) {
+		long weight = key.length() + value.length();
+		if (weight > fMaxSegmentWeight) {
+			return;
+		}
+		Segment segment = getSegment(key);
+		synchronized (segment) {
+			String oldValue = segment.put(key, value);
+			segment.weight += weight;
+			if (oldValue != null) {
+				segment.weight -= key.length() + oldValue.length();
+			}
+			Iterator<Map.Entry<String, String>> iter = segment.entrySet().iterator();
+			while ((segment.size() > fMaxSegmentEntries || segment.weight > fMaxSegmentWeight) && iter.hasNext()) {
+				Map.Entry<String, String> eldest = iter.next();
+				segment.weight -= eldest.getKey().length() + eldest.getValue().length();
+				iter.remove();
+				fEvictions.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Record the context dependencies which were detected while expanding a
+	 * template.
+	 *
+	 * @param namespace
+	 *          the namespace of the template
+	 * @param templateName
+	 *          the name of the template
+	 * @param dependency
+	 *          a combination of {@link #PAGE_DEPENDENCY} and
+	 *          {@link #VOLATILE_DEPENDENCY}
+	 * @return <code>true</code> if the expanded template can be cached
+	 */
+	public boolean addDependency(String namespace, String templateName, int dependency) {
+		String qualifiedName = namespace + ':' + templateName;
+		if ((dependency & VOLATILE_DEPENDENCY) != 0) {
+			fExcludedTemplates.put(qualifiedName, Boolean.TRUE);
+			return false;
+		}
+		if ((dependency & PAGE_DEPENDENCY) != 0) {
+			fPageDependentTemplates.put(qualifiedName, Boolean.TRUE);
+		}
+		return true;
+	}
+
+	/**
+	 * Check if the results of the template depend on the name of the rendered
+	 * page.
+	 */
+	public boolean isPageDependent(String namespace, String templateName) {
+		return fPageDependentTemplates.containsKey(namespace + ':' + templateName);
+	}
+
+	/**
+	 * Never cache the results of the given template.
+	 *
+	 * @param qualifiedTemplateName
+	 *          the template name with its namespace prefix (i.e.
+	 *          <code>Template:Infobox</code>)
+	 */
+	public void addExcludedTemplate(String qualifiedTemplateName) {
+		fExcludedTemplates.put(qualifiedTemplateName, Boolean.TRUE);
+	}
+
+	/**
+	 * Remove all cached template calls and reset the statistics. The detected
+	 * template dependencies are kept.
+	 */
+	public void clear() {
+		for (int i = 0; i < fSegments.length; i++) {
+			synchronized (fSegments[i]) {
+				fSegments[i].clear();
+				fSegments[i].weight = 0L;
+			}
+		}
+		fHits.set(0L);
+		fMisses.set(0L);
+		fEvictions.set(0L);
+	}
+
+	public long getHits() {
+		return fHits.get();
+	}
+
+	public long getMisses() {
+		return fMisses.get();
+	}
+
+	public long getEvictions() {
+		return fEvictions.get();
+	}
+
+	/**
+	 * The current number of cached template calls.
+	 */
+	public int size() {
+		int size = 0;
+		for (int i = 0; i < fSegments.length; i++) {
+			synchronized (fSegments[i]) {
+				size += fSegments[i].size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * The current number of characters of all cached keys and values.
+	 */
+	public long getWeight() {
+		long weight = 0L;
+		for (int i = 0; i < fSegments.length; i++) {
+			synchronized (fSegments[i]) {
+				weight += fSegments[i].weight;
+			}
+		}
+		return weight;
+	}
+
+	@Override
+	public String toString() {
+		long hits = getHits();
+		long lookups = hits + getMisses();
+		return "TemplateCache[size=" + size() + ", weight=" + getWeight() + ", hits=" + hits + ", misses=" + getMisses()
+				+ ", evictions=" + getEvictions() + ", hitRate=" + (lookups == 0L ? 0L : (hits * 100L / lookups)) + "%]";
+	}
+}
@@ -147,6 +147,10 @@ public class WikiModel extends AbstractWikiModel {
 			href = href + '#' + encodeTitleDotUrl(hashSection, true);
 		}
 		aTagNode.addAttribute("href", href, true);
+		if (cssClass == null && topic.length() > 0 && isMissingPage(topic)) {
+			// red link
+			cssClass = "new";
+		}
 		if (cssClass != null) {
 			aTagNode.addAttribute("class", cssClass, true);
 		}
@@ -161,6 +165,29 @@ public class WikiModel extends AbstractWikiModel {
 		popNode();
 	}
 
+	/**
+	 * Check if the configured {@link PageExistenceIndex} knows that the page
+	 * doesn't exist. The page isn't looked up in the wiki.
+	 * 
+	 * @param topic
+	 *          the title of the page with its namespace prefix
+	 * @return <code>true</code> if the page is known to be missing
+	 */
+	protected boolean isMissingPage(String topic) {
+		PageExistenceIndex index = getPageExistenceIndex();
+		if (index == null) {
+			return false;
+		}
+		String namespace = "";
+		String articleName = topic;
+		int index1 = topic.indexOf(':');
+		if (index1 > 0 && isNamespace(topic.substring(0, index1))) {
+			namespace = topic.substring(0, index1);
+			articleName = topic.substring(index1 + 1);
+		}
+		return Boolean.FALSE.equals(index.get(namespace, articleName));
+	}
+
 	/**
 	 * Get the set of Wikipedia category names used in this text
 	 * 
@@ -291,6 +318,26 @@ public class WikiModel extends AbstractWikiModel {
 		semanticAttributes = null;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The categories, links and templates sets of the previous page are cleared
+	 * and reused.
+	 */
+	@Override
+	public void reset() {
+		super.reset();
+		if (categories == null) {
+			setUp();
+			return;
+		}
+		categories.clear();
+		links.clear();
+		templates.clear();
+		semanticRelations = null;
+		semanticAttributes = null;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -0,0 +1,157 @@
+package info.bliki.wiki.model;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe pool of reusable wiki models.
+ * 
+ * A model which is returned to the pool is reset with
+ * {@link IWikiModel#reset()}, so that the next borrower gets a model without
+ * the state of the previously rendered page, but with the already allocated
+ * internal structures. Models are created by the given factory, if the pool is
+ * empty. A borrowed model must only be used by one thread at a time.
+ * 
+ * Example:
+ * 
+ * <pre>
+ * WikiModel wikiModel = pool.borrowModel();
+ * try {
+ * 	wikiModel.setPageName(title);
+ * 	wikiModel.render(rawWikiText, writer);
+ * } finally {
+ * 	pool.returnModel(wikiModel);
+ * }
+ * </pre>
+ * 
+ * @param <T>
+ *          the type of the pooled wiki models
+ */
+public class WikiModelPool<T extends IWikiModel> {
+	public final static int DEFAULT_MAX_IDLE = 32;
+
+	private final IWikiModelFactory<T> fFactory;
+
+	private final int fMaxIdle;
+
+	/**
+	 * The idle models; the last returned model is borrowed first.
+	 */
+	private final ArrayList<T> fIdleModels;
+
+	private final AtomicLong fBorrowed = new AtomicLong();
+
+	private final AtomicLong fCreated = new AtomicLong();
+
+	private final AtomicLong fDiscarded = new AtomicLong();
+
+	public WikiModelPool(IWikiModelFactory<T> factory) {
+		this(factory, DEFAULT_MAX_IDLE);
+	}
+
+	/**
+	 * 
+	 * @param factory
+	 *          the factory for new models
+	 * @param maxIdle
+	 *          the maximum number of idle models, which are kept in the pool
+	 */
+	public WikiModelPool(IWikiModelFactory<T> factory, int maxIdle) {
+		fFactory = factory;
+		fMaxIdle = maxIdle;
+		fIdleModels = new ArrayList<T>(maxIdle);
+	}
+
+	/**
+	 * Get a model from the pool or create a new model, if no idle model is
+	 * available. The model is set up and can be used to render a page.
+	 * 
+	 * @return a model for the exclusive use of the caller
+	 */
+	public T borrowModel() {
+		fBorrowed.incrementAndGet();
+		T model = null;
+		synchronized (fIdleModels) {
+			int size = fIdleModels.size();
+			if (size > 0) {
+				model = fIdleModels.remove(size - 1);
+			}
+		}
+		if (model == null) {
+			fCreated.incrementAndGet();
+			model = fFactory.createWikiModel();
+			model.setUp();
+		}
+		return model;
+	}
+
+	/**
+	 * Return a borrowed model to the pool. The model is torn down and reset; it
+	 * must not be used by the caller anymore.
+	 * 
+	 * @param model
+	 *          a model which was returned by {@link #borrowModel()}
+	 */
+	public void returnModel(T model) {
+		model.tearDown();
+		model.reset();
+		synchronized (fIdleModels) {
+			if (fIdleModels.size() < fMaxIdle) {
+				fIdleModels.add(model);
+				return;
+			}
+		}
+		fDiscarded.incrementAndGet();
+	}
+
+	/**
+	 * Remove all idle models from the pool.
+	 */
+	public void clear() {
+		synchronized (fIdleModels) {
+			fIdleModels.clear();
+		}
+	}
+
+	/**
+	 * The number of idle models in the pool.
+	 */
+	public int getIdleCount() {
+		synchronized (fIdleModels) {
+			return fIdleModels.size();
+		}
+	}
+
+	public long getBorrowedCount() {
+		return fBorrowed.get();
+	}
+
+	public long getCreatedCount() {
+		return fCreated.get();
+	}
+
+	/**
+	 * The number of returned models, which were dropped because the pool was
+	 * full.
+	 */
+	public long getDiscardedCount() {
+		return fDiscarded.get();
+	}
+
+	/**
+	 * The percentage of borrowed models, which were reused.
+	 */
+	public int getReuseRate() {
+		long borrowed = getBorrowedCount();
+		if (borrowed == 0L) {
+			return 0;
+		}
+		return (int) ((borrowed - getCreatedCount()) * 100L / borrowed);
+	}
+
+	@Override
+	public String toString() {
+		return "WikiModelPool[idle=" + getIdleCount() + ", borrowed=" + getBorrowedCount() + ", created=" + getCreatedCount()
+				+ ", discarded=" + getDiscardedCount() + ", reuseRate=" + getReuseRate() + "%]";
+	}
+}
@@ -101,6 +101,16 @@ public interface INamespace {
    */
 	public final static Integer CATEGORY_TALK = Integer.valueOf(15);
 
+	/**
+	 * Lua modules (Scribunto extension).
+	 */
+	public final static Integer MODULE = Integer.valueOf(828);
+
+	/**
+   * 
+   */
+	public final static Integer MODULE_TALK = Integer.valueOf(829);
+
 	public String getCategory();
 
 	public String getCategory_talk();
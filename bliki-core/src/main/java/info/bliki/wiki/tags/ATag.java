@@ -45,9 +45,13 @@ public class ATag extends HTMLTag {
 	public boolean addAttribute(String attName, String attValue, boolean checkXSS) {
 		super.addAttribute(attName, attValue, checkXSS);
 		if (attName != null && attValue != null && attName.equalsIgnoreCase("href")) {
-			String valueLowerCased = attValue.trim().toLowerCase();
-			if (valueLowerCased.startsWith("http:") || valueLowerCased.startsWith("https:") || valueLowerCased.startsWith("ftp:")
-					|| valueLowerCased.startsWith("ftps:") || valueLowerCased.startsWith("mailto:")) {
+			int start = 0;
+			while (start < attValue.length() && attValue.charAt(start) <= ' ') {
+				start++;
+			}
+			if (attValue.regionMatches(true, start, "http:", 0, 5) || attValue.regionMatches(true, start, "https:", 0, 6)
+					|| attValue.regionMatches(true, start, "ftp:", 0, 4) || attValue.regionMatches(true, start, "ftps:", 0, 5)
+					|| attValue.regionMatches(true, start, "mailto:", 0, 7)) {
 				addAttribute("rel", "nofollow", true);
 				return true;
 			}
@@ -1,5 +1,9 @@
 package info.bliki.wiki.tags;
 
+import info.bliki.htmlcleaner.TagTypes;
+
+import java.util.BitSet;
+
 /**
  * A wiki tag that's partitioning the HTML document
  * 
@@ -8,9 +12,12 @@ public class HTMLBlockTag extends HTMLTag {
 
 	private final String fAllowedParents;
 
+	private final BitSet fAllowedParentTypes;
+
 	public HTMLBlockTag(String name, String allowedParents) {
 		super(name);
 		fAllowedParents = allowedParents;
+		fAllowedParentTypes = allowedParents == null ? null : TagTypes.getTypeSet(allowedParents);
 	}
 
 	@Override
@@ -18,6 +25,11 @@ public class HTMLBlockTag extends HTMLTag {
 		return fAllowedParents;
 	}
 
+	@Override
+	public BitSet getParentTypes() {
+		return fAllowedParentTypes;
+	}
+
 	@Override
 	public boolean isReduceTokenStack() {
 		return true;
@@ -1,11 +1,13 @@
 package info.bliki.wiki.tags;
 
 import info.bliki.htmlcleaner.TagNode;
+import info.bliki.htmlcleaner.TagTypes;
 import info.bliki.htmlcleaner.Utils;
 import info.bliki.wiki.filter.ITextConverter;
 import info.bliki.wiki.model.IWikiModel;
 
 import java.io.IOException;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
@@ -13,6 +15,18 @@ import java.util.regex.Pattern;
 public class HTMLTag extends TagNode {
   public final static boolean NEW_LINES = true;
 
+  /**
+   * Tags which start on a new line
+   */
+  public final static BitSet NEW_LINE_TAGS = TagTypes
+      .getTypeSet("|div|p|li|td|table|ul|ol|th|tr|pre|");
+
+  /**
+   * Tags which start on a new line and whose body is enclosed in new lines
+   */
+  protected final static BitSet NEW_LINE_BODY_TAGS = TagTypes
+      .getTypeSet("|table|ul|ol|th|tr|pre|");
+
   // compile the regex, for better performance
   protected final static Pattern XML_QNAME = Pattern
       .compile("^[_A-Za-z][\\w\\.\\-]*(:[_A-Za-z][\\w\\.\\-]*)?$");
@@ -69,13 +83,10 @@ public class HTMLTag extends TagNode {
     TagNode node = this;
     String name = node.getName();
     if (NEW_LINES) {
-      if (name.equals("div") || name.equals("p") || name.equals("li")
-          || name.equals("td")) {
-        buf.append('\n');
-      } else if (name.equals("table") || name.equals("ul") || name.equals("ol")
-          || name.equals("th") || name.equals("tr") || name.equals("pre")) {
+      int typeId = node.getTypeId();
+      if (TagTypes.contains(NEW_LINE_TAGS, typeId)) {
         buf.append('\n');
-        newLines = true;
+        newLines = NEW_LINE_BODY_TAGS.get(typeId);
       }
     }
     buf.append('<');
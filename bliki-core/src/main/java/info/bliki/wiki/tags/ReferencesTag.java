@@ -22,43 +22,55 @@ public class ReferencesTag extends HTMLTag {
 	public void renderHTML(ITextConverter converter, Appendable writer, IWikiModel model) throws IOException {
 		List<Reference> list = model.getReferences();
 		if (list != null) {
-			Reference ref;
-			int counter;
-			writer.append("<ol class=\"references\">\n");
-			for (int i = 0; i < list.size(); i++) {
-				ref = (Reference) list.get(i);
-				counter = ref.getCounter();
-				writer.append("<li id=\"_note-");
-				if (counter == 0) {
-					String i1 = Integer.toString(i + 1);
-					writer.append(i1);
-					writer.append("\"><b><a href=\"#_ref-");
-					writer.append(i1);
-					// upwards arrow
-					writer.append("\" title=\"\">&#8593;</a></b> ");//&uarr;
-				} else {
-					String note;
-					String nameAttribute = ref.getAttribute();
-					char ch;
-					writer.append(nameAttribute);
-					writer.append("\">&#8593; "); //&uarr;
-					for (int j = 0; j <= counter; j++) {
-						if (j >= Reference.CHARACTER_REFS.length()) {
-							ch = 'Z';
-						} else {
-							ch = Reference.CHARACTER_REFS.charAt(j);
-						}
-						note = nameAttribute + '_' + ch;
-						writer.append("<a href=\"#_ref-");
-						writer.append(note);
-						writer.append("\" title=\"\"><sup><i><b>" + ch + "</b></i></sup></a> ");
+			appendReferences(list, writer);
+		}
+	}
+
+	/**
+	 * Append the HTML list of the given references.
+	 * 
+	 * @param list
+	 *          the references
+	 * @param writer
+	 * @throws IOException
+	 */
+	public static void appendReferences(List<Reference> list, Appendable writer) throws IOException {
+		Reference ref;
+		int counter;
+		writer.append("<ol class=\"references\">\n");
+		for (int i = 0; i < list.size(); i++) {
+			ref = (Reference) list.get(i);
+			counter = ref.getCounter();
+			writer.append("<li id=\"_note-");
+			if (counter == 0) {
+				String i1 = Integer.toString(i + 1);
+				writer.append(i1);
+				writer.append("\"><b><a href=\"#_ref-");
+				writer.append(i1);
+				// upwards arrow
+				writer.append("\" title=\"\">&#8593;</a></b> ");//&uarr;
+			} else {
+				String note;
+				String nameAttribute = ref.getAttribute();
+				char ch;
+				writer.append(nameAttribute);
+				writer.append("\">&#8593; "); //&uarr;
+				for (int j = 0; j <= counter; j++) {
+					if (j >= Reference.CHARACTER_REFS.length()) {
+						ch = 'Z';
+					} else {
+						ch = Reference.CHARACTER_REFS.charAt(j);
 					}
+					note = nameAttribute + '_' + ch;
+					writer.append("<a href=\"#_ref-");
+					writer.append(note);
+					writer.append("\" title=\"\"><sup><i><b>" + ch + "</b></i></sup></a> ");
 				}
-				writer.append(ref.getRefString());
-				writer.append("</li>");
 			}
-			writer.append("</ol>");
+			writer.append(ref.getRefString());
+			writer.append("</li>");
 		}
+		writer.append("</ol>");
 	}
  
 	@Override
@@ -0,0 +1,144 @@
+package info.bliki.wiki.tags.util;
+
+import info.bliki.htmlcleaner.BaseToken;
+import info.bliki.htmlcleaner.TagToken;
+import info.bliki.wiki.filter.ITextConverter;
+import info.bliki.wiki.model.IWikiModel;
+import info.bliki.wiki.tags.TableOfContentTag;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tag stack of the top-level parser, which renders every completed top-level
+ * node directly to the output and drops it. Only the currently open nodes (i.e.
+ * a paragraph with its bold and italic nodes) and the tables and lists are kept
+ * as trees, so the memory doesn't grow with the size of the article.
+ *
+ * The table of contents is only known at the end of the parsing. The output
+ * behind a top-level table of contents is therefore buffered as text and
+ * appended after the table of contents in {@link #finish()}. If a table of
+ * contents is created inside another node (i.e. by <code>__TOC__</code>), the
+ * rest of the article is kept as tree.
+ *
+ * @see info.bliki.wiki.model.AbstractWikiModel#renderStreaming(ITextConverter,
+ *      String, Appendable)
+ */
+public class StreamingTagStack extends TagStack {
+	private static final long serialVersionUID = -2744226402567233561L;
+
+	private final ITextConverter fConverter;
+
+	private final Appendable fWriter;
+
+	private final IWikiModel fWikiModel;
+
+	/**
+	 * The current output; the writer or the buffer behind the last deferred
+	 * table of contents
+	 */
+	private Appendable fOutput;
+
+	/**
+	 * Deferred tables of contents, each followed by the buffer of the output
+	 * behind it
+	 */
+	private ArrayList<Object> fDeferred;
+
+	/**
+	 * <code>true</code> if the rest of the article must be kept as tree
+	 */
+	private boolean fBuildTree;
+
+	private IOException fException;
+
+	public StreamingTagStack(ITextConverter converter, Appendable writer, IWikiModel wikiModel) {
+		super(20, 8);
+		fConverter = converter;
+		fWriter = writer;
+		fWikiModel = wikiModel;
+		fOutput = writer;
+		fDeferred = null;
+		fBuildTree = false;
+		fException = null;
+	}
+
+	@Override
+	public void append(BaseToken contentNode) {
+		if (contentNode instanceof TableOfContentTag) {
+			if (size() > 0) {
+				fBuildTree = true;
+			} else {
+				flush();
+				if (!fBuildTree) {
+					if (fDeferred == null) {
+						fDeferred = new ArrayList<Object>();
+					}
+					StringBuilder buffer = new StringBuilder(1024);
+					fDeferred.add(contentNode);
+					fDeferred.add(buffer);
+					fOutput = buffer;
+					return;
+				}
+			}
+		}
+		super.append(contentNode);
+		if (size() == 0) {
+			flush();
+		}
+	}
+
+	@Override
+	public TagToken pop() {
+		TagToken node = super.pop();
+		if (size() == 0) {
+			flush();
+		}
+		return node;
+	}
+
+	/**
+	 * Render the completed top-level nodes.
+	 */
+	private void flush() {
+		if (fBuildTree || fException != null || fNodeList.isEmpty()) {
+			return;
+		}
+		try {
+			fConverter.nodesToText(fNodeList, fOutput, fWikiModel);
+		} catch (IOException e) {
+			fException = e;
+		}
+		fNodeList.clear();
+	}
+
+	/**
+	 * Render the remaining nodes and the deferred tables of contents with their
+	 * buffered output. Must be called after the parsing.
+	 *
+	 * @throws IOException
+	 *           if the output couldn't be written
+	 */
+	public void finish() throws IOException {
+		if (fException != null) {
+			throw fException;
+		}
+		fBuildTree = false;
+		flush();
+		if (fException != null) {
+			throw fException;
+		}
+		if (fDeferred != null) {
+			List<BaseToken> list = new ArrayList<BaseToken>(1);
+			for (int i = 0; i < fDeferred.size(); i += 2) {
+				list.add((BaseToken) fDeferred.get(i));
+				fConverter.nodesToText(list, fWriter, fWikiModel);
+				list.clear();
+				fWriter.append((StringBuilder) fDeferred.get(i + 1));
+			}
+			fDeferred = null;
+		}
+		fOutput = fWriter;
+	}
+}
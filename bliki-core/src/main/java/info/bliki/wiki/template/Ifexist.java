@@ -31,7 +31,7 @@ public class Ifexist extends AbstractTemplateFunction {
 					templateName = wikiTopicName.substring(index + 1);
 				}
 			}
-			if (model.getRawWikiContent(namespace, templateName, null) != null) {
+			if (model.pageExists(namespace, templateName)) {
 				return parse(list.get(1), model);
 			} else {
 				// the requested templateName doesn't exist
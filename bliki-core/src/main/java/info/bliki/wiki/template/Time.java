@@ -1,6 +1,7 @@
 package info.bliki.wiki.template;
 
-import info.bliki.wiki.model.IWikiModel;
+import info.bliki.wiki.model.IWikiModel;
+import info.bliki.wiki.model.TemplateCache;
 
 import java.text.DateFormat;
 import java.util.Calendar;
@@ -25,10 +26,11 @@ public class Time extends AbstractTemplateFunction {
 
 	public String parseFunction(List<String> list, IWikiModel model, String src, int beginIndex, int endIndex) {
 		if (list.size() > 0) {
+			// the result depends on the current time
+			model.addTemplateDependency(TemplateCache.VOLATILE_DEPENDENCY);
 			String condition = parse(list.get(0), model);
-			Date d = new Date();
 			if (condition.equals("U")) {
-				return secondsSinceJanuary1970(list);
+				return secondsSinceJanuary1970(model);
 			}
 			
 			if(condition.equals("F")) {
@@ -36,15 +38,14 @@ public class Time extends AbstractTemplateFunction {
 			}
 			
 			if(condition.equals("N")) {
-				return String.valueOf(d.getDay());
+				return String.valueOf(new Date(model.getRenderTime()).getDay());
 			}
 		}
 		return null;
 	}
 
-	private String secondsSinceJanuary1970(List<String> list) {
-		Date date = new Date();
-		long secondsSince1970 = date.getTime() / 1000;
+	private String secondsSinceJanuary1970(IWikiModel model) {
+		long secondsSince1970 = model.getRenderTime() / 1000;
 		return Long.toString(secondsSince1970);
 	}
 }
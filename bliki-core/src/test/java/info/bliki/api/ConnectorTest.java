@@ -0,0 +1,238 @@
+package info.bliki.api;
+
+import info.bliki.api.query.Query;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests the queries of the <code>Connector</code> against a local stub of the
+ * Mediawiki API.
+ */
+public class ConnectorTest extends TestCase {
+	private HttpServer fServer;
+
+	private ExecutorService fExecutor;
+
+	private User fUser;
+
+	private final AtomicInteger fRequests = new AtomicInteger();
+
+	private final AtomicInteger fActiveRequests = new AtomicInteger();
+
+	private final AtomicInteger fMaxActiveRequests = new AtomicInteger();
+
+	public ConnectorTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(ConnectorTest.class);
+	}
+
+	/**
+	 * Answers every query with the content <code>Content of ...</code> for all
+	 * titles, except for titles starting with <code>Missing</code>. The
+	 * <code>allpages</code> list contains the pages <code>Page 0</code> to
+	 * <code>Page 6</code> and is returned in parts of 3 pages. The response is
+	 * gzip compressed and starts with a byte order mark.
+	 */
+	private class ApiStub implements HttpHandler {
+		public void handle(HttpExchange exchange) throws IOException {
+			int active = fActiveRequests.incrementAndGet();
+			fRequests.incrementAndGet();
+			synchronized (fMaxActiveRequests) {
+				if (active > fMaxActiveRequests.get()) {
+					fMaxActiveRequests.set(active);
+				}
+			}
+			try {
+				Map<String, String> parameterMap = new HashMap<String, String>();
+				String[] parameters = readBody(exchange.getRequestBody()).split("&");
+				for (int i = 0; i < parameters.length; i++) {
+					int index = parameters[i].indexOf('=');
+					if (index > 0) {
+						parameterMap.put(parameters[i].substring(0, index), URLDecoder.decode(parameters[i].substring(index + 1), "UTF-8"));
+					}
+				}
+				StringBuilder xml = new StringBuilder();
+				xml.append("﻿<?xml version=\"1.0\"?><api>");
+				if ("allpages".equals(parameterMap.get("list"))) {
+					appendAllpages(xml, parameterMap);
+				} else {
+					appendPages(xml, parameterMap.get("titles"));
+				}
+				xml.append("</api>");
+				// give the other queries the chance to run concurrently
+				Thread.sleep(20);
+
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+				gzip.write(xml.toString().getBytes("UTF-8"));
+				gzip.close();
+				exchange.getResponseHeaders().add("Content-Type", "text/xml; charset=utf-8");
+				exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+				exchange.sendResponseHeaders(200, bytes.size());
+				OutputStream os = exchange.getResponseBody();
+				os.write(bytes.toByteArray());
+				os.close();
+			} catch (InterruptedException e) {
+				exchange.sendResponseHeaders(500, -1);
+			} finally {
+				fActiveRequests.decrementAndGet();
+			}
+		}
+
+		private void appendPages(StringBuilder xml, String titles) {
+			xml.append("<query><pages>");
+			String[] titleArray = titles.split("\\|");
+			for (int i = 0; i < titleArray.length; i++) {
+				if (titleArray[i].startsWith("Missing")) {
+					xml.append("<page ns=\"0\" title=\"").append(titleArray[i]).append("\" missing=\"\" />");
+				} else {
+					xml.append("<page pageid=\"").append(i + 1).append("\" ns=\"0\" title=\"").append(titleArray[i]).append(
+							"\"><revisions><rev timestamp=\"2010-01-01T00:00:00Z\" user=\"Test\" comment=\"\" xml:space=\"preserve\">")
+							.append("Content of ").append(titleArray[i]).append(" &amp; more</rev></revisions></page>");
+				}
+			}
+			xml.append("</pages></query>");
+		}
+
+		/**
+		 * The first part uses the <code>continue</code> element of newer
+		 * Mediawiki versions, the following parts the <code>query-continue</code>
+		 * element.
+		 */
+		private void appendAllpages(StringBuilder xml, Map<String, String> parameterMap) {
+			int start = 0;
+			if (parameterMap.containsKey("apcontinue")) {
+				start = Integer.parseInt(parameterMap.get("apcontinue").substring(5));
+			} else if (parameterMap.containsKey("apfrom")) {
+				start = Integer.parseInt(parameterMap.get("apfrom").substring(5));
+			}
+			int end = Math.min(start + 3, 7);
+			if (end < 7) {
+				if (start == 0) {
+					xml.append("<continue apcontinue=\"Page ").append(end).append("\" continue=\"-||\" />");
+				} else {
+					xml.append("<query-continue><allpages apfrom=\"Page ").append(end).append("\" /></query-continue>");
+				}
+			}
+			xml.append("<query><allpages>");
+			for (int i = start; i < end; i++) {
+				xml.append("<p pageid=\"").append(i + 1).append("\" ns=\"0\" title=\"Page ").append(i).append("\" />");
+			}
+			xml.append("</allpages></query>");
+		}
+
+		private String readBody(InputStream is) throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1024];
+			int count;
+			while ((count = is.read(buffer)) != -1) {
+				bytes.write(buffer, 0, count);
+			}
+			return bytes.toString("UTF-8");
+		}
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		fServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		fServer.createContext("/w/api.php", new ApiStub());
+		fExecutor = Executors.newFixedThreadPool(8);
+		fServer.setExecutor(fExecutor);
+		fServer.start();
+		fUser = new User("", "", "http://127.0.0.1:" + fServer.getAddress().getPort() + "/w/api.php", "");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		fServer.stop(0);
+		fExecutor.shutdownNow();
+	}
+
+	private static List<String> createTitles(String prefix, int count) {
+		List<String> titles = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			titles.add(prefix + i);
+		}
+		return titles;
+	}
+
+	public void testQueryContent() {
+		Connector connector = new Connector();
+		List<String> titles = new ArrayList<String>();
+		titles.add("Page A");
+		titles.add("Missing B");
+		List<Page> pages = connector.queryContent(fUser, titles);
+		assertEquals(2, pages.size());
+		assertEquals("Page A", pages.get(0).getTitle());
+		assertEquals("Content of Page A & more", pages.get(0).getCurrentContent());
+		assertEquals("Missing B", pages.get(1).getTitle());
+		assertNull(pages.get(1).getPageid());
+	}
+
+	public void testQueryContentAsync() throws Exception {
+		Connector connector = new Connector();
+		try {
+			List<Page> pages = connector.queryContentAsync(fUser, createTitles("Page ", 3)).get();
+			assertEquals(3, pages.size());
+			assertEquals("Content of Page 2 & more", pages.get(2).getCurrentContent());
+		} finally {
+			connector.shutdown();
+		}
+	}
+
+	public void testQueryContentBatched() {
+		Connector connector = new Connector(2);
+		try {
+			List<Page> pages = connector.queryContentBatched(fUser, createTitles("Page ", 230));
+			assertEquals(230, pages.size());
+			for (int i = 0; i < pages.size(); i++) {
+				assertEquals("Page " + i, pages.get(i).getTitle());
+			}
+			// 5 queries with at most 50 titles
+			assertEquals(5, fRequests.get());
+			assertTrue(fMaxActiveRequests.get() <= 2);
+		} finally {
+			connector.shutdown();
+		}
+	}
+
+	public void testQueryIterator() {
+		Connector connector = new Connector();
+		try {
+			Query query = Query.create().list("allpages").apfrom("Page 0").aplimit(3);
+			QueryIterator iter = connector.queryIterator(fUser, query, 1);
+			for (int i = 0; i < 7; i++) {
+				assertTrue(iter.hasNext());
+				assertEquals("Page " + i, iter.next().getTitle());
+			}
+			assertFalse(iter.hasNext());
+			assertEquals(3, fRequests.get());
+		} finally {
+			connector.shutdown();
+		}
+	}
+}
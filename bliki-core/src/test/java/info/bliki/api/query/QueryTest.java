@@ -13,7 +13,7 @@ public class QueryTest extends BaseQueryTest {
 
 	public void test002() {
 		RequestBuilder request = Query.create().list("allpages").apfrom("Java").aplimit(20).format("json");
-		assertEquals("action=query&amp;apfrom=20&amp;format=json&amp;list=allpages", request.toString());
+		assertEquals("action=query&amp;apfrom=Java&amp;aplimit=20&amp;format=json&amp;list=allpages", request.toString());
 	}
 	
 	public void test003() {
@@ -0,0 +1,185 @@
+package info.bliki.htmlcleaner;
+
+import info.bliki.wiki.filter.WikiTestModel;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Compares <code>Utils.escapeXmlToBuffer()</code> with the former character by
+ * character implementation.
+ */
+public class XmlEscapeTest extends TestCase {
+	private final static String[] FRAGMENTS = { "&", "#", "x", "X", ";", "&#", "&#x", "&#X41;", "&#65;", "&#38;", "&#x3c;",
+			"&#12a3g", "&#99999999999;", "&#x80000000;", "&#2147483647;", "&#x;", "&#;", "&nbsp;", "&amp;", "&apos;", "&gt;",
+			"&lt;", "&quot;", "&quot", "&Alpha;", "&hearts;", "&unknown;", "&;", "&amp", "٣", "ä", "'", "\"", "<",
+			">", "a", "b", "1", "f", " ", "\n", "[[", "]]", "text " };
+
+	public XmlEscapeTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(XmlEscapeTest.class);
+	}
+
+	public void testCorpus() throws Exception {
+		List<String> corpus = new ArrayList<String>();
+		Field[] fields = WikiTestModel.class.getFields();
+		for (int i = 0; i < fields.length; i++) {
+			if (Modifier.isStatic(fields[i].getModifiers()) && fields[i].getType() == String.class) {
+				String text = (String) fields[i].get(null);
+				corpus.add(text);
+				WikiTestModel model = new WikiTestModel(Locale.ENGLISH, "http://www.bliki.info/wiki/${image}",
+						"http://www.bliki.info/wiki/${title}");
+				model.setUp();
+				corpus.add(model.render(text));
+			}
+		}
+		assertTrue(corpus.size() > 20);
+		for (int i = 0; i < corpus.size(); i++) {
+			assertEscaped(corpus.get(i));
+		}
+	}
+
+	public void testFragments() throws Exception {
+		Random random = new Random(42);
+		StringBuilder buf = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			buf.setLength(0);
+			int count = random.nextInt(8);
+			for (int j = 0; j <= count; j++) {
+				buf.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+			}
+			assertEscaped(buf.toString());
+		}
+	}
+
+	private void assertEscaped(String text) throws IOException {
+		for (int flags = 0; flags < 8; flags++) {
+			boolean advanced = (flags & 1) != 0;
+			boolean recognizeUnicodeChars = (flags & 2) != 0;
+			boolean translateSpecialEntities = (flags & 4) != 0;
+			StringBuilder expected = new StringBuilder();
+			escapeXmlToBuffer(text, expected, advanced, recognizeUnicodeChars, translateSpecialEntities);
+			StringBuilder result = new StringBuilder();
+			Utils.escapeXmlToBuffer(text, result, advanced, recognizeUnicodeChars, translateSpecialEntities);
+			assertEquals(text, expected.toString(), result.toString());
+		}
+	}
+
+	/**
+	 * The former implementation of <code>Utils.escapeXmlToBuffer()</code>
+	 */
+	private static void escapeXmlToBuffer(String s, Appendable result, boolean advanced, boolean recognizeUnicodeChars,
+			boolean translateSpecialEntities) throws IOException {
+		int len = s.length();
+		for (int i = 0; i < len; i++) {
+			char ch = s.charAt(i);
+
+			if (ch == '&') {
+				if (recognizeUnicodeChars && (i < len - 1) && (s.charAt(i + 1) == '#')) {
+					int charIndex = i + 2;
+					String unicode = "";
+					while (charIndex < len
+							&& (Utils.isHexadecimalDigit(s.charAt(charIndex)) || s.charAt(charIndex) == 'x' || s.charAt(charIndex) == 'X')) {
+						unicode += s.charAt(charIndex);
+						charIndex++;
+					}
+					if (charIndex == len || !"".equals(unicode)) {
+						try {
+							char unicodeChar = unicode.toLowerCase().startsWith("x") ? (char) Integer.parseInt(unicode.substring(1), 16)
+									: (char) Integer.parseInt(unicode);
+							if ("&<>\'\"".indexOf(unicodeChar) < 0) {
+								int replaceChunkSize = (charIndex < len && s.charAt(charIndex) == ';') ? unicode.length() + 1 : unicode
+										.length();
+								result.append(String.valueOf(unicodeChar));
+								i += replaceChunkSize + 1;
+							} else {
+								i = charIndex;
+								result.append("&#" + unicode + ";");
+							}
+						} catch (NumberFormatException e) {
+							i = charIndex;
+							result.append("&amp;#" + unicode + ";");
+						}
+					} else {
+						result.append("&amp;");
+					}
+				} else {
+					if (translateSpecialEntities) {
+						// get following sequence of most 10 characters
+						String seq = s.substring(i, i + Math.min(10, len - i));
+						int semiIndex = seq.indexOf(';');
+						if (semiIndex > 0) {
+							String entity = seq.substring(1, semiIndex);
+							Integer code = (Integer) SpecialEntities.entities.get(entity);
+							if (code != null) {
+								int entityLen = entity.length();
+								if (recognizeUnicodeChars) {
+									char unicodeChar = (char) code.intValue();
+									if ("&<>\'\"".indexOf(unicodeChar) < 0) {
+										result.append(String.valueOf(unicodeChar));
+										i += entityLen + 1;
+										continue;
+									}
+								}
+
+								result.append("&#");
+								result.append(Integer.toString(code.intValue()));
+								result.append(";");
+								i += entityLen + 1;
+								continue;
+							}
+						}
+					}
+
+					if (advanced) {
+						String sub = s.substring(i);
+						if (sub.startsWith("&amp;")) {
+							result.append("&#38;");
+							i += 4;
+						} else if (sub.startsWith("&apos;")) {
+							result.append("&#39;");
+							i += 5;
+						} else if (sub.startsWith("&gt;")) {
+							result.append("&#62;");
+							i += 3;
+						} else if (sub.startsWith("&lt;")) {
+							result.append("&#60;");
+							i += 3;
+						} else if (sub.startsWith("&quot;")) {
+							result.append("&#34;");
+							i += 5;
+						} else {
+							result.append("&#38;");
+						}
+
+						continue;
+					}
+
+					result.append("&amp;");
+				}
+			} else if (ch == '\'') {
+				result.append("&#39;");
+			} else if (ch == '>') {
+				result.append("&#62;");
+			} else if (ch == '<') {
+				result.append("&#60;");
+			} else if (ch == '\"') {
+				result.append("&#34;");
+			} else {
+				result.append(ch);
+			}
+		}
+	}
+}
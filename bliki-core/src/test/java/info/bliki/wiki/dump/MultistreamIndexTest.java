@@ -0,0 +1,157 @@
+package info.bliki.wiki.dump;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.xml.sax.SAXException;
+
+public class MultistreamIndexTest extends TestCase {
+	private File fDumpFile;
+
+	private File fTextIndexFile;
+
+	private File fIndexFile;
+
+	public MultistreamIndexTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(MultistreamIndexTest.class);
+	}
+
+	private static byte[] compress(String text) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BZip2CompressorOutputStream bz2 = new BZip2CompressorOutputStream(out);
+		bz2.write(text.getBytes("UTF-8"));
+		bz2.close();
+		return out.toByteArray();
+	}
+
+	/**
+	 * Create a multistream dump with 3 streams of 10 pages each and its text
+	 * index file.
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		fDumpFile = File.createTempFile("test-multistream", ".xml.bz2");
+		fTextIndexFile = File.createTempFile("test-multistream-index", ".txt");
+		fIndexFile = File.createTempFile("test-multistream", ".idx");
+
+		FileOutputStream dump = new FileOutputStream(fDumpFile);
+		Writer index = new OutputStreamWriter(new FileOutputStream(fTextIndexFile), "UTF-8");
+		byte[] header = compress("<mediawiki xml:lang=\"en\">\n<siteinfo><sitename>Test</sitename><case>first-letter</case>"
+				+ "<namespaces><namespace key=\"0\" /><namespace key=\"10\">Template</namespace></namespaces></siteinfo>\n");
+		dump.write(header);
+		long offset = header.length;
+		int id = 1;
+		for (int stream = 0; stream < 3; stream++) {
+			StringBuilder buf = new StringBuilder();
+			for (int i = 0; i < 10; i++) {
+				String title = (id % 2 == 0) ? "Template:T" + id : "Page " + id;
+				buf.append("<page><title>").append(title).append("</title><id>").append(id).append(
+						"</id><revision><id>99</id><text>Text of ").append(title).append("</text></revision></page>\n");
+				index.write(offset + ":" + id + ":" + title + "\n");
+				id++;
+			}
+			byte[] compressed = compress(buf.toString());
+			dump.write(compressed);
+			offset += compressed.length;
+		}
+		dump.write(compress("</mediawiki>"));
+		dump.close();
+		index.close();
+		MultistreamIndex.build(fTextIndexFile.getPath(), fIndexFile.getPath());
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		fDumpFile.delete();
+		fTextIndexFile.delete();
+		fIndexFile.delete();
+		super.tearDown();
+	}
+
+	public void testGetArticle() throws Exception {
+		MultistreamIndex index = new MultistreamIndex(fDumpFile.getPath(), fIndexFile.getPath());
+		assertEquals(30, index.size());
+		assertEquals("Test", index.getSiteinfo().getSitename());
+
+		WikiArticle article = index.getArticle("Page 15");
+		assertEquals("15", article.getId());
+		assertEquals("Text of Page 15", article.getText());
+
+		article = index.getArticle("Template:T22");
+		assertEquals("Text of Template:T22", article.getText());
+		assertTrue(article.isTemplate());
+
+		article = index.getArticle(30L);
+		assertEquals("Template:T30", article.getTitle());
+
+		assertNull(index.getArticle("Page 31"));
+		assertNull(index.getArticle(31L));
+	}
+
+	public void testPageIdOutOfRange() throws Exception {
+		MultistreamIndex index = new MultistreamIndex(fDumpFile.getPath(), fIndexFile.getPath());
+		// the lower 32 bits equal the id 1
+		assertEquals(-1L, index.getStreamOffset((1L << 32) + 1L));
+		assertNull(index.getArticle((1L << 32) + 1L));
+		assertEquals(-1L, index.getStreamOffset(-1L));
+
+		Writer writer = new OutputStreamWriter(new FileOutputStream(fTextIndexFile), "UTF-8");
+		writer.write("100:" + ((1L << 32) + 1L) + ":Page 1\n");
+		writer.close();
+		try {
+			MultistreamIndex.build(fTextIndexFile.getPath(), fIndexFile.getPath());
+			fail("IOException expected");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	public void testMalformedXML() throws Exception {
+		FileOutputStream dump = new FileOutputStream(fDumpFile);
+		byte[] header = compress("<mediawiki xml:lang=\"en\">\n<siteinfo><sitename>Test</sitename></siteinfo>\n");
+		dump.write(header);
+		dump.write(compress("<page><title>Broken</title><id>1</id></pag>\n"));
+		dump.close();
+		Writer writer = new OutputStreamWriter(new FileOutputStream(fTextIndexFile), "UTF-8");
+		writer.write(header.length + ":1:Broken\n");
+		writer.close();
+		MultistreamIndex.build(fTextIndexFile.getPath(), fIndexFile.getPath());
+
+		MultistreamIndex index = new MultistreamIndex(fDumpFile.getPath(), fIndexFile.getPath());
+		assertEquals("Test", index.getSiteinfo().getSitename());
+		try {
+			index.getArticle(1L);
+			fail("IOException expected");
+		} catch (IOException e) {
+			assertTrue(e.getCause() instanceof SAXException);
+		}
+	}
+
+	public void testExists() throws Exception {
+		MultistreamIndex index = new MultistreamIndex(fDumpFile.getPath(), fIndexFile.getPath());
+		assertTrue(index.exists("Page 1"));
+		assertTrue(index.exists("Template:T30"));
+		assertFalse(index.exists("Page 31"));
+		assertFalse(index.exists("Template:T31"));
+
+		// the 32-bit hash codes of the titles collide
+		assertEquals("Page 1".hashCode(), "PahF 1".hashCode());
+		assertEquals(1, index.getStreamOffsets("PahF 1").length);
+		assertFalse(index.exists("PahF 1"));
+		assertNull(index.getArticle("PahF 1"));
+	}
+}
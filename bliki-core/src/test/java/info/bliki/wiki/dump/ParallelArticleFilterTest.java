@@ -0,0 +1,181 @@
+package info.bliki.wiki.dump;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xml.sax.SAXException;
+
+public class ParallelArticleFilterTest extends TestCase {
+	static class CollectingSink implements IArticleSink {
+		List<String> titles = new ArrayList<String>();
+
+		List<String> results = new ArrayList<String>();
+
+		public void write(WikiArticle article, String result) throws SAXException {
+			titles.add(article.getTitle());
+			results.add(result);
+		}
+	}
+
+	public ParallelArticleFilterTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(ParallelArticleFilterTest.class);
+	}
+
+	private static String createDump(int numberOfPages) {
+		StringBuilder buf = new StringBuilder();
+		buf.append("<mediawiki><siteinfo><sitename>Test</sitename><namespaces>"
+				+ "<namespace key=\"0\" /><namespace key=\"10\">Template</namespace></namespaces></siteinfo>");
+		for (int i = 0; i < numberOfPages; i++) {
+			buf.append("<page><title>Page").append(i).append("</title><id>").append(i).append(
+					"</id><revision><id>1</id><text>'''bold ").append(i).append("'''</text></revision></page>");
+		}
+		buf.append("</mediawiki>");
+		return buf.toString();
+	}
+
+	private void runDump(boolean ordered) throws Exception {
+		CollectingSink sink = new CollectingSink();
+		ParallelArticleFilter filter = new ParallelArticleFilter(new WikiModelArticleRenderer.Factory("${image}", "${title}"), sink,
+				4, 3, 2, ordered);
+		WikiXMLParser parser = new WikiXMLParser(new StringReader(createDump(100)), filter);
+		parser.parse();
+		filter.finish();
+
+		assertEquals(100, filter.getParsedArticles());
+		assertEquals(100, filter.getRenderedArticles());
+		assertEquals(100, filter.getWrittenArticles());
+		assertEquals(100, sink.titles.size());
+		for (int i = 0; i < 100; i++) {
+			if (ordered) {
+				assertEquals("Page" + i, sink.titles.get(i));
+				assertEquals("\n" + "<p><b>bold " + i + "</b></p>", sink.results.get(i));
+			} else {
+				assertTrue(sink.titles.contains("Page" + i));
+			}
+		}
+	}
+
+	public void testOrdered() throws Exception {
+		runDump(true);
+	}
+
+	public void testUnordered() throws Exception {
+		runDump(false);
+	}
+
+	public void testSinkStopsProcessing() throws Exception {
+		IArticleSink sink = new IArticleSink() {
+			public void write(WikiArticle article, String result) throws SAXException {
+				throw new SAXException("stop");
+			}
+		};
+		ParallelArticleFilter filter = new ParallelArticleFilter(new WikiModelArticleRenderer.Factory("${image}", "${title}"), sink,
+				2, 1, 1, true);
+		WikiXMLParser parser = new WikiXMLParser(new StringReader(createDump(50)), filter);
+		try {
+			parser.parse();
+		} catch (SAXException e) {
+			// the parser stops, if the failure is reported before the end of the dump
+			assertEquals("stop", e.getMessage());
+		} finally {
+			try {
+				filter.finish();
+				fail("SAXException expected");
+			} catch (SAXException e) {
+				assertEquals("stop", e.getMessage());
+			}
+		}
+	}
+
+	private static void assertStops(ParallelArticleFilter filter, Class<?> causeClass) throws Exception {
+		WikiXMLParser parser = new WikiXMLParser(new StringReader(createDump(50)), filter);
+		try {
+			parser.parse();
+		} catch (SAXException e) {
+			// the parser stops, if the failure is reported before the end of the dump
+		} finally {
+			try {
+				filter.finish();
+				fail("SAXException expected");
+			} catch (SAXException e) {
+				Throwable cause = e.getException();
+				if (cause instanceof ExecutionException) {
+					cause = cause.getCause();
+				}
+				assertTrue(causeClass.isInstance(cause));
+			}
+		}
+		// further calls only report the failure
+		try {
+			filter.finish();
+			fail("SAXException expected");
+		} catch (SAXException e) {
+		}
+	}
+
+	public void testRendererError() throws Exception {
+		IArticleRendererFactory factory = new IArticleRendererFactory() {
+			public IArticleRenderer createRenderer() {
+				return new IArticleRenderer() {
+					public String render(WikiArticle article, Siteinfo siteinfo) {
+						if (article.getTitle().equals("Page7")) {
+							throw new StackOverflowError();
+						}
+						return article.getTitle();
+					}
+				};
+			}
+		};
+		assertStops(new ParallelArticleFilter(factory, new CollectingSink(), 2, 1, 1, true), StackOverflowError.class);
+	}
+
+	public void testSinkRuntimeException() throws Exception {
+		IArticleSink sink = new IArticleSink() {
+			public void write(WikiArticle article, String result) throws SAXException {
+				throw new IllegalStateException("stop");
+			}
+		};
+		assertStops(new ParallelArticleFilter(new WikiModelArticleRenderer.Factory("${image}", "${title}"), sink, 2, 1, 1,
+				false), IllegalStateException.class);
+	}
+
+	public void testFinishTwice() throws Exception {
+		CollectingSink sink = new CollectingSink();
+		ParallelArticleFilter filter = new ParallelArticleFilter(new WikiModelArticleRenderer.Factory("${image}", "${title}"), sink,
+				2, 3, 2, true);
+		WikiXMLParser parser = new WikiXMLParser(new StringReader(createDump(10)), filter);
+		parser.parse();
+		filter.finish();
+		filter.finish();
+		assertEquals(10, sink.titles.size());
+	}
+
+	public void testRevisions() throws Exception {
+		CollectingSink sink = new CollectingSink();
+		ParallelArticleFilter filter = new ParallelArticleFilter(new WikiModelArticleRenderer.Factory("${image}", "${title}"), sink,
+				2, 3, 2, true);
+		String dump = "<mediawiki><siteinfo><sitename>Test</sitename><namespaces><namespace key=\"0\" /></namespaces></siteinfo>"
+				+ "<page><title>Page</title><id>1</id><revision><id>1</id><text>first</text></revision>"
+				+ "<revision><id>2</id><text>second</text></revision></page></mediawiki>";
+		WikiXMLParser parser = new WikiXMLParser(new StringReader(dump), filter);
+		try {
+			parser.parse();
+		} finally {
+			filter.finish();
+		}
+		// every revision is rendered, although the parser reuses the article
+		assertEquals(2, sink.results.size());
+		assertEquals("\n" + "<p>first</p>", sink.results.get(0));
+		assertEquals("\n" + "<p>second</p>", sink.results.get(1));
+	}
+}
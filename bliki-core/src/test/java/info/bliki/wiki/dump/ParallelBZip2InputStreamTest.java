@@ -0,0 +1,103 @@
+package info.bliki.wiki.dump;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+
+public class ParallelBZip2InputStreamTest extends TestCase {
+	public ParallelBZip2InputStreamTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(ParallelBZip2InputStreamTest.class);
+	}
+
+	private static byte[] createText(int length, long seed) {
+		Random random = new Random(seed);
+		String[] words = { "<page>", "wiki", "{{template}}", "[[link]]", "'''bold'''", "\n", "text", "</page>", "Mediawiki" };
+		ByteArrayOutputStream out = new ByteArrayOutputStream(length);
+		while (out.size() < length) {
+			byte[] word = words[random.nextInt(words.length)].getBytes();
+			out.write(word, 0, word.length);
+			out.write(' ');
+			if (random.nextInt(10) == 0) {
+				// some less compressible data
+				out.write('a' + random.nextInt(26));
+			}
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] compress(byte[] data) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		// block size 100k creates several blocks
+		BZip2CompressorOutputStream bz2 = new BZip2CompressorOutputStream(out, 1);
+		bz2.write(data);
+		bz2.close();
+		return out.toByteArray();
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int count;
+		while ((count = in.read(buffer, 0, buffer.length)) != -1) {
+			out.write(buffer, 0, count);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+
+	public void testMultipleBlocks() throws Exception {
+		byte[] data = createText(1000000, 42L);
+		byte[] result = readAll(new ParallelBZip2InputStream(new ByteArrayInputStream(compress(data)), 4));
+		assertEquals(data.length, result.length);
+		assertTrue(Arrays.equals(data, result));
+	}
+
+	public void testMultistream() throws Exception {
+		byte[] data1 = createText(250000, 1L);
+		byte[] data2 = createText(30000, 2L);
+		byte[] compressed1 = compress(data1);
+		byte[] compressed2 = compress(data2);
+		File file = File.createTempFile("multistream", ".xml.bz2");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			out.write(compressed1);
+			out.write(compressed2);
+			out.close();
+
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			expected.write(data1);
+			expected.write(data2);
+			byte[] result = readAll(new ParallelBZip2InputStream(file.getPath(), 0L, 3));
+			assertTrue(Arrays.equals(expected.toByteArray(), result));
+
+			// start reading at the second stream
+			result = readAll(new ParallelBZip2InputStream(file.getPath(), compressed1.length, 3));
+			assertTrue(Arrays.equals(data2, result));
+		} finally {
+			file.delete();
+		}
+	}
+
+	public void testNoBZip2() throws Exception {
+		try {
+			new ParallelBZip2InputStream(new ByteArrayInputStream("<mediawiki>".getBytes()), 2);
+			fail("IOException expected");
+		} catch (IOException e) {
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package info.bliki.wiki.filter;
 
+import java.io.StringWriter;
+
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
@@ -29,6 +31,23 @@ public class BasicFilterTest extends FilterTestSupport {
 		assertEquals("", wikiModel.render(null));
 	}
 
+	public void testNextNumber() {
+		wikiModel.render("a");
+		assertEquals(0, wikiModel.getNextNumber());
+		assertEquals(1, wikiModel.getNextNumber());
+		// the numbers restart with every render
+		wikiModel.render("b");
+		assertEquals(0, wikiModel.getNextNumber());
+	}
+
+	public void testRenderToWriter() throws Exception {
+		String rawWikiText = "'''hosted by:'''<br>\n* [[Main Page|main]]\n{{2x|x}}";
+		String expected = wikiModel.render(rawWikiText);
+		StringWriter writer = new StringWriter();
+		wikiModel.render(rawWikiText, writer);
+		assertEquals(expected, writer.toString());
+	}
+
 	public void testCharInput() {
 		assertEquals("\n" + "<p>[</p>", wikiModel.render("["));
 	}
@@ -146,6 +165,17 @@ public class BasicFilterTest extends FilterTestSupport {
 		assertEquals("<h1>Test</h1>", wikiModel.render("<h1 onmouseover=\"javascript:alert(\'yo\')\">Test</h1>"));
 	}
 
+	public void testXSS002() {
+		assertEquals("\n<p><span class=\"c\">Test</span></p>", wikiModel
+				.render("<span title=\"JaVaScRiPt:alert(\'yo\')\" class=\"c\">Test</span>"));
+	}
+
+	public void testAttributeOrder() {
+		// the attributes are sorted by their lower case names
+		assertEquals("\n<p><span class=\"c\" id=\"i\" title=\"t\">Test</span></p>", wikiModel
+				.render("<span TITLE=\"t\" id=\"i\" class=\"c\">Test</span>"));
+	}
+
 	public void testSignature01() {
 		assertEquals("\n" + "<p>a simple~~~~test</p>", wikiModel.render("a simple~~~~test"));
 	}
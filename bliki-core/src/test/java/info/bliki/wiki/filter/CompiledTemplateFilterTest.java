@@ -0,0 +1,31 @@
+package info.bliki.wiki.filter;
+
+import info.bliki.wiki.model.CompiledTemplateCache;
+import info.bliki.wiki.model.Configuration;
+import junit.extensions.TestSetup;
+import junit.framework.Test;
+import junit.framework.TestCase;
+
+/**
+ * Runs all filter tests with an enabled <code>CompiledTemplateCache</code>,
+ * which is disabled by default.
+ */
+public class CompiledTemplateFilterTest extends TestCase {
+	public CompiledTemplateFilterTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSetup(AllFilterTests.suite()) {
+			@Override
+			protected void setUp() throws Exception {
+				Configuration.DEFAULT_CONFIGURATION.setCompiledTemplateCache(new CompiledTemplateCache());
+			}
+
+			@Override
+			protected void tearDown() throws Exception {
+				Configuration.DEFAULT_CONFIGURATION.setCompiledTemplateCache(null);
+			}
+		};
+	}
+}
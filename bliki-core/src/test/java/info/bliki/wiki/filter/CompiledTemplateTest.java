@@ -0,0 +1,78 @@
+package info.bliki.wiki.filter;
+
+import info.bliki.wiki.model.CompiledTemplateCache;
+import info.bliki.wiki.model.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class CompiledTemplateTest extends FilterTestSupport {
+	public CompiledTemplateTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(CompiledTemplateTest.class);
+	}
+
+	public void testParameters() throws Exception {
+		String raw = "<noinclude>doc</noinclude>a={{{a|x}}}, b={{{b|{{{a}}}}}}<!-- comment -->, {{{1}}} {{{c}}}";
+		CompiledTemplate template = CompiledTemplate.compile(raw, wikiModel);
+		assertEquals("a={{{a|x}}}, b={{{b|{{{a}}}}}}, {{{1}}} {{{c}}}", template.getContent());
+		assertEquals(4, template.getParameterCount());
+
+		Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put("1", "one");
+		assertEquals("a=x, b={{{a}}}, one {{{c}}}", template.replaceTemplateParameters(wikiModel, parameters));
+		parameters.put("a", "A");
+		assertEquals("a=A, b=A, one {{{c}}}", template.replaceTemplateParameters(wikiModel, parameters));
+		assertEquals(expand(raw, parameters), expandCompiled(template, parameters));
+	}
+
+	public void testSignature() throws Exception {
+		assertNull(CompiledTemplate.compile("signed by ~~~~", wikiModel));
+	}
+
+	public void testCache() throws Exception {
+		CompiledTemplateCache cache = new CompiledTemplateCache(2);
+		CompiledTemplate template = cache.getCompiledTemplate("Template:A", "{{{1}}}", wikiModel);
+		assertSame(template, cache.getCompiledTemplate("Template:A", "{{{1}}}", wikiModel));
+		// a new revision of the template
+		assertNotSame(template, cache.getCompiledTemplate("Template:A", "{{{1}}}!", wikiModel));
+		cache.getCompiledTemplate("Template:B", "b", wikiModel);
+		cache.getCompiledTemplate("Template:C", "c", wikiModel);
+		assertEquals(2, cache.size());
+		assertEquals(1L, cache.getHits());
+		assertEquals(4L, cache.getMisses());
+	}
+
+	public void testRender() {
+		String text = "{{templ1\n" + " | a=Test1 | b\n" + " | {{templ2|sdfsf|klj}} \n" + "}}\n";
+		String expected = wikiModel.render(text);
+		Configuration.DEFAULT_CONFIGURATION.setTemplateCallsCache(null);
+		Configuration.DEFAULT_CONFIGURATION.setCompiledTemplateCache(new CompiledTemplateCache());
+		try {
+			assertEquals(expected, wikiModel.render(text));
+			assertEquals(expected, wikiModel.render(text));
+			assertTrue(Configuration.DEFAULT_CONFIGURATION.getCompiledTemplateCache().getHits() > 0L);
+		} finally {
+			Configuration.DEFAULT_CONFIGURATION.setCompiledTemplateCache(null);
+			Configuration.DEFAULT_CONFIGURATION.setTemplateCallsCache(new HashMap<String, String>());
+		}
+	}
+
+	private String expand(String raw, Map<String, String> parameters) throws Exception {
+		StringBuilder buf = new StringBuilder();
+		TemplateParser.parseRecursive(raw, wikiModel, buf, false, false, parameters);
+		return buf.toString();
+	}
+
+	private String expandCompiled(CompiledTemplate template, Map<String, String> parameters) throws Exception {
+		StringBuilder buf = new StringBuilder();
+		TemplateParser.parseRecursive(template, wikiModel, buf, parameters);
+		return buf.toString();
+	}
+}
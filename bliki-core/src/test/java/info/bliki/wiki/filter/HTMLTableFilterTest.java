@@ -16,4 +16,14 @@ public class HTMLTableFilterTest extends FilterTestSupport {
   assertEquals("\n" + 
   		"<table>\ntest\n</table>", wikiModel.render("<table 250px>test</table>"));
   }
+
+  public void testHTMLTableWrongNested() {
+    assertEquals("\n<table>\n\n<tr>\n\n<td>number 1</td>\n</tr>\n<tr>\n\n<td>number 2</td>\n</tr>\n</table>", wikiModel
+        .render("<table><tr><td>number 1<tr><td>number 2</table>"));
+  }
+
+  public void testHTMLTableInDiv() {
+    assertEquals("\n<div>\n<table>\n\n<tr>\n\n<th>\nh\n</th>\n<td>x\n\n<p>y</p></td>\n</tr>\n</table>text</div>\n\n<p>para</p>",
+        wikiModel.render("<div><table><tr><th>h</th><td>x\n\ny</td></tr></table>text</div>\n\npara"));
+  }
 }
\ No newline at end of file
@@ -0,0 +1,81 @@
+package info.bliki.wiki.filter;
+
+import info.bliki.wiki.model.Configuration;
+import info.bliki.wiki.model.PageExistenceIndex;
+
+import java.util.Locale;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class PageExistenceIndexTest extends FilterTestSupport {
+	private PageExistenceIndex fIndex;
+
+	private int fLookups;
+
+	public PageExistenceIndexTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(PageExistenceIndexTest.class);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		wikiModel = new WikiTestModel(Locale.ENGLISH, "http://www.bliki.info/wiki/${image}", "http://www.bliki.info/wiki/${title}") {
+			@Override
+			protected boolean queryPageExists(String namespace, String articleName) {
+				fLookups++;
+				return super.queryPageExists(namespace, articleName);
+			}
+		};
+		fIndex = new PageExistenceIndex(1000, 0.01, 100);
+		fLookups = 0;
+		Configuration.DEFAULT_CONFIGURATION.setPageExistenceIndex(fIndex);
+		wikiModel.setUp();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		Configuration.DEFAULT_CONFIGURATION.setPageExistenceIndex(null);
+		super.tearDown();
+	}
+
+	public void testIfexistCached() {
+		assertEquals("\n" + "<p>yes no</p>", wikiModel
+				.render("{{#ifexist:Template:Templ1|yes|no}} {{#ifexist:Template:Missing|yes|no}}"));
+		assertEquals(2, fLookups);
+		assertEquals("\n" + "<p>yes no</p>", wikiModel
+				.render("{{#ifexist:Template:templ1|yes|no}} {{#ifexist:Template:Missing|yes|no}}"));
+		assertEquals(2, fLookups);
+		assertEquals(2L, fIndex.getHits());
+	}
+
+	public void testCompleteBloomFilter() {
+		fIndex.addExistingPage("Template:Templ1");
+		fIndex.setComplete(true);
+		assertEquals("\n" + "<p>no</p>", wikiModel.render("{{#ifexist:Template:Missing|yes|no}}"));
+		assertEquals(0, fLookups);
+		// a title in the Bloom filter must still be looked up once
+		assertEquals("\n" + "<p>yes</p>", wikiModel.render("{{#ifexist:Template:Templ1|yes|no}}"));
+		assertEquals(1, fLookups);
+	}
+
+	public void testTitleNormalization() {
+		fIndex.put("Template", "foo_bar", true);
+		assertEquals(Boolean.TRUE, fIndex.get("Template", "Foo bar"));
+		fIndex.put("Help:Missing page", false);
+		assertEquals(Boolean.FALSE, fIndex.get("Help", "Missing_page"));
+		assertNull(fIndex.get("", "Unknown"));
+	}
+
+	public void testRedLink() {
+		fIndex.put("", "Missing page", false);
+		assertEquals("\n" + "<p><a class=\"new\" href=\"http://www.bliki.info/wiki/Missing_page\" title=\"Missing page\">Missing page</a> "
+				+ "<a href=\"http://www.bliki.info/wiki/Other\" title=\"Other\">Other</a></p>", wikiModel
+				.render("[[Missing page]] [[Other]]"));
+		// links are never looked up
+		assertEquals(0, fLookups);
+	}
+}
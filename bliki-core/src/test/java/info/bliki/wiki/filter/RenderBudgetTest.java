@@ -0,0 +1,74 @@
+package info.bliki.wiki.filter;
+
+import info.bliki.wiki.model.RenderBudget;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class RenderBudgetTest extends FilterTestSupport {
+	public RenderBudgetTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(RenderBudgetTest.class);
+	}
+
+	public void testUnlimited() {
+		RenderBudget budget = new RenderBudget();
+		wikiModel.setRenderBudget(budget);
+		assertEquals("\n" + "<p>c) First: a Second: b</p>", wikiModel.render("{{templ2|a|b}}"));
+		assertFalse(budget.isExceeded());
+		assertEquals(1, budget.getTemplateCalls());
+		assertTrue(budget.getNodeCount() > 0);
+	}
+
+	public void testTemplateCalls() {
+		RenderBudget budget = new RenderBudget();
+		budget.setMaxTemplateCalls(1);
+		wikiModel.setRenderBudget(budget);
+		assertEquals("\n" + "<p>c) First: a Second: b  </p><span class=\"error\">Error - render budget exceeded: template calls</span>",
+				wikiModel.render("{{templ2|a|b}} {{templ2|c|d}} {{templ2|e|f}}"));
+		assertEquals(RenderBudget.TEMPLATE_CALLS, budget.getExceededLimit());
+
+		// the budget is restarted for every render
+		assertEquals("\n" + "<p>c) First: a Second: b</p>", wikiModel.render("{{templ2|a|b}}"));
+		assertFalse(budget.isExceeded());
+	}
+
+	public void testNestedExpandedSize() {
+		RenderBudget budget = new RenderBudget();
+		budget.setMaxExpandedSize(38);
+		wikiModel.setRenderBudget(budget);
+		assertEquals("\n" + "<p>test a a nested template text template</p>", wikiModel.render("{{nested tempplate test}}"));
+		// the nested expansion is only counted as part of the outer expansion
+		assertEquals(38, budget.getExpandedSize());
+		assertEquals(2, budget.getTemplateCalls());
+		assertFalse(budget.isExceeded());
+
+		budget.setMaxExpandedSize(37);
+		assertEquals("<span class=\"error\">Error - render budget exceeded: expanded size</span>", wikiModel
+				.render("{{nested tempplate test}}"));
+		assertEquals(RenderBudget.EXPANDED_SIZE, budget.getExceededLimit());
+	}
+
+	public void testCancelled() {
+		RenderBudget budget = new RenderBudget() {
+			@Override
+			public boolean addTemplateCall() {
+				cancel();
+				return super.addTemplateCall();
+			}
+		};
+		wikiModel.setRenderBudget(budget);
+		assertEquals("<span class=\"error\">Error - render budget exceeded: cancelled</span>", wikiModel
+				.render("{{templ2|a|b}} '''bold'''"));
+		assertEquals(RenderBudget.CANCELLED, budget.getExceededLimit());
+	}
+
+	public void testDisabledByReset() {
+		wikiModel.setRenderBudget(new RenderBudget());
+		wikiModel.reset();
+		assertNull(wikiModel.getRenderBudget());
+	}
+}
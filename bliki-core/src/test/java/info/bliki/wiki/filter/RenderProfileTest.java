@@ -0,0 +1,49 @@
+package info.bliki.wiki.filter;
+
+import info.bliki.wiki.model.RenderProfile;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class RenderProfileTest extends FilterTestSupport {
+	public RenderProfileTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(RenderProfileTest.class);
+	}
+
+	public void testProfile() {
+		RenderProfile profile = new RenderProfile();
+		wikiModel.setRenderProfile(profile);
+		assertEquals("\n" + "<p>c) First: a Second: b yes no {{Unknown}}</p>", wikiModel
+				.render("{{templ2|a|b}} {{#if:x|yes|no}} {{#if:|yes|no}} {{Unknown}}"));
+		assertEquals(1, profile.getRenderCount());
+		assertEquals(1, profile.getTemplateProfile("Template:templ2").getCount());
+		assertEquals(1, profile.getTemplateProfile("Template:Unknown").getCount());
+		assertEquals(Integer.valueOf(2), profile.getParserFunctionCalls().get("#if"));
+		assertEquals(2, profile.getRawWikiContentLookups());
+		assertEquals(1, profile.getRawWikiContentMisses());
+		assertTrue(profile.getMaxRecursionDepth() > 0);
+		assertTrue(profile.getWallNanos(RenderProfile.PREPROCESS_PHASE) > 0L);
+		assertTrue(profile.getWallNanos(RenderProfile.PARSE_PHASE) > 0L);
+		assertTrue(profile.getWallNanos(RenderProfile.OUTPUT_PHASE) > 0L);
+
+		// aggregate the profiles of several renders
+		RenderProfile total = new RenderProfile();
+		total.add(profile);
+		profile.clear();
+		wikiModel.render("{{templ2|c|d}}");
+		total.add(profile);
+		assertEquals(2, total.getRenderCount());
+		assertEquals(2, total.getTemplateProfile("Template:templ2").getCount());
+		assertEquals(Integer.valueOf(2), total.getParserFunctionCalls().get("#if"));
+	}
+
+	public void testDisabledByReset() {
+		wikiModel.setRenderProfile(new RenderProfile());
+		wikiModel.reset();
+		assertNull(wikiModel.getRenderProfile());
+	}
+}
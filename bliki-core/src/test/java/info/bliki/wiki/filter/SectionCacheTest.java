@@ -0,0 +1,54 @@
+package info.bliki.wiki.filter;
+
+import info.bliki.wiki.model.SectionCache;
+import info.bliki.wiki.model.WikiModel;
+
+import java.util.List;
+import java.util.Locale;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class SectionCacheTest extends FilterTestSupport {
+	private final static String ARTICLE = "Lead <ref name=\"a\">A</ref> [[Link1]] {{templ2|x|y}}.\n\n"
+			+ "== First ==\nSome text<ref>plain</ref> [[Category:Cat1]]\n* item\n\n" + "== Second ==\n{|\n|cell\n|}\nMore <ref name=\"a\"/>\n\n"
+			+ "=== Sub ===\n<nowiki>== no head ==</nowiki>\n{{templ2|\n== no head ==\n}}\n\n"
+			+ "== Third ==\ntext <!-- == no head == -->\n<ref name=\"b\">B</ref>\n\n" + "== References ==\n<references/>\n";
+
+	public SectionCacheTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(SectionCacheTest.class);
+	}
+
+	private WikiModel newWikiModel() {
+		WikiModel model = new WikiTestModel(Locale.ENGLISH, "http://www.bliki.info/wiki/${image}", "http://www.bliki.info/wiki/${title}");
+		model.setUp();
+		return model;
+	}
+
+	public void testSplitSections() {
+		List<String> sections = SectionCache.splitSections(ARTICLE);
+		assertEquals(6, sections.size());
+		assertTrue(sections.get(3).startsWith("=== Sub ===\n"));
+		assertNull(SectionCache.splitSections("__NOTOC__\n== a ==\nb\n== c ==\nd"));
+		assertNull(SectionCache.splitSections("no heads"));
+	}
+
+	public void testIncrementalRender() {
+		SectionCache sectionCache = new SectionCache();
+		String[] texts = { ARTICLE, ARTICLE.replace("Some text", "Changed text"),
+				ARTICLE.replace("More <ref name=\"a\"/>", "More <ref>new</ref>"), ARTICLE.replace("B</ref>", "BB</ref>") };
+		long[] hits = { 0, 5, 2, 5 };
+		for (int i = 0; i < texts.length; i++) {
+			WikiModel model = newWikiModel();
+			long previousHits = sectionCache.getHits();
+			assertEquals(newWikiModel().render(texts[i]), model.render(texts[i], sectionCache));
+			assertEquals(hits[i], sectionCache.getHits() - previousHits);
+			assertEquals("Cat1", model.getCategories().keySet().iterator().next());
+			assertTrue(model.getLinks().contains("Link1"));
+		}
+	}
+}
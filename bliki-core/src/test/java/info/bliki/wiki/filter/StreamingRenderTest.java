@@ -0,0 +1,50 @@
+package info.bliki.wiki.filter;
+
+import info.bliki.wiki.model.WikiModel;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class StreamingRenderTest extends FilterTestSupport {
+	private final static String[] TEXTS = {
+			"Lead '''bold ''bold italic''''' text [[Link1|link]] {{templ2|x|y}}.\n\nSecond paragraph\n",
+			"Text<ref name=\"a\">A</ref> more<ref>B</ref> [[Category:Cat1]]\n<references/>\nAfter <ref name=\"a\"/> <ref>C</ref>\n",
+			"== One ==\na\n== Two ==\n{|\n|cell <ref>R</ref>\n|}\n== Three ==\n* item\n** nested '''item\n== Four ==\nend\n<references/>",
+			"== One ==\na\n== Two ==\nb\n",
+			"Intro __TOC__ text\n== One ==\na\n== Two ==\nb<ref>R</ref>\n<references/>",
+			"__NOTOC__\n== One ==\n== Two ==\n== Three ==\n== Four ==\n<pre>\npre\n</pre>\n ws pre\n\n<nowiki>''x''</nowiki> ''open",
+			"#REDIRECT [[Other]]" };
+
+	public StreamingRenderTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(StreamingRenderTest.class);
+	}
+
+	private WikiModel newWikiModel() {
+		WikiModel model = new WikiTestModel(Locale.ENGLISH, "http://www.bliki.info/wiki/${image}", "http://www.bliki.info/wiki/${title}");
+		model.setUp();
+		return model;
+	}
+
+	public void testStreamingRender() throws IOException {
+		for (int i = 0; i < TEXTS.length; i++) {
+			WikiModel model = newWikiModel();
+			StringBuilder buf = new StringBuilder();
+			model.renderStreaming(TEXTS[i], buf);
+			assertEquals(newWikiModel().render(TEXTS[i]), buf.toString());
+		}
+	}
+
+	public void testStreamingPlainText() throws IOException {
+		WikiModel model = newWikiModel();
+		StringBuilder buf = new StringBuilder();
+		model.renderStreaming(new PlainTextConverter(), TEXTS[2], buf);
+		assertEquals(newWikiModel().render(new PlainTextConverter(), TEXTS[2]), buf.toString());
+	}
+}
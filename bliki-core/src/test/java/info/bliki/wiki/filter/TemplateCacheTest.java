@@ -0,0 +1,98 @@
+package info.bliki.wiki.filter;
+
+import info.bliki.wiki.model.Configuration;
+import info.bliki.wiki.model.TemplateCache;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class TemplateCacheTest extends FilterTestSupport {
+	private TemplateCache fCache;
+
+	public TemplateCacheTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(TemplateCacheTest.class);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		wikiModel = new WikiTestModel(Locale.ENGLISH, "http://www.bliki.info/wiki/${image}", "http://www.bliki.info/wiki/${title}") {
+			@Override
+			public String getRawWikiContent(String namespace, String articleName, Map<String, String> map) {
+				if (isTemplateNamespace(namespace)) {
+					if (articleName.equals("PageTempl")) {
+						return "Page: {{PAGENAME}}";
+					} else if (articleName.equals("TimeTempl")) {
+						return "{{#time:U}}";
+					} else if (articleName.equals("Nested")) {
+						return "[{{PageTempl}}]";
+					}
+				}
+				return super.getRawWikiContent(namespace, articleName, map);
+			}
+		};
+		fCache = new TemplateCache();
+		Configuration.DEFAULT_CONFIGURATION.setTemplateCache(fCache);
+		wikiModel.setUp();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		Configuration.DEFAULT_CONFIGURATION.setTemplateCache(null);
+		super.tearDown();
+	}
+
+	public void testCacheHit() {
+		String expected = "\n" + "<p>c) First: sdfsf Second: klj</p>";
+		assertEquals(expected, wikiModel.render("{{templ2|sdfsf|klj}}"));
+		assertEquals(expected, wikiModel.render("{{templ2|sdfsf|klj}}"));
+		assertEquals(1L, fCache.getHits());
+		// different parameters and different templates don't share an entry
+		assertEquals("\n" + "<p>c) First: a Second: b</p>", wikiModel.render("{{templ2|a|b}}"));
+		assertEquals("\n" + "<p>[Page: First]</p>", renderPage("First", "{{Nested}}"));
+		assertEquals(1L, fCache.getHits());
+	}
+
+	public void testPageDependency() {
+		assertEquals("\n" + "<p>Page: First</p>", renderPage("First", "{{PageTempl}}"));
+		assertEquals("\n" + "<p>Page: Second</p>", renderPage("Second", "{{PageTempl}}"));
+		assertEquals("\n" + "<p>Page: First</p>", renderPage("First", "{{PageTempl}}"));
+		// the dependency is propagated to the calling template
+		assertEquals("\n" + "<p>[Page: First]</p>", renderPage("First", "{{Nested}}"));
+		assertEquals("\n" + "<p>[Page: Second]</p>", renderPage("Second", "{{Nested}}"));
+		assertTrue(fCache.isPageDependent("Template", "Nested"));
+	}
+
+	public void testVolatileTemplate() {
+		wikiModel.render("{{TimeTempl}}");
+		wikiModel.render("{{TimeTempl}}");
+		assertEquals(0L, fCache.getHits());
+		assertNull(fCache.createKey("Template", "TimeTempl", new HashMap<String, String>(), "Test"));
+	}
+
+	public void testEviction() {
+		TemplateCache cache = new TemplateCache(16, 1024L * 1024L);
+		Map<String, String> parameters = new HashMap<String, String>();
+		for (int i = 0; i < 100; i++) {
+			parameters.put("1", Integer.toString(i));
+			cache.put(cache.createKey("Template", "Test", parameters, "Test"), "value");
+		}
+		assertTrue(cache.size() <= 16);
+		assertEquals(100L - cache.size(), cache.getEvictions());
+		assertEquals(cache.size() * (cache.createKey("Template", "Test", parameters, "Test").length() + 5), cache.getWeight());
+	}
+
+	private String renderPage(String pageName, String rawWikiText) {
+		wikiModel.tearDown();
+		wikiModel.setUp();
+		wikiModel.setPageName(pageName);
+		return wikiModel.render(rawWikiText);
+	}
+}
@@ -0,0 +1,53 @@
+package info.bliki.wiki.filter;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class TemplateNameExtractorTest extends FilterTestSupport {
+	public TemplateNameExtractorTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(TemplateNameExtractorTest.class);
+	}
+
+	private String extract(String rawWikiText, boolean transcluded) {
+		Set<String> names = TemplateNameExtractor.extract(rawWikiText, wikiModel, transcluded);
+		return Arrays.toString(names.toArray());
+	}
+
+	public void testExtract001() {
+		assertEquals("[Infobox country, Cite web, Flag]", extract("{{Infobox_country\n|name={{cite web|url=x}}\n}} "
+				+ "{{flag|DE}} {{Cite web|url=y}}", false));
+	}
+
+	public void testExtract002() {
+		// parser functions, magic words and parameters are ignored, but their
+		// arguments are scanned
+		assertEquals("[Yes, No]", extract("{{#if:{{{1|}}}|{{yes}}|{{no}}}} {{PAGENAME}} {{lc:ABC}} {{{name|}}}", false));
+	}
+
+	public void testExtract003() {
+		// namespace prefixes
+		assertEquals("[Main, Reflist]", extract("{{Template:Main|x}} {{subst:reflist}} {{:Main Page}} {{Category:Contents}}", false));
+	}
+
+	public void testExtract004() {
+		// dynamic template names
+		assertEquals("[Country data Germany]", extract("{{Flag{{{1}}}}} {{Country data Germany}}", false));
+	}
+
+	public void testExtract005() {
+		assertEquals("[Navbox]", extract("{{Navbox|title=x}}<noinclude>{{Documentation}}</noinclude>", true));
+		assertEquals("[Navbox, Documentation]", extract("{{Navbox|title=x}}<noinclude>{{Documentation}}</noinclude>", false));
+	}
+
+	public void testExtract006() {
+		assertEquals("[Citation needed]", extract("#REDIRECT [[Template:Citation_needed]]", true));
+		assertEquals("[]", extract("#REDIRECT [[Main Page]]", true));
+	}
+}
@@ -1,5 +1,9 @@
 package info.bliki.wiki.filter;
 
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
@@ -461,7 +465,7 @@ public class TemplateParserTest extends FilterTestSupport {
 	}
 
 	public void testSubst006() {
-		assertEquals("NAMESPACE", wikiModel.parseTemplates(
+		assertEquals("{{[[Template:NAMESPACE|NAMESPACE]]}}", wikiModel.parseTemplates(
 				"{{subst:tl|{{subst:NAMESPACE}}}}", false));
 	}
 
@@ -499,6 +503,20 @@ public class TemplateParserTest extends FilterTestSupport {
 		// wikiModel.parseTemplates("test {{CURRENTYEAR}} test123"));
 	}
 
+	public void testMagicClockSnapshot() {
+		// all date values of a render are taken from the same clock snapshot
+		String result = wikiModel.parseTemplates("{{CURRENTTIMESTAMP}}|{{LOCALYEAR}}|{{#time:U}}");
+		Date date = new Date(wikiModel.getRenderTime());
+		SimpleDateFormat utc = new SimpleDateFormat("yyyyMMddHHmmss");
+		utc.setTimeZone(TimeZone.getTimeZone("GMT+00"));
+		assertEquals(utc.format(date) + "|" + new SimpleDateFormat("yyyy").format(date) + "|" + (date.getTime() / 1000), result);
+	}
+
+	public void testMagicUnevaluated() {
+		// the magic words, which aren't evaluated, are returned unchanged
+		assertEquals("NAMESPACE SITENAME REVISIONID", wikiModel.parseTemplates("{{NAMESPACE}} {{SITENAME}} {{REVISIONID}}"));
+	}
+
 	public void testMagicPAGENAME01() {
 		assertEquals("test [[PAGENAME]] test123", wikiModel.parseTemplates("test [[{{PAGENAME}}]] test123"));
 	}
@@ -0,0 +1,56 @@
+package info.bliki.wiki.filter;
+
+import info.bliki.wiki.model.IWikiModelFactory;
+import info.bliki.wiki.model.WikiModel;
+import info.bliki.wiki.model.WikiModelPool;
+
+import java.util.Locale;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class WikiModelPoolTest extends TestCase {
+	private static class TestModelFactory implements IWikiModelFactory<WikiModel> {
+		public WikiModel createWikiModel() {
+			return new WikiTestModel(Locale.ENGLISH, "http://www.bliki.info/wiki/${image}", "http://www.bliki.info/wiki/${title}");
+		}
+	}
+
+	public WikiModelPoolTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(WikiModelPoolTest.class);
+	}
+
+	public void testReuse() {
+		WikiModelPool<WikiModel> pool = new WikiModelPool<WikiModel>(new TestModelFactory(), 1);
+		WikiModel wikiModel = pool.borrowModel();
+		wikiModel.setPageName("First");
+		String expected = wikiModel.render("==Test==\n" + "{{PAGENAME}} [[Link]] [[Category:Test]] <ref>a</ref>\n<references/>");
+		assertTrue(expected.indexOf("First") >= 0);
+		assertEquals(1, wikiModel.getCategories().size());
+		pool.returnModel(wikiModel);
+
+		WikiModel reused = pool.borrowModel();
+		assertSame(wikiModel, reused);
+		assertEquals("PAGENAME", reused.getPageName());
+		assertEquals(0, reused.getCategories().size());
+		assertEquals(0, reused.getLinks().size());
+		assertNull(reused.getReferences());
+		reused.setPageName("First");
+		assertEquals(expected, reused.render("==Test==\n" + "{{PAGENAME}} [[Link]] [[Category:Test]] <ref>a</ref>\n<references/>"));
+
+		WikiModel other = pool.borrowModel();
+		assertNotSame(reused, other);
+		pool.returnModel(reused);
+		pool.returnModel(other);
+		assertEquals(1, pool.getIdleCount());
+		assertEquals(3L, pool.getBorrowedCount());
+		assertEquals(2L, pool.getCreatedCount());
+		assertEquals(1L, pool.getDiscardedCount());
+		assertEquals(33, pool.getReuseRate());
+	}
+}
@@ -6,6 +6,7 @@ import info.bliki.pdf.PDFGenerator;
 import info.bliki.wiki.filter.HTMLConverter;
 import info.bliki.wiki.filter.ITextConverter;
 import info.bliki.wiki.filter.PDFConverter;
+import info.bliki.wiki.impl.APIWikiModel;
 import info.bliki.wiki.model.IWikiModel;
 
 import java.io.BufferedWriter;
@@ -78,9 +79,13 @@ public class DocumentCreator {
 			for (Page page : fListOfPages) {
 				// print page information
 				String rawWikiText = page.getCurrentContent();
+				if (fModel instanceof APIWikiModel) {
+					// download all missing templates with batched queries
+					((APIWikiModel) fModel).prefetchTemplates(rawWikiText);
+				}
 				fModel.setPageName(page.getTitle());
 				// System.out.println(rawWikiText);
-				appendable.append(fModel.render(converter, rawWikiText));
+				fModel.render(converter, rawWikiText, appendable);
 			}
 			if (fFooter != null) {
 				appendable.append(fFooter);
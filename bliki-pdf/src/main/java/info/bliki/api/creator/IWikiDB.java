@@ -0,0 +1,67 @@
+package info.bliki.api.creator;
+
+import java.util.Collection;
+
+/**
+ * A store for the retrieved wiki contents (topics) and image data, which is
+ * used by the <code>APIWikiModel</code> and the <code>DumpWikiModel</code>.
+ * Implementations must be thread-safe, so that a store can be shared by
+ * parallel renderers.
+ *
+ * @see WikiDB
+ */
+public interface IWikiDB {
+	/**
+	 * Select the topic data from the store
+	 *
+	 * @param name
+	 *          the name of the topic
+	 * @return <code>null</code> if no data was found
+	 * @throws Exception
+	 */
+	public TopicData selectTopic(String name) throws Exception;
+
+	/**
+	 * Check if the topic exists in the store, without reading its content.
+	 *
+	 * @param name
+	 *          the name of the topic
+	 * @return <code>true</code> if the topic exists
+	 * @throws Exception
+	 */
+	public boolean existsTopic(String name) throws Exception;
+
+	public void insertTopic(TopicData topic) throws Exception;
+
+	/**
+	 * Insert a (possibly large) number of topics.
+	 *
+	 * @param topics
+	 *          the topics which should be inserted
+	 * @throws Exception
+	 */
+	public void insertTopics(Collection<TopicData> topics) throws Exception;
+
+	public void updateTopic(TopicData topic) throws Exception;
+
+	/**
+	 * Select the image data from the store
+	 *
+	 * @param imageName
+	 *          the name of the image
+	 * @return <code>null</code> if no data was found
+	 * @throws Exception
+	 */
+	public ImageData selectImage(String imageName) throws Exception;
+
+	public void insertImage(ImageData imageData) throws Exception;
+
+	public void updateImage(ImageData imageData) throws Exception;
+
+	/**
+	 * Close the store and release all resources.
+	 *
+	 * @throws Exception
+	 */
+	public void tearDown() throws Exception;
+}
@@ -0,0 +1,610 @@
+package info.bliki.api.creator;
+
+import info.bliki.wiki.dump.IArticleFilter;
+import info.bliki.wiki.dump.Siteinfo;
+import info.bliki.wiki.dump.WikiArticle;
+import info.bliki.wiki.dump.WikiXMLParser;
+import info.bliki.wiki.namespaces.INamespace;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.xml.sax.SAXException;
+
+/**
+ * A simple embedded key/value store for the wiki contents (i.e. the templates
+ * and modules of a dump), which can be used instead of the Derby based
+ * {@link WikiDB}.
+ *
+ * The store consists of two files:
+ * <ul>
+ * <li><code>&lt;name&gt;.dat</code> - an append-only data file, which contains
+ * a record with the name and the deflate compressed UTF-8 content for every
+ * inserted topic</li>
+ * <li><code>&lt;name&gt;-&lt;generation&gt;.idx</code> - a table of the 64-bit
+ * title hashes and the record offsets, sorted by hash</li>
+ * </ul>
+ * Both files are memory mapped; a lookup is a binary search in the index and a
+ * single record read from the data file. An update appends a new record, which
+ * supersedes the old one. Records which are appended after the index was
+ * written are indexed in memory until the next {@link #flush()}, which writes
+ * the index of the next generation. A mapped file can't be replaced or deleted
+ * on every platform, so the older index files are deleted when they aren't
+ * mapped anymore. A partial record at the end of the data file (i.e. after a
+ * crash) is truncated when the store is opened.
+ *
+ * Instances are thread-safe; any number of threads can read concurrently. The
+ * mapped part of the data file is limited to 2GB; records behind this limit
+ * are read with positional file reads.
+ *
+ * Example:
+ *
+ * <pre>
+ * MappedWikiDB db = MappedWikiDB.build(&quot;enwiki-pages-articles.xml.bz2&quot;, &quot;c:/temp/store&quot;, &quot;enwiki&quot;);
+ * DumpWikiModel wikiModel = new DumpWikiModel(db, siteinfo, &quot;${image}&quot;, &quot;${title}&quot;, imageDirectory);
+ * </pre>
+ */
+public class MappedWikiDB implements IWikiDB {
+	private final static int DATA_MAGIC = 0x424c4944;
+
+	private final static int INDEX_MAGIC = 0x424c4949;
+
+	private final static int VERSION = 1;
+
+	private final static int DATA_HEADER_SIZE = 8;
+
+	private final static int INDEX_HEADER_SIZE = 24;
+
+	/**
+	 * The prefix of the keys for image data; a topic name never contains a
+	 * <code>\u0000</code> character.
+	 */
+	private final static String IMAGE_KEY_PREFIX = "\u0000image:";
+
+	private final static char IMAGE_VALUE_SEPARATOR = '\n';
+
+	/**
+	 * The immutable, memory mapped state of the index and the data file.
+	 */
+	private static class Mapping {
+		final MappedByteBuffer fIndex;
+
+		final int fIndexSize;
+
+		final MappedByteBuffer fData;
+
+		Mapping(MappedByteBuffer index, int indexSize, MappedByteBuffer data) {
+			fIndex = index;
+			fIndexSize = indexSize;
+			fData = data;
+		}
+	}
+
+	/**
+	 * An entry of the index table.
+	 */
+	private static class IndexEntry implements Comparable<IndexEntry> {
+		final long fHash;
+
+		final long fOffset;
+
+		IndexEntry(long hash, long offset) {
+			fHash = hash;
+			fOffset = offset;
+		}
+
+		public int compareTo(IndexEntry other) {
+			return fHash < other.fHash ? -1 : (fHash == other.fHash ? 0 : 1);
+		}
+	}
+
+	/**
+	 * Stores the topics of the <i>Template</i> and <i>Module</i> namespaces of a
+	 * dump.
+	 */
+	private static class TemplateArticleFilter implements IArticleFilter {
+		private final MappedWikiDB fWikiDB;
+
+		TemplateArticleFilter(MappedWikiDB wikiDB) {
+			fWikiDB = wikiDB;
+		}
+
+		public void process(WikiArticle article, Siteinfo siteinfo) throws SAXException {
+			if (article.getText() != null && (article.isTemplate() || INamespace.MODULE.equals(article.getIntegerNamespace()))) {
+				try {
+					fWikiDB.put(article.getTitle(), article.getText());
+				} catch (IOException e) {
+					throw new SAXException(e);
+				}
+			}
+		}
+	}
+
+	private final File fDirectory;
+
+	private final String fName;
+
+	/**
+	 * The generation of the mapped index file; <code>0</code> if no index file
+	 * is mapped
+	 */
+	private int fIndexGeneration;
+
+	private final RandomAccessFile fDataFile;
+
+	private final FileChannel fDataChannel;
+
+	/**
+	 * The current end of the data file; guarded by <code>this</code>
+	 */
+	private long fDataLength;
+
+	private volatile Mapping fMapping;
+
+	/**
+	 * The offsets of the records which were appended since the index was
+	 * written
+	 */
+	private final Map<String, Long> fAppended;
+
+	/**
+	 * The offsets of indexed records which are superseded by appended records;
+	 * guarded by <code>this</code>
+	 */
+	private final Set<Long> fSuperseded;
+
+	/**
+	 * Open or create a store.
+	 *
+	 * @param directory
+	 *          the directory of the store files
+	 * @param name
+	 *          the name of the store files (without extension)
+	 * @throws IOException
+	 */
+	public MappedWikiDB(String directory, String name) throws IOException {
+		File dir = new File(directory);
+		if (!dir.exists()) {
+			dir.mkdirs();
+		}
+		fDirectory = dir;
+		fName = name;
+		fDataFile = new RandomAccessFile(new File(dir, name + ".dat"), "rw");
+		fDataChannel = fDataFile.getChannel();
+		fAppended = new ConcurrentHashMap<String, Long>();
+		fSuperseded = new HashSet<Long>();
+		if (fDataFile.length() == 0L) {
+			fDataFile.writeInt(DATA_MAGIC);
+			fDataFile.writeInt(VERSION);
+		} else if (fDataFile.readInt() != DATA_MAGIC || fDataFile.readInt() != VERSION) {
+			fDataFile.close();
+			throw new IOException("Not a wiki store data file: " + name + ".dat");
+		}
+		fDataLength = fDataFile.length();
+		long indexedLength = DATA_HEADER_SIZE;
+		MappedByteBuffer index = null;
+		int indexSize = 0;
+		// use the newest complete index file
+		int[] generations = getIndexGenerations();
+		for (int i = generations.length - 1; i >= 0; i--) {
+			index = mapIndex(getIndexFile(generations[i]));
+			if (index != null) {
+				fIndexGeneration = generations[i];
+				indexSize = index.getInt(8);
+				indexedLength = index.getLong(16);
+				break;
+			}
+		}
+		deleteIndexFiles();
+		// the data file isn't mapped until a partial record is truncated
+		fMapping = new Mapping(index, indexSize, null);
+		// index the records which were appended after the index was written
+		long offset = indexedLength;
+		while (offset < fDataLength) {
+			long keyOffset = offset + 4;
+			int keyLength = keyOffset <= fDataLength ? read(offset, 4).getInt(0) : -1;
+			long lengthsOffset = keyOffset + keyLength;
+			int compressedLength = keyLength >= 0 && lengthsOffset + 8 <= fDataLength ? read(lengthsOffset, 8).getInt(4) : -1;
+			if (compressedLength < 0 || lengthsOffset + 8 + compressedLength > fDataLength) {
+				// a partial record which was cut short by a crash
+				fDataFile.setLength(offset);
+				fDataLength = offset;
+				break;
+			}
+			appended(new String(read(keyOffset, keyLength).array(), "UTF-8"), offset);
+			offset = lengthsOffset + 8 + compressedLength;
+		}
+		fMapping = new Mapping(index, indexSize, mapData());
+	}
+
+	/**
+	 * Create a store from the <i>Template</i> and <i>Module</i> pages of a dump
+	 * in a single pass.
+	 *
+	 * @param dumpFilename
+	 *          the (possibly bzip2 compressed) XML dump file
+	 * @param directory
+	 *          the directory of the store files
+	 * @param name
+	 *          the name of the store files (without extension)
+	 * @return the opened store
+	 * @throws IOException
+	 * @throws SAXException
+	 */
+	public static MappedWikiDB build(String dumpFilename, String directory, String name) throws IOException, SAXException {
+		MappedWikiDB wikiDB = new MappedWikiDB(directory, name);
+		WikiXMLParser parser = new WikiXMLParser(dumpFilename, new TemplateArticleFilter(wikiDB));
+		parser.parse();
+		wikiDB.flush();
+		return wikiDB;
+	}
+
+	private File getIndexFile(int generation) {
+		return new File(fDirectory, fName + '-' + generation + ".idx");
+	}
+
+	/**
+	 * Get the generations of the existing index files in ascending order.
+	 */
+	private int[] getIndexGenerations() {
+		String[] filenames = fDirectory.list();
+		if (filenames == null) {
+			return new int[0];
+		}
+		int[] generations = new int[filenames.length];
+		int count = 0;
+		String prefix = fName + '-';
+		for (int i = 0; i < filenames.length; i++) {
+			String filename = filenames[i];
+			if (filename.startsWith(prefix) && filename.endsWith(".idx")) {
+				try {
+					generations[count] = Integer.parseInt(filename.substring(prefix.length(), filename.length() - 4));
+					if (generations[count] > 0) {
+						count++;
+					}
+				} catch (NumberFormatException e) {
+					// another file name
+				}
+			}
+		}
+		int[] result = new int[count];
+		System.arraycopy(generations, 0, result, 0, count);
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * Delete all index files except the one of the current generation. A file
+	 * which is still mapped by this store (or another process) may not be
+	 * deletable; it's deleted by a later call.
+	 */
+	private void deleteIndexFiles() {
+		int[] generations = getIndexGenerations();
+		for (int i = 0; i < generations.length; i++) {
+			if (generations[i] != fIndexGeneration) {
+				getIndexFile(generations[i]).delete();
+			}
+		}
+	}
+
+	/**
+	 * Map the given index file.
+	 *
+	 * @return <code>null</code> if the file isn't a complete index of the data
+	 *         file
+	 */
+	private MappedByteBuffer mapIndex(File indexFile) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			long length = channel.size();
+			if (length < INDEX_HEADER_SIZE || length > Integer.MAX_VALUE) {
+				return null;
+			}
+			MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+			if (index.getInt(0) != INDEX_MAGIC || index.getInt(4) != VERSION
+					|| length != INDEX_HEADER_SIZE + (long) index.getInt(8) * 16 || index.getLong(16) > fDataLength) {
+				return null;
+			}
+			return index;
+		} finally {
+			file.close();
+		}
+	}
+
+	private MappedByteBuffer mapData() throws IOException {
+		return fDataChannel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(fDataLength, Integer.MAX_VALUE));
+	}
+
+	/**
+	 * A 64-bit FNV-1a hash of the key. Package-private, so that the tests can
+	 * force hash collisions.
+	 */
+	long hash(String key) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < key.length(); i++) {
+			hash ^= key.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * Read <code>length</code> bytes from the data file; from the mapped buffer
+	 * if possible.
+	 */
+	private ByteBuffer read(long offset, int length) throws IOException {
+		MappedByteBuffer data = fMapping.fData;
+		byte[] bytes = new byte[length];
+		if (data != null && offset + length <= data.limit()) {
+			ByteBuffer buffer = data.duplicate();
+			buffer.position((int) offset);
+			buffer.get(bytes);
+			return ByteBuffer.wrap(bytes);
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		while (buffer.hasRemaining()) {
+			if (fDataChannel.read(buffer, offset + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of the wiki store data file");
+			}
+		}
+		buffer.rewind();
+		return buffer;
+	}
+
+	/**
+	 * Get the offset of the record for the given key.
+	 *
+	 * @return <code>-1</code> if the key isn't stored
+	 */
+	private long getOffset(String key) throws IOException {
+		Long appendedOffset = fAppended.get(key);
+		if (appendedOffset != null) {
+			return appendedOffset.longValue();
+		}
+		Mapping mapping = fMapping;
+		if (mapping.fIndex == null) {
+			return -1L;
+		}
+		MappedByteBuffer index = mapping.fIndex;
+		long hash = hash(key);
+		int low = 0;
+		int high = mapping.fIndexSize;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (index.getLong(INDEX_HEADER_SIZE + mid * 16) < hash) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		byte[] keyBytes = null;
+		for (int i = low; i < mapping.fIndexSize && index.getLong(INDEX_HEADER_SIZE + i * 16) == hash; i++) {
+			long offset = index.getLong(INDEX_HEADER_SIZE + i * 16 + 8);
+			// compare the stored key for hash collisions
+			if (keyBytes == null) {
+				keyBytes = key.getBytes("UTF-8");
+			}
+			if (read(offset, 4).getInt(0) == keyBytes.length && Arrays.equals(keyBytes, read(offset + 4, keyBytes.length).array())) {
+				synchronized (this) {
+					if (fSuperseded.contains(Long.valueOf(offset))) {
+						// superseded after the lookup in fAppended
+						return getOffset(key);
+					}
+				}
+				return offset;
+			}
+		}
+		return -1L;
+	}
+
+	/**
+	 * Get the value for the given key.
+	 *
+	 * @return <code>null</code> if the key isn't stored
+	 */
+	private String get(String key) throws IOException {
+		long offset = getOffset(key);
+		if (offset < 0L) {
+			return null;
+		}
+		int keyLength = read(offset, 4).getInt(0);
+		ByteBuffer lengths = read(offset + 4 + keyLength, 8);
+		int length = lengths.getInt(0);
+		byte[] compressed = read(offset + 12 + keyLength, lengths.getInt(4)).array();
+		byte[] bytes = new byte[length];
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(compressed);
+			int count = 0;
+			while (count < length && !inflater.finished()) {
+				count += inflater.inflate(bytes, count, length - count);
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupt record in the wiki store data file: " + key);
+		} finally {
+			inflater.end();
+		}
+		return new String(bytes, "UTF-8");
+	}
+
+	/**
+	 * Append a record for the given key and value.
+	 */
+	private synchronized void put(String key, String value) throws IOException {
+		byte[] keyBytes = key.getBytes("UTF-8");
+		byte[] bytes = value.getBytes("UTF-8");
+		Deflater deflater = new Deflater();
+		byte[] compressed;
+		int compressedLength = 0;
+		try {
+			deflater.setInput(bytes);
+			deflater.finish();
+			compressed = new byte[bytes.length + bytes.length / 1000 + 64];
+			while (!deflater.finished()) {
+				if (compressedLength == compressed.length) {
+					byte[] newCompressed = new byte[compressed.length * 2];
+					System.arraycopy(compressed, 0, newCompressed, 0, compressedLength);
+					compressed = newCompressed;
+				}
+				compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+			}
+		} finally {
+			deflater.end();
+		}
+		ByteBuffer record = ByteBuffer.allocate(12 + keyBytes.length + compressedLength);
+		record.putInt(keyBytes.length);
+		record.put(keyBytes);
+		record.putInt(bytes.length);
+		record.putInt(compressedLength);
+		record.put(compressed, 0, compressedLength);
+		record.flip();
+		long offset = fDataLength;
+		while (record.hasRemaining()) {
+			fDataChannel.write(record, offset + record.position());
+		}
+		fDataLength += record.limit();
+		appended(key, offset);
+	}
+
+	private synchronized void appended(String key, long offset) throws IOException {
+		if (!fAppended.containsKey(key)) {
+			long indexedOffset = getOffset(key);
+			if (indexedOffset >= 0L) {
+				fSuperseded.add(Long.valueOf(indexedOffset));
+			}
+		}
+		fAppended.put(key, Long.valueOf(offset));
+	}
+
+	/**
+	 * Write the index for all records to the index file of the next generation
+	 * and map the files again.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void flush() throws IOException {
+		Mapping mapping = fMapping;
+		IndexEntry[] entries = new IndexEntry[mapping.fIndexSize - fSuperseded.size() + fAppended.size()];
+		int size = 0;
+		for (int i = 0; i < mapping.fIndexSize; i++) {
+			long offset = mapping.fIndex.getLong(INDEX_HEADER_SIZE + i * 16 + 8);
+			if (!fSuperseded.contains(Long.valueOf(offset))) {
+				entries[size++] = new IndexEntry(mapping.fIndex.getLong(INDEX_HEADER_SIZE + i * 16), offset);
+			}
+		}
+		for (Map.Entry<String, Long> entry : fAppended.entrySet()) {
+			entries[size++] = new IndexEntry(hash(entry.getKey()), entry.getValue().longValue());
+		}
+		Arrays.sort(entries);
+
+		fDataChannel.force(false);
+		// another instance may have written newer index files
+		int[] generations = getIndexGenerations();
+		int generation = Math.max(fIndexGeneration, generations.length > 0 ? generations[generations.length - 1] : 0) + 1;
+		File indexFile = getIndexFile(generation);
+		FileOutputStream fos = new FileOutputStream(indexFile);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 65536));
+		try {
+			out.writeInt(INDEX_MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(size);
+			out.writeInt(0);
+			out.writeLong(fDataLength);
+			for (int i = 0; i < size; i++) {
+				out.writeLong(entries[i].fHash);
+				out.writeLong(entries[i].fOffset);
+			}
+			out.flush();
+			fos.getFD().sync();
+		} finally {
+			out.close();
+		}
+		MappedByteBuffer index = mapIndex(indexFile);
+		if (index == null) {
+			throw new IOException("Can't write the wiki store index file: " + indexFile);
+		}
+		fMapping = new Mapping(index, size, mapData());
+		fIndexGeneration = generation;
+		fAppended.clear();
+		fSuperseded.clear();
+		deleteIndexFiles();
+	}
+
+	/**
+	 * The number of stored topics and images.
+	 */
+	public synchronized int size() {
+		return fMapping.fIndexSize - fSuperseded.size() + fAppended.size();
+	}
+
+	public TopicData selectTopic(String name) throws Exception {
+		String content = get(name);
+		if (content == null) {
+			return null;
+		}
+		return new TopicData(name, content);
+	}
+
+	public boolean existsTopic(String name) throws Exception {
+		return getOffset(name) >= 0L;
+	}
+
+	public void insertTopic(TopicData topic) throws Exception {
+		put(topic.getName(), topic.getContent() == null ? "" : topic.getContent());
+	}
+
+	public void insertTopics(Collection<TopicData> topics) throws Exception {
+		for (TopicData topic : topics) {
+			insertTopic(topic);
+		}
+	}
+
+	public void updateTopic(TopicData topic) throws Exception {
+		insertTopic(topic);
+	}
+
+	public ImageData selectImage(String imageName) throws Exception {
+		String value = get(IMAGE_KEY_PREFIX + imageName);
+		if (value == null) {
+			return null;
+		}
+		int index = value.indexOf(IMAGE_VALUE_SEPARATOR);
+		ImageData imageData = new ImageData(imageName);
+		imageData.setUrl(value.substring(0, index));
+		imageData.setFilename(value.substring(index + 1));
+		return imageData;
+	}
+
+	public void insertImage(ImageData imageData) throws Exception {
+		put(IMAGE_KEY_PREFIX + imageData.getName(), imageData.getUrl() + IMAGE_VALUE_SEPARATOR + imageData.getFilename());
+	}
+
+	public void updateImage(ImageData imageData) throws Exception {
+		insertImage(imageData);
+	}
+
+	/**
+	 * Write the index and close the store.
+	 */
+	public void tearDown() throws Exception {
+		flush();
+		fDataFile.close();
+	}
+}
@@ -4,45 +4,156 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * A simple Apache Derby Database to store the retrieved Wiki contents
  * 
+ * The database connections are pooled, so that a <code>WikiDB</code> can be
+ * shared by parallel renderers. Every pooled connection holds its own prepared
+ * statements. The contents of recently selected topics (i.e. the often used
+ * templates) are kept in a small LRU cache in front of the database.
+ *
  */
-public class WikiDB {
+public class WikiDB implements IWikiDB {
 	/**
-	 * SQL statement to select the wiki content for a given topic name
+	 * The default maximum number of pooled database connections
 	 */
-	private final PreparedStatement fSelectContent;
+	public final static int DEFAULT_MAX_CONNECTIONS = 4;
 
 	/**
-	 * SQL statement to insert a new wiki entry (topic and content)
+	 * The default maximum number of cached topic contents
 	 */
-	private final PreparedStatement fInsertTopic;
+	public final static int DEFAULT_MAX_CACHED_TOPICS = 1024;
 
 	/**
-	 * SQL statement to update the wiki content for a given topic name
+	 * The default number of inserted topics after which
+	 * {@link #insertTopics(Collection)} commits the transaction
 	 */
-	private final PreparedStatement fUpdateTopicContent;
+	public final static int DEFAULT_COMMIT_INTERVAL = 1000;
 
 	/**
-	 * SQL statement to select the image data for a given image name
+	 * A database connection with its prepared statements.
 	 */
-	private final PreparedStatement fSelectImage;
+	private static class PooledConnection {
+		final Connection fConnection;
+
+		/**
+		 * SQL statement to select the wiki content for a given topic name
+		 */
+		final PreparedStatement fSelectContent;
+
+		/**
+		 * SQL statement to check if a topic name exists
+		 */
+		final PreparedStatement fSelectTopicId;
+
+		/**
+		 * SQL statement to insert a new wiki entry (topic and content)
+		 */
+		final PreparedStatement fInsertTopic;
+
+		/**
+		 * SQL statement to update the wiki content for a given topic name
+		 */
+		final PreparedStatement fUpdateTopicContent;
+
+		/**
+		 * SQL statement to select the image data for a given image name
+		 */
+		final PreparedStatement fSelectImage;
+
+		/**
+		 * SQL statement to insert a new image data entry
+		 */
+		final PreparedStatement fInsertImage;
+
+		/**
+		 * SQL statement to update an existing image data entry (url and filename)
+		 */
+		final PreparedStatement fUpdateImage;
+
+		PooledConnection(Connection connection) throws SQLException {
+			fConnection = connection;
+			fSelectContent = connection.prepareStatement("SELECT version_content FROM topic WHERE topic_name = ?");
+			fSelectTopicId = connection.prepareStatement("SELECT topic_id FROM topic WHERE topic_name = ?");
+			fInsertTopic = connection.prepareStatement("INSERT INTO topic (topic_name, version_content) VALUES (?,?)");
+			fUpdateTopicContent = connection.prepareStatement("UPDATE topic SET version_content = ?  WHERE topic_name = ?");
+
+			fSelectImage = connection.prepareStatement("SELECT image_url, image_filename FROM image WHERE image_name = ?");
+			fInsertImage = connection.prepareStatement("INSERT INTO image (image_name, image_url, image_filename) VALUES (?,?, ?)");
+			fUpdateImage = connection.prepareStatement("UPDATE image SET image_url = ?,  image_filename = ? WHERE image_name = ?");
+		}
+
+		void close() throws SQLException {
+			fSelectContent.close();
+			fSelectTopicId.close();
+			fInsertTopic.close();
+			fUpdateTopicContent.close();
+			fSelectImage.close();
+			fInsertImage.close();
+			fUpdateImage.close();
+			fConnection.close();
+		}
+	}
 
 	/**
-	 * SQL statement to insert a new image data entry
+	 * A LRU ordered map of topic names to their contents.
 	 */
-	private final PreparedStatement fInsertImage;
+	private static class TopicCache extends LinkedHashMap<String, String> {
+		private static final long serialVersionUID = -3307468262361578133L;
+
+		private final int fMaxSize;
+
+		TopicCache(int maxSize) {
+			super(64, 0.75f, true);
+			fMaxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			return size() > fMaxSize;
+		}
+	}
+
+	private final String fJdbcUrl;
+
+	private final Properties fProperties;
+
+	private final int fMaxConnections;
 
 	/**
-	 * SQL statement to update an existing image data entry (url and filename)
+	 * The currently unused connections
 	 */
-	private static PreparedStatement fUpdateImage;
+	private final BlockingQueue<PooledConnection> fIdleConnections;
 
-	private Connection fConnection;
+	/**
+	 * All opened connections; guarded by <code>this</code>
+	 */
+	private final List<PooledConnection> fConnections;
+
+	/**
+	 * The cached topic contents; guarded by the cache itself
+	 */
+	private final TopicCache fTopicCache;
+
+	/**
+	 * Incremented by every topic update; a content which was read from the
+	 * database is only cached, if no update happened while it was read. Guarded
+	 * by <code>fTopicCache</code>
+	 */
+	private long fTopicCacheGeneration;
+
+	private int fCommitInterval;
 
 	/**
 	 * The Wiki database constructor. Creates a new Derby Wiki database, if it
@@ -59,26 +170,47 @@ public class WikiDB {
 	 * @throws Exception
 	 */
 	public WikiDB(String directory, String databaseSubdirectoryName) throws Exception {
+		this(directory, databaseSubdirectoryName, DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CACHED_TOPICS);
+	}
+
+	/**
+	 * The Wiki database constructor. Creates a new Derby Wiki database, if it
+	 * doesn't already exists.
+	 *
+	 * @param directory
+	 *          the main directory name where the database subdirectory should be
+	 *          created
+	 * @param databaseSubdirectoryName
+	 *          the subdirectory name where the database files should be stored.
+	 * @param maxConnections
+	 *          the maximum number of connections, which can read or write the
+	 *          database concurrently
+	 * @param maxCachedTopics
+	 *          the maximum number of topic contents, which are cached in memory;
+	 *          <code>0</code> disables the cache
+	 * @throws Exception
+	 */
+	public WikiDB(String directory, String databaseSubdirectoryName, int maxConnections, int maxCachedTopics) throws Exception {
 		Class.forName("org.apache.derby.jdbc.EmbeddedDriver");
-		Properties properties = new Properties();
-		properties.put("user", "user1");
-		properties.put("password", "user1");
-		String jdbcUrl;
+		fProperties = new Properties();
+		fProperties.put("user", "user1");
+		fProperties.put("password", "user1");
 		if (directory.charAt(directory.length() - 1) == '/') {
-			jdbcUrl = "jdbc:derby:" + directory + databaseSubdirectoryName + ";create=true;characterEncoding=utf-8";
+			fJdbcUrl = "jdbc:derby:" + directory + databaseSubdirectoryName + ";create=true;characterEncoding=utf-8";
 		} else {
-			jdbcUrl = "jdbc:derby:" + directory + "/" + databaseSubdirectoryName + ";create=true;characterEncoding=utf-8";
+			fJdbcUrl = "jdbc:derby:" + directory + "/" + databaseSubdirectoryName + ";create=true;characterEncoding=utf-8";
 		}
-		fConnection = DriverManager.getConnection(jdbcUrl, properties);
-		createTableIfItDoesntExist();
+		fMaxConnections = Math.max(1, maxConnections);
+		fIdleConnections = new LinkedBlockingQueue<PooledConnection>();
+		fConnections = new ArrayList<PooledConnection>(fMaxConnections);
+		fTopicCache = new TopicCache(maxCachedTopics);
+		fCommitInterval = DEFAULT_COMMIT_INTERVAL;
 
-		fSelectContent = fConnection.prepareStatement("SELECT version_content FROM topic WHERE topic_name = ?");
-		fInsertTopic = fConnection.prepareStatement("INSERT INTO topic (topic_name, version_content) VALUES (?,?)");
-		fUpdateTopicContent = fConnection.prepareStatement("UPDATE topic SET version_content = ?  WHERE topic_name = ?");
-
-		fSelectImage = fConnection.prepareStatement("SELECT image_url, image_filename FROM image WHERE image_name = ?");
-		fInsertImage = fConnection.prepareStatement("INSERT INTO image (image_name, image_url, image_filename) VALUES (?,?, ?)");
-		fUpdateImage = fConnection.prepareStatement("UPDATE image SET image_url = ?,  image_filename = ? WHERE image_name = ?");
+		Connection connection = DriverManager.getConnection(fJdbcUrl, fProperties);
+		createTableIfItDoesntExist(connection);
+		PooledConnection pooledConnection = new PooledConnection(connection);
+		fConnections.add(pooledConnection);
+		fIdleConnections.add(pooledConnection);
 	}
 
 	public void setUp() throws Exception {
@@ -86,13 +218,50 @@ public class WikiDB {
 
 	public void tearDown() throws Exception {
 		// showContentsOfTableTest();
-		fSelectContent.close();
-		fInsertTopic.close();
-		fUpdateTopicContent.close();
-		fSelectImage.close();
-		fInsertImage.close();
-		fUpdateImage.close();
-		fConnection.close();
+		synchronized (this) {
+			for (PooledConnection connection : fConnections) {
+				connection.close();
+			}
+			fConnections.clear();
+			fIdleConnections.clear();
+		}
+		synchronized (fTopicCache) {
+			fTopicCache.clear();
+		}
+	}
+
+	/**
+	 * Get an unused connection from the pool. A new connection is opened, if
+	 * all connections are in use and the maximum number of connections isn't
+	 * reached yet; otherwise wait for a connection.
+	 */
+	private PooledConnection getConnection() throws Exception {
+		PooledConnection connection = fIdleConnections.poll();
+		if (connection != null) {
+			return connection;
+		}
+		synchronized (this) {
+			if (fConnections.size() < fMaxConnections) {
+				connection = new PooledConnection(DriverManager.getConnection(fJdbcUrl, fProperties));
+				fConnections.add(connection);
+				return connection;
+			}
+		}
+		return fIdleConnections.take();
+	}
+
+	private void releaseConnection(PooledConnection connection) {
+		fIdleConnections.add(connection);
+	}
+
+	/**
+	 * Set the number of inserted topics after which
+	 * {@link #insertTopics(Collection)} commits the transaction.
+	 *
+	 * @param commitInterval
+	 */
+	public void setCommitInterval(int commitInterval) {
+		fCommitInterval = Math.max(1, commitInterval);
 	}
 
 	/**
@@ -104,30 +273,140 @@ public class WikiDB {
 	 * @throws Exception
 	 */
 	public TopicData selectTopic(String name) throws Exception {
-		TopicData topicData = new TopicData(name);
-		fSelectContent.setString(1, name);
-		ResultSet resultSet = fSelectContent.executeQuery();
+		String content;
+		long generation;
+		synchronized (fTopicCache) {
+			content = fTopicCache.get(name);
+			generation = fTopicCacheGeneration;
+		}
+		if (content != null) {
+			return new TopicData(name, content);
+		}
+		PooledConnection connection = getConnection();
 		try {
-			while (resultSet.next()) {
-				topicData.setContent(resultSet.getString(1));
-				return topicData;
+			connection.fSelectContent.setString(1, name);
+			ResultSet resultSet = connection.fSelectContent.executeQuery();
+			try {
+				while (resultSet.next()) {
+					content = resultSet.getString(1);
+					if (content != null) {
+						synchronized (fTopicCache) {
+							// don't cache the old content of a concurrently updated topic
+							if (generation == fTopicCacheGeneration) {
+								fTopicCache.put(name, content);
+							}
+						}
+					}
+					return new TopicData(name, content);
+				}
+			} finally {
+				resultSet.close();
 			}
 		} finally {
-			resultSet.close();
+			releaseConnection(connection);
 		}
 		return null;
 	}
 
+	/**
+	 * Check if the topic exists in the database, without reading its content.
+	 *
+	 * @param name
+	 *          the name of the topic
+	 * @return <code>true</code> if the topic exists
+	 * @throws Exception
+	 */
+	public boolean existsTopic(String name) throws Exception {
+		synchronized (fTopicCache) {
+			if (fTopicCache.containsKey(name)) {
+				return true;
+			}
+		}
+		PooledConnection connection = getConnection();
+		try {
+			connection.fSelectTopicId.setString(1, name);
+			ResultSet resultSet = connection.fSelectTopicId.executeQuery();
+			try {
+				return resultSet.next();
+			} finally {
+				resultSet.close();
+			}
+		} finally {
+			releaseConnection(connection);
+		}
+	}
+
 	public void insertTopic(TopicData topic) throws Exception {
-		fInsertTopic.setString(1, topic.getName());
-		fInsertTopic.setString(2, topic.getContent());
-		fInsertTopic.execute();
+		PooledConnection connection = getConnection();
+		try {
+			connection.fInsertTopic.setString(1, topic.getName());
+			connection.fInsertTopic.setString(2, topic.getContent());
+			connection.fInsertTopic.execute();
+		} finally {
+			releaseConnection(connection);
+		}
+	}
+
+	/**
+	 * Insert the topics with batched SQL statements. The transaction is
+	 * committed after every <code>commitInterval</code> topics, so that a large
+	 * number of topics (i.e. all templates of a dump) can be imported without
+	 * a huge transaction. If an insert fails, the topics since the last commit
+	 * are rolled back.
+	 *
+	 * @param topics
+	 *          the topics which should be inserted
+	 * @throws Exception
+	 * @see #setCommitInterval(int)
+	 */
+	public void insertTopics(Collection<TopicData> topics) throws Exception {
+		if (topics.isEmpty()) {
+			return;
+		}
+		PooledConnection connection = getConnection();
+		try {
+			Connection jdbcConnection = connection.fConnection;
+			boolean autoCommit = jdbcConnection.getAutoCommit();
+			jdbcConnection.setAutoCommit(false);
+			try {
+				int count = 0;
+				for (TopicData topic : topics) {
+					connection.fInsertTopic.setString(1, topic.getName());
+					connection.fInsertTopic.setString(2, topic.getContent());
+					connection.fInsertTopic.addBatch();
+					if (++count % fCommitInterval == 0) {
+						connection.fInsertTopic.executeBatch();
+						jdbcConnection.commit();
+					}
+				}
+				connection.fInsertTopic.executeBatch();
+				jdbcConnection.commit();
+			} catch (Exception e) {
+				connection.fInsertTopic.clearBatch();
+				jdbcConnection.rollback();
+				throw e;
+			} finally {
+				jdbcConnection.setAutoCommit(autoCommit);
+			}
+		} finally {
+			releaseConnection(connection);
+		}
 	}
 
 	public void updateTopic(TopicData topic) throws Exception {
-		fUpdateTopicContent.setString(1, topic.getContent());
-		fUpdateTopicContent.setString(2, topic.getName());
-		fUpdateTopicContent.execute();
+		PooledConnection connection = getConnection();
+		try {
+			connection.fUpdateTopicContent.setString(1, topic.getContent());
+			connection.fUpdateTopicContent.setString(2, topic.getName());
+			connection.fUpdateTopicContent.execute();
+		} finally {
+			releaseConnection(connection);
+			// invalidate after the (auto committed) update
+			synchronized (fTopicCache) {
+				fTopicCache.remove(topic.getName());
+				fTopicCacheGeneration++;
+			}
+		}
 	}
 
 	/**
@@ -140,37 +419,52 @@ public class WikiDB {
 	 */
 	public ImageData selectImage(String imageName) throws Exception {
 		ImageData imageData = new ImageData(imageName);
-		fSelectImage.setString(1, imageName);
-		ResultSet resultSet = fSelectImage.executeQuery();
+		PooledConnection connection = getConnection();
 		try {
-			while (resultSet.next()) {
-				imageData.setUrl(resultSet.getString(1));
-				imageData.setFilename(resultSet.getString(2));
-				return imageData;
+			connection.fSelectImage.setString(1, imageName);
+			ResultSet resultSet = connection.fSelectImage.executeQuery();
+			try {
+				while (resultSet.next()) {
+					imageData.setUrl(resultSet.getString(1));
+					imageData.setFilename(resultSet.getString(2));
+					return imageData;
+				}
+			} finally {
+				resultSet.close();
 			}
 		} finally {
-			resultSet.close();
+			releaseConnection(connection);
 		}
 		return null;
 	}
 
 	public void insertImage(ImageData imageData) throws Exception {
-		fInsertImage.setString(1, imageData.getName());
-		fInsertImage.setString(2, imageData.getUrl());
-		fInsertImage.setString(3, imageData.getFilename());
-		fInsertImage.execute();
+		PooledConnection connection = getConnection();
+		try {
+			connection.fInsertImage.setString(1, imageData.getName());
+			connection.fInsertImage.setString(2, imageData.getUrl());
+			connection.fInsertImage.setString(3, imageData.getFilename());
+			connection.fInsertImage.execute();
+		} finally {
+			releaseConnection(connection);
+		}
 	}
 
 	public void updateImage(ImageData imageData) throws Exception {
-		fUpdateTopicContent.setString(1, imageData.getUrl());
-		fUpdateTopicContent.setString(2, imageData.getFilename());
-		fUpdateTopicContent.setString(3, imageData.getName());
-		fUpdateTopicContent.execute();
+		PooledConnection connection = getConnection();
+		try {
+			connection.fUpdateImage.setString(1, imageData.getUrl());
+			connection.fUpdateImage.setString(2, imageData.getFilename());
+			connection.fUpdateImage.setString(3, imageData.getName());
+			connection.fUpdateImage.execute();
+		} finally {
+			releaseConnection(connection);
+		}
 	}
 
-	private void createTableIfItDoesntExist() throws Exception {
+	private void createTableIfItDoesntExist(Connection connection) throws Exception {
 
-		ResultSet resultSet = fConnection.getMetaData().getTables("%", "%", "%", new String[] { "TABLE" });
+		ResultSet resultSet = connection.getMetaData().getTables("%", "%", "%", new String[] { "TABLE" });
 		// int columnCnt = resultSet.getMetaData().getColumnCount();
 		boolean shouldCreateTableTopic = true;
 		boolean shouldCreateTableImage = true;
@@ -186,7 +480,7 @@ public class WikiDB {
 		resultSet.close();
 		if (shouldCreateTableTopic) {
 			System.out.println("Creating Table topic...");
-			Statement statement = fConnection.createStatement();
+			Statement statement = connection.createStatement();
 			statement.execute("CREATE TABLE topic "
 					+ "(topic_id INTEGER NOT NULL GENERATED ALWAYS AS IDENTITY (START WITH 1, INCREMENT BY 1),"
 					+ " topic_name VARCHAR(256) NOT NULL, " + " version_content CLOB, " + " CONSTRAINT PK_Topic PRIMARY KEY (topic_id) "
@@ -196,7 +490,7 @@ public class WikiDB {
 		}
 		if (shouldCreateTableImage) {
 			System.out.println("Creating Table image...");
-			Statement statement = fConnection.createStatement();
+			Statement statement = connection.createStatement();
 			statement.execute("CREATE TABLE image "
 					+ "(image_id INTEGER NOT NULL GENERATED ALWAYS AS IDENTITY (START WITH 1, INCREMENT BY 1),"
 					+ " image_name VARCHAR(256) NOT NULL, " + " image_url VARCHAR(1024) NOT NULL, "
@@ -206,4 +500,4 @@ public class WikiDB {
 		}
 	}
 
-}
\ No newline at end of file
+}
@@ -2,14 +2,17 @@ package info.bliki.wiki.impl;
 
 import info.bliki.api.Page;
 import info.bliki.api.User;
+import info.bliki.api.creator.IWikiDB;
 import info.bliki.api.creator.ImageData;
 import info.bliki.api.creator.TopicData;
-import info.bliki.api.creator.WikiDB;
 import info.bliki.htmlcleaner.TagNode;
 import info.bliki.wiki.filter.Encoder;
+import info.bliki.wiki.filter.MagicWord;
+import info.bliki.wiki.filter.TemplateNameExtractor;
 import info.bliki.wiki.filter.WikipediaParser;
 import info.bliki.wiki.model.Configuration;
 import info.bliki.wiki.model.ImageFormat;
+import info.bliki.wiki.model.PageExistenceIndex;
 import info.bliki.wiki.model.WikiModel;
 import info.bliki.wiki.tags.WPATag;
 
@@ -17,9 +20,15 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * Wiki model implementation which uses the <code>info.bliki.api</code> package
@@ -27,7 +36,12 @@ import java.util.Map;
  * 
  */
 public class APIWikiModel extends WikiModel {
-	private WikiDB fWikiDB;
+	/**
+	 * The maximum number of titles in a single API query
+	 */
+	private final static int MAX_TITLES_PER_QUERY = 50;
+
+	private IWikiDB fWikiDB;
 
 	private final String fImageDirectoryName;
 	static {
@@ -36,6 +50,13 @@ public class APIWikiModel extends WikiModel {
 
 	private final User fUser;
 
+	private boolean fLoggedIn = false;
+
+	/**
+	 * Names of templates which don't exist in the wiki
+	 */
+	private final Set<String> fMissingTemplates = new HashSet<String>();
+
 	/**
 	 * WikiModel which loads the templates and images through the <a
 	 * href="http://meta.wikimedia.org/w/api.php">Wikimedia API</a>
@@ -58,7 +79,7 @@ public class APIWikiModel extends WikiModel {
 	 *          a directory for storing downloaded Wikipedia images. The directory
 	 *          must already exist.
 	 */
-	public APIWikiModel(User user, WikiDB wikiDB, String imageBaseURL, String linkBaseURL, String imageDirectoryName) {
+	public APIWikiModel(User user, IWikiDB wikiDB, String imageBaseURL, String linkBaseURL, String imageDirectoryName) {
 		this(user, wikiDB, Locale.ENGLISH, imageBaseURL, linkBaseURL, imageDirectoryName);
 	}
 
@@ -86,7 +107,7 @@ public class APIWikiModel extends WikiModel {
 	 *          a directory for storing downloaded Wikipedia images. The directory
 	 *          must already exist.
 	 */
-	public APIWikiModel(User user, WikiDB wikiDB, Locale locale, String imageBaseURL, String linkBaseURL, String imageDirectoryName) {
+	public APIWikiModel(User user, IWikiDB wikiDB, Locale locale, String imageBaseURL, String linkBaseURL, String imageDirectoryName) {
 		super(Configuration.DEFAULT_CONFIGURATION, locale, imageBaseURL, linkBaseURL);
 		fUser = user;
 		fWikiDB = wikiDB;
@@ -131,8 +152,11 @@ public class APIWikiModel extends WikiModel {
 		}
 
 		String templateNS = getTemplateNamespace() + ":";
-		String name = articleName;
 		if (namespace.equals(getTemplateNamespace())) {
+			String name = TemplateNameExtractor.normalize(articleName);
+			if (fMissingTemplates.contains(name)) {
+				return null;
+			}
 			String content = null;
 			try {
 				TopicData topicData = fWikiDB.selectTopic(templateNS + name);
@@ -147,9 +171,13 @@ public class APIWikiModel extends WikiModel {
 				}
 
 				String[] listOfTitleStrings = { templateNS + name };
-				fUser.login();
+				login();
 				List<Page> listOfPages = fUser.queryContent(listOfTitleStrings);
 				for (Page page : listOfPages) {
+					if (!isExistingPage(page)) {
+						fMissingTemplates.add(name);
+						break;
+					}
 					content = page.getCurrentContent();
 					if (content != null) {
 						// System.out.println(name);
@@ -172,6 +200,182 @@ public class APIWikiModel extends WikiModel {
 		return null;
 	}
 
+	/**
+	 * Check if the page exists without downloading its content. Templates are
+	 * looked up in the wiki database first; other pages are checked with an
+	 * <code>info</code> query of the Wikimedia API.
+	 */
+	@Override
+	protected boolean queryPageExists(String namespace, String articleName) {
+		if (articleName.length() == 0) {
+			return false;
+		}
+		if (namespace.equals(getTemplateNamespace())) {
+			int index = articleName.indexOf(':');
+			if (MagicWord.isMagicWord(index > 0 ? articleName.substring(0, index) : articleName)) {
+				// magic word templates always exist
+				return true;
+			}
+			String name = TemplateNameExtractor.normalize(articleName);
+			if (fMissingTemplates.contains(name)) {
+				return false;
+			}
+			try {
+				if (fWikiDB.existsTopic(getTemplateNamespace() + ":" + name)) {
+					return true;
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+		String title = namespace.length() == 0 ? articleName : namespace + ":" + articleName;
+		String[] listOfTitleStrings = { title };
+		login();
+		List<Page> listOfPages = fUser.queryInfo(listOfTitleStrings);
+		if (listOfPages != null) {
+			for (Page page : listOfPages) {
+				return isExistingPage(page);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Check the existence of the given pages with batched <code>info</code>
+	 * queries of the Wikimedia API and store the results in the configured
+	 * {@link PageExistenceIndex}. Call this method with the links and
+	 * <code>{{#ifexist:...}}</code> targets of a page before rendering it, to
+	 * avoid a single API request for every page.
+	 * 
+	 * @param titles
+	 *          the titles of the pages with their namespace prefix
+	 */
+	public void prefetchPageExistence(List<String> titles) {
+		PageExistenceIndex index = getPageExistenceIndex();
+		if (index == null || titles.isEmpty()) {
+			return;
+		}
+		login();
+		for (int i = 0; i < titles.size(); i += MAX_TITLES_PER_QUERY) {
+			List<String> batch = titles.subList(i, Math.min(i + MAX_TITLES_PER_QUERY, titles.size()));
+			List<Page> listOfPages = fUser.queryInfo(batch);
+			if (listOfPages != null) {
+				for (Page page : listOfPages) {
+					if (page.getTitle() != null) {
+						index.put(page.getTitle(), isExistingPage(page));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Download all templates, which are called directly or indirectly by the
+	 * given wiki text and which aren't already stored in the wiki database, so
+	 * that the following rendering of the text doesn't need to download the
+	 * templates one by one.
+	 * 
+	 * The template names are extracted with the {@link TemplateNameExtractor}
+	 * level by level, until the complete template closure is known. Every level
+	 * is downloaded with batched API queries of up to 50 titles, which are
+	 * executed concurrently. All downloaded templates are inserted into the
+	 * wiki database in a single transaction, even if some of the queries failed.
+	 * 
+	 * @param rawWikiText
+	 *          the raw wiki text which should be rendered
+	 * @return the number of downloaded templates
+	 */
+	public int prefetchTemplates(String rawWikiText) {
+		String templateNS = getTemplateNamespace() + ":";
+		Set<String> visited = new HashSet<String>();
+		Set<String> pending = TemplateNameExtractor.extract(rawWikiText, this, false);
+		List<TopicData> downloaded = new ArrayList<TopicData>();
+		try {
+			while (!pending.isEmpty()) {
+				Set<String> next = new LinkedHashSet<String>();
+				List<String> titles = new ArrayList<String>();
+				for (String name : pending) {
+					if (!visited.add(name) || fMissingTemplates.contains(name)) {
+						continue;
+					}
+					TopicData topicData = null;
+					try {
+						topicData = fWikiDB.selectTopic(templateNS + name);
+					} catch (Exception e) {
+						// download the template again
+						e.printStackTrace();
+					}
+					if (topicData != null) {
+						next.addAll(TemplateNameExtractor.extract(topicData.getContent(), this, true));
+					} else {
+						titles.add(templateNS + name);
+					}
+				}
+				if (titles.size() > 0) {
+					login();
+					List<Future<List<Page>>> futures = new ArrayList<Future<List<Page>>>();
+					for (int i = 0; i < titles.size(); i += MAX_TITLES_PER_QUERY) {
+						futures.add(fUser.queryContentAsync(titles.subList(i, Math.min(i + MAX_TITLES_PER_QUERY, titles.size()))));
+					}
+					for (Future<List<Page>> future : futures) {
+						List<Page> pages;
+						try {
+							pages = future.get();
+						} catch (ExecutionException e) {
+							// the templates of the other queries are used anyway
+							e.getCause().printStackTrace();
+							continue;
+						}
+						for (Page page : pages) {
+							String title = page.getTitle();
+							if (title == null || !title.startsWith(templateNS)) {
+								continue;
+							}
+							if (!isExistingPage(page)) {
+								fMissingTemplates.add(title.substring(templateNS.length()));
+								continue;
+							}
+							String content = page.getCurrentContent();
+							if (content != null) {
+								downloaded.add(new TopicData(title, content));
+								next.addAll(TemplateNameExtractor.extract(content, this, true));
+							}
+						}
+					}
+				}
+				pending = next;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			if (downloaded.size() > 0) {
+				try {
+					fWikiDB.insertTopics(downloaded);
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		return downloaded.size();
+	}
+
+	/**
+	 * Login the user once for all API queries of this model.
+	 */
+	private void login() {
+		if (!fLoggedIn) {
+			fUser.login();
+			fLoggedIn = true;
+		}
+	}
+
+	/**
+	 * The API returns a page without an id for missing pages.
+	 */
+	private static boolean isExistingPage(Page page) {
+		return page.getPageid() != null && page.getPageid().length() > 0;
+	}
+
 	public String getRedirectedWikiContent(String rawWikitext, Map<String, String> templateParameters) {
 		if (rawWikitext.length() < 9) {
 			// less than "#REDIRECT" string
@@ -216,7 +420,7 @@ public class APIWikiModel extends WikiModel {
 			}
 			String imageNamespace = getImageNamespace();
 			String[] listOfTitleStrings = { imageNamespace + ":" + imageName };
-			fUser.login();
+			login();
 			List<Page> listOfPages;
 			if (imageFormat.getWidth() > 0) {
 				listOfPages = fUser.queryImageinfo(listOfTitleStrings, imageFormat.getWidth());
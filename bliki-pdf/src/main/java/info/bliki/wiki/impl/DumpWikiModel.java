@@ -1,11 +1,14 @@
 package info.bliki.wiki.impl;
 
+import info.bliki.api.creator.IWikiDB;
 import info.bliki.api.creator.ImageData;
 import info.bliki.api.creator.TopicData;
-import info.bliki.api.creator.WikiDB;
 import info.bliki.htmlcleaner.TagNode;
+import info.bliki.wiki.dump.MultistreamIndex;
 import info.bliki.wiki.dump.Siteinfo;
+import info.bliki.wiki.dump.WikiArticle;
 import info.bliki.wiki.filter.Encoder;
+import info.bliki.wiki.filter.MagicWord;
 import info.bliki.wiki.filter.WikipediaParser;
 import info.bliki.wiki.model.Configuration;
 import info.bliki.wiki.model.ImageFormat;
@@ -19,7 +22,8 @@ import java.util.Map;
 
 public class DumpWikiModel extends WikiModel {
 	private Siteinfo fSiteinfo;
-	private WikiDB fWikiDB;
+	private IWikiDB fWikiDB;
+	private MultistreamIndex fMultistreamIndex;
 	private final String fTemplateNamespace;
 
 	private final String fImageDirectoryName;
@@ -44,7 +48,7 @@ public class DumpWikiModel extends WikiModel {
 	 *          a directory for storing downloaded Wikipedia images. The directory
 	 *          must already exist.
 	 */
-	public DumpWikiModel(WikiDB wikiDB, Siteinfo siteinfo, String imageBaseURL, String linkBaseURL, String imageDirectoryName) {
+	public DumpWikiModel(IWikiDB wikiDB, Siteinfo siteinfo, String imageBaseURL, String linkBaseURL, String imageDirectoryName) {
 		this(wikiDB, siteinfo, Locale.ENGLISH, imageBaseURL, linkBaseURL, imageDirectoryName);
 	}
 
@@ -66,10 +70,38 @@ public class DumpWikiModel extends WikiModel {
 	 *          a directory for storing downloaded Wikipedia images. The directory
 	 *          must already exist.
 	 */
-	public DumpWikiModel(WikiDB wikiDB, Siteinfo siteinfo, Locale locale, String imageBaseURL, String linkBaseURL,
+	public DumpWikiModel(IWikiDB wikiDB, Siteinfo siteinfo, Locale locale, String imageBaseURL, String linkBaseURL,
 			String imageDirectoryName) {
+		this(wikiDB, null, siteinfo, locale, imageBaseURL, linkBaseURL, imageDirectoryName);
+	}
+
+	/**
+	 * 
+	 * @param wikiDB
+	 *          a wiki database to retrieve already cached templates. Maybe
+	 *          <code>null</code>
+	 * @param multistreamIndex
+	 *          a page index of a multistream dump to retrieve templates, which
+	 *          aren't found in the wiki database. Maybe <code>null</code>
+	 * @param locale
+	 *          a locale for loading language specific resources
+	 * @param imageBaseURL
+	 *          a url string which must contains a &quot;${image}&quot; variable
+	 *          which will be replaced by the image name, to create links to
+	 *          images.
+	 * @param linkBaseURL
+	 *          a url string which must contains a &quot;${title}&quot; variable
+	 *          which will be replaced by the topic title, to create links to
+	 *          other wiki topics.
+	 * @param imageDirectoryName
+	 *          a directory for storing downloaded Wikipedia images. The directory
+	 *          must already exist.
+	 */
+	public DumpWikiModel(IWikiDB wikiDB, MultistreamIndex multistreamIndex, Siteinfo siteinfo, Locale locale, String imageBaseURL,
+			String linkBaseURL, String imageDirectoryName) {
 		super(Configuration.DEFAULT_CONFIGURATION, locale, imageBaseURL, linkBaseURL);
 		fWikiDB = wikiDB;
+		fMultistreamIndex = multistreamIndex;
 		fSiteinfo = siteinfo;
 		fTemplateNamespace = fSiteinfo.getNamespace(INamespace.TEMPLATE_NAMESPACE_KEY);
 		if (imageDirectoryName != null) {
@@ -90,7 +122,8 @@ public class DumpWikiModel extends WikiModel {
 	/**
 	 * Get the raw wiki text for the given namespace and article name. This model
 	 * implementation uses a Derby database to cache downloaded wiki template
-	 * texts.
+	 * texts. If a multistream dump index is available, templates which aren't
+	 * found in the database are read directly from the dump.
 	 * 
 	 * @param namespace
 	 *          the namespace of this article
@@ -120,7 +153,16 @@ public class DumpWikiModel extends WikiModel {
 
 			String content = null;
 			try {
-				TopicData topicData = fWikiDB.selectTopic(fTemplateNamespace + ":" + name);
+				TopicData topicData = null;
+				if (fWikiDB != null) {
+					topicData = fWikiDB.selectTopic(fTemplateNamespace + ":" + name);
+				}
+				if (topicData == null && fMultistreamIndex != null) {
+					WikiArticle article = fMultistreamIndex.getArticle(fTemplateNamespace + ":" + name);
+					if (article != null && article.getText() != null) {
+						topicData = new TopicData(article.getTitle(), article.getText());
+					}
+				}
 				if (topicData != null) {
 					content = topicData.getContent();
 					content = getRedirectedWikiContent(content, templateParameters);
@@ -138,6 +180,43 @@ public class DumpWikiModel extends WikiModel {
 		return null;
 	}
 
+	/**
+	 * Check if the page exists without reading its content. Templates are
+	 * looked up in the wiki database; all pages are looked up in the
+	 * multistream dump index. The dump index only stores hash codes of the
+	 * titles, so in rare cases a missing page is reported as existing.
+	 */
+	@Override
+	protected boolean queryPageExists(String namespace, String articleName) {
+		if (articleName.length() == 0) {
+			return false;
+		}
+		String name = articleName;
+		if (fSiteinfo.getCharacterCase().equals("first-letter")) {
+			// first character as uppercase
+			name = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+		}
+		try {
+			if (namespace.equals(fTemplateNamespace)) {
+				int index = articleName.indexOf(':');
+				if (MagicWord.isMagicWord(index > 0 ? articleName.substring(0, index) : articleName)) {
+					// magic word templates always exist
+					return true;
+				}
+				if (fWikiDB != null && fWikiDB.existsTopic(fTemplateNamespace + ":" + name)) {
+					return true;
+				}
+			}
+			if (fMultistreamIndex != null) {
+				String title = namespace.length() == 0 ? name : namespace + ":" + name;
+				return fMultistreamIndex.exists(title);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return false;
+	}
+
 	public String getRedirectedWikiContent(String rawWikitext, Map<String, String> templateParameters) {
 		if (rawWikitext.length() < 9) {
 			// less than "#REDIRECT" string
@@ -172,7 +251,7 @@ public class DumpWikiModel extends WikiModel {
 	public void appendInternalImageLink(String hrefImageLink, String srcImageLink, ImageFormat imageFormat) {
 		try {
 			String imageName = imageFormat.getFilename();
-			ImageData imageData = fWikiDB.selectImage(imageName);
+			ImageData imageData = fWikiDB == null ? null : fWikiDB.selectImage(imageName);
 			if (imageData != null) {
 				File file = new File(imageData.getFilename());
 				if (file.exists()) {
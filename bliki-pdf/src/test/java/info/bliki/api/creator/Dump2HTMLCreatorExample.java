@@ -8,6 +8,8 @@ import info.bliki.wiki.filter.Encoder;
 import info.bliki.wiki.impl.DumpWikiModel;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.xml.sax.SAXException;
 
@@ -64,30 +66,42 @@ public class Dump2HTMLCreatorExample {
 	static class DemoTemplateArticleFilter implements IArticleFilter {
 		WikiDB wikiDB;
 		int counter;
+		List<TopicData> topics;
 
 		public DemoTemplateArticleFilter(WikiDB wikiDB) {
 			this.wikiDB = wikiDB;
 			this.counter = 0;
+			this.topics = new ArrayList<TopicData>();
 		}
 
 		public void process(WikiArticle page, Siteinfo siteinfo) throws SAXException {
 			if (page.isTemplate()) {
 				// System.out.println(page.getTitle());
-				TopicData topicData = new TopicData(page.getTitle(), page.getText());
-				try {
-					wikiDB.insertTopic(topicData);
-					System.out.print('.');
-					if (++counter >= 80) {
-						System.out.println(' ');
-						counter = 0;
-					}
-				} catch (Exception e) {
-					String mess = e.getMessage();
-					if (mess == null) {
-						throw new SAXException(e.getClass().getName());
-					}
-					throw new SAXException(mess);
+				topics.add(new TopicData(page.getTitle(), page.getText()));
+				if (topics.size() >= WikiDB.DEFAULT_COMMIT_INTERVAL) {
+					flush();
+				}
+			}
+		}
+
+		/**
+		 * Insert the collected templates with batched SQL statements
+		 */
+		public void flush() throws SAXException {
+			try {
+				wikiDB.insertTopics(topics);
+				System.out.print('.');
+				if (++counter >= 80) {
+					System.out.println(' ');
+					counter = 0;
+				}
+				topics.clear();
+			} catch (Exception e) {
+				String mess = e.getMessage();
+				if (mess == null) {
+					throw new SAXException(e.getClass().getName());
 				}
+				throw new SAXException(mess);
 			}
 		}
 	}
@@ -151,9 +165,10 @@ public class Dump2HTMLCreatorExample {
 			WikiXMLParser wxp;
 			if (!skipFirstPass) {
 				System.out.println("First pass - write templates to database:");
-				handler = new DemoTemplateArticleFilter(db);
-				wxp = new WikiXMLParser(bz2Filename, handler);
+				DemoTemplateArticleFilter templateHandler = new DemoTemplateArticleFilter(db);
+				wxp = new WikiXMLParser(bz2Filename, templateHandler);
 				wxp.parse();
+				templateHandler.flush();
 				System.out.println(' ');
 			}
 			System.out.println("Second pass - write HTML files to directory:");
@@ -0,0 +1,319 @@
+package info.bliki.api.creator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class MappedWikiDBTest extends TestCase {
+	/**
+	 * A store where all keys have the same hash value.
+	 */
+	static class CollidingWikiDB extends MappedWikiDB {
+		public CollidingWikiDB(String directory, String name) throws IOException {
+			super(directory, name);
+		}
+
+		@Override
+		long hash(String key) {
+			return 42L;
+		}
+	}
+
+	private static final String DUMP = "<mediawiki><siteinfo><sitename>Test</sitename><namespaces>"
+			+ "<namespace key=\"0\" /><namespace key=\"10\">Template</namespace><namespace key=\"828\">Module</namespace>"
+			+ "</namespaces></siteinfo>"
+			+ "<page><title>Main Page</title><id>1</id><revision><id>1</id><text>{{Hello}}</text></revision></page>"
+			+ "<page><title>Template:Hello</title><id>2</id><revision><id>2</id><text>Hello World</text></revision></page>"
+			+ "<page><title>Module:Util</title><id>3</id><revision><id>3</id><text>return {}</text></revision></page>"
+			+ "</mediawiki>";
+
+	private File fDirectory;
+
+	private List<MappedWikiDB> fOpened;
+
+	public MappedWikiDBTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(MappedWikiDBTest.class);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		fDirectory = File.createTempFile("mappedwikidb", "");
+		fDirectory.delete();
+		fDirectory.mkdirs();
+		fOpened = new ArrayList<MappedWikiDB>();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		for (MappedWikiDB db : fOpened) {
+			db.tearDown();
+		}
+		File[] files = fDirectory.listFiles();
+		if (files != null) {
+			for (int i = 0; i < files.length; i++) {
+				files[i].delete();
+			}
+		}
+		fDirectory.delete();
+		super.tearDown();
+	}
+
+	private MappedWikiDB open() throws IOException {
+		MappedWikiDB db = new MappedWikiDB(fDirectory.getPath(), "test");
+		fOpened.add(db);
+		return db;
+	}
+
+	private MappedWikiDB openColliding() throws IOException {
+		MappedWikiDB db = new CollidingWikiDB(fDirectory.getPath(), "test");
+		fOpened.add(db);
+		return db;
+	}
+
+	private static String content(MappedWikiDB db, String name) throws Exception {
+		TopicData topic = db.selectTopic(name);
+		return topic == null ? null : topic.getContent();
+	}
+
+	private static void put(MappedWikiDB db, String name, String content) throws Exception {
+		db.insertTopic(new TopicData(name, content));
+	}
+
+	public void testPutGet() throws Exception {
+		MappedWikiDB db = open();
+		assertNull(content(db, "Template:A"));
+		put(db, "Template:A", "a");
+		put(db, "Template:B", "b\u00e4\u4e2d");
+		// read with the channel behind the mapped region
+		assertEquals("a", content(db, "Template:A"));
+		assertEquals("b\u00e4\u4e2d", content(db, "Template:B"));
+		assertTrue(db.existsTopic("Template:A"));
+		assertFalse(db.existsTopic("Template:C"));
+		assertEquals(2, db.size());
+
+		db.flush();
+		assertEquals("a", content(db, "Template:A"));
+		assertEquals("b\u00e4\u4e2d", content(db, "Template:B"));
+		assertNull(content(db, "Template:C"));
+		assertEquals(2, db.size());
+	}
+
+	public void testLargeContent() throws Exception {
+		StringBuilder buf = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			buf.append(i).append(' ');
+		}
+		MappedWikiDB db = open();
+		put(db, "Template:Large", buf.toString());
+		put(db, "Template:Empty", "");
+		assertEquals(buf.toString(), content(db, "Template:Large"));
+		assertEquals("", content(db, "Template:Empty"));
+		db.flush();
+		assertEquals(buf.toString(), content(db, "Template:Large"));
+		assertEquals("", content(db, "Template:Empty"));
+	}
+
+	public void testOverwriteBeforeFlush() throws Exception {
+		MappedWikiDB db = open();
+		put(db, "Template:A", "old");
+		db.updateTopic(new TopicData("Template:A", "new"));
+		assertEquals("new", content(db, "Template:A"));
+		assertEquals(1, db.size());
+		db.flush();
+		assertEquals("new", content(db, "Template:A"));
+		assertEquals(1, db.size());
+	}
+
+	public void testOverwriteAfterFlush() throws Exception {
+		MappedWikiDB db = open();
+		put(db, "Template:A", "old");
+		put(db, "Template:B", "b");
+		db.flush();
+		// the indexed record of A is superseded by the appended one
+		db.updateTopic(new TopicData("Template:A", "new"));
+		db.updateTopic(new TopicData("Template:A", "newer"));
+		assertEquals("newer", content(db, "Template:A"));
+		assertEquals(2, db.size());
+		db.flush();
+		assertEquals("newer", content(db, "Template:A"));
+		assertEquals("b", content(db, "Template:B"));
+		assertEquals(2, db.size());
+
+		MappedWikiDB reopened = open();
+		assertEquals("newer", content(reopened, "Template:A"));
+		assertEquals("b", content(reopened, "Template:B"));
+		assertEquals(2, reopened.size());
+	}
+
+	public void testReopenWithoutFlush() throws Exception {
+		MappedWikiDB db = open();
+		put(db, "Template:A", "a");
+		put(db, "Template:B", "b");
+		db.flush();
+		put(db, "Template:C", "c");
+		db.updateTopic(new TopicData("Template:A", "a2"));
+
+		// the records behind the written index are found by the recovery scan
+		MappedWikiDB reopened = open();
+		assertEquals("a2", content(reopened, "Template:A"));
+		assertEquals("b", content(reopened, "Template:B"));
+		assertEquals("c", content(reopened, "Template:C"));
+		assertEquals(3, reopened.size());
+		reopened.flush();
+		assertEquals("a2", content(reopened, "Template:A"));
+		assertEquals("c", content(reopened, "Template:C"));
+		assertEquals(3, reopened.size());
+	}
+
+	public void testPartialRecord() throws Exception {
+		MappedWikiDB db = new MappedWikiDB(fDirectory.getPath(), "test");
+		put(db, "Template:A", "a");
+		put(db, "Template:B", "b");
+		db.tearDown();
+		File dataFile = new File(fDirectory, "test.dat");
+		long length = dataFile.length();
+
+		// a record which was cut short in the key
+		RandomAccessFile file = new RandomAccessFile(dataFile, "rw");
+		try {
+			file.seek(length);
+			file.writeInt(10);
+			file.write("Templ".getBytes("UTF-8"));
+		} finally {
+			file.close();
+		}
+		MappedWikiDB reopened = open();
+		assertEquals(length, dataFile.length());
+		assertEquals("a", content(reopened, "Template:A"));
+		assertEquals("b", content(reopened, "Template:B"));
+		assertEquals(2, reopened.size());
+
+		// a record which was cut short in the compressed content
+		put(reopened, "Template:C", "c");
+		reopened.tearDown();
+		fOpened.remove(reopened);
+		file = new RandomAccessFile(dataFile, "rw");
+		try {
+			file.setLength(dataFile.length() - 1);
+		} finally {
+			file.close();
+		}
+		reopened = open();
+		assertEquals(length, dataFile.length());
+		assertNull(content(reopened, "Template:C"));
+		assertEquals(2, reopened.size());
+		put(reopened, "Template:C", "c2");
+		reopened.flush();
+		assertEquals("c2", content(reopened, "Template:C"));
+		assertEquals("a", content(reopened, "Template:A"));
+		assertEquals(3, reopened.size());
+	}
+
+	public void testIndexGenerations() throws Exception {
+		MappedWikiDB db = open();
+		put(db, "Template:A", "a");
+		db.flush();
+		assertTrue(new File(fDirectory, "test-1.idx").exists());
+		put(db, "Template:B", "b");
+		db.flush();
+		// the index is written to a new file, while the first one is still mapped
+		assertTrue(new File(fDirectory, "test-2.idx").exists());
+		assertEquals("a", content(db, "Template:A"));
+		assertEquals("b", content(db, "Template:B"));
+
+		// an incomplete index file of the next generation is ignored
+		File partialIndex = new File(fDirectory, "test-3.idx");
+		FileOutputStream out = new FileOutputStream(partialIndex);
+		try {
+			out.write(new byte[12]);
+		} finally {
+			out.close();
+		}
+		MappedWikiDB reopened = open();
+		assertFalse(partialIndex.exists());
+		assertEquals("a", content(reopened, "Template:A"));
+		assertEquals("b", content(reopened, "Template:B"));
+		assertEquals(2, reopened.size());
+		put(reopened, "Template:C", "c");
+		reopened.flush();
+		assertTrue(new File(fDirectory, "test-3.idx").exists());
+		assertEquals("c", content(reopened, "Template:C"));
+		assertEquals(3, reopened.size());
+	}
+
+	public void testHashCollisions() throws Exception {
+		MappedWikiDB db = openColliding();
+		for (int i = 0; i < 10; i++) {
+			put(db, "Template:T" + i, "t" + i);
+		}
+		db.flush();
+		for (int i = 0; i < 10; i++) {
+			assertEquals("t" + i, content(db, "Template:T" + i));
+		}
+		assertNull(content(db, "Template:T10"));
+		assertFalse(db.existsTopic("Template:T1x"));
+
+		db.updateTopic(new TopicData("Template:T3", "new"));
+		assertEquals("new", content(db, "Template:T3"));
+		assertEquals("t4", content(db, "Template:T4"));
+		assertEquals(10, db.size());
+		db.flush();
+		assertEquals("new", content(db, "Template:T3"));
+		assertEquals("t4", content(db, "Template:T4"));
+		assertEquals(10, db.size());
+
+		MappedWikiDB reopened = openColliding();
+		for (int i = 0; i < 10; i++) {
+			assertEquals(i == 3 ? "new" : "t" + i, content(reopened, "Template:T" + i));
+		}
+	}
+
+	public void testImages() throws Exception {
+		MappedWikiDB db = open();
+		assertNull(db.selectImage("Example.png"));
+		db.insertImage(new ImageData("Example.png", "http://example.org/Example.png", "c:/temp/Example.png"));
+		put(db, "Example.png", "topic");
+		ImageData image = db.selectImage("Example.png");
+		assertEquals("Example.png", image.getName());
+		assertEquals("http://example.org/Example.png", image.getUrl());
+		assertEquals("c:/temp/Example.png", image.getFilename());
+		assertEquals("topic", content(db, "Example.png"));
+
+		db.flush();
+		db.updateImage(new ImageData("Example.png", "http://example.org/new.png", "new.png"));
+		image = db.selectImage("Example.png");
+		assertEquals("http://example.org/new.png", image.getUrl());
+		assertEquals("new.png", image.getFilename());
+		assertEquals(2, db.size());
+	}
+
+	public void testBuild() throws Exception {
+		File dump = new File(fDirectory, "dump.xml");
+		Writer writer = new OutputStreamWriter(new FileOutputStream(dump), "UTF-8");
+		try {
+			writer.write(DUMP);
+		} finally {
+			writer.close();
+		}
+		MappedWikiDB db = MappedWikiDB.build(dump.getPath(), fDirectory.getPath(), "test");
+		fOpened.add(db);
+		assertEquals("Hello World", content(db, "Template:Hello"));
+		assertEquals("return {}", content(db, "Module:Util"));
+		assertNull(content(db, "Main Page"));
+		assertEquals(2, db.size());
+	}
+}
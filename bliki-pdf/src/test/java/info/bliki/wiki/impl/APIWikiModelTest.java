@@ -0,0 +1,226 @@
+package info.bliki.wiki.impl;
+
+import info.bliki.api.Page;
+import info.bliki.api.User;
+import info.bliki.api.creator.IWikiDB;
+import info.bliki.api.creator.ImageData;
+import info.bliki.api.creator.TopicData;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests the template prefetching of the <code>APIWikiModel</code> against a
+ * local stub of the Mediawiki API.
+ */
+public class APIWikiModelTest extends TestCase {
+	/**
+	 * A topic store in memory. Selecting <code>Template:Broken</code> fails like
+	 * a database error.
+	 */
+	static class MemoryWikiDB implements IWikiDB {
+		final Map<String, String> fTopics = new HashMap<String, String>();
+
+		int fInsertTopicsCalls = 0;
+
+		public synchronized TopicData selectTopic(String name) throws Exception {
+			if (name.equals("Template:Broken")) {
+				throw new Exception("database error");
+			}
+			String content = fTopics.get(name);
+			return content == null ? null : new TopicData(name, content);
+		}
+
+		public synchronized boolean existsTopic(String name) throws Exception {
+			return fTopics.containsKey(name);
+		}
+
+		public synchronized void insertTopic(TopicData topic) throws Exception {
+			fTopics.put(topic.getName(), topic.getContent());
+		}
+
+		public synchronized void insertTopics(Collection<TopicData> topics) throws Exception {
+			fInsertTopicsCalls++;
+			for (TopicData topic : topics) {
+				insertTopic(topic);
+			}
+		}
+
+		public void updateTopic(TopicData topic) throws Exception {
+			insertTopic(topic);
+		}
+
+		public ImageData selectImage(String imageName) throws Exception {
+			return null;
+		}
+
+		public void insertImage(ImageData imageData) throws Exception {
+		}
+
+		public void updateImage(ImageData imageData) throws Exception {
+		}
+
+		public void tearDown() throws Exception {
+		}
+	}
+
+	/**
+	 * Answers every query with the content <code>Content of ...</code> for all
+	 * titles, except for titles starting with <code>Template:Missing</code>. The
+	 * template <code>Template:A</code> calls the template <code>B</code>.
+	 */
+	private class ApiStub implements HttpHandler {
+		public void handle(HttpExchange exchange) throws IOException {
+			fRequests.incrementAndGet();
+			String titles = "";
+			String[] parameters = readBody(exchange.getRequestBody()).split("&");
+			for (int i = 0; i < parameters.length; i++) {
+				if (parameters[i].startsWith("titles=")) {
+					titles = URLDecoder.decode(parameters[i].substring(7), "UTF-8");
+				}
+			}
+			StringBuilder xml = new StringBuilder();
+			xml.append("<?xml version=\"1.0\"?><api><query><pages>");
+			String[] titleArray = titles.split("\\|");
+			for (int i = 0; i < titleArray.length; i++) {
+				if (titleArray[i].startsWith("Template:Missing")) {
+					xml.append("<page ns=\"10\" title=\"").append(titleArray[i]).append("\" missing=\"\" />");
+				} else {
+					String content = titleArray[i].equals("Template:A") ? "{{B}}" : "Content of " + titleArray[i];
+					xml.append("<page pageid=\"").append(i + 1).append("\" ns=\"10\" title=\"").append(titleArray[i]).append(
+							"\"><revisions><rev timestamp=\"2010-01-01T00:00:00Z\" user=\"Test\" comment=\"\" xml:space=\"preserve\">")
+							.append(content).append("</rev></revisions></page>");
+				}
+			}
+			xml.append("</pages></query></api>");
+
+			byte[] bytes = xml.toString().getBytes("UTF-8");
+			exchange.getResponseHeaders().add("Content-Type", "text/xml; charset=utf-8");
+			exchange.sendResponseHeaders(200, bytes.length);
+			OutputStream os = exchange.getResponseBody();
+			os.write(bytes);
+			os.close();
+		}
+
+		private String readBody(InputStream is) throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1024];
+			int count;
+			while ((count = is.read(buffer)) != -1) {
+				bytes.write(buffer, 0, count);
+			}
+			return bytes.toString("UTF-8");
+		}
+	}
+
+	private HttpServer fServer;
+
+	private ExecutorService fExecutor;
+
+	private User fUser;
+
+	private MemoryWikiDB fWikiDB;
+
+	private final AtomicInteger fRequests = new AtomicInteger();
+
+	public APIWikiModelTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(APIWikiModelTest.class);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		fServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		fServer.createContext("/w/api.php", new ApiStub());
+		fExecutor = Executors.newFixedThreadPool(4);
+		fServer.setExecutor(fExecutor);
+		fServer.start();
+		// the query which contains the title Template:Fail throws an exception
+		fUser = new User("", "", "http://127.0.0.1:" + fServer.getAddress().getPort() + "/w/api.php", "") {
+			@Override
+			public Future<List<Page>> queryContentAsync(List<String> listOfTitleStrings) {
+				if (listOfTitleStrings.contains("Template:Fail")) {
+					FutureTask<List<Page>> task = new FutureTask<List<Page>>(new Callable<List<Page>>() {
+						public List<Page> call() {
+							throw new IllegalStateException("query failed");
+						}
+					});
+					task.run();
+					return task;
+				}
+				return super.queryContentAsync(listOfTitleStrings);
+			}
+		};
+		fWikiDB = new MemoryWikiDB();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		fServer.stop(0);
+		fExecutor.shutdownNow();
+	}
+
+	private APIWikiModel createModel() {
+		return new APIWikiModel(fUser, fWikiDB, "${image}", "${title}", null);
+	}
+
+	public void testPrefetchTemplates() throws Exception {
+		APIWikiModel wikiModel = createModel();
+		assertEquals(3, wikiModel.prefetchTemplates("{{A}} {{C}} {{Missing}}"));
+		assertEquals("{{B}}", fWikiDB.fTopics.get("Template:A"));
+		assertEquals("Content of Template:B", fWikiDB.fTopics.get("Template:B"));
+		assertEquals("Content of Template:C", fWikiDB.fTopics.get("Template:C"));
+		assertEquals(3, fWikiDB.fTopics.size());
+		// one query for every level of the template calls
+		assertEquals(2, fRequests.get());
+
+		// the stored and the missing templates aren't queried again
+		assertEquals(0, wikiModel.prefetchTemplates("{{A}} {{Missing}}"));
+		assertEquals(2, fRequests.get());
+	}
+
+	public void testPrefetchTemplatesWithFailures() throws Exception {
+		StringBuilder buf = new StringBuilder("{{Fail}}");
+		for (int i = 0; i < 49; i++) {
+			buf.append("{{T").append(i).append("}}");
+		}
+		// the second query of the first level
+		buf.append("{{A}}{{Broken}}");
+		APIWikiModel wikiModel = createModel();
+		// the failed query of the first 50 titles doesn't discard the other
+		// downloaded templates and the template which couldn't be selected from
+		// the database is downloaded
+		assertEquals(3, wikiModel.prefetchTemplates(buf.toString()));
+		assertEquals(1, fWikiDB.fInsertTopicsCalls);
+		assertEquals("{{B}}", fWikiDB.fTopics.get("Template:A"));
+		assertEquals("Content of Template:B", fWikiDB.fTopics.get("Template:B"));
+		assertEquals("Content of Template:Broken", fWikiDB.fTopics.get("Template:Broken"));
+		assertNull(fWikiDB.fTopics.get("Template:T0"));
+	}
+}